@@ -0,0 +1,381 @@
+package com.smart_scope;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+// Single-file acquisition: fixed header, frame index table, frames appended in capture order, metadata JSON at the end
+final class AcquisitionContainer {
+    static final String EXTENSION = ".ssacq";
+
+    static final byte[] MAGIC = {'S', 'S', 'C', 'A', 'P', 'S', 'E', 'Q'};
+    static final int VERSION = 3;
+    static final int HEADER_SIZE = 64;
+    static final int INDEX_ENTRY_SIZE = 88;
+    private static final int FRAME_ALIGNMENT = 8;
+
+    private AcquisitionContainer() {
+    }
+
+    static final class FrameInfo {
+        long dataOffset;
+        long dataLength;
+        long timestampNs;
+        long exposureNs;
+        int iso;
+        int format;
+        int width;
+        int height;
+        int pointIndex;
+        int frameIndex;
+        float illuminationX = Float.NaN;
+        float illuminationY = Float.NaN;
+        // Window of the sensor frame this entry holds, the whole frame unless an ROI was requested
+        int roiIndex = 0;
+        int roiLeft = 0;
+        int roiTop = 0;
+        int sensorWidth;
+        int sensorHeight;
+        // Achieved lens focus distance in diopters, NaN when the lens position was not recorded
+        float focusDistance = Float.NaN;
+
+        void writeTo(ByteBuffer target) {
+            target.putLong(dataOffset);
+            target.putLong(dataLength);
+            target.putLong(timestampNs);
+            target.putLong(exposureNs);
+            target.putInt(iso);
+            target.putInt(format);
+            target.putInt(width);
+            target.putInt(height);
+            target.putInt(pointIndex);
+            target.putInt(frameIndex);
+            target.putFloat(illuminationX);
+            target.putFloat(illuminationY);
+            target.putInt(roiIndex);
+            target.putInt(roiLeft);
+            target.putInt(roiTop);
+            target.putInt(sensorWidth);
+            target.putInt(sensorHeight);
+            target.putFloat(focusDistance);
+        }
+
+        static FrameInfo readFrom(ByteBuffer source) {
+            FrameInfo info = new FrameInfo();
+            info.dataOffset = source.getLong();
+            info.dataLength = source.getLong();
+            info.timestampNs = source.getLong();
+            info.exposureNs = source.getLong();
+            info.iso = source.getInt();
+            info.format = source.getInt();
+            info.width = source.getInt();
+            info.height = source.getInt();
+            info.pointIndex = source.getInt();
+            info.frameIndex = source.getInt();
+            info.illuminationX = source.getFloat();
+            info.illuminationY = source.getFloat();
+            info.roiIndex = source.getInt();
+            info.roiLeft = source.getInt();
+            info.roiTop = source.getInt();
+            info.sensorWidth = source.getInt();
+            info.sensorHeight = source.getInt();
+            info.focusDistance = source.getFloat();
+            return info;
+        }
+    }
+
+    static final class Writer implements Closeable {
+        private final File file;
+        private final RandomAccessFile randomAccessFile;
+        private final FileChannel channel;
+        private final int frameCapacity;
+        private final long createdMillis;
+        private final ByteBuffer entryBuffer = ByteBuffer.allocate(INDEX_ENTRY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        private final ByteBuffer headerBuffer = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        private final ByteBuffer padding = ByteBuffer.allocate(FRAME_ALIGNMENT);
+
+        private long appendPosition;
+        private int frameCount = 0;
+        private String metadata = "{}";
+        private boolean closed = false;
+
+        Writer(File file, int frameCapacity) throws IOException {
+            this.file = file;
+            this.frameCapacity = frameCapacity;
+            this.createdMillis = System.currentTimeMillis();
+            this.randomAccessFile = new RandomAccessFile(file, "rw");
+            this.channel = randomAccessFile.getChannel();
+            this.randomAccessFile.setLength(0);
+            this.appendPosition = HEADER_SIZE + (long) frameCapacity * INDEX_ENTRY_SIZE;
+            writeHeader(0, 0);
+        }
+
+        File getFile() {
+            return file;
+        }
+
+        synchronized int getFrameCount() {
+            return frameCount;
+        }
+
+        synchronized void setMetadata(String metadata) {
+            this.metadata = metadata != null ? metadata : "{}";
+        }
+
+        // Appends the remaining bytes of data and records its index entry, returns the frame number
+        synchronized int append(ByteBuffer data, FrameInfo info) throws IOException {
+            if (closed) {
+                throw new IOException("Acquisition container closed");
+            }
+            if (frameCount >= frameCapacity) {
+                throw new IOException("Acquisition container full: " + frameCapacity + " frames");
+            }
+
+            info.dataOffset = appendPosition;
+            info.dataLength = data.remaining();
+
+            long position = appendPosition;
+            while (data.hasRemaining()) {
+                position += channel.write(data, position);
+            }
+
+            int misalignment = (int) (position % FRAME_ALIGNMENT);
+            if (misalignment != 0) {
+                padding.clear().limit(FRAME_ALIGNMENT - misalignment);
+                while (padding.hasRemaining()) {
+                    position += channel.write(padding, position);
+                }
+            }
+            appendPosition = position;
+
+            int frameNumber = frameCount;
+            entryBuffer.clear();
+            info.writeTo(entryBuffer);
+            entryBuffer.flip();
+            long entryPosition = HEADER_SIZE + (long) frameNumber * INDEX_ENTRY_SIZE;
+            while (entryBuffer.hasRemaining()) {
+                entryPosition += channel.write(entryBuffer, entryPosition);
+            }
+
+            frameCount++;
+            writeHeader(0, 0);
+            return frameNumber;
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+
+            try {
+                byte[] metadataBytes = metadata.getBytes(StandardCharsets.UTF_8);
+                ByteBuffer metadataBuffer = ByteBuffer.wrap(metadataBytes);
+                long position = appendPosition;
+                while (metadataBuffer.hasRemaining()) {
+                    position += channel.write(metadataBuffer, position);
+                }
+
+                writeHeader(appendPosition, metadataBytes.length);
+                channel.force(false);
+            } finally {
+                randomAccessFile.close();
+            }
+        }
+
+        private void writeHeader(long metadataOffset, long metadataLength) throws IOException {
+            headerBuffer.clear();
+            headerBuffer.put(MAGIC);
+            headerBuffer.putInt(VERSION);
+            headerBuffer.putInt(frameCapacity);
+            headerBuffer.putInt(frameCount);
+            headerBuffer.putInt(INDEX_ENTRY_SIZE);
+            headerBuffer.putLong(HEADER_SIZE);
+            headerBuffer.putLong(metadataOffset);
+            headerBuffer.putLong(metadataLength);
+            headerBuffer.putLong(createdMillis);
+            headerBuffer.putLong(0);
+            headerBuffer.flip();
+
+            long position = 0;
+            while (headerBuffer.hasRemaining()) {
+                position += channel.write(headerBuffer, position);
+            }
+        }
+    }
+
+    static final class Reader implements Closeable {
+        private final RandomAccessFile randomAccessFile;
+        private final FileChannel channel;
+        private final int frameCount;
+        private final long indexOffset;
+        private final long metadataOffset;
+        private final long metadataLength;
+        private final MappedByteBuffer index;
+
+        Reader(File file) throws IOException {
+            randomAccessFile = new RandomAccessFile(file, "r");
+            channel = randomAccessFile.getChannel();
+
+            try {
+                ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE)
+                        .order(ByteOrder.LITTLE_ENDIAN);
+                byte[] magic = new byte[MAGIC.length];
+                header.get(magic);
+                if (!Arrays.equals(magic, MAGIC)) {
+                    throw new IOException("Not an acquisition container: " + file);
+                }
+
+                int version = header.getInt();
+                if (version != VERSION) {
+                    throw new IOException("Unsupported acquisition container version: " + version);
+                }
+
+                header.getInt();
+                frameCount = header.getInt();
+                int entrySize = header.getInt();
+                if (entrySize != INDEX_ENTRY_SIZE) {
+                    throw new IOException("Unexpected index entry size: " + entrySize);
+                }
+                indexOffset = header.getLong();
+                metadataOffset = header.getLong();
+                metadataLength = header.getLong();
+
+                index = channel.map(FileChannel.MapMode.READ_ONLY, indexOffset, (long) frameCount * INDEX_ENTRY_SIZE);
+                index.order(ByteOrder.LITTLE_ENDIAN);
+            } catch (IOException e) {
+                randomAccessFile.close();
+                throw e;
+            }
+        }
+
+        int getFrameCount() {
+            return frameCount;
+        }
+
+        FrameInfo getFrameInfo(int frame) {
+            checkFrame(frame);
+            ByteBuffer entry = index.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            entry.position(frame * INDEX_ENTRY_SIZE);
+            return FrameInfo.readFrom(entry);
+        }
+
+        // Maps only the requested frame, no other frame data is read
+        ByteBuffer getFrame(int frame) throws IOException {
+            FrameInfo info = getFrameInfo(frame);
+            return channel.map(FileChannel.MapMode.READ_ONLY, info.dataOffset, info.dataLength)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        String getMetadata() throws IOException {
+            if (metadataLength <= 0) {
+                return "{}";
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) metadataLength);
+            long position = metadataOffset;
+            while (buffer.hasRemaining()) {
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    break;
+                }
+                position += read;
+            }
+            return new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public void close() throws IOException {
+            randomAccessFile.close();
+        }
+
+        private void checkFrame(int frame) {
+            if (frame < 0 || frame >= frameCount) {
+                throw new IndexOutOfBoundsException("Frame " + frame + " of " + frameCount);
+            }
+        }
+    }
+
+    static String toJson(Object value) {
+        StringBuilder builder = new StringBuilder();
+        appendJson(builder, value);
+        return builder.toString();
+    }
+
+    private static void appendJson(StringBuilder builder, Object value) {
+        if (value == null) {
+            builder.append("null");
+        } else if (value instanceof Number) {
+            double number = ((Number) value).doubleValue();
+            builder.append(Double.isNaN(number) || Double.isInfinite(number) ? "null" : value.toString());
+        } else if (value instanceof Boolean) {
+            builder.append(value.toString());
+        } else if (value instanceof Map) {
+            builder.append('{');
+            boolean first = true;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                if (!first) {
+                    builder.append(',');
+                }
+                first = false;
+                appendJsonString(builder, String.valueOf(entry.getKey()));
+                builder.append(':');
+                appendJson(builder, entry.getValue());
+            }
+            builder.append('}');
+        } else if (value instanceof List) {
+            builder.append('[');
+            boolean first = true;
+            for (Object item : (List<?>) value) {
+                if (!first) {
+                    builder.append(',');
+                }
+                first = false;
+                appendJson(builder, item);
+            }
+            builder.append(']');
+        } else {
+            appendJsonString(builder, value.toString());
+        }
+    }
+
+    private static void appendJsonString(StringBuilder builder, String value) {
+        builder.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    builder.append("\\\"");
+                    break;
+                case '\\':
+                    builder.append("\\\\");
+                    break;
+                case '\n':
+                    builder.append("\\n");
+                    break;
+                case '\r':
+                    builder.append("\\r");
+                    break;
+                case '\t':
+                    builder.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        builder.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        builder.append(c);
+                    }
+            }
+        }
+        builder.append('"');
+    }
+}
@@ -0,0 +1,173 @@
+package com.smart_scope;
+
+import android.graphics.ImageFormat;
+import android.media.Image;
+import android.media.ImageReader;
+import android.os.Handler;
+import android.util.Size;
+import android.view.Surface;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import io.flutter.plugin.common.EventChannel;
+
+// Small YUV output next to the preview, the centre of every Y plane is reduced to a mean, a histogram
+// and a sharpness score in preallocated arrays, results are coalesced so a busy UI thread only ever sees the latest frame
+final class AnalysisStream {
+    interface FrameListener {
+        // Called on the image thread for every analysed frame
+        void onFrame(double mean, double sharpness, long timestampNs);
+    }
+
+    static final String CHANNEL_NAME = "smart_scope/camera2/analysis";
+
+    private static final int MAX_IMAGES = 2;
+    private static final int SAMPLE_STEP = 4;
+    // Same centre 60% as the old bitmap intensity measurement
+    private static final int CENTER_MARGIN_DIVISOR = 5;
+    // Focus is judged on the centre 40% where the sample sits, at a finer step than the mean
+    private static final int FOCUS_STEP = 2;
+
+    private final ImageReader reader;
+    private final Handler mainHandler;
+    private final int[] histogram = new int[256];
+    private final int[] eventHistogram = new int[256];
+    private final Map<String, Object> event = new HashMap<>();
+    private final Runnable sendEvent = this::sendEvent;
+
+    private volatile EventChannel.EventSink sink;
+    private volatile FrameListener frameListener;
+    private volatile double lastMean = -1;
+    private volatile double lastSharpness = -1;
+    private boolean eventPending = false;
+    private long frameCount = 0;
+
+    AnalysisStream(Size size, Handler imageHandler, Handler mainHandler) {
+        this.mainHandler = mainHandler;
+        this.reader = ImageReader.newInstance(size.getWidth(), size.getHeight(), ImageFormat.YUV_420_888, MAX_IMAGES);
+        this.reader.setOnImageAvailableListener(reader -> {
+            Image image = reader.acquireLatestImage();
+            if (image == null) {
+                return;
+            }
+            try {
+                analyze(image);
+            } finally {
+                image.close();
+            }
+        }, imageHandler);
+    }
+
+    Surface getSurface() {
+        return reader.getSurface();
+    }
+
+    // YUV 4:2:0 buffers the reader may hold
+    long getBufferBytes() {
+        return (long) reader.getWidth() * reader.getHeight() * 3 / 2 * MAX_IMAGES;
+    }
+
+    int getWidth() {
+        return reader.getWidth();
+    }
+
+    int getHeight() {
+        return reader.getHeight();
+    }
+
+    void setSink(EventChannel.EventSink sink) {
+        this.sink = sink;
+    }
+
+    void setFrameListener(FrameListener frameListener) {
+        this.frameListener = frameListener;
+    }
+
+    // Mean luma of the latest frame, negative until one has been analysed
+    double getLastMean() {
+        return lastMean;
+    }
+
+    double getLastSharpness() {
+        return lastSharpness;
+    }
+
+    void close() {
+        sink = null;
+        reader.close();
+    }
+
+    private void analyze(Image image) {
+        Image.Plane luma = image.getPlanes()[0];
+        ByteBuffer buffer = luma.getBuffer();
+        int rowStride = luma.getRowStride();
+        int pixelStride = luma.getPixelStride();
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int startX = width / CENTER_MARGIN_DIVISOR;
+        int startY = height / CENTER_MARGIN_DIVISOR;
+        int endX = width - startX;
+        int endY = height - startY;
+
+        int[] bins = histogram;
+        Arrays.fill(bins, 0);
+        long sum = 0;
+        int count = 0;
+        int base = buffer.position();
+        for (int y = startY; y < endY; y += SAMPLE_STEP) {
+            int rowStart = base + y * rowStride;
+            for (int x = startX; x < endX; x += SAMPLE_STEP) {
+                int value = buffer.get(rowStart + x * pixelStride) & 0xff;
+                bins[value]++;
+                sum += value;
+                count++;
+            }
+        }
+
+        double mean = count > 0 ? (double) sum / count : 0;
+        double sharpness = ImageKernels.tenengrad(buffer, base, rowStride, pixelStride, width, height, FOCUS_STEP);
+        lastMean = mean;
+        lastSharpness = sharpness;
+        frameCount++;
+
+        FrameListener listener = frameListener;
+        if (listener != null) {
+            listener.onFrame(mean, sharpness, image.getTimestamp());
+        }
+
+        if (sink == null) {
+            return;
+        }
+
+        synchronized (this) {
+            if (eventPending) {
+                return;
+            }
+            System.arraycopy(bins, 0, eventHistogram, 0, bins.length);
+            event.put("type", "analysis");
+            event.put("mean", mean);
+            event.put("intensity", mean);
+            event.put("sharpness", sharpness);
+            event.put("samples", count);
+            event.put("timestampNs", image.getTimestamp());
+            event.put("frame", frameCount);
+            event.put("histogram", eventHistogram);
+            eventPending = true;
+        }
+        mainHandler.post(sendEvent);
+    }
+
+    private void sendEvent() {
+        synchronized (this) {
+            EventChannel.EventSink target = sink;
+            if (target != null) {
+                target.success(event);
+            }
+            eventPending = false;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.smart_scope;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Point-by-point accounting of a sequence, one burst per point. Images and capture results arrive in no fixed order
+// and a frame captured again after a stale one arrives after the rest of its burst, so nothing here relies on arrival
+// order: each image is paired with the result of the same sensor timestamp, and takes its slot from the point and
+// bracket step of that result's request. A point is complete once all its frames are paired
+final class BurstSlots<I, R> {
+    // A paired image and result, slot -1 when the frame is not expected and has to be dropped
+    static final class Frame<I, R> {
+        final int slot;
+        final I image;
+        final R result;
+
+        Frame(int slot, I image, R result) {
+            this.slot = slot;
+            this.image = image;
+            this.result = result;
+        }
+    }
+
+    private static final class PendingResult<R> {
+        final int pointIndex;
+        final int step;
+        final R result;
+
+        PendingResult(int pointIndex, int step, R result) {
+            this.pointIndex = pointIndex;
+            this.step = step;
+            this.result = result;
+        }
+    }
+
+    private final int pointCount;
+    private final int framesPerPoint;
+    private final int framesPerStep;
+    private final int stepCount;
+    private final int[] stepFrames;
+    private final int[] pointFrames;
+    private final Map<Long, I> pendingImages = new HashMap<>();
+    private final Map<Long, PendingResult<R>> pendingResults = new HashMap<>();
+
+    private int currentPoint = -1;
+    private int completedPoints = 0;
+    private boolean closed = false;
+
+    BurstSlots(int pointCount, int framesPerPoint, int framesPerStep) {
+        this.pointCount = pointCount;
+        this.framesPerPoint = framesPerPoint;
+        this.framesPerStep = Math.max(1, framesPerStep);
+        this.stepCount = Math.max(1, framesPerPoint / this.framesPerStep);
+        this.stepFrames = new int[pointCount * stepCount];
+        this.pointFrames = new int[pointCount];
+    }
+
+    synchronized int getCurrentPoint() {
+        return currentPoint;
+    }
+
+    synchronized boolean hasNextPoint() {
+        return currentPoint + 1 < pointCount;
+    }
+
+    synchronized int advance() {
+        currentPoint++;
+        return currentPoint;
+    }
+
+    // The paired frame once the result of the same timestamp is in, null while the image waits for it
+    synchronized Frame<I, R> addImage(long timestampNs, I image) {
+        if (closed) {
+            return new Frame<>(-1, image, null);
+        }
+        PendingResult<R> pending = pendingResults.remove(timestampNs);
+        if (pending == null) {
+            pendingImages.put(timestampNs, image);
+            return null;
+        }
+        return pair(pending, image);
+    }
+
+    // The paired frame once the image of the same timestamp is in, null while the result waits for it
+    synchronized Frame<I, R> addResult(long timestampNs, int pointIndex, int step, R result) {
+        if (closed) {
+            return null;
+        }
+        PendingResult<R> pending = new PendingResult<>(pointIndex, step, result);
+        I image = pendingImages.remove(timestampNs);
+        if (image == null) {
+            pendingResults.put(timestampNs, pending);
+            return null;
+        }
+        return pair(pending, image);
+    }
+
+    // Steps fill in the order their frames are paired, frames of one step are interchangeable
+    private Frame<I, R> pair(PendingResult<R> pending, I image) {
+        int point = pending.pointIndex;
+        int step = pending.step;
+        if (point < 0 || point >= pointCount || step < 0 || step >= stepCount ||
+                stepFrames[point * stepCount + step] >= framesPerStep) {
+            return new Frame<>(-1, image, pending.result);
+        }
+        int slot = point * framesPerPoint + step * framesPerStep + stepFrames[point * stepCount + step]++;
+        pointFrames[point]++;
+        return new Frame<>(slot, image, pending.result);
+    }
+
+    // True once per point, when all its frames are paired
+    synchronized boolean completePointIfReady() {
+        if (currentPoint < 0 || completedPoints > currentPoint || pointFrames[currentPoint] < framesPerPoint) {
+            return false;
+        }
+        completedPoints = currentPoint + 1;
+        return true;
+    }
+
+    // Images still waiting for their results, for the caller to release. Later images are returned unpaired
+    synchronized List<I> close() {
+        closed = true;
+        List<I> images = new ArrayList<>(pendingImages.values());
+        pendingImages.clear();
+        pendingResults.clear();
+        return images;
+    }
+}
@@ -0,0 +1,167 @@
+package com.smart_scope;
+
+import android.graphics.Rect;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCaptureSession;
+import android.hardware.camera2.CaptureFailure;
+import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.CaptureResult;
+import android.hardware.camera2.TotalCaptureResult;
+import android.media.Image;
+import android.os.Handler;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Camera2 behind CameraBackend for capture sequences. Requests become still captures on the persistent session,
+// compiled once per setting and step, and the ImageReader listener hands over the sequence's images through onImage
+final class Camera2Backend implements CameraBackend {
+    interface Camera {
+        // Null once the session is closed
+        CameraCaptureSession getSession();
+
+        CaptureRequest.Builder createRequest(Request request) throws CameraAccessException;
+    }
+
+    private final Camera camera;
+    private final Handler handler;
+    // Runs after a handed over image is closed, images queued behind it can be acquired again
+    private final Runnable onImageClosed;
+    private final Map<String, CaptureRequest> compiled = new HashMap<>();
+    private volatile Listener listener;
+
+    Camera2Backend(Camera camera, Handler handler, Runnable onImageClosed) {
+        this.camera = camera;
+        this.handler = handler;
+        this.onImageClosed = onImageClosed;
+    }
+
+    static CaptureMetadataIndex.Record createRecord(TotalCaptureResult result) {
+        CaptureMetadataIndex.Record record = new CaptureMetadataIndex.Record();
+        record.frameNumber = result.getFrameNumber();
+
+        Long timestamp = result.get(CaptureResult.SENSOR_TIMESTAMP);
+        Long exposure = result.get(CaptureResult.SENSOR_EXPOSURE_TIME);
+        Long frameDuration = result.get(CaptureResult.SENSOR_FRAME_DURATION);
+        Integer iso = result.get(CaptureResult.SENSOR_SENSITIVITY);
+        Float focusDistance = result.get(CaptureResult.LENS_FOCUS_DISTANCE);
+        Rect cropRegion = result.get(CaptureResult.SCALER_CROP_REGION);
+
+        if (timestamp != null) record.sensorTimestampNs = timestamp;
+        if (exposure != null) record.exposureNs = exposure;
+        if (frameDuration != null) record.frameDurationNs = frameDuration;
+        if (iso != null) record.iso = iso;
+        if (focusDistance != null) record.focusDistance = focusDistance;
+        if (cropRegion != null) {
+            record.cropLeft = cropRegion.left;
+            record.cropTop = cropRegion.top;
+            record.cropRight = cropRegion.right;
+            record.cropBottom = cropRegion.bottom;
+        }
+        return record;
+    }
+
+    @Override
+    public void open(Listener listener) throws IOException {
+        if (this.listener != null) {
+            throw new IOException("Camera already open");
+        }
+        this.listener = listener;
+    }
+
+    // On the camera thread, the listener closes the frame and with it the image
+    void onImage(Image image) {
+        Listener target = listener;
+        if (target == null) {
+            image.close();
+            return;
+        }
+        target.onFrame(new ImageFrame(image, onImageClosed));
+    }
+
+    @Override
+    public void submitBurst(List<Request> requests) throws IOException {
+        CameraCaptureSession session = camera.getSession();
+        if (session == null || listener == null) {
+            throw new IOException("Camera closed during sequence");
+        }
+
+        try {
+            List<CaptureRequest> burst = new ArrayList<>(requests.size());
+            // A burst repeats one instance per step, whose frames all come back to it
+            Map<CaptureRequest, Request> submitted = new IdentityHashMap<>();
+            for (Request request : requests) {
+                CaptureRequest captureRequest = compile(request);
+                burst.add(captureRequest);
+                submitted.put(captureRequest, request);
+            }
+            session.captureBurst(burst, createCallback(submitted), handler);
+        } catch (CameraAccessException | IllegalStateException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void close() {
+        listener = null;
+    }
+
+    private CaptureRequest compile(Request request) throws CameraAccessException {
+        String key = request.exposureNs + "/" + request.iso + "/" + request.focusDistance + "/" + request.step;
+        CaptureRequest captureRequest = compiled.get(key);
+        if (captureRequest == null) {
+            captureRequest = camera.createRequest(request).build();
+            compiled.put(key, captureRequest);
+        }
+        return captureRequest;
+    }
+
+    private CameraCaptureSession.CaptureCallback createCallback(Map<CaptureRequest, Request> submitted) {
+        return new CameraCaptureSession.CaptureCallback() {
+            @Override
+            public void onCaptureStarted(@NonNull CameraCaptureSession session,
+                                         @NonNull CaptureRequest request,
+                                         long timestamp,
+                                         long frameNumber) {
+                super.onCaptureStarted(session, request, timestamp, frameNumber);
+                Listener target = listener;
+                if (target != null) {
+                    target.onCaptureStarted(submitted.get(request), timestamp);
+                }
+            }
+
+            @Override
+            public void onCaptureFailed(@NonNull CameraCaptureSession session,
+                                        @NonNull CaptureRequest request,
+                                        @NonNull CaptureFailure failure) {
+                super.onCaptureFailed(session, request, failure);
+                Listener target = listener;
+                if (target != null) {
+                    target.onCaptureFailed(submitted.get(request), String.valueOf(failure.getReason()));
+                }
+            }
+
+            @Override
+            public void onCaptureCompleted(@NonNull CameraCaptureSession session,
+                                           @NonNull CaptureRequest request,
+                                           @NonNull TotalCaptureResult result) {
+                super.onCaptureCompleted(session, request, result);
+                Listener target = listener;
+                if (target == null) {
+                    return;
+                }
+                if (result.get(CaptureResult.SENSOR_TIMESTAMP) == null) {
+                    target.onError(new IOException("Capture result without a sensor timestamp"));
+                    return;
+                }
+                target.onCaptureCompleted(submitted.get(request), createRecord(result));
+            }
+        };
+    }
+}
@@ -20,7 +20,10 @@ import android.hardware.camera2.CaptureRequest;
 import android.hardware.camera2.CaptureResult;
 import android.hardware.camera2.TotalCaptureResult;
 import android.hardware.camera2.params.MeteringRectangle;
+import android.hardware.camera2.params.OutputConfiguration;
+import android.hardware.camera2.params.SessionConfiguration;
 import android.hardware.camera2.params.StreamConfigurationMap;
+import android.hardware.camera2.params.TonemapCurve;
 import android.media.Image;
 import android.media.ImageReader;
 import android.net.Uri;
@@ -28,8 +31,12 @@ import android.os.Build;
 import android.os.Environment;
 import android.os.Handler;
 import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.ParcelFileDescriptor;
+import android.os.SystemClock;
 import android.provider.MediaStore;
 import android.util.Log;
+import android.util.Range;
 import android.util.Size;
 import android.util.SparseArray;
 import android.view.Surface;
@@ -43,32 +50,56 @@ import androidx.annotation.*;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import io.flutter.embedding.engine.plugins.FlutterPlugin;
 import io.flutter.embedding.engine.plugins.activity.ActivityAware;
 import io.flutter.embedding.engine.plugins.activity.ActivityPluginBinding;
+import io.flutter.plugin.common.BinaryMessenger;
+import io.flutter.plugin.common.EventChannel;
 import io.flutter.plugin.common.MethodCall;
 import io.flutter.plugin.common.MethodChannel;
 import io.flutter.plugin.common.MethodChannel.MethodCallHandler;
 import io.flutter.plugin.common.MethodChannel.Result;
+import io.flutter.plugin.common.StandardMethodCodec;
 
 public class Camera2Plugin implements FlutterPlugin, MethodCallHandler, ActivityAware {
     private static final String TAG = "Camera2Plugin";
     private static final String CHANNEL_NAME = "smart_scope/camera2";
+    // Calls that only touch storage, served from a background task queue so the main thread stays free
+    private static final String IO_CHANNEL_NAME = "smart_scope/camera2/io";
     private static final String VIEW_TYPE = "smart_scope/camera2_preview";
+    private static final int DEFAULT_MAX_IMAGES = 2;
+    // The device stays open this long after the last page lets go of the preview, so the next page only brings its surface
+    private static final long CAMERA_IDLE_CLOSE_MS = 5000;
+    // Upper bound on waiting for preview requests to drain before a surface swap
+    private static final long PREVIEW_DRAIN_TIMEOUT_MS = 1000;
+    // Stills the HAL may pipeline before takePicture reports CAMERA_BUSY
+    private static final int MAX_PENDING_STILLS = 4;
+    private static final String METRICS_EXTENSION = ".metrics.json";
+    // Identity curve on every channel, for devices without a gamma tonemap
+    private static final TonemapCurve LINEAR_TONEMAP_CURVE = new TonemapCurve(
+            new float[]{0, 0, 1, 1}, new float[]{0, 0, 1, 1}, new float[]{0, 0, 1, 1});
 
     private MethodChannel channel;
+    private MethodChannel ioChannel;
+    private EventChannel analysisChannel;
     private Activity activity;
     private Context context;
 
@@ -77,12 +108,45 @@ public class Camera2Plugin implements FlutterPlugin, MethodCallHandler, Activity
 
     private CameraDevice cameraDevice;
     private CameraCaptureSession cameraCaptureSession;
-    private CaptureRequest.Builder captureRequestBuilder;
     private String cameraId;
     private Size imageDimension;
     private ImageReader imageReader;
+    private FramePool framePool;
+    private FrameWriter frameWriter;
+    private Surface previewSurface;
+    // API 28+: preview output whose surface pages swap in place, null when the session has a fixed preview surface
+    private SharedPreviewOutput sharedPreview;
+    // View whose surface the session currently targets
+    private int previewViewId = -1;
+    // Set once the attached surface's page is gone and nothing targets it any more
+    private boolean previewDetached = false;
+    // Handed from the main thread to the camera thread once the preview has drained
+    private final AtomicReference<Surface> pendingPreviewSurface = new AtomicReference<>();
+    private final Runnable idleCameraClose = () -> {
+        if (activeViewId == -1) {
+            Log.d(TAG, "No preview attached for " + CAMERA_IDLE_CLOSE_MS + " ms, closing camera");
+            closeCamera();
+            stopBackgroundThread();
+        }
+    };
+
+    private AnalysisStream analysisStream;
+    private EventChannel.EventSink analysisSink;
+    private boolean analysisRequested = false;
+
+    private IlluminationView illuminationView = null;
+    private IlluminationLayout illuminationLayout = null;
+
+    private SequenceHost activeSequence = null;
 
-    private Map<String, Object> currentIlluminationParams = null;
+    // The sweep, its reply and the lock belong to the main thread, the camera thread only reads them
+    private volatile FocusSweep focusSweep = null;
+    private Result focusSweepResult = null;
+    private volatile Float lockedFocusDistance = null;
+    private volatile String lockedFocusCameraId = null;
+    // Camera thread only, rebuilt for every session the sweep runs on
+    private CaptureRequest.Builder focusSweepBuilder = null;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
 
     private HandlerThread backgroundThread;
     private Handler backgroundHandler;
@@ -90,6 +154,11 @@ public class Camera2Plugin implements FlutterPlugin, MethodCallHandler, Activity
     private Semaphore cameraOpenCloseLock = new Semaphore(1);
 
     private Map<String, CameraParams> pageParamsMap = new HashMap<>();
+    private final Map<String, CaptureProfile> captureProfiles = new ConcurrentHashMap<>();
+    private final MemoryBudget memoryBudget = createMemoryBudget();
+    // Since start or the last reset, each sequence also keeps its own
+    private final CaptureMetrics stillMetrics = new CaptureMetrics();
+    private final CaptureMetrics sequenceMetrics = new CaptureMetrics();
 
     private CameraParams getPageParams(String pageId) {
         if (pageId == null || pageId.isEmpty()) {
@@ -113,6 +182,8 @@ public class Camera2Plugin implements FlutterPlugin, MethodCallHandler, Activity
         boolean highResolutionMode = true;
         boolean hdrMode = false;
         int isoValue = 0;
+        int captureFormat = ImageFormat.JPEG;
+        int maxImages = DEFAULT_MAX_IMAGES;
 
         CameraParams copy() {
             CameraParams params = new CameraParams();
@@ -123,11 +194,69 @@ public class Camera2Plugin implements FlutterPlugin, MethodCallHandler, Activity
             params.highResolutionMode = this.highResolutionMode;
             params.hdrMode = this.hdrMode;
             params.isoValue = this.isoValue;
+            params.captureFormat = this.captureFormat;
+            params.maxImages = this.maxImages;
             return params;
         }
     }
 
-    private Result pendingTakePictureResult;
+    // Requests compiled from one page's params, valid until those params or the session outputs change
+    private static class CaptureProfile {
+        final boolean autoExposure;
+        final long exposureTime;
+        final int isoValue;
+        final boolean hdrMode;
+        final float zoomLevel;
+
+        CaptureRequest.Builder previewBuilder;
+        CaptureRequest.Builder focusBuilder;
+        volatile CaptureRequest preview;
+        CaptureRequest still;
+
+        CaptureProfile(CameraParams params) {
+            this.autoExposure = params.autoExposure;
+            this.exposureTime = params.exposureTime;
+            this.isoValue = params.isoValue;
+            this.hdrMode = params.hdrMode;
+            this.zoomLevel = params.zoomLevel;
+        }
+
+        boolean matches(CameraParams params) {
+            return autoExposure == params.autoExposure &&
+                    exposureTime == params.exposureTime &&
+                    isoValue == params.isoValue &&
+                    hdrMode == params.hdrMode &&
+                    zoomLevel == params.zoomLevel;
+        }
+    }
+
+    // One still in flight with everything its image is saved with, captured when the request was submitted
+    private static class PendingCapture {
+        final Result result;
+        final Map<String, Object> illuminationParams;
+        final CameraParams params;
+        // Set by onCaptureStarted, the image carries the same sensor timestamp
+        long timestampNs = -1;
+        long frameNumber = -1;
+        // Elapsed realtime at submission, the origin of every latency recorded for it
+        long submittedNs;
+        // What the sensor reported, the image is held here until it arrives
+        CaptureMetadataIndex.Record record;
+        Image image;
+
+        PendingCapture(Result result, Map<String, Object> illuminationParams, CameraParams params) {
+            this.result = result;
+            this.illuminationParams = illuminationParams;
+            this.params = params;
+        }
+    }
+
+    // Submission order, guarded by itself. Written on the main thread, matched on the camera thread
+    private final ArrayDeque<PendingCapture> pendingCaptures = new ArrayDeque<>();
+
+    private HotPixelMap.Detector hotPixelDetector = null;
+    private String hotPixelKey = null;
+    private Result hotPixelResult = null;
 
     private boolean useRearCamera = true;
     private float currentZoom = 1.0f;
@@ -135,6 +264,8 @@ public class Camera2Plugin implements FlutterPlugin, MethodCallHandler, Activity
     private long exposureTime = 0;
     private boolean highResolutionMode = true;
     private boolean hdrMode = false;
+    private int captureFormat = ImageFormat.JPEG;
+    private int maxImages = DEFAULT_MAX_IMAGES;
 
     private static class CameraViewInfo {
         final TextureView textureView;
@@ -180,8 +311,6 @@ public class Camera2Plugin implements FlutterPlugin, MethodCallHandler, Activity
         }
 
         try {
-            System.gc();
-
             TextureView textureView = new TextureView(context);
             textureView.setLayoutParams(new ViewGroup.LayoutParams(
                     ViewGroup.LayoutParams.MATCH_PARENT,
@@ -208,11 +337,8 @@ public class Camera2Plugin implements FlutterPlugin, MethodCallHandler, Activity
                     Log.d(TAG, "View info added, ID: " + viewId + ", pageId: " + finalPageId +
                             ", activePageId: " + activePageId);
 
-                    if (activeViewId == viewId || activeViewId == -1) {
-                        activeViewId = viewId;
-                        startBackgroundThread();
-                        openCamera(viewId);
-                    }
+                    // The newest page takes the preview
+                    attachPreview(viewId);
                 }
 
                 @Override
@@ -226,11 +352,7 @@ public class Camera2Plugin implements FlutterPlugin, MethodCallHandler, Activity
                 @Override
                 public boolean onSurfaceTextureDestroyed(SurfaceTexture surfaceTexture) {
                     Log.d(TAG, "Texture destroyed, ID: " + viewId);
-                    if (activeViewId == viewId) {
-                        closeCamera();
-                        stopBackgroundThread();
-                        activeViewId = -1;
-                    }
+                    detachPreview(viewId);
 
                     return false;
                 }
@@ -253,15 +375,133 @@ public class Camera2Plugin implements FlutterPlugin, MethodCallHandler, Activity
 
             if (textureView.isAvailable()) {
                 Log.d(TAG, "Texture already available, ID: " + viewId + ", initializing camera directly");
-                activeViewId = viewId;
-                startBackgroundThread();
-                openCamera(viewId);
+                attachPreview(viewId);
             }
         } catch (Exception e) {
             Log.e(TAG, "Error creating TextureView: " + e.getMessage(), e);
         }
     }
 
+    // A view facing the open camera only brings its surface to the running session, the device is opened otherwise
+    private void attachPreview(int viewId) {
+        mainHandler.removeCallbacks(idleCameraClose);
+        activeViewId = viewId;
+        startBackgroundThread();
+
+        CameraViewInfo viewInfo = textureViews.get(viewId);
+        if (viewInfo == null || !isCameraOpenFor(viewInfo.useRearCamera)) {
+            openCamera(viewId);
+            return;
+        }
+
+        Log.d(TAG, "Camera already open, attaching view " + viewId + " of page " + viewInfo.pageId);
+        activePageId = viewInfo.pageId;
+        applyActivePageParams();
+        reconfigureCaptureOutputs();
+    }
+
+    // Stops targeting the view's surface and hands the preview to the newest remaining view. Without one the device
+    // stays open for CAMERA_IDLE_CLOSE_MS in case another page follows
+    private void detachPreview(int viewId) {
+        if (activeViewId != viewId) {
+            return;
+        }
+
+        activeViewId = -1;
+        if (cameraCaptureSession != null && previewViewId == viewId) {
+            try {
+                cameraCaptureSession.stopRepeating();
+            } catch (CameraAccessException | IllegalStateException e) {
+                Log.e(TAG, "Error stopping camera preview: " + e.getMessage());
+            }
+            previewDetached = true;
+        }
+
+        int nextViewId = -1;
+        for (int i = 0; i < textureViews.size(); i++) {
+            int id = textureViews.keyAt(i);
+            CameraViewInfo viewInfo = textureViews.valueAt(i);
+            if (id != viewId && viewInfo != null && viewInfo.textureView.isAvailable()) {
+                nextViewId = Math.max(nextViewId, id);
+            }
+        }
+
+        if (nextViewId != -1) {
+            attachPreview(nextViewId);
+        } else {
+            mainHandler.removeCallbacks(idleCameraClose);
+            mainHandler.postDelayed(idleCameraClose, CAMERA_IDLE_CLOSE_MS);
+        }
+    }
+
+    // Points the session at the active view's surface. A running preview drains first, its requests still target
+    // the old surface, and onReady completes the exchange
+    private void swapPreviewSurface() {
+        CameraViewInfo viewInfo = textureViews.get(activeViewId);
+        SurfaceTexture texture = viewInfo != null ? viewInfo.textureView.getSurfaceTexture() : null;
+        if (texture == null || cameraCaptureSession == null) {
+            Log.e(TAG, "No surface to attach for view " + activeViewId);
+            return;
+        }
+
+        if (sharedPreview == null) {
+            // Outputs cannot change in place before API 28, the session is rebuilt on the open device
+            closeCaptureSession();
+            createCameraPreviewSession();
+            return;
+        }
+
+        texture.setDefaultBufferSize(imageDimension.getWidth(), imageDimension.getHeight());
+        Surface replaced = pendingPreviewSurface.getAndSet(new Surface(texture));
+        if (replaced != null) {
+            replaced.release();
+        }
+        previewViewId = activeViewId;
+
+        if (previewDetached) {
+            backgroundHandler.post(this::completePreviewSwap);
+            return;
+        }
+
+        try {
+            cameraCaptureSession.stopRepeating();
+        } catch (CameraAccessException | IllegalStateException e) {
+            Log.e(TAG, "Error stopping camera preview: " + e.getMessage());
+        }
+        // A session that was already idle reports no onReady
+        backgroundHandler.postDelayed(this::completePreviewSwap, PREVIEW_DRAIN_TIMEOUT_MS);
+    }
+
+    private void completePreviewSwap() {
+        Surface surface = pendingPreviewSurface.getAndSet(null);
+        if (surface == null) {
+            return;
+        }
+
+        SharedPreviewOutput shared = sharedPreview;
+        CameraCaptureSession session = cameraCaptureSession;
+        if (shared == null || session == null) {
+            surface.release();
+            return;
+        }
+
+        try {
+            shared.swap(session, surface);
+            previewSurface = surface;
+            previewDetached = false;
+            captureProfiles.clear();
+            updateCameraPreview();
+            Log.d(TAG, "Preview surface swapped to view " + previewViewId);
+        } catch (CameraAccessException | IllegalArgumentException | IllegalStateException e) {
+            Log.e(TAG, "Cannot swap preview surface, rebuilding session: " + e.getMessage());
+            surface.release();
+            mainHandler.post(() -> {
+                closeCaptureSession();
+                createCameraPreviewSession();
+            });
+        }
+    }
+
     void createNewTextureView(Context context, FrameLayout container, boolean useRearCamera, int viewId) {
         createNewTextureView(context, container, useRearCamera, viewId, "default");
     }
@@ -272,6 +512,8 @@ public class Camera2Plugin implements FlutterPlugin, MethodCallHandler, Activity
 
         channel = new MethodChannel(flutterPluginBinding.getBinaryMessenger(), CHANNEL_NAME);
         channel.setMethodCallHandler(this);
+        setupIoChannel(flutterPluginBinding.getBinaryMessenger());
+        setupAnalysisChannel(flutterPluginBinding.getBinaryMessenger());
 
         context = flutterPluginBinding.getApplicationContext();
 
@@ -282,10 +524,72 @@ public class Camera2Plugin implements FlutterPlugin, MethodCallHandler, Activity
     public void onAttachedToEngine(io.flutter.plugin.common.BinaryMessenger messenger, Context ctx) {
         channel = new MethodChannel(messenger, CHANNEL_NAME);
         channel.setMethodCallHandler(this);
+        setupIoChannel(messenger);
+        setupAnalysisChannel(messenger);
 
         context = ctx;
     }
 
+    private void setupIoChannel(BinaryMessenger messenger) {
+        BinaryMessenger.TaskQueue taskQueue = messenger.makeBackgroundTaskQueue();
+        ioChannel = new MethodChannel(messenger, IO_CHANNEL_NAME, StandardMethodCodec.INSTANCE, taskQueue);
+        ioChannel.setMethodCallHandler(this::onIoMethodCall);
+    }
+
+    // Runs on the task queue thread, replies are encoded there too. Must not touch camera or view state
+    private void onIoMethodCall(@NonNull MethodCall call, @NonNull Result result) {
+        Context appContext = context;
+        if (appContext == null) {
+            result.error("CAMERA_UNINITIALIZED", "Camera not initialized", null);
+            return;
+        }
+
+        switch (call.method) {
+            case "loadImageFromContentUri":
+                String uri = call.argument("uri");
+                if (uri == null) {
+                    result.error("INVALID_URI", "Invalid URI", null);
+                    break;
+                }
+                try {
+                    byte[] bytes = loadImageBytesFromContentUri(appContext, Uri.parse(uri));
+                    if (bytes != null) {
+                        result.success(bytes);
+                    } else {
+                        result.error("LOAD_FAILED", "Cannot load image data", null);
+                    }
+                } catch (Exception e) {
+                    result.error("LOAD_ERROR", "Error loading image data: " + e.getMessage(), null);
+                }
+                break;
+
+            default:
+                result.notImplemented();
+                break;
+        }
+    }
+
+    private void setupAnalysisChannel(io.flutter.plugin.common.BinaryMessenger messenger) {
+        analysisChannel = new EventChannel(messenger, AnalysisStream.CHANNEL_NAME);
+        analysisChannel.setStreamHandler(new EventChannel.StreamHandler() {
+            @Override
+            public void onListen(Object arguments, EventChannel.EventSink events) {
+                analysisSink = events;
+                if (analysisStream != null) {
+                    analysisStream.setSink(events);
+                }
+            }
+
+            @Override
+            public void onCancel(Object arguments) {
+                analysisSink = null;
+                if (analysisStream != null) {
+                    analysisStream.setSink(null);
+                }
+            }
+        });
+    }
+
     private void cleanupResources() {
         closeCamera();
         stopBackgroundThread();
@@ -293,6 +597,16 @@ public class Camera2Plugin implements FlutterPlugin, MethodCallHandler, Activity
             channel.setMethodCallHandler(null);
             channel = null;
         }
+        if (ioChannel != null) {
+            ioChannel.setMethodCallHandler(null);
+            ioChannel = null;
+        }
+        if (analysisChannel != null) {
+            analysisChannel.setStreamHandler(null);
+            analysisChannel = null;
+        }
+        analysisSink = null;
+        analysisRequested = false;
         context = null;
 
         textureViews.clear();
@@ -325,6 +639,7 @@ public class Camera2Plugin implements FlutterPlugin, MethodCallHandler, Activity
         Log.d(TAG, "Plugin detached from activity for config changes");
         closeCamera();
         stopBackgroundThread();
+        releaseIllumination();
         activity = null;
     }
 
@@ -347,6 +662,7 @@ public class Camera2Plugin implements FlutterPlugin, MethodCallHandler, Activity
         Log.d(TAG, "Plugin detached from activity");
         closeCamera();
         stopBackgroundThread();
+        releaseIllumination();
         activity = null;
     }
 
@@ -380,6 +696,12 @@ public class Camera2Plugin implements FlutterPlugin, MethodCallHandler, Activity
                         if (useRearCamera != null) params.useRearCamera = useRearCamera;
                         if (highResolutionMode != null) params.highResolutionMode = highResolutionMode;
                         if (hdrMode != null) params.hdrMode = hdrMode;
+
+                        String captureFormatName = call.argument("captureFormat");
+                        if (captureFormatName != null) params.captureFormat = parseCaptureFormat(captureFormatName);
+
+                        Integer maxImages = call.argument("maxImages");
+                        if (maxImages != null && maxImages > 0) params.maxImages = maxImages;
                         
                         if (useFixedCameraParams != null && useFixedCameraParams) {
                             if (exposureTimeUs != null && exposureTimeUs > 0) {
@@ -408,7 +730,11 @@ public class Camera2Plugin implements FlutterPlugin, MethodCallHandler, Activity
                                 textureViews.put(activeViewId, viewInfo);
 
                                 applyActivePageParams();
-                                openCamera(activeViewId);
+                                if (isCameraOpenFor(params.useRearCamera)) {
+                                    reconfigureCaptureOutputs();
+                                } else {
+                                    openCamera(activeViewId);
+                                }
                                 result.success(true);
                                 return;
                             }
@@ -423,11 +749,7 @@ public class Camera2Plugin implements FlutterPlugin, MethodCallHandler, Activity
 
                 case "disposeCamera":
                     try {
-                        if (activePageId.equals(pageId)) {
-                            closeCamera();
-                            stopBackgroundThread();
-                        }
-
+                        // The device stays open for the next page, detaching the views schedules its close
                         pageParamsMap.remove(pageId);
 
                         Log.d(TAG, "Cleaning views related to pageId=" + pageId);
@@ -442,6 +764,11 @@ public class Camera2Plugin implements FlutterPlugin, MethodCallHandler, Activity
                             }
                         }
 
+                        if (activeViewId == -1) {
+                            mainHandler.removeCallbacks(idleCameraClose);
+                            mainHandler.postDelayed(idleCameraClose, CAMERA_IDLE_CLOSE_MS);
+                        }
+
                         result.success(true);
                     } catch (Exception e) {
                         Log.e(TAG, "Dispose camera failed: " + e.getMessage());
@@ -555,7 +882,7 @@ public class Camera2Plugin implements FlutterPlugin, MethodCallHandler, Activity
 
                         if (pageId.equals(activePageId)) {
                             applyActivePageParams();
-                            restartCamera();
+                            reconfigureCaptureOutputs();
                         }
 
                         result.success(true);
@@ -580,6 +907,22 @@ public class Camera2Plugin implements FlutterPlugin, MethodCallHandler, Activity
                     }
                     break;
 
+                case "setCaptureFormat":
+                    String formatName = call.argument("format");
+                    if (formatName != null) {
+                        params.captureFormat = parseCaptureFormat(formatName);
+
+                        if (pageId.equals(activePageId)) {
+                            applyActivePageParams();
+                            reconfigureCaptureOutputs();
+                        }
+
+                        result.success(getCaptureFormatName(params.captureFormat));
+                    } else {
+                        result.success(false);
+                    }
+                    break;
+
                 case "takePicture":
                     Boolean hdrForPhoto = call.argument("hdrMode");
                     if (hdrForPhoto != null) {
@@ -633,18 +976,243 @@ public class Camera2Plugin implements FlutterPlugin, MethodCallHandler, Activity
                         applyActivePageParams();
                         Log.d(TAG, "Using current active page params: " + pageId);
                     } else {
-                        Log.d(TAG, "Temporarily switching page: from " + activePageId + " to " + pageId);
-                        String oldPageId = activePageId;
-                        activePageId = pageId;
-                        applyActivePageParams();
+                        Log.d(TAG, "Capturing with params of inactive page: " + pageId);
+                    }
 
-                        takePicture(result, illuminationParams);
-                        activePageId = oldPageId;
-                        applyActivePageParams();
-                        return;
+                    takePicture(result, illuminationParams, pageId);
+                    break;
+
+                case "captureSequence":
+                    List<Map<String, Object>> sequencePoints = call.argument("points");
+                    if (sequencePoints == null || sequencePoints.isEmpty()) {
+                        result.error("INVALID_ARGS", "Non-empty illumination point list required", null);
+                        break;
+                    }
+
+                    // Checked on a copy, the page keeps its settings unless the sequence starts
+                    CameraParams sequenceParams = params.copy();
+                    Boolean hdrForSequence = call.argument("hdrMode");
+                    if (hdrForSequence != null) {
+                        sequenceParams.hdrMode = hdrForSequence;
+                    }
+
+                    Boolean highResForSequence = call.argument("highResolutionMode");
+                    if (highResForSequence != null) {
+                        sequenceParams.highResolutionMode = highResForSequence;
+                    }
+
+                    Boolean fixedForSequence = call.argument("useFixedCameraParams");
+                    Integer isoForSequence = call.argument("isoValue");
+                    Integer exposureForSequence = call.argument("exposureTimeUs");
+
+                    if (fixedForSequence != null && fixedForSequence) {
+                        if (exposureForSequence != null && exposureForSequence > 0) {
+                            sequenceParams.exposureTime = exposureForSequence * 1000L;
+                            sequenceParams.autoExposure = false;
+                        }
+
+                        if (isoForSequence != null && isoForSequence > 0) {
+                            sequenceParams.isoValue = isoForSequence;
+                        }
+                    } else {
+                        sequenceParams.autoExposure = true;
+                        sequenceParams.exposureTime = 0;
+                        sequenceParams.isoValue = 0;
+                    }
+
+                    Integer framesPerPoint = call.argument("framesPerPoint");
+                    Boolean useContainer = call.argument("container");
+                    Integer settleFrames = call.argument("settleFrames");
+                    Boolean nativeIllumination = call.argument("nativeIllumination");
+
+                    List<FrameRoi> sequenceRois;
+                    try {
+                        sequenceRois = FrameRoi.parse(call.argument("roi"));
+                    } catch (IllegalArgumentException e) {
+                        result.error("INVALID_ARGS", e.getMessage(), null);
+                        break;
+                    }
+
+                    if (!sequenceRois.isEmpty() && imageReader != null &&
+                            imageReader.getImageFormat() == ImageFormat.JPEG) {
+                        result.error("ROI_UNSUPPORTED", "ROI cropping requires YUV or RAW capture format", null);
+                        break;
+                    }
+
+                    Boolean correctHotPixels = call.argument("correctHotPixels");
+                    Boolean subtractDark = call.argument("subtractDark");
+                    Integer darkFrames = call.argument("darkFrames");
+                    Number darkMaxAgeMs = call.argument("darkMaxAgeMs");
+                    if (subtractDark != null && subtractDark) {
+                        if (imageReader != null && imageReader.getImageFormat() == ImageFormat.JPEG) {
+                            result.error("DARK_UNSUPPORTED", "Dark subtraction requires YUV or RAW capture format", null);
+                            break;
+                        }
+                        if (sequenceParams.autoExposure) {
+                            result.error("DARK_UNSUPPORTED", "Dark subtraction requires fixed exposure and ISO", null);
+                            break;
+                        }
+                    }
+
+                    float[] focusDistances;
+                    try {
+                        focusDistances = parseFocusDistances(call.argument("focusDistances"));
+                    } catch (IllegalArgumentException | CameraAccessException e) {
+                        result.error("FOCUS_UNSUPPORTED", e.getMessage(), null);
+                        break;
+                    }
+
+                    float[] hdrExposureRatios = null;
+                    if (sequenceParams.hdrMode && imageReader != null &&
+                            imageReader.getImageFormat() != ImageFormat.JPEG) {
+                        if (sequenceParams.autoExposure) {
+                            result.error("HDR_UNSUPPORTED", "Linear HDR requires a fixed base exposure", null);
+                            break;
+                        }
+                        if (focusDistances != null || (subtractDark != null && subtractDark)) {
+                            result.error("HDR_UNSUPPORTED",
+                                    "Linear HDR cannot be combined with focus brackets or dark subtraction", null);
+                            break;
+                        }
+                        try {
+                            hdrExposureRatios = parseHdrExposureRatios(call.argument("hdrExposureRatios"));
+                        } catch (IllegalArgumentException e) {
+                            result.error("INVALID_ARGS", e.getMessage(), null);
+                            break;
+                        }
+                    }
+
+                    if (nativeIllumination != null && nativeIllumination &&
+                            (illuminationView == null || illuminationLayout == null)) {
+                        result.error("NO_ILLUMINATION", "prepareIllumination must be called first", null);
+                        break;
+                    }
+
+                    Boolean meterExposure = call.argument("meterExposure");
+                    if (meterExposure != null && meterExposure && (sequenceParams.autoExposure ||
+                            (imageReader != null && imageReader.getImageFormat() == ImageFormat.JPEG))) {
+                        result.error("METERING_UNSUPPORTED",
+                                "Exposure metering requires YUV or RAW capture with a fixed starting exposure", null);
+                        break;
+                    }
+
+                    CaptureSequence sequence = new CaptureSequence(pageId, sequencePoints,
+                            framesPerPoint != null ? framesPerPoint : 1, focusDistances, hdrExposureRatios,
+                            useContainer != null && useContainer, sequenceRois);
+                    if (nativeIllumination != null && nativeIllumination) {
+                        sequence.nativeIllumination = true;
+                        addIlluminationCoordinates(sequencePoints);
+                    }
+                    sequence.correctHotPixels = correctHotPixels == null || correctHotPixels;
+                    if (subtractDark != null && subtractDark) {
+                        sequence.subtractDark = true;
+                        if (darkFrames != null && darkFrames > 0) {
+                            sequence.darkFrameCount = darkFrames;
+                        }
+                        if (darkMaxAgeMs != null) {
+                            sequence.darkMaxAgeMs = darkMaxAgeMs.longValue();
+                        }
+                    }
+
+                    Number meterTarget = call.argument("meterTarget");
+                    Number maxExposureUs = call.argument("maxExposureUs");
+                    try {
+                        Range<Long> exposureRange = getCameraCapabilities().exposureRange;
+                        if (exposureRange != null) {
+                            sequence.minExposureNs = exposureRange.getLower();
+                            sequence.maxExposureNs = exposureRange.getUpper();
+                        }
+                    } catch (CameraAccessException e) {
+                        Log.e(TAG, "Cannot read exposure range: " + e.getMessage());
+                    }
+                    if (maxExposureUs != null && maxExposureUs.longValue() > 0) {
+                        sequence.maxExposureNs = Math.min(sequence.maxExposureNs, maxExposureUs.longValue() * 1000L);
+                    }
+                    sequence.applyExposureSchedule(sequenceParams.autoExposure ? 0 : sequenceParams.exposureTime,
+                            sequenceParams.isoValue);
+
+                    if (meterExposure != null && meterExposure) {
+                        sequence.meterExposure = true;
+                        if (meterTarget != null && meterTarget.floatValue() > 0 && meterTarget.floatValue() < 1) {
+                            sequence.meterTarget = meterTarget.floatValue();
+                        }
+                    }
+                    if (sequence.subtractDark && sequence.hasExposureSchedule()) {
+                        result.error("DARK_UNSUPPORTED", "Dark subtraction requires one exposure for every point", null);
+                        break;
+                    }
+
+                    startCaptureSequence(sequence, sequenceParams,
+                            settleFrames != null ? settleFrames : IlluminationSync.DEFAULT_SETTLE_FRAMES, result);
+                    break;
+
+                case "cancelCaptureSequence":
+                    // Natively illuminated sequences never ask Dart for the next point, so cancellation is explicit
+                    if (activeSequence != null && !activeSequence.isFinished()) {
+                        activeSequence.sequencer.fail("CANCELLED", "Capture sequence cancelled");
+                    }
+                    result.success(true);
+                    break;
+
+                case "calibrateHotPixels":
+                    Integer calibrationFrames = call.argument("frames");
+                    calibrateHotPixels(pageId, calibrationFrames != null ? calibrationFrames : 8, result);
+                    break;
+
+                case "prepareIllumination":
+                    prepareIllumination(call, result);
+                    break;
+
+                case "showIlluminationPattern":
+                    Integer patternIndex = call.argument("index");
+                    if (illuminationView == null) {
+                        result.error("NO_ILLUMINATION", "prepareIllumination must be called first", null);
+                    } else if (patternIndex == null || patternIndex < 0) {
+                        illuminationView.clearPattern();
+                        result.success(true);
+                    } else {
+                        illuminationView.showPattern(patternIndex);
+                        result.success(true);
+                    }
+                    break;
+
+                case "releaseIllumination":
+                    releaseIllumination();
+                    result.success(true);
+                    break;
+
+                case "startFocusSweep":
+                    Integer coarseSteps = call.argument("coarseSteps");
+                    Integer fineSteps = call.argument("fineSteps");
+                    activePageId = pageId;
+                    startFocusSweep(coarseSteps != null ? coarseSteps : FocusSweep.DEFAULT_COARSE_STEPS,
+                            fineSteps != null ? fineSteps : FocusSweep.DEFAULT_FINE_STEPS, result);
+                    break;
+
+                case "cancelFocusSweep":
+                    if (focusSweep != null) {
+                        FocusSweep cancelled = focusSweep;
+                        backgroundHandler.post(() ->
+                                finishFocusSweep(cancelled, null, 0, "CANCELLED", "Focus sweep cancelled"));
+                    }
+                    result.success(true);
+                    break;
+
+                case "unlockFocus":
+                    if (lockedFocusDistance != null) {
+                        lockedFocusDistance = null;
+                        captureProfiles.clear();
+                        updateCameraPreview();
                     }
+                    result.success(true);
+                    break;
 
-                    takePicture(result, illuminationParams);
+                case "getFocusLock":
+                    Map<String, Object> focusLock = new HashMap<>();
+                    Float lockedDistance = getLockedFocusDistance();
+                    focusLock.put("locked", lockedDistance != null);
+                    focusLock.put("focusDistance", lockedDistance);
+                    result.success(focusLock);
                     break;
 
                 case "performManualFocus":
@@ -660,24 +1228,6 @@ public class Camera2Plugin implements FlutterPlugin, MethodCallHandler, Activity
                     }
                     break;
 
-                case "loadImageFromContentUri":
-                    String uri = call.argument("uri");
-                    if (uri != null) {
-                        try {
-                            byte[] bytes = loadImageBytesFromContentUri(Uri.parse(uri));
-                            if (bytes != null) {
-                                result.success(bytes);
-                            } else {
-                                result.error("LOAD_FAILED", "Cannot load image data", null);
-                            }
-                        } catch (Exception e) {
-                            result.error("LOAD_ERROR", "Error loading image data: " + e.getMessage(), null);
-                        }
-                    } else {
-                        result.error("INVALID_URI", "Invalid URI", null);
-                    }
-                    break;
-
                 case "startIntensityMonitoring":
                     startIntensityMonitoring(result);
                     break;
@@ -690,6 +1240,16 @@ public class Camera2Plugin implements FlutterPlugin, MethodCallHandler, Activity
                     getCurrentLightIntensity(result);
                     break;
 
+                case "getCaptureMetrics":
+                    result.success(getCaptureMetrics());
+                    break;
+
+                case "resetCaptureMetrics":
+                    stillMetrics.reset();
+                    sequenceMetrics.reset();
+                    result.success(null);
+                    break;
+
                 case "setCameraParams":
                     Boolean fixedParams = call.argument("useFixedCameraParams");
                     Integer iso = call.argument("isoValue");
@@ -738,9 +1298,18 @@ public class Camera2Plugin implements FlutterPlugin, MethodCallHandler, Activity
             backgroundThread.start();
             backgroundHandler = new Handler(backgroundThread.getLooper());
         }
+
+        if (frameWriter == null) {
+            frameWriter = new FrameWriter(SequenceFrameWrite.WRITE_QUEUE_CAPACITY);
+        }
     }
 
     private void stopBackgroundThread() {
+        if (frameWriter != null) {
+            frameWriter.shutdown();
+            frameWriter = null;
+        }
+
         if (backgroundThread != null) {
             backgroundThread.quitSafely();
             try {
@@ -811,9 +1380,7 @@ public class Camera2Plugin implements FlutterPlugin, MethodCallHandler, Activity
                 return;
             }
 
-            CameraCharacteristics characteristics = manager.getCameraCharacteristics(cameraId);
-
-            StreamConfigurationMap map = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+            StreamConfigurationMap map = CameraCapabilities.get(manager, cameraId).streamMap;
 
             Size[] supportedResolutions = map.getOutputSizes(ImageFormat.JPEG);
             Size optimalSize = chooseOptimalSize(supportedResolutions, 8192, 6144);
@@ -833,14 +1400,8 @@ public class Camera2Plugin implements FlutterPlugin, MethodCallHandler, Activity
             }
             Log.d(TAG, "Using resolution: " + imageDimension.getWidth() + "x" + imageDimension.getHeight());
 
-            if (imageReader != null) {
-                imageReader.close();
-                imageReader = null;
-            }
-
-            Size captureSize = highResolutionMode ?
-                    getBestCaptureSize(map.getOutputSizes(ImageFormat.JPEG)) :
-                    imageDimension;
+            int format = resolveCaptureFormat(map);
+            Size captureSize = chooseCaptureSize(map, format);
 
             if (captureSize == null) {
                 Log.e(TAG, "Cannot get suitable photo size, operation cancelled");
@@ -848,38 +1409,7 @@ public class Camera2Plugin implements FlutterPlugin, MethodCallHandler, Activity
                 return;
             }
 
-            Log.d(TAG, "Photo resolution: " + captureSize.getWidth() + "x" + captureSize.getHeight() +
-                    " (High resolution mode: " + (highResolutionMode ? "ON" : "OFF") + ")");
-
-            imageReader = ImageReader.newInstance(
-                    captureSize.getWidth(),
-                    captureSize.getHeight(),
-                    ImageFormat.JPEG,
-                    2,
-                    2
-            );
-
-            imageReader.setOnImageAvailableListener(new ImageReader.OnImageAvailableListener() {
-                @Override
-                public void onImageAvailable(ImageReader reader) {
-                    Image image = null;
-                    try {
-                        image = reader.acquireLatestImage();
-                        if (image != null) {
-                            Log.d(TAG, "ImageReader callback: global illumination params=" + (currentIlluminationParams != null ?
-                                    currentIlluminationParams.toString() : "null"));
-
-                            processImageCapture(image);
-                        }
-                    } catch (Exception e) {
-                        Log.e(TAG, "Image processing error: " + e.getMessage(), e);
-                    } finally {
-                        if (image != null) {
-                            image.close();
-                        }
-                    }
-                }
-            }, backgroundHandler);
+            createImageReader(captureSize, format);
 
             try {
                 if (!cameraOpenCloseLock.tryAcquire(2500, TimeUnit.MILLISECONDS)) {
@@ -901,51 +1431,169 @@ public class Camera2Plugin implements FlutterPlugin, MethodCallHandler, Activity
         }
     }
 
-    private String getCameraId(CameraManager manager, boolean useRearCamera) {
-        try {
-            for (String cameraId : manager.getCameraIdList()) {
-                CameraCharacteristics characteristics = manager.getCameraCharacteristics(cameraId);
-                Integer facing = characteristics.get(CameraCharacteristics.LENS_FACING);
+    private int resolveCaptureFormat(StreamConfigurationMap map) {
+        if (captureFormat == ImageFormat.JPEG) {
+            return ImageFormat.JPEG;
+        }
 
-                if (useRearCamera) {
-                    if (facing != null && facing == CameraCharacteristics.LENS_FACING_BACK) {
-                        return cameraId;
-                    }
-                } else {
-                    if (facing != null && facing == CameraCharacteristics.LENS_FACING_FRONT) {
-                        return cameraId;
-                    }
-                }
-            }
+        if (map.isOutputSupportedFor(captureFormat)) {
+            return captureFormat;
+        }
 
-            if (manager.getCameraIdList().length > 0) {
-                return manager.getCameraIdList()[0];
-            }
-        } catch (CameraAccessException e) {
-            Log.e(TAG, "Error getting camera ID: " + e.getMessage());
+        if (captureFormat == ImageFormat.RAW_SENSOR && map.isOutputSupportedFor(ImageFormat.YUV_420_888)) {
+            Log.d(TAG, "RAW_SENSOR not supported, falling back to YUV_420_888");
+            return ImageFormat.YUV_420_888;
         }
 
-        return null;
+        Log.d(TAG, "Capture format " + getCaptureFormatName(captureFormat) + " not supported, falling back to JPEG");
+        return ImageFormat.JPEG;
     }
 
-    private void closeCamera() {
-        try {
-            cameraOpenCloseLock.acquire();
-
-            if (cameraCaptureSession != null) {
-                try {
-                    cameraCaptureSession.stopRepeating();
-                } catch (CameraAccessException | IllegalStateException e) {
-                    Log.e(TAG, "Error stopping camera preview: " + e.getMessage());
-                } finally {
-                    try {
-                        cameraCaptureSession.close();
-                    } catch (Exception e) {
-                        Log.e(TAG, "Error closing camera session: " + e.getMessage());
-                    }
-                    cameraCaptureSession = null;
-                }
-            }
+    private Size chooseCaptureSize(StreamConfigurationMap map, int format) {
+        Size captureSize = highResolutionMode || format == ImageFormat.RAW_SENSOR ?
+                getBestCaptureSize(map.getOutputSizes(format)) :
+                imageDimension;
+
+        if (captureSize != null) {
+            Log.d(TAG, "Photo resolution: " + captureSize.getWidth() + "x" + captureSize.getHeight() +
+                    " (High resolution mode: " + (highResolutionMode ? "ON" : "OFF") +
+                    ", format: " + getCaptureFormatName(format) + ")");
+        }
+
+        return captureSize;
+    }
+
+    private void createImageReader(Size captureSize, int format) {
+        if (imageReader != null) {
+            imageReader.close();
+            imageReader = null;
+        }
+
+        imageReader = ImageReader.newInstance(
+                captureSize.getWidth(),
+                captureSize.getHeight(),
+                format,
+                maxImages,
+                2
+        );
+
+        framePool = new FramePool(getFrameBufferSize(captureSize, format),
+                maxImages + SequenceFrameWrite.WRITE_QUEUE_CAPACITY);
+        Log.d(TAG, "Frame pool: " + framePool.getMaxBuffers() + " x " + (framePool.getBufferSize() / 1024) + " KB");
+        memoryBudget.enforce();
+
+        imageReader.setOnImageAvailableListener(new ImageReader.OnImageAvailableListener() {
+            @Override
+            public void onImageAvailable(ImageReader reader) {
+                acquireImages(reader);
+            }
+        }, backgroundHandler);
+    }
+
+    // Every image belongs to a capture in flight, skipping to the latest would drop pipelined ones. Sequence frames
+    // are held until their capture result arrives, with all maxImages held the rest stay queued until one is
+    // released, which calls this again
+    private void acquireImages(ImageReader reader) {
+        while (true) {
+            Image image;
+            try {
+                image = reader.acquireNextImage();
+            } catch (IllegalStateException e) {
+                return;
+            }
+            if (image == null) {
+                return;
+            }
+
+            boolean held = false;
+            try {
+                if (hotPixelDetector != null) {
+                    processHotPixelImage(image);
+                } else if (activeSequence != null && !activeSequence.isFinished()) {
+                    // The sequence closes it
+                    activeSequence.camera.onImage(image);
+                    held = true;
+                } else {
+                    held = processImageCapture(image);
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Image processing error: " + e.getMessage(), e);
+            } finally {
+                if (!held) {
+                    image.close();
+                }
+            }
+        }
+    }
+
+    private void reconfigureCaptureOutputs() {
+        if (cameraDevice == null || imageReader == null || context == null) {
+            return;
+        }
+
+        try {
+            StreamConfigurationMap map = getCameraCapabilities().streamMap;
+            if (map == null) {
+                Log.e(TAG, "Cannot get camera configuration info");
+                return;
+            }
+
+            int format = resolveCaptureFormat(map);
+            Size captureSize = chooseCaptureSize(map, format);
+            if (captureSize == null) {
+                Log.e(TAG, "Cannot get suitable photo size, keeping current session");
+                return;
+            }
+
+            if (imageReader.getWidth() == captureSize.getWidth() &&
+                    imageReader.getHeight() == captureSize.getHeight() &&
+                    imageReader.getImageFormat() == format &&
+                    imageReader.getMaxImages() == maxImages) {
+                Log.d(TAG, "Capture outputs unchanged, keeping current session");
+                if (previewViewId != activeViewId) {
+                    swapPreviewSurface();
+                } else {
+                    updateCameraPreview();
+                }
+                return;
+            }
+
+            Log.d(TAG, "Capture outputs changed, rebuilding capture session");
+            closeCaptureSession();
+            createImageReader(captureSize, format);
+            createCameraPreviewSession();
+        } catch (CameraAccessException e) {
+            Log.e(TAG, "Error reconfiguring capture outputs: " + e.getMessage());
+        }
+    }
+
+    private String getCameraId(CameraManager manager, boolean useRearCamera) {
+        try {
+            return CameraCapabilities.findCameraId(manager, useRearCamera ?
+                    CameraCharacteristics.LENS_FACING_BACK : CameraCharacteristics.LENS_FACING_FRONT);
+        } catch (CameraAccessException e) {
+            Log.e(TAG, "Error getting camera ID: " + e.getMessage());
+        }
+
+        return null;
+    }
+
+    private void closeCamera() {
+        mainHandler.removeCallbacks(idleCameraClose);
+        failPendingCaptures("CAMERA_CLOSED", "Camera closed before the capture completed");
+        if (activeSequence != null) {
+            activeSequence.sequencer.fail("CAMERA_CLOSED", "Camera closed during capture sequence");
+        }
+        if (focusSweep != null) {
+            // Its camera thread callbacks stop at the identity check
+            focusSweep = null;
+            replyFocusSweep(null, 0, "CAMERA_CLOSED", "Camera closed during focus sweep");
+        }
+
+        try {
+            cameraOpenCloseLock.acquire();
+
+            closeCaptureSession();
 
             if (cameraDevice != null) {
                 try {
@@ -964,11 +1612,14 @@ public class Camera2Plugin implements FlutterPlugin, MethodCallHandler, Activity
                 }
                 imageReader = null;
             }
+            framePool = null;
 
-            captureRequestBuilder = null;
-
-            System.gc();
+            if (analysisStream != null) {
+                analysisStream.close();
+                analysisStream = null;
+            }
 
+            captureProfiles.clear();
         } catch (InterruptedException e) {
             Log.e(TAG, "Interrupted while closing camera: " + e.getMessage());
         } finally {
@@ -976,6 +1627,46 @@ public class Camera2Plugin implements FlutterPlugin, MethodCallHandler, Activity
         }
     }
 
+    private CameraCapabilities getCameraCapabilities() throws CameraAccessException {
+        CameraManager manager = (CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
+        return CameraCapabilities.get(manager, cameraId);
+    }
+
+    private boolean isCameraOpenFor(boolean rearCamera) {
+        if (cameraDevice == null || cameraCaptureSession == null || context == null) {
+            return false;
+        }
+
+        CameraManager manager = (CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
+        String requestedId = getCameraId(manager, rearCamera);
+        return requestedId != null && requestedId.equals(cameraDevice.getId());
+    }
+
+    private void closeCaptureSession() {
+        if (cameraCaptureSession != null) {
+            try {
+                cameraCaptureSession.stopRepeating();
+            } catch (CameraAccessException | IllegalStateException e) {
+                Log.e(TAG, "Error stopping camera preview: " + e.getMessage());
+            } finally {
+                try {
+                    cameraCaptureSession.close();
+                } catch (Exception e) {
+                    Log.e(TAG, "Error closing camera session: " + e.getMessage());
+                }
+                cameraCaptureSession = null;
+            }
+        }
+        previewSurface = null;
+        sharedPreview = null;
+        previewViewId = -1;
+        previewDetached = false;
+        Surface pending = pendingPreviewSurface.getAndSet(null);
+        if (pending != null) {
+            pending.release();
+        }
+    }
+
     private void restartCamera() {
         closeCamera();
         openCamera(activeViewId);
@@ -1013,71 +1704,98 @@ public class Camera2Plugin implements FlutterPlugin, MethodCallHandler, Activity
             }
 
             final Surface previewSurface = surface;
-
-            captureRequestBuilder = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
-            captureRequestBuilder.addTarget(previewSurface);
+            this.previewSurface = surface;
+            captureProfiles.clear();
 
             Surface imageReaderSurface = imageReader.getSurface();
 
-            List<Surface> surfaces = Arrays.asList(previewSurface, imageReaderSurface);
-
-            cameraDevice.createCaptureSession(
-                    surfaces,
-                    new CameraCaptureSession.StateCallback() {
-                        @Override
-                        public void onConfigured(@NonNull CameraCaptureSession session) {
-                            if (cameraDevice == null) {
-                                if (previewSurface != null) {
-                                    try {
-                                        previewSurface.release();
-                                    } catch (Exception e) {
-                                        Log.e(TAG, "Failed to release preview Surface: " + e.getMessage());
-                                    }
-                                }
-                                return;
-                            }
+            List<Surface> surfaces = new ArrayList<>(Arrays.asList(previewSurface, imageReaderSurface));
+            if (analysisRequested && analysisStream == null) {
+                analysisStream = createAnalysisStream();
+            }
+            if (analysisStream != null) {
+                surfaces.add(analysisStream.getSurface());
+            }
 
-                            cameraCaptureSession = session;
+            final SharedPreviewOutput shared = Build.VERSION.SDK_INT >= Build.VERSION_CODES.P ?
+                    new SharedPreviewOutput(imageDimension, previewSurface) : null;
+            sharedPreview = shared;
+            previewViewId = activeViewId;
+            previewDetached = false;
 
+            CameraCaptureSession.StateCallback sessionCallback = new CameraCaptureSession.StateCallback() {
+                @Override
+                public void onConfigured(@NonNull CameraCaptureSession session) {
+                    if (cameraDevice == null) {
+                        if (previewSurface != null) {
                             try {
-                                captureRequestBuilder.set(CaptureRequest.CONTROL_AF_MODE,
-                                        CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_PICTURE);
-                                captureRequestBuilder.set(CaptureRequest.CONTROL_AE_MODE,
-                                        autoExposure ? CaptureRequest.CONTROL_AE_MODE_ON : CaptureRequest.CONTROL_AE_MODE_OFF);
-
-                                updateCameraPreview();
+                                previewSurface.release();
                             } catch (Exception e) {
-                                Log.e(TAG, "Failed to configure camera params: " + e.getMessage());
+                                Log.e(TAG, "Failed to release preview Surface: " + e.getMessage());
                             }
                         }
+                        return;
+                    }
 
-                        @Override
-                        public void onConfigureFailed(@NonNull CameraCaptureSession session) {
-                            Log.e(TAG, "Failed to configure camera session");
-                            if (previewSurface != null) {
-                                try {
-                                    previewSurface.release();
-                                } catch (Exception e) {
-                                    Log.e(TAG, "Failed to release preview Surface: " + e.getMessage());
-                                }
-                            }
+                    cameraCaptureSession = session;
+
+                    // Also starts or resumes a focus sweep on the new session
+                    try {
+                        updateCameraPreview();
+                    } catch (Exception e) {
+                        Log.e(TAG, "Failed to configure camera params: " + e.getMessage());
+                    }
+                }
+
+                @Override
+                public void onConfigureFailed(@NonNull CameraCaptureSession session) {
+                    Log.e(TAG, "Failed to configure camera session");
+                    if (previewSurface != null) {
+                        try {
+                            previewSurface.release();
+                        } catch (Exception e) {
+                            Log.e(TAG, "Failed to release preview Surface: " + e.getMessage());
                         }
+                    }
+                }
 
-                        @Override
-                        public void onClosed(@NonNull CameraCaptureSession session) {
-                            super.onClosed(session);
-                            Log.d(TAG, "Camera session closed");
-                            if (previewSurface != null && previewSurface.isValid()) {
-                                try {
-                                    previewSurface.release();
-                                } catch (Exception e) {
-                                    Log.e(TAG, "Failed to release Surface when closing camera session: " + e.getMessage());
-                                }
-                            }
+                @Override
+                public void onClosed(@NonNull CameraCaptureSession session) {
+                    super.onClosed(session);
+                    Log.d(TAG, "Camera session closed");
+                    if (previewSurface != null && previewSurface.isValid()) {
+                        try {
+                            previewSurface.release();
+                        } catch (Exception e) {
+                            Log.e(TAG, "Failed to release Surface when closing camera session: " + e.getMessage());
                         }
-                    },
-                    backgroundHandler
-            );
+                    }
+                    if (shared != null) {
+                        // A page may have swapped its own surface in
+                        shared.release();
+                    }
+                }
+
+                @Override
+                public void onReady(@NonNull CameraCaptureSession session) {
+                    super.onReady(session);
+                    if (session == cameraCaptureSession) {
+                        completePreviewSwap();
+                    }
+                }
+            };
+
+            if (shared != null) {
+                List<OutputConfiguration> outputs = new ArrayList<>();
+                outputs.add(shared.getConfiguration());
+                for (Surface output : surfaces.subList(1, surfaces.size())) {
+                    outputs.add(new OutputConfiguration(output));
+                }
+                cameraDevice.createCaptureSession(new SessionConfiguration(SessionConfiguration.SESSION_REGULAR,
+                        outputs, backgroundHandler::post, sessionCallback));
+            } else {
+                cameraDevice.createCaptureSession(surfaces, sessionCallback, backgroundHandler);
+            }
         } catch (CameraAccessException e) {
             Log.e(TAG, "Error creating camera preview session: " + e.getMessage());
         } catch (Exception e) {
@@ -1091,35 +1809,16 @@ public class Camera2Plugin implements FlutterPlugin, MethodCallHandler, Activity
             return;
         }
 
-        try {
-            if (!autoExposure && exposureTime > 0) {
-                captureRequestBuilder.set(CaptureRequest.CONTROL_AE_MODE, CaptureRequest.CONTROL_AE_MODE_OFF);
-                captureRequestBuilder.set(CaptureRequest.SENSOR_EXPOSURE_TIME, exposureTime);
-                
-                if (getPageParams(activePageId).isoValue > 0) {
-                    captureRequestBuilder.set(CaptureRequest.SENSOR_SENSITIVITY, getPageParams(activePageId).isoValue);
-                    Log.d(TAG, "Applied ISO value: " + getPageParams(activePageId).isoValue);
-                }
-            } else {
-                captureRequestBuilder.set(CaptureRequest.CONTROL_AE_MODE, CaptureRequest.CONTROL_AE_MODE_ON);
-            }
-
-            if (hdrMode) {
-                captureRequestBuilder.set(CaptureRequest.CONTROL_SCENE_MODE, CaptureRequest.CONTROL_SCENE_MODE_HDR);
-                captureRequestBuilder.set(CaptureRequest.CONTROL_MODE, CaptureRequest.CONTROL_MODE_USE_SCENE_MODE);
-            } else {
-                captureRequestBuilder.set(CaptureRequest.CONTROL_SCENE_MODE, CaptureRequest.CONTROL_SCENE_MODE_DISABLED);
-                captureRequestBuilder.set(CaptureRequest.CONTROL_MODE, CaptureRequest.CONTROL_MODE_AUTO);
-            }
-
-            setZoom(currentZoom);
-
-            captureRequestBuilder.set(CaptureRequest.CONTROL_AF_MODE, CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_PICTURE);
-            captureRequestBuilder.set(CaptureRequest.CONTROL_AF_TRIGGER, CaptureRequest.CONTROL_AF_TRIGGER_IDLE);
-
-            CaptureRequest request = captureRequestBuilder.build();
+        // A running sweep owns the repeating request, the page's preview would hand the lens back to AF
+        final FocusSweep sweep = focusSweep;
+        if (sweep != null) {
+            backgroundHandler.post(() -> beginFocusSweep(sweep));
+            return;
+        }
 
-            cameraCaptureSession.setRepeatingRequest(request, null, backgroundHandler);
+        try {
+            CaptureProfile profile = getCaptureProfile(activePageId);
+            cameraCaptureSession.setRepeatingRequest(profile.preview, null, backgroundHandler);
 
         } catch (CameraAccessException e) {
             Log.e(TAG, "Failed to configure camera preview params: " + e.getMessage());
@@ -1135,104 +1834,474 @@ public class Camera2Plugin implements FlutterPlugin, MethodCallHandler, Activity
         }
     }
 
-    private void setZoom(float zoomLevel) {
-        if (cameraDevice == null) {
-            return;
+    private CaptureProfile getCaptureProfile(String pageId) throws CameraAccessException {
+        if (pageId == null || pageId.isEmpty()) {
+            pageId = "default";
         }
 
-        try {
-            CameraManager manager = (CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
-            CameraCharacteristics characteristics = manager.getCameraCharacteristics(cameraId);
+        CameraParams params = getPageParams(pageId);
+        CaptureProfile profile = captureProfiles.get(pageId);
+        if (profile != null && profile.matches(params)) {
+            return profile;
+        }
 
-            Rect rect = characteristics.get(CameraCharacteristics.SENSOR_INFO_ACTIVE_ARRAY_SIZE);
-            if (rect == null) {
-                return;
+        Log.d(TAG, "Compiling capture requests for page: " + pageId);
+        profile = new CaptureProfile(params);
+
+        profile.previewBuilder = createPreviewBuilder(params);
+        profile.preview = profile.previewBuilder.build();
+
+        profile.focusBuilder = createPreviewBuilder(params);
+        profile.focusBuilder.set(CaptureRequest.CONTROL_AF_MODE, CaptureRequest.CONTROL_AF_MODE_AUTO);
+        profile.focusBuilder.set(CaptureRequest.CONTROL_AF_TRIGGER, CaptureRequest.CONTROL_AF_TRIGGER_START);
+
+        profile.still = createStillCaptureBuilder(params).build();
+
+        captureProfiles.put(pageId, profile);
+        return profile;
+    }
+
+    private CaptureRequest.Builder createPreviewBuilder(CameraParams params) throws CameraAccessException {
+        CaptureRequest.Builder previewBuilder = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
+        if (previewSurface != null) {
+            previewBuilder.addTarget(previewSurface);
+        }
+        if (analysisStream != null) {
+            previewBuilder.addTarget(analysisStream.getSurface());
+        }
+
+        if (!params.autoExposure && params.exposureTime > 0) {
+            previewBuilder.set(CaptureRequest.CONTROL_AE_MODE, CaptureRequest.CONTROL_AE_MODE_OFF);
+            previewBuilder.set(CaptureRequest.SENSOR_EXPOSURE_TIME, params.exposureTime);
+
+            if (params.isoValue > 0) {
+                previewBuilder.set(CaptureRequest.SENSOR_SENSITIVITY, params.isoValue);
+                Log.d(TAG, "Applied ISO value: " + params.isoValue);
             }
+        } else {
+            previewBuilder.set(CaptureRequest.CONTROL_AE_MODE, CaptureRequest.CONTROL_AE_MODE_ON);
+        }
+
+        if (usesSceneHdr(params)) {
+            previewBuilder.set(CaptureRequest.CONTROL_SCENE_MODE, CaptureRequest.CONTROL_SCENE_MODE_HDR);
+            previewBuilder.set(CaptureRequest.CONTROL_MODE, CaptureRequest.CONTROL_MODE_USE_SCENE_MODE);
+        } else {
+            previewBuilder.set(CaptureRequest.CONTROL_SCENE_MODE, CaptureRequest.CONTROL_SCENE_MODE_DISABLED);
+            previewBuilder.set(CaptureRequest.CONTROL_MODE, CaptureRequest.CONTROL_MODE_AUTO);
+        }
+
+        setZoom(previewBuilder, params.zoomLevel);
+
+        applyFocusMode(previewBuilder);
+        previewBuilder.set(CaptureRequest.CONTROL_AF_TRIGGER, CaptureRequest.CONTROL_AF_TRIGGER_IDLE);
+
+        return previewBuilder;
+    }
+
+    // The vendor HDR scene mode tone-maps, linear formats get their dynamic range from a fused exposure bracket instead
+    private static boolean usesSceneHdr(CameraParams params) {
+        return params.hdrMode && params.captureFormat == ImageFormat.JPEG;
+    }
+
+    // A distance locked by a focus sweep holds on every page, so preview and stills of one acquisition share a focal plane
+    private void applyFocusMode(CaptureRequest.Builder builder) {
+        Float locked = getLockedFocusDistance();
+        if (locked != null) {
+            builder.set(CaptureRequest.CONTROL_AF_MODE, CaptureRequest.CONTROL_AF_MODE_OFF);
+            builder.set(CaptureRequest.LENS_FOCUS_DISTANCE, locked);
+        } else {
+            builder.set(CaptureRequest.CONTROL_AF_MODE, CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_PICTURE);
+        }
+    }
+
+    // Read from both threads, the distance is published after its camera id
+    private Float getLockedFocusDistance() {
+        Float locked = lockedFocusDistance;
+        if (locked == null || cameraId == null || !cameraId.equals(lockedFocusCameraId)) {
+            return null;
+        }
+        return locked;
+    }
 
+    private void setZoom(CaptureRequest.Builder requestBuilder, float zoomLevel) {
+        try {
             float maxZoom = 5.0f;
             if (zoomLevel < 1.0f) zoomLevel = 1.0f;
             if (zoomLevel > maxZoom) zoomLevel = maxZoom;
 
-            int centerX = rect.width() / 2;
-            int centerY = rect.height() / 2;
-            int deltaX = (int) (0.5f * rect.width() / zoomLevel);
-            int deltaY = (int) (0.5f * rect.height() / zoomLevel);
-
-            Rect zoomRect = new Rect(
-                    centerX - deltaX,
-                    centerY - deltaY,
-                    centerX + deltaX,
-                    centerY + deltaY
-            );
+            Rect zoomRect = getCameraCapabilities().getCropRegion(zoomLevel);
+            if (zoomRect == null) {
+                return;
+            }
 
-            captureRequestBuilder.set(CaptureRequest.SCALER_CROP_REGION, zoomRect);
+            requestBuilder.set(CaptureRequest.SCALER_CROP_REGION, zoomRect);
         } catch (CameraAccessException e) {
             Log.e(TAG, "Error setting zoom: " + e.getMessage());
         }
     }
 
-    private void processImageCapture(Image image) {
-        if (pendingTakePictureResult == null || image == null) {
+    private static int getFrameBufferSize(Size captureSize, int format) {
+        return FrameEncoder.getBufferSize(captureSize.getWidth(), captureSize.getHeight(), format);
+    }
+
+    private ByteBuffer copyImageToFrameBuffer(Image image, long exposureNs, int iso)
+            throws IOException, InterruptedException {
+        String description = image.getFormat() == ImageFormat.JPEG ? null : describeLinearFrame(image, exposureNs, iso);
+        return FrameEncoder.encode(new ImageFrame(image), description, framePool,
+                SequenceFrameWrite.FRAME_BUFFER_TIMEOUT_MS);
+    }
+
+    private HotPixelMap getHotPixelMap(int format, int width, int height, CameraParams params) {
+        if (format == ImageFormat.JPEG || params.autoExposure || context == null || cameraId == null) {
+            return null;
+        }
+        return HotPixelMap.get(getCalibrationDir(), HotPixelMap.key(cameraId, format, width, height, params.isoValue));
+    }
+
+    private File getCalibrationDir() {
+        return new File(context.getFilesDir(), "calibration");
+    }
+
+    // Frames must be dark: lens covered or illumination off, with the page's fixed exposure and ISO
+    private void calibrateHotPixels(String pageId, int frames, Result result) {
+        if (cameraDevice == null || cameraCaptureSession == null || imageReader == null) {
+            result.error("NO_CAMERA", "Camera not initialized", null);
+            return;
+        }
+
+        if (hotPixelDetector != null || (activeSequence != null && !activeSequence.isFinished())) {
+            result.error("CAMERA_BUSY", "Another capture is in progress", null);
+            return;
+        }
+
+        int format = imageReader.getImageFormat();
+        CameraParams params = getPageParams(pageId);
+        if (format == ImageFormat.JPEG || params.autoExposure) {
+            result.error("CALIBRATION_UNSUPPORTED",
+                    "Hot pixel calibration requires YUV or RAW capture with fixed exposure and ISO", null);
             return;
         }
 
-        ByteBuffer buffer = image.getPlanes()[0].getBuffer();
-        byte[] bytes = new byte[buffer.capacity()];
-        buffer.get(bytes);
+        int width = imageReader.getWidth();
+        int height = imageReader.getHeight();
+        hotPixelKey = HotPixelMap.key(cameraId, format, width, height, params.isoValue);
+        hotPixelResult = result;
+        hotPixelDetector = new HotPixelMap.Detector(width, height, format == ImageFormat.RAW_SENSOR ? 2 : 1, frames);
+        memoryBudget.enforce();
 
         try {
-            int imageSize = bytes.length / 1024;
-            Log.d(TAG, "Captured image size: " + imageSize + " KB (" + (imageSize / 1024.0) + " MB)");
+            CaptureRequest request = getCaptureProfile(pageId).still;
+            List<CaptureRequest> burst = new ArrayList<>(hotPixelDetector.getTargetFrames());
+            for (int i = 0; i < hotPixelDetector.getTargetFrames(); i++) {
+                burst.add(request);
+            }
+
+            cameraCaptureSession.captureBurst(burst, new CameraCaptureSession.CaptureCallback() {
+                @Override
+                public void onCaptureFailed(@NonNull CameraCaptureSession session,
+                                            @NonNull CaptureRequest request,
+                                            @NonNull CaptureFailure failure) {
+                    super.onCaptureFailed(session, request, failure);
+                    finishHotPixelCalibration(null, "CAMERA_ERROR", "Calibration capture failed, reason: " +
+                            failure.getReason());
+                }
+            }, backgroundHandler);
 
-            Log.d(TAG, "Global illumination params before processing: " + (currentIlluminationParams != null ?
-                    currentIlluminationParams.toString() : "null"));
+            Log.d(TAG, "Hot pixel calibration: " + hotPixelDetector.getTargetFrames() + " dark frames for " +
+                    hotPixelKey);
+        } catch (CameraAccessException | IllegalStateException e) {
+            Log.e(TAG, "Error starting hot pixel calibration: " + e.getMessage());
+            finishHotPixelCalibration(null, "CAMERA_ERROR", "Error during capture: " + e.getMessage());
+        }
+    }
 
-            String imagePath = saveImageToStorage(bytes);
+    private void processHotPixelImage(Image image) {
+        HotPixelMap.Detector detector = hotPixelDetector;
+        if (detector == null) {
+            return;
+        }
 
-            if (pendingTakePictureResult != null) {
-                Map<String, Object> resultMap = new HashMap<>();
-                resultMap.put("path", imagePath);
-                resultMap.put("width", image.getWidth());
-                resultMap.put("height", image.getHeight());
-                resultMap.put("size", imageSize);
-                resultMap.put("format", "JPEG");
+        try {
+            Image.Plane plane = image.getPlanes()[0];
+            int sourceBits = image.getFormat() == ImageFormat.RAW_SENSOR ? 16 : 8;
+            if (!detector.add(plane.getBuffer(), plane.getRowStride(), plane.getPixelStride(), sourceBits)) {
+                return;
+            }
+            hotPixelDetector = null;
+
+            HotPixelMap map = detector.build();
+            HotPixelMap.put(getCalibrationDir(), hotPixelKey, map);
+            Log.d(TAG, "Hot pixel map " + hotPixelKey + ": " + map.size() + " pixels");
+
+            Map<String, Object> summary = new HashMap<>();
+            summary.put("key", hotPixelKey);
+            summary.put("pixels", map.size());
+            summary.put("frames", detector.getTargetFrames());
+            finishHotPixelCalibration(summary, null, null);
+        } catch (IOException e) {
+            hotPixelDetector = null;
+            Log.e(TAG, "Hot pixel calibration failed: " + e.getMessage());
+            finishHotPixelCalibration(null, "CALIBRATION_ERROR", e.getMessage());
+        }
+    }
 
-                pendingTakePictureResult.success(imagePath);
+    private void finishHotPixelCalibration(Map<String, Object> summary, String errorCode, String errorMessage) {
+        mainHandler.post(() -> {
+            Result result = hotPixelResult;
+            hotPixelDetector = null;
+            hotPixelResult = null;
+            hotPixelKey = null;
+            if (result == null) {
+                return;
+            }
+            if (summary != null) {
+                result.success(summary);
+            } else {
+                result.error(errorCode, errorMessage, null);
+            }
+        });
+    }
 
-                pendingTakePictureResult = null;
+    private void releaseFrameBuffer(ByteBuffer buffer) {
+        FramePool pool = framePool;
+        if (pool != null) {
+            pool.release(buffer);
+        }
+    }
 
-                Log.d(TAG, "Photo processing complete, clearing global illumination params");
-                currentIlluminationParams = null;
+    // Exposure and ISO the sensor reported for the frame, the requested ones when its result lacks them
+    private static long getFrameExposure(CaptureMetadataIndex.Record result, CameraParams params) {
+        if (result != null && result.exposureNs > 0) {
+            return result.exposureNs;
+        }
+        return params.autoExposure ? 0 : params.exposureTime;
+    }
+
+    private static int getFrameIso(CaptureMetadataIndex.Record result, CameraParams params) {
+        return result != null && result.iso > 0 ? result.iso : params.isoValue;
+    }
+
+    private String describeLinearFrame(Image image, long exposureNs, int iso) {
+        Integer blackLevel = null;
+        Integer whiteLevel = null;
+        if (image.getFormat() == ImageFormat.RAW_SENSOR && context != null) {
+            try {
+                CameraCapabilities capabilities = getCameraCapabilities();
+                blackLevel = capabilities.blackLevel;
+                whiteLevel = capabilities.whiteLevel;
+            } catch (CameraAccessException e) {
+                Log.e(TAG, "Cannot read sensor levels: " + e.getMessage());
+            }
+        }
+        return FrameEncoder.describeLinear(new ImageFrame(image), exposureNs, iso, blackLevel, whiteLevel, 0, 0,
+                image.getWidth(), image.getHeight());
+    }
+
+    private static int parseCaptureFormat(String name) {
+        switch (name.toLowerCase(Locale.ROOT)) {
+            case "raw":
+            case "raw_sensor":
+                return ImageFormat.RAW_SENSOR;
+            case "yuv":
+            case "yuv_420_888":
+                return ImageFormat.YUV_420_888;
+            default:
+                return ImageFormat.JPEG;
+        }
+    }
+
+    private static String getCaptureFormatName(int format) {
+        return FrameEncoder.getFormatName(format);
+    }
+
+    // True when the image is held until its capture result arrives, a still is described with what the sensor
+    // reported and not with what was requested
+    private boolean processImageCapture(Image image) {
+        PendingCapture capture;
+        synchronized (pendingCaptures) {
+            capture = findPendingCapture(image.getTimestamp());
+            if (capture == null) {
+                Log.d(TAG, "Dropping image without a pending capture");
+                return false;
             }
+            stillMetrics.record(CaptureMetrics.IMAGE, capture.submittedNs);
+            if (capture.record == null) {
+                capture.image = image;
+                return true;
+            }
+            pendingCaptures.remove(capture);
+        }
+        processStillImage(capture, image);
+        return false;
+    }
+
+    // Runs once the still's capture result has arrived
+    private void processStillImage(PendingCapture capture, Image image) {
+        final Result result = capture.result;
+        final long submittedNs = capture.submittedNs;
+        final Map<String, Object> illuminationParams = capture.illuminationParams;
+        final CameraParams captureParams = capture.params;
+        final int imageFormat = image.getFormat();
+        Log.d(TAG, "Image for frame " + capture.frameNumber + ", illumination params: " + illuminationParams);
+
+        ByteBuffer frame = null;
+
+        try {
+            frame = copyImageToFrameBuffer(image, getFrameExposure(capture.record, captureParams),
+                    getFrameIso(capture.record, captureParams));
+
+            int imageSize = frame.remaining() / 1024;
+            Log.d(TAG, "Captured image size: " + imageSize + " KB (" + (imageSize / 1024.0) + " MB)");
+
+            final ByteBuffer pendingFrame = frame;
+            final int imageWidth = image.getWidth();
+            final int imageHeight = image.getHeight();
+            final HotPixelMap hotPixels = getHotPixelMap(imageFormat, imageWidth, imageHeight, captureParams);
+            boolean queued = enqueueFrameWrite(
+                    () -> {
+                        try {
+                            if (hotPixels != null) {
+                                hotPixels.correctEncoded(pendingFrame, imageFormat, imageWidth, imageHeight,
+                                        new FrameRoi(imageWidth, imageHeight, 0, 0));
+                            }
+                            return saveImageToStorage(pendingFrame, illuminationParams, imageFormat, captureParams);
+                        } finally {
+                            releaseFrameBuffer(pendingFrame);
+                        }
+                    },
+                    new FrameWriter.Callback() {
+                        @Override
+                        public void onWritten(String imagePath) {
+                            Log.d(TAG, "Photo processing complete");
+                            stillMetrics.record(CaptureMetrics.WRITTEN, submittedNs);
+                            mainHandler.post(() -> {
+                                result.success(imagePath);
+                                stillMetrics.record(CaptureMetrics.DELIVERED, submittedNs);
+                            });
+                        }
+
+                        @Override
+                        public void onFailed(Exception e) {
+                            Log.e(TAG, "Error saving image: " + e.getMessage());
+                            mainHandler.post(() -> result.error("SAVE_ERROR", "Error saving image: " + e.getMessage(), null));
+                        }
+                    });
+
+            if (!queued) {
+                throw new IOException("Write queue full");
+            }
+            frame = null;
         } catch (Exception e) {
             Log.e(TAG, "Error processing image: " + e.getMessage());
-            if (pendingTakePictureResult != null) {
-                pendingTakePictureResult.error("SAVE_ERROR", "Error saving image: " + e.getMessage(), null);
-                pendingTakePictureResult = null;
+            mainHandler.post(() -> result.error("SAVE_ERROR", "Error saving image: " + e.getMessage(), null));
+        } finally {
+            releaseFrameBuffer(frame);
+        }
+    }
 
-                currentIlluminationParams = null;
-            }
+    private boolean enqueueFrameWrite(FrameWriter.WriteTask task, FrameWriter.Callback callback)
+            throws InterruptedException {
+        FrameWriter writer = frameWriter;
+        if (writer == null) {
+            return false;
+        }
+
+        if (writer.getPendingWrites() >= writer.getCapacity()) {
+            Log.d(TAG, "Write queue full, waiting for storage");
         }
+        return writer.enqueue(task, callback, SequenceFrameWrite.FRAME_WRITE_TIMEOUT_MS);
     }
 
-    private String saveImageToStorage(byte[] bytes) throws IOException {
-        String timeStamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault()).format(new Date());
+    // The capture whose exposure started at this timestamp. Stills complete in submission order, so an image that
+    // arrives before its onCaptureStarted goes to the oldest capture still waiting for one. Called holding the lock
+    private PendingCapture findPendingCapture(long timestampNs) {
+        PendingCapture unstarted = null;
+        for (PendingCapture capture : pendingCaptures) {
+            if (capture.image != null) {
+                continue;
+            }
+            if (capture.timestampNs == timestampNs) {
+                return capture;
+            }
+            if (capture.timestampNs < 0 && unstarted == null) {
+                unstarted = capture;
+            }
+        }
+        return unstarted;
+    }
 
-        CameraParams params = getPageParams(activePageId);
+    // Pairs the still's result with its image if that is already held
+    private void recordStillResult(PendingCapture capture, TotalCaptureResult result) {
+        Image image;
+        synchronized (pendingCaptures) {
+            capture.record = Camera2Backend.createRecord(result);
+            image = capture.image;
+            capture.image = null;
+            if (image != null && !pendingCaptures.remove(capture)) {
+                // Already failed, the camera was closed
+                image.close();
+                return;
+            }
+        }
+        if (image == null) {
+            return;
+        }
 
-        String fileName = "SCOPE_" + timeStamp + ".jpg";
+        try {
+            processStillImage(capture, image);
+        } finally {
+            image.close();
+        }
+        // The held image may have kept others queued
+        ImageReader reader = imageReader;
+        if (reader != null) {
+            acquireImages(reader);
+        }
+    }
 
-        Map<String, Object> illuminationParams = currentIlluminationParams;
-        Log.d(TAG, "Global illumination params in saveImageToStorage: " + (illuminationParams != null ?
-                illuminationParams.toString() : "null"));
+    private boolean removePendingCapture(PendingCapture capture) {
+        Image image;
+        synchronized (pendingCaptures) {
+            if (!pendingCaptures.remove(capture)) {
+                return false;
+            }
+            image = capture.image;
+            capture.image = null;
+        }
+        if (image != null) {
+            image.close();
+        }
+        return true;
+    }
 
-        if (illuminationParams == null && pendingTakePictureResult instanceof MethodResultWrapper) {
-            MethodResultWrapper wrapper = (MethodResultWrapper) pendingTakePictureResult;
-            Map<String, Object> arguments = wrapper.getArguments();
-            if (arguments != null && arguments.containsKey("illuminationParams")) {
-                illuminationParams = (Map<String, Object>) arguments.get("illuminationParams");
+    private void failPendingCaptures(String errorCode, String errorMessage) {
+        List<PendingCapture> failed;
+        synchronized (pendingCaptures) {
+            failed = new ArrayList<>(pendingCaptures);
+            pendingCaptures.clear();
+        }
+        for (PendingCapture capture : failed) {
+            Image image;
+            synchronized (pendingCaptures) {
+                image = capture.image;
+                capture.image = null;
+            }
+            if (image != null) {
+                image.close();
             }
+            mainHandler.post(() -> capture.result.error(errorCode, errorMessage, null));
         }
+    }
+
+    private String saveImageToStorage(ByteBuffer data, Map<String, Object> illuminationParams, int imageFormat,
+                                      CameraParams params) throws IOException {
+        String timeStamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault()).format(new Date());
+
+        boolean isJpeg = imageFormat == ImageFormat.JPEG;
+        String extension = isJpeg ? ".jpg" : ".tiff";
+        String mimeType = isJpeg ? "image/jpeg" : "image/tiff";
+
+        String fileName = "SCOPE_" + timeStamp + extension;
 
         if (illuminationParams != null && !illuminationParams.isEmpty()) {
             try {
@@ -1274,6 +2343,21 @@ public class Camera2Plugin implements FlutterPlugin, MethodCallHandler, Activity
                     Log.d(TAG, "Adding spacing: S" + spacingValue);
                 }
 
+                Object sequenceIndex = illuminationParams.get("sequenceIndex");
+                if (sequenceIndex instanceof Number) {
+                    nameBuilder.append("_P").append(((Number) sequenceIndex).intValue());
+                }
+
+                Object focusIndex = illuminationParams.get("focusIndex");
+                if (focusIndex instanceof Number) {
+                    nameBuilder.append("_F").append(((Number) focusIndex).intValue());
+                }
+
+                Object roiIndex = illuminationParams.get("roiIndex");
+                if (roiIndex instanceof Number) {
+                    nameBuilder.append("_W").append(((Number) roiIndex).intValue());
+                }
+
                 if (params.hdrMode) {
                     nameBuilder.append("_HDR");
                     Log.d(TAG, "Adding HDR tag");
@@ -1284,13 +2368,17 @@ public class Camera2Plugin implements FlutterPlugin, MethodCallHandler, Activity
                     Log.d(TAG, "Adding high resolution tag");
                 }
 
-                nameBuilder.append(".jpg");
+                if (!isJpeg) {
+                    nameBuilder.append("_").append(getCaptureFormatName(imageFormat));
+                }
+
+                nameBuilder.append(extension);
 
                 fileName = nameBuilder.toString();
                 Log.d(TAG, "Final filename: " + fileName);
             } catch (Exception e) {
                 Log.e(TAG, "Error building filename: " + e.getMessage());
-                fileName = "SCOPE_" + timeStamp + ".jpg";
+                fileName = "SCOPE_" + timeStamp + extension;
             }
         } else {
             Log.d(TAG, "No valid illumination params found, using default filename: " + fileName);
@@ -1302,7 +2390,7 @@ public class Camera2Plugin implements FlutterPlugin, MethodCallHandler, Activity
             ContentResolver resolver = context.getContentResolver();
             ContentValues contentValues = new ContentValues();
             contentValues.put(MediaStore.MediaColumns.DISPLAY_NAME, fileName);
-            contentValues.put(MediaStore.MediaColumns.MIME_TYPE, "image/jpeg");
+            contentValues.put(MediaStore.MediaColumns.MIME_TYPE, mimeType);
             contentValues.put(MediaStore.MediaColumns.RELATIVE_PATH, Environment.DIRECTORY_PICTURES + "/SmartScope");
 
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
@@ -1314,11 +2402,13 @@ public class Camera2Plugin implements FlutterPlugin, MethodCallHandler, Activity
                 throw new IOException("Cannot create image URI");
             }
 
-            try (OutputStream out = resolver.openOutputStream(imageUri)) {
-                if (out == null) {
+            try (ParcelFileDescriptor descriptor = resolver.openFileDescriptor(imageUri, "w")) {
+                if (descriptor == null) {
                     throw new IOException("Cannot open output stream");
                 }
-                out.write(bytes);
+                try (FileOutputStream out = new FileOutputStream(descriptor.getFileDescriptor())) {
+                    writeFully(out.getChannel(), data);
+                }
             }
 
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
@@ -1341,8 +2431,7 @@ public class Camera2Plugin implements FlutterPlugin, MethodCallHandler, Activity
 
             File file = new File(dirPath, fileName);
             try (FileOutputStream out = new FileOutputStream(file)) {
-                out.write(bytes);
-                out.flush();
+                writeFully(out.getChannel(), data);
             }
 
             if (context != null) {
@@ -1358,183 +2447,698 @@ public class Camera2Plugin implements FlutterPlugin, MethodCallHandler, Activity
         return imagePath;
     }
 
-    private void takePicture(Result result, Map<String, Object> illuminationParams) {
-        pendingTakePictureResult = null;
-        currentIlluminationParams = null;
+    private static void writeFully(FileChannel channel, ByteBuffer data) throws IOException {
+        while (data.hasRemaining()) {
+            channel.write(data);
+        }
+    }
 
-        if (illuminationParams != null) {
-            currentIlluminationParams = new HashMap<>(illuminationParams);
+    private void takePicture(Result result, Map<String, Object> illuminationParams, String pageId) {
+        if (cameraDevice == null) {
+            result.error("NO_CAMERA", "Camera not initialized", null);
+            return;
         }
 
-        pendingTakePictureResult = illuminationParams != null ? wrapResult(result, illuminationParams) : result;
+        if (cameraCaptureSession == null) {
+            result.error("NO_SESSION", "Camera session not ready", null);
+            return;
+        }
 
-        if (cameraDevice == null) {
-            pendingTakePictureResult.error("NO_CAMERA", "Camera not initialized", null);
-            pendingTakePictureResult = null;
-            currentIlluminationParams = null;
+        final PendingCapture capture = new PendingCapture(result,
+                illuminationParams != null ? new HashMap<>(illuminationParams) : null, getPageParams(pageId).copy());
+        synchronized (pendingCaptures) {
+            if (pendingCaptures.size() >= MAX_PENDING_STILLS) {
+                result.error("CAMERA_BUSY", MAX_PENDING_STILLS + " captures already in flight", null);
+                return;
+            }
+            pendingCaptures.add(capture);
+        }
+
+        try {
+            CaptureRequest stillRequest = getCaptureProfile(pageId).still;
+
+            CameraCaptureSession.CaptureCallback captureCallback = new CameraCaptureSession.CaptureCallback() {
+                @Override
+                public void onCaptureStarted(@NonNull CameraCaptureSession session,
+                                             @NonNull CaptureRequest request,
+                                             long timestamp,
+                                             long frameNumber) {
+                    super.onCaptureStarted(session, request, timestamp, frameNumber);
+                    stillMetrics.record(CaptureMetrics.STARTED, capture.submittedNs);
+                    synchronized (pendingCaptures) {
+                        capture.timestampNs = timestamp;
+                        capture.frameNumber = frameNumber;
+                    }
+                    Log.d(TAG, "Capture started, frame " + frameNumber);
+                }
+
+                @Override
+                public void onCaptureCompleted(@NonNull CameraCaptureSession session,
+                                               @NonNull CaptureRequest request,
+                                               @NonNull TotalCaptureResult result) {
+                    super.onCaptureCompleted(session, request, result);
+                    stillMetrics.record(CaptureMetrics.COMPLETED, capture.submittedNs);
+
+                    Integer iso = result.get(CaptureResult.SENSOR_SENSITIVITY);
+                    Long exposureTime = result.get(CaptureResult.SENSOR_EXPOSURE_TIME);
+
+                    if (iso != null && exposureTime != null) {
+                        Log.d(TAG, "Capture completed, frame " + result.getFrameNumber() + " - ISO: " + iso +
+                                ", Exposure time: " + (exposureTime / 1000000.0) + "ms");
+                    }
+                    recordStillResult(capture, result);
+                }
+
+                @Override
+                public void onCaptureFailed(@NonNull CameraCaptureSession session,
+                                            @NonNull CaptureRequest request,
+                                            @NonNull CaptureFailure failure) {
+                    super.onCaptureFailed(session, request, failure);
+                    Log.e(TAG, "Capture failed, frame " + failure.getFrameNumber() + ", reason: " + failure.getReason());
+
+                    if (removePendingCapture(capture)) {
+                        mainHandler.post(() -> capture.result.error("CAMERA_ERROR",
+                                "Capture failed, reason: " + failure.getReason(), null));
+                    }
+                }
+            };
+
+            // Still is issued on top of the repeating preview, the session stays configured
+            capture.submittedNs = CaptureMetrics.now();
+            cameraCaptureSession.capture(stillRequest, captureCallback, backgroundHandler);
+
+        } catch (CameraAccessException | IllegalStateException e) {
+            Log.e(TAG, "Error during capture: " + e.getMessage());
+            if (removePendingCapture(capture)) {
+                result.error("CAMERA_ERROR", "Error during capture: " + e.getMessage(), null);
+            }
+        }
+    }
+
+    private CaptureRequest.Builder createStillCaptureBuilder(CameraParams params) throws CameraAccessException {
+        CaptureRequest.Builder captureBuilder = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_STILL_CAPTURE);
+        captureBuilder.addTarget(imageReader.getSurface());
+
+        applyFocusMode(captureBuilder);
+
+        captureBuilder.set(
+                CaptureRequest.CONTROL_AE_MODE,
+                params.autoExposure ? CaptureRequest.CONTROL_AE_MODE_ON : CaptureRequest.CONTROL_AE_MODE_OFF
+        );
+
+        if (usesSceneHdr(params)) {
+            captureBuilder.set(CaptureRequest.CONTROL_SCENE_MODE, CaptureRequest.CONTROL_SCENE_MODE_HDR);
+            captureBuilder.set(CaptureRequest.CONTROL_MODE, CaptureRequest.CONTROL_MODE_USE_SCENE_MODE);
+
+            Log.d(TAG, "Using HDR mode for capture");
+        } else {
+            captureBuilder.set(CaptureRequest.CONTROL_MODE, CaptureRequest.CONTROL_MODE_AUTO);
+        }
+
+        if (!params.autoExposure && params.exposureTime > 0) {
+            captureBuilder.set(CaptureRequest.SENSOR_EXPOSURE_TIME, params.exposureTime);
+            Log.d(TAG, "Using fixed exposure time for capture: " + params.exposureTime + " ns");
+
+            if (params.isoValue > 0) {
+                captureBuilder.set(CaptureRequest.SENSOR_SENSITIVITY, params.isoValue);
+                Log.d(TAG, "Applied ISO value for capture: " + params.isoValue);
+            }
+        }
+
+        if (imageReader.getImageFormat() != ImageFormat.JPEG) {
+            captureBuilder.set(CaptureRequest.NOISE_REDUCTION_MODE, CaptureRequest.NOISE_REDUCTION_MODE_OFF);
+            captureBuilder.set(CaptureRequest.EDGE_MODE, CaptureRequest.EDGE_MODE_OFF);
+            applyLinearTonemap(captureBuilder);
+        }
+
+        if (params.zoomLevel > 1.0f) {
+            setZoom(captureBuilder, params.zoomLevel);
+        }
+
+        return captureBuilder;
+    }
+
+    // YUV samples are stored as linear data, the default tonemap would bend them with the display curve. RAW is
+    // not tonemapped either way. Devices offering neither mode keep their curve
+    private void applyLinearTonemap(CaptureRequest.Builder builder) {
+        CameraCapabilities capabilities;
+        try {
+            capabilities = getCameraCapabilities();
+        } catch (CameraAccessException e) {
+            Log.e(TAG, "Cannot read tonemap modes: " + e.getMessage());
+            return;
+        }
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M &&
+                capabilities.supportsTonemapMode(CaptureRequest.TONEMAP_MODE_GAMMA_VALUE)) {
+            builder.set(CaptureRequest.TONEMAP_MODE, CaptureRequest.TONEMAP_MODE_GAMMA_VALUE);
+            builder.set(CaptureRequest.TONEMAP_GAMMA, 1.0f);
+        } else if (capabilities.supportsTonemapMode(CaptureRequest.TONEMAP_MODE_CONTRAST_CURVE)) {
+            builder.set(CaptureRequest.TONEMAP_MODE, CaptureRequest.TONEMAP_MODE_CONTRAST_CURVE);
+            builder.set(CaptureRequest.TONEMAP_CURVE, LINEAR_TONEMAP_CURVE);
+        }
+    }
+
+    // params become the page's once nothing rejects the sequence any more
+    private void startCaptureSequence(CaptureSequence sequence, CameraParams params, int settleFrames,
+                                      Result result) {
+        if (activeSequence != null && !activeSequence.isFinished()) {
+            result.error("SEQUENCE_BUSY", "Another capture sequence is in progress", null);
+            return;
+        }
+
+        if (focusSweep != null) {
+            result.error("CAMERA_BUSY", "Focus sweep in progress", null);
+            return;
+        }
+
+        synchronized (pendingCaptures) {
+            if (!pendingCaptures.isEmpty()) {
+                result.error("CAMERA_BUSY", "Still capture in progress", null);
+                return;
+            }
+        }
+
+        if (cameraDevice == null || cameraCaptureSession == null || imageReader == null || frameWriter == null) {
+            result.error("NO_CAMERA", "Camera not initialized", null);
             return;
         }
 
+        Log.d(TAG, "Starting capture sequence: " + sequence.getPointCount() + " points, " +
+                sequence.framesPerPoint + " frame(s) per point" +
+                (sequence.isFocusBracket() ? ", " + sequence.focusDistances.length + " focus distances" : ""));
+
+        sequence.baseName = getSequenceBaseName(sequence);
+
+        CameraCapabilities capabilities = null;
         try {
-            CaptureRequest.Builder captureBuilder = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_STILL_CAPTURE);
-            captureBuilder.addTarget(imageReader.getSurface());
+            capabilities = getCameraCapabilities();
+            sequence.blackLevel = capabilities.blackLevel;
+            sequence.whiteLevel = capabilities.whiteLevel;
+        } catch (CameraAccessException e) {
+            Log.e(TAG, "Cannot read sensor levels: " + e.getMessage());
+        }
+        IlluminationSync sync = new IlluminationSync(capabilities != null ? capabilities.timestampSource : null,
+                settleFrames);
+        if (!sync.hasComparableTimestamps()) {
+            Log.d(TAG, "Sensor timestamps not comparable to vsync, relying on vsync trigger only");
+        }
 
-            captureBuilder.set(CaptureRequest.CONTROL_AF_MODE, CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_PICTURE);
+        if (sequence.useContainer) {
+            try {
+                sequence.setContainer(openSequenceContainer(sequence, params));
+            } catch (IOException e) {
+                Log.e(TAG, "Cannot create acquisition container: " + e.getMessage());
+                result.error("SAVE_ERROR", "Cannot create acquisition container: " + e.getMessage(), null);
+                return;
+            }
+        }
 
-            captureBuilder.set(
-                    CaptureRequest.CONTROL_AE_MODE,
-                    autoExposure ? CaptureRequest.CONTROL_AE_MODE_ON : CaptureRequest.CONTROL_AE_MODE_OFF
-            );
+        pageParamsMap.put(sequence.pageId, params);
+        activePageId = sequence.pageId;
+        applyActivePageParams();
+
+        int width = imageReader.getWidth();
+        int height = imageReader.getHeight();
+        sequence.linearWindows = sequence.rois.isEmpty() ?
+                Collections.singletonList(new FrameRoi(width, height, 0, 0)) : sequence.rois;
+
+        if (sequence.correctHotPixels) {
+            // Loads the map of the first point before any frame arrives, later points resolve their own ISO
+            HotPixelMap hotPixels = getHotPixelMap(imageReader.getImageFormat(), width, height,
+                    getPointParams(sequence, 0));
+            if (hotPixels != null) {
+                Log.d(TAG, "Correcting " + hotPixels.size() + " defective pixels");
+            }
+        }
+
+        SequenceHost host = new SequenceHost(sequence, sync, result);
+        activeSequence = host;
 
-            if (hdrMode) {
-                captureBuilder.set(CaptureRequest.CONTROL_SCENE_MODE, CaptureRequest.CONTROL_SCENE_MODE_HDR);
-                captureBuilder.set(CaptureRequest.CONTROL_MODE, CaptureRequest.CONTROL_MODE_USE_SCENE_MODE);
+        if (sequence.subtractDark) {
+            // Every point shares one exposure, the dark reference is captured and keyed with it
+            int format = imageReader.getImageFormat();
+            CameraParams darkParams = getPointParams(sequence, 0);
+            String darkKey = DarkFrame.key(cameraId, format, width, height, darkParams.exposureTime,
+                    darkParams.isoValue, sequence.linearWindows);
 
-                Log.d(TAG, "Using HDR mode for capture");
+            DarkFrame cached = DarkFrame.getCached(darkKey, sequence.darkMaxAgeMs, SystemClock.elapsedRealtime());
+            if (cached != null) {
+                Log.d(TAG, "Reusing dark reference " + darkKey);
+                sequence.setDarkFrame(cached);
             } else {
-                captureBuilder.set(CaptureRequest.CONTROL_MODE, CaptureRequest.CONTROL_MODE_AUTO);
+                sequence.beginDarkReference(new DarkFrame.Accumulator(darkKey, sequence.linearWindows, width, height,
+                        format == ImageFormat.RAW_SENSOR ? 2 : 1, sequence.darkFrameCount));
+                memoryBudget.enforce();
             }
+        }
+
+        host.sequencer.start();
+    }
 
-            if (!autoExposure && exposureTime > 0) {
-                captureBuilder.set(CaptureRequest.SENSOR_EXPOSURE_TIME, exposureTime);
-                Log.d(TAG, "Using fixed exposure time for capture: " + exposureTime + " ns");
-                
-                if (getPageParams(activePageId).isoValue > 0) {
-                    captureBuilder.set(CaptureRequest.SENSOR_SENSITIVITY, getPageParams(activePageId).isoValue);
-                    Log.d(TAG, "Applied ISO value for capture: " + getPageParams(activePageId).isoValue);
+    // The plugin's side of a running sequence: patterns drawn by Dart or the native overlay, frames stored through
+    // MediaStore, the index and metrics next to them, and the reply to Dart on the main thread
+    private final class SequenceHost implements CaptureSequencer.Host {
+        final CaptureSequence sequence;
+        final Camera2Backend camera;
+        final CaptureSequencer sequencer;
+        private final IlluminationSync sync;
+        private final Result result;
+
+        SequenceHost(CaptureSequence sequence, IlluminationSync sync, Result result) {
+            this.sequence = sequence;
+            this.sync = sync;
+            this.result = result;
+            this.camera = new Camera2Backend(new Camera2Backend.Camera() {
+                @Override
+                public CameraCaptureSession getSession() {
+                    return cameraCaptureSession;
                 }
-            }
 
-            if (currentZoom > 1.0f) {
-                setZoomForCaptureRequest(captureBuilder);
-            }
+                @Override
+                public CaptureRequest.Builder createRequest(CameraBackend.Request request)
+                        throws CameraAccessException {
+                    return createSequenceRequest(sequence, request);
+                }
+            }, backgroundHandler, () -> {
+                // Images queued behind a held one are acquired once it is closed
+                Handler handler = backgroundHandler;
+                ImageReader reader = imageReader;
+                if (handler != null && reader != null) {
+                    handler.post(() -> acquireImages(reader));
+                }
+            });
+            this.sequencer = new CaptureSequencer(sequence, camera, this, framePool, frameWriter, sequenceMetrics);
+        }
 
-            if (activeViewId != -1) {
-                CameraViewInfo viewInfo = textureViews.get(activeViewId);
-                if (viewInfo != null && viewInfo.textureView != null && viewInfo.textureView.isAvailable()) {
-                    try {
-                        SurfaceTexture texture = viewInfo.textureView.getSurfaceTexture();
-                        if (texture != null) {
-                            Surface previewSurface = new Surface(texture);
-                            captureBuilder.addTarget(previewSurface);
-
-                            final Surface capturePreviewSurface = previewSurface;
-
-                            CameraCaptureSession.CaptureCallback captureCallback = new CameraCaptureSession.CaptureCallback() {
-                                @Override
-                                public void onCaptureStarted(@NonNull CameraCaptureSession session,
-                                                             @NonNull CaptureRequest request,
-                                                             long timestamp,
-                                                             long frameNumber) {
-                                    super.onCaptureStarted(session, request, timestamp, frameNumber);
-                                    Log.d(TAG, "Capture started");
-                                }
+        boolean isFinished() {
+            return sequencer.isFinished();
+        }
 
-                                @Override
-                                public void onCaptureCompleted(@NonNull CameraCaptureSession session,
-                                                               @NonNull CaptureRequest request,
-                                                               @NonNull TotalCaptureResult result) {
-                                    super.onCaptureCompleted(session, request, result);
-
-                                    if (capturePreviewSurface != null) {
-                                        try {
-                                            capturePreviewSurface.release();
-                                        } catch (Exception e) {
-                                            Log.e(TAG, "Error releasing preview Surface: " + e.getMessage());
-                                        }
-                                    }
-
-                                    try {
-                                        createCameraPreviewSession();
-                                    } catch (Exception e) {
-                                        Log.e(TAG, "Error resuming preview: " + e.getMessage());
-                                    }
-                                }
-                            };
+        @Override
+        public void presentPoint(int pointIndex) {
+            boolean dark = pointIndex == CaptureSequencer.DARK_POINT;
+            Map<String, Object> pointArgs = new HashMap<>();
+            pointArgs.put("pageId", sequence.pageId);
+            pointArgs.put("index", pointIndex);
+            if (dark) {
+                pointArgs.put("dark", true);
+            } else {
+                pointArgs.put("point", sequence.points.get(pointIndex));
+            }
 
-                            cameraCaptureSession.stopRepeating();
-                            cameraCaptureSession.capture(captureBuilder.build(), captureCallback, backgroundHandler);
-                            return;
+            mainHandler.post(() -> {
+                if (channel == null) {
+                    sequencer.fail("NO_CHANNEL", "Method channel detached");
+                    return;
+                }
+
+                if (sequence.nativeIllumination) {
+                    IlluminationView view = illuminationView;
+                    if (dark) {
+                        if (view != null) {
+                            view.clearPattern();
                         }
-                    } catch (Exception e) {
-                        Log.e(TAG, "Failed to prepare Surface for capture: " + e.getMessage());
+                    } else if (view == null) {
+                        sequencer.fail("ILLUMINATION_ERROR", "Illumination overlay released");
+                        return;
+                    } else {
+                        // The pattern is drawn here, Dart only hears about it for progress
+                        view.showPattern(pointIndex);
+                        channel.invokeMethod("onSequenceProgress", pointArgs);
+                    }
+                    awaitPresented(pointIndex);
+                    return;
+                }
+
+                channel.invokeMethod("onSequencePoint", pointArgs, new Result() {
+                    @Override
+                    public void success(Object ready) {
+                        // Dart has drawn the pattern, wait for it to reach the panel instead of a fixed delay
+                        awaitPresented(pointIndex);
+                    }
+
+                    @Override
+                    public void error(String errorCode, String errorMessage, Object errorDetails) {
+                        sequencer.fail("ILLUMINATION_ERROR", dark ?
+                                "Cannot switch illumination off for dark reference: " + errorMessage :
+                                "Cannot set illumination point " + pointIndex + ": " + errorMessage);
+                    }
+
+                    @Override
+                    public void notImplemented() {
+                        sequencer.fail("ILLUMINATION_ERROR", "onSequencePoint not handled on Dart side");
                     }
+                });
+            });
+        }
+
+        private void awaitPresented(int pointIndex) {
+            sync.awaitPresented(presentedNs -> {
+                Handler handler = backgroundHandler;
+                if (handler == null) {
+                    sequencer.fail("NO_CAMERA", "Camera thread stopped");
+                    return;
                 }
+                handler.post(() -> sequencer.onPresented(pointIndex, presentedNs));
+            });
+        }
+
+        @Override
+        public String storeFrame(ByteBuffer data, Map<String, Object> params, int format, int pointIndex)
+                throws IOException {
+            return saveImageToStorage(data, params, format, getPointParams(sequence, pointIndex));
+        }
+
+        @Override
+        public HotPixelMap getHotPixels(int format, int width, int height, int pointIndex) {
+            return getHotPixelMap(format, width, height, getPointParams(sequence, pointIndex));
+        }
+
+        @Override
+        public void onDarkFrame(DarkFrame dark) {
+            DarkFrame.putCached(dark, SystemClock.elapsedRealtime());
+            Log.d(TAG, "Dark reference ready: " + dark.key + ", " + dark.frameCount + " frames");
+        }
+
+        @Override
+        public void onBuffersAllocated() {
+            mainHandler.post(memoryBudget::enforce);
+        }
+
+        @Override
+        public void onFilesClosed() throws IOException {
+            CaptureMetadataIndex index = sequence.getMetadataIndex();
+            if (index.getRecordCount() > 0) {
+                File indexFile = new File(getAcquisitionDir(), sequence.baseName + CaptureMetadataIndex.EXTENSION);
+                index.writeTo(indexFile);
+                Log.d(TAG, "Capture metadata index: " + indexFile.getAbsolutePath() + ", " +
+                        index.getRecordCount() + " frames");
             }
+        }
 
-            CameraCaptureSession.CaptureCallback captureCallback = new CameraCaptureSession.CaptureCallback() {
-                @Override
-                public void onCaptureStarted(@NonNull CameraCaptureSession session,
-                                             @NonNull CaptureRequest request,
-                                             long timestamp,
-                                             long frameNumber) {
-                    super.onCaptureStarted(session, request, timestamp, frameNumber);
-                    Log.d(TAG, "Capture started");
+        @Override
+        public void onComplete(List<String> framePaths) {
+            mainHandler.post(() -> {
+                camera.close();
+                clearSequenceIllumination(sequence);
+                result.success(framePaths);
+                // Delivery of a sequence is timed from its start, not from any one burst
+                sequence.metrics.record(CaptureMetrics.DELIVERED, sequence.createdNs);
+                sequenceMetrics.record(CaptureMetrics.DELIVERED, sequence.createdNs);
+                Log.d(TAG, "Capture sequence complete: " + sequence.getFrameCount() + " frames");
+                // Written once delivery is in, off the main thread when the writer still runs
+                writeMetricsAfterFrames();
+                if (activeSequence == this) {
+                    activeSequence = null;
                 }
+                memoryBudget.enforce();
+            });
+        }
 
-                @Override
-                public void onCaptureCompleted(@NonNull CameraCaptureSession session,
-                                               @NonNull CaptureRequest request,
-                                               @NonNull TotalCaptureResult result) {
-                    super.onCaptureCompleted(session, request, result);
-                    Log.d(TAG, "Capture completed");
+        @Override
+        public void onFailed(String errorCode, String errorMessage) {
+            mainHandler.post(() -> {
+                camera.close();
+                clearSequenceIllumination(sequence);
+                result.error(errorCode, errorMessage, null);
+                Log.e(TAG, "Capture sequence failed: " + errorMessage);
+                // After the frames already queued and the files closed, without a delivered stage
+                writeMetricsAfterFrames();
+                if (activeSequence == this) {
+                    activeSequence = null;
+                }
+            });
+        }
+
+        private void writeMetricsAfterFrames() {
+            FrameWriter writer = frameWriter;
+            if (writer == null || !writer.flush(() -> writeSequenceMetrics(sequence))) {
+                writeSequenceMetrics(sequence);
+            }
+        }
+    }
+
+    // The page's still request at the request's exposure and ISO. Focus steps run with AF off at a fixed distance
+    private CaptureRequest.Builder createSequenceRequest(CaptureSequence sequence, CameraBackend.Request request)
+            throws CameraAccessException {
+        CameraParams params = getPageParams(sequence.pageId).copy();
+        if (request.exposureNs > 0) {
+            params.autoExposure = false;
+            params.exposureTime = request.exposureNs;
+        }
+        if (request.iso > 0) {
+            params.isoValue = request.iso;
+        }
+
+        CaptureRequest.Builder builder = createStillCaptureBuilder(params);
+        if (!Float.isNaN(request.focusDistance)) {
+            builder.set(CaptureRequest.CONTROL_AF_MODE, CaptureRequest.CONTROL_AF_MODE_OFF);
+            builder.set(CaptureRequest.LENS_FOCUS_DISTANCE, request.focusDistance);
+        }
+        return builder;
+    }
+
+    // Page params with the point's scheduled exposure and ISO, what its frames are captured and described with
+    private CameraParams getPointParams(CaptureSequence sequence, int pointIndex) {
+        CameraParams params = getPageParams(sequence.pageId).copy();
+        long exposureNs = sequence.getPointExposure(pointIndex);
+        int iso = sequence.getPointIso(pointIndex);
+        if (exposureNs > 0) {
+            params.autoExposure = false;
+            params.exposureTime = exposureNs;
+        }
+        if (iso > 0) {
+            params.isoValue = iso;
+        }
+        return params;
+    }
+
+    // Bracket exposures as multiples of each point's exposure, clamped to the sensor range when used
+    private static float[] parseHdrExposureRatios(Object argument) {
+        if (argument == null) {
+            return HdrFusion.DEFAULT_EXPOSURE_RATIOS;
+        }
+        if (!(argument instanceof List) || ((List<?>) argument).isEmpty()) {
+            throw new IllegalArgumentException("hdrExposureRatios must be a non-empty list of ratios");
+        }
+        List<?> values = (List<?>) argument;
+        float[] ratios = new float[values.size()];
+        for (int i = 0; i < ratios.length; i++) {
+            Object value = values.get(i);
+            if (!(value instanceof Number) || ((Number) value).floatValue() <= 0) {
+                throw new IllegalArgumentException("hdrExposureRatios must be a non-empty list of ratios");
+            }
+            ratios[i] = ((Number) value).floatValue();
+        }
+        return ratios;
+    }
+
+    // Diopters within the lens range, null when the argument is absent
+    private float[] parseFocusDistances(Object argument) throws CameraAccessException {
+        if (argument == null) {
+            return null;
+        }
+        if (!(argument instanceof List) || ((List<?>) argument).isEmpty()) {
+            throw new IllegalArgumentException("focusDistances must be a non-empty list of diopters");
+        }
+
+        Float minimumFocusDistance = getCameraCapabilities().minimumFocusDistance;
+        if (minimumFocusDistance == null || minimumFocusDistance <= 0) {
+            throw new IllegalArgumentException("Lens has a fixed focus");
+        }
+
+        List<?> values = (List<?>) argument;
+        float[] distances = new float[values.size()];
+        for (int i = 0; i < distances.length; i++) {
+            Object value = values.get(i);
+            if (!(value instanceof Number)) {
+                throw new IllegalArgumentException("focusDistances must be a non-empty list of diopters");
+            }
+            distances[i] = Math.max(0, Math.min(minimumFocusDistance, ((Number) value).floatValue()));
+        }
+        return distances;
+    }
+
+    private void clearSequenceIllumination(CaptureSequence sequence) {
+        if (sequence.nativeIllumination && illuminationView != null) {
+            illuminationView.clearPattern();
+        }
+    }
+
+    private void prepareIllumination(MethodCall call, Result result) {
+        if (activity == null) {
+            result.error("NO_ACTIVITY", "Plugin not attached to an activity", null);
+            return;
+        }
+
+        String type = call.argument("type");
+        float radius = getFloatArgument(call, "radius", 10);
+        float spacing = getFloatArgument(call, "spacing", 20);
+
+        IlluminationLayout layout;
+        if ("FPM".equals(type)) {
+            Integer rows = call.argument("rows");
+            Integer columns = call.argument("columns");
+            layout = IlluminationLayout.fpm(rows != null ? rows : 4, columns != null ? columns : 4, radius, spacing);
+        } else if ("sAIKK".equals(type)) {
+            layout = IlluminationLayout.saikk(radius, spacing, 2, new double[]{0.5, 0.4}, new float[]{1.2f, 1.4f});
+        } else if ("AIKK".equals(type) || type == null) {
+            Boolean showCenterPoint = call.argument("showCenterPoint");
+            layout = IlluminationLayout.aikk(radius, spacing, showCenterPoint != null && showCenterPoint,
+                    getFloatArgument(call, "centerRadius", 6));
+        } else {
+            result.error("INVALID_ARGS", "Unknown illumination type: " + type, null);
+            return;
+        }
 
-                    Integer iso = result.get(CaptureResult.SENSOR_SENSITIVITY);
-                    Long exposureTime = result.get(CaptureResult.SENSOR_EXPOSURE_TIME);
+        // Same placement as the Flutter widgets: origin in logical px plus the physical offset in mm
+        float ppi = getFloatArgument(call, "ppi", 470);
+        float centerX = IlluminationLayout.getCenter(getFloatArgument(call, "originX", 0),
+                getFloatArgument(call, "offsetX_mm", 0), ppi);
+        float centerY = IlluminationLayout.getCenter(getFloatArgument(call, "originY", 0),
+                getFloatArgument(call, "offsetY_mm", 0), ppi);
+        float density = activity.getResources().getDisplayMetrics().density;
 
-                    if (iso != null && exposureTime != null) {
-                        Log.d(TAG, "Photo params - ISO: " + iso + ", Exposure time: " +
-                                (exposureTime / 1000000.0) + "ms");
-                    }
+        Number dotColor = call.argument("dotColor");
+        int color = dotColor != null ? dotColor.intValue() : 0xFFFFFFFF;
 
-                    try {
-                        createCameraPreviewSession();
-                    } catch (Exception e) {
-                        Log.e(TAG, "Error resuming preview: " + e.getMessage());
-                    }
-                }
-            };
+        if (illuminationView == null) {
+            illuminationView = new IlluminationView(activity);
+            activity.addContentView(illuminationView, new ViewGroup.LayoutParams(
+                    ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+        }
 
-            cameraCaptureSession.stopRepeating();
-            cameraCaptureSession.capture(captureBuilder.build(), captureCallback, backgroundHandler);
+        illuminationLayout = layout;
+        illuminationView.prepare(layout, centerX * density, centerY * density, density, color);
+        Log.d(TAG, "Prepared " + layout.getPointCount() + " native illumination patterns (" + layout.type + ")");
+        result.success(layout.getPointCount());
+    }
 
-        } catch (CameraAccessException e) {
-            Log.e(TAG, "Error during capture: " + e.getMessage());
-            if (pendingTakePictureResult != null) {
-                pendingTakePictureResult.error("CAMERA_ERROR", "Error during capture: " + e.getMessage(), null);
-                pendingTakePictureResult = null;
+    private void releaseIllumination() {
+        IlluminationView view = illuminationView;
+        illuminationView = null;
+        illuminationLayout = null;
+        if (view != null && view.getParent() instanceof ViewGroup) {
+            ((ViewGroup) view.getParent()).removeView(view);
+        }
+    }
+
+    // Lets the stored point params carry where the pattern was actually drawn
+    private void addIlluminationCoordinates(List<Map<String, Object>> points) {
+        IlluminationLayout layout = illuminationLayout;
+        int count = layout.getPointCount();
+        for (int i = 0; i < points.size(); i++) {
+            Map<String, Object> point = points.get(i);
+            if (point != null && count > 0 && !point.containsKey("x")) {
+                point.put("x", (double) layout.x[i % count]);
+                point.put("y", (double) layout.y[i % count]);
             }
         }
     }
 
-    private void setZoomForCaptureRequest(CaptureRequest.Builder requestBuilder) {
-        try {
-            CameraManager manager = (CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
-            CameraCharacteristics characteristics = manager.getCameraCharacteristics(cameraId);
+    private static float getFloatArgument(MethodCall call, String key, float defaultValue) {
+        Object value = call.argument(key);
+        return value instanceof Number ? ((Number) value).floatValue() : defaultValue;
+    }
 
-            Rect sensorRect = characteristics.get(CameraCharacteristics.SENSOR_INFO_ACTIVE_ARRAY_SIZE);
-            if (sensorRect == null) {
-                return;
+    private File getAcquisitionDir() throws IOException {
+        File baseDir = context.getExternalFilesDir(null);
+        if (baseDir == null) {
+            baseDir = context.getFilesDir();
+        }
+
+        File dir = new File(baseDir, "acquisitions");
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Cannot create directory " + dir.getAbsolutePath());
+        }
+        return dir;
+    }
+
+    private String getSequenceBaseName(CaptureSequence sequence) {
+        String timeStamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault()).format(new Date());
+        return "SCOPE_" + timeStamp + "_" + sequence.pageId + "_" +
+                getCaptureFormatName(imageReader.getImageFormat());
+    }
+
+    private AcquisitionContainer.Writer openSequenceContainer(CaptureSequence sequence, CameraParams params)
+            throws IOException {
+        String fileName = sequence.baseName + AcquisitionContainer.EXTENSION;
+
+        AcquisitionContainer.Writer container =
+                new AcquisitionContainer.Writer(new File(getAcquisitionDir(), fileName), sequence.getFrameCount());
+
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("pageId", sequence.pageId);
+        metadata.put("captureFormat", getCaptureFormatName(imageReader.getImageFormat()));
+        metadata.put("width", imageReader.getWidth());
+        metadata.put("height", imageReader.getHeight());
+        metadata.put("framesPerPoint", sequence.framesPerPoint);
+        metadata.put("hdrMode", params.hdrMode);
+        metadata.put("highResolutionMode", params.highResolutionMode);
+        metadata.put("zoom", currentZoom);
+        metadata.put("points", sequence.points);
+        metadata.put("darkSubtracted", sequence.subtractDark);
+        metadata.put("exposureSchedule", sequence.getExposureSchedule());
+        metadata.put("meterExposure", sequence.meterExposure);
+        if (sequence.isHdrBracket()) {
+            List<Float> hdrExposureRatios = new ArrayList<>();
+            for (float ratio : sequence.hdrExposureRatios) {
+                hdrExposureRatios.add(ratio);
+            }
+            metadata.put("hdrExposureRatios", hdrExposureRatios);
+        }
+        if (sequence.isFocusBracket()) {
+            List<Float> focusDistances = new ArrayList<>();
+            for (float distance : sequence.focusDistances) {
+                focusDistances.add(distance);
             }
+            metadata.put("focusDistances", focusDistances);
+            metadata.put("framesPerFocus", sequence.framesPerStep);
+        }
+        if (!sequence.rois.isEmpty()) {
+            List<Map<String, Object>> rois = new ArrayList<>();
+            for (FrameRoi roi : sequence.rois) {
+                rois.add(roi.toMap());
+            }
+            metadata.put("roi", rois);
+        }
+        container.setMetadata(AcquisitionContainer.toJson(metadata));
+        sequence.containerMetadata = metadata;
 
-            int centerX = sensorRect.width() / 2;
-            int centerY = sensorRect.height() / 2;
-            int deltaX = (int) (0.5f * sensorRect.width() / currentZoom);
-            int deltaY = (int) (0.5f * sensorRect.height() / currentZoom);
+        Log.d(TAG, "Acquisition container: " + container.getFile().getAbsolutePath());
+        return container;
+    }
 
-            Rect zoomRect = new Rect(
-                    centerX - deltaX,
-                    centerY - deltaY,
-                    centerX + deltaX,
-                    centerY + deltaY
-            );
+    // Latency summary next to the frames, so runs on different phones can be compared. A completed sequence writes
+    // it after delivery, a failed one after its files are closed, without a delivered stage
+    private void writeSequenceMetrics(CaptureSequence sequence) {
+        Map<String, Object> summary = new HashMap<>();
+        summary.put("pageId", sequence.pageId);
+        summary.put("device", Build.MANUFACTURER + " " + Build.MODEL);
+        summary.put("points", sequence.getPointCount());
+        summary.put("frames", sequence.getFrameCount());
+        summary.put("durationMs", (CaptureMetrics.now() - sequence.createdNs) / 1e6);
+        summary.put("stages", sequence.metrics.toMap());
 
-            requestBuilder.set(CaptureRequest.SCALER_CROP_REGION, zoomRect);
-        } catch (CameraAccessException e) {
-            Log.e(TAG, "Error setting zoom for capture: " + e.getMessage());
+        try {
+            File metricsFile = new File(getAcquisitionDir(), sequence.baseName + METRICS_EXTENSION);
+            try (FileOutputStream out = new FileOutputStream(metricsFile)) {
+                out.write(AcquisitionContainer.toJson(summary).getBytes(StandardCharsets.UTF_8));
+            }
+        } catch (IOException e) {
+            // The frames are what matters, a missing summary does not fail the sequence
+            Log.e(TAG, "Error writing capture metrics: " + e.getMessage());
         }
     }
 
+    private Map<String, Object> getCaptureMetrics() {
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("still", stillMetrics.toMap());
+        metrics.put("sequence", sequenceMetrics.toMap());
+        return metrics;
+    }
+
     private Size getOptimalSize(Size[] sizes) {
         if (sizes == null || sizes.length == 0) {
             Log.e(TAG, "Cannot get camera supported size list");
@@ -1623,7 +3227,7 @@ public class Camera2Plugin implements FlutterPlugin, MethodCallHandler, Activity
         if (imageReader != null) {
             info.put("photoWidth", imageReader.getWidth());
             info.put("photoHeight", imageReader.getHeight());
-            info.put("photoFormat", imageReader.getImageFormat() == ImageFormat.JPEG ? "JPEG" : "Other format");
+            info.put("photoFormat", getCaptureFormatName(imageReader.getImageFormat()));
         } else {
             info.put("photoWidth", 0);
             info.put("photoHeight", 0);
@@ -1648,15 +3252,17 @@ public class Camera2Plugin implements FlutterPlugin, MethodCallHandler, Activity
 
             TextureView textureView = viewInfo.textureView;
 
-            if (cameraDevice == null || cameraCaptureSession == null || captureRequestBuilder == null) {
+            if (cameraDevice == null || cameraCaptureSession == null || previewSurface == null) {
                 Log.e(TAG, "Camera or session invalid, cannot perform focus");
                 return;
             }
 
-            CameraManager manager = (CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
-            CameraCharacteristics characteristics = manager.getCameraCharacteristics(cameraId);
+            if (focusSweep != null || getLockedFocusDistance() != null) {
+                Log.d(TAG, "Focus is locked, ignoring touch focus");
+                return;
+            }
 
-            Rect sensorRect = characteristics.get(CameraCharacteristics.SENSOR_INFO_ACTIVE_ARRAY_SIZE);
+            Rect sensorRect = getCameraCapabilities().activeArray;
             if (sensorRect == null) {
                 Log.e(TAG, "Cannot get sensor area");
                 return;
@@ -1679,34 +3285,11 @@ public class Camera2Plugin implements FlutterPlugin, MethodCallHandler, Activity
                     MeteringRectangle.METERING_WEIGHT_MAX
             );
 
-            CaptureRequest.Builder focusBuilder = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
-
-            if (viewInfo.textureView != null && viewInfo.textureView.getSurfaceTexture() != null) {
-                Surface surface = new Surface(viewInfo.textureView.getSurfaceTexture());
-                focusBuilder.addTarget(surface);
-            }
-
-            if (imageReader != null) {
-                focusBuilder.addTarget(imageReader.getSurface());
-            }
-
-            focusBuilder.set(CaptureRequest.CONTROL_AE_MODE,
-                    autoExposure ? CaptureRequest.CONTROL_AE_MODE_ON : CaptureRequest.CONTROL_AE_MODE_OFF);
-
-            if (hdrMode) {
-                focusBuilder.set(CaptureRequest.CONTROL_SCENE_MODE, CaptureRequest.CONTROL_SCENE_MODE_HDR);
-                focusBuilder.set(CaptureRequest.CONTROL_MODE, CaptureRequest.CONTROL_MODE_USE_SCENE_MODE);
-            } else {
-                focusBuilder.set(CaptureRequest.CONTROL_SCENE_MODE, CaptureRequest.CONTROL_SCENE_MODE_DISABLED);
-                focusBuilder.set(CaptureRequest.CONTROL_MODE, CaptureRequest.CONTROL_MODE_AUTO);
-            }
-
-            setZoomForCaptureRequest(focusBuilder);
-
+            // Only the metering regions change per tap, the rest of the focus request is compiled once per page
+            CaptureProfile profile = getCaptureProfile(activePageId);
+            CaptureRequest.Builder focusBuilder = profile.focusBuilder;
             focusBuilder.set(CaptureRequest.CONTROL_AF_REGIONS, new MeteringRectangle[]{focusArea});
             focusBuilder.set(CaptureRequest.CONTROL_AE_REGIONS, new MeteringRectangle[]{focusArea});
-            focusBuilder.set(CaptureRequest.CONTROL_AF_MODE, CaptureRequest.CONTROL_AF_MODE_AUTO);
-            focusBuilder.set(CaptureRequest.CONTROL_AF_TRIGGER, CaptureRequest.CONTROL_AF_TRIGGER_START);
 
             CameraCaptureSession.CaptureCallback focusCallback = new CameraCaptureSession.CaptureCallback() {
                 private boolean hasCompletedFocus = false;
@@ -1733,12 +3316,11 @@ public class Camera2Plugin implements FlutterPlugin, MethodCallHandler, Activity
                         hasCompletedFocus = true;
 
                         try {
-                            captureRequestBuilder.set(CaptureRequest.CONTROL_AF_TRIGGER, CaptureRequest.CONTROL_AF_TRIGGER_IDLE);
-
-                            captureRequestBuilder.set(CaptureRequest.CONTROL_AF_REGIONS, new MeteringRectangle[]{focusArea});
-                            captureRequestBuilder.set(CaptureRequest.CONTROL_AE_REGIONS, new MeteringRectangle[]{focusArea});
+                            profile.previewBuilder.set(CaptureRequest.CONTROL_AF_REGIONS, new MeteringRectangle[]{focusArea});
+                            profile.previewBuilder.set(CaptureRequest.CONTROL_AE_REGIONS, new MeteringRectangle[]{focusArea});
+                            profile.preview = profile.previewBuilder.build();
 
-                            session.setRepeatingRequest(captureRequestBuilder.build(), null, backgroundHandler);
+                            session.setRepeatingRequest(profile.preview, null, backgroundHandler);
                         } catch (Exception e) {
                             Log.e(TAG, "Error resuming preview after focus: " + e.getMessage());
                         }
@@ -1824,46 +3406,456 @@ public class Camera2Plugin implements FlutterPlugin, MethodCallHandler, Activity
         return resourceId;
     }
 
-    private byte[] loadImageBytesFromContentUri(Uri uri) {
-        try {
-            ContentResolver contentResolver = context.getContentResolver();
+    // Reads straight into an array of the file's size when the provider reports it, without a growing copy
+    private static byte[] loadImageBytesFromContentUri(Context context, Uri uri) {
+        ContentResolver contentResolver = context.getContentResolver();
+        long size = -1;
+        try (ParcelFileDescriptor descriptor = contentResolver.openFileDescriptor(uri, "r")) {
+            if (descriptor != null) {
+                size = descriptor.getStatSize();
+            }
+        } catch (Exception e) {
+            Log.d(TAG, "Content URI size unknown: " + e.getMessage());
+        }
 
-            java.io.InputStream inputStream = contentResolver.openInputStream(uri);
+        try (java.io.InputStream inputStream = contentResolver.openInputStream(uri)) {
             if (inputStream == null) {
                 Log.e(TAG, "Cannot open input stream for content URI: " + uri);
                 return null;
             }
 
-            byte[] buffer = new byte[8192];
-            java.io.ByteArrayOutputStream outputStream = new java.io.ByteArrayOutputStream();
-            int bytesRead;
-            while ((bytesRead = inputStream.read(buffer)) != -1) {
-                outputStream.write(buffer, 0, bytesRead);
+            if (size > 0 && size <= Integer.MAX_VALUE) {
+                byte[] bytes = new byte[(int) size];
+                int offset = 0;
+                int bytesRead;
+                while (offset < bytes.length && (bytesRead = inputStream.read(bytes, offset, bytes.length - offset)) != -1) {
+                    offset += bytesRead;
+                }
+                if (offset == bytes.length && inputStream.read() == -1) {
+                    return bytes;
+                }
+                Log.d(TAG, "Content URI size changed while reading, retrying with a stream copy");
+                return readContentUri(contentResolver, uri);
             }
-
-            inputStream.close();
-            outputStream.close();
-
-            return outputStream.toByteArray();
+            return readFully(inputStream);
         } catch (Exception e) {
             Log.e(TAG, "Error loading image data from content URI: " + e.getMessage(), e);
             return null;
         }
     }
 
+    private static byte[] readContentUri(ContentResolver contentResolver, Uri uri) throws IOException {
+        try (java.io.InputStream inputStream = contentResolver.openInputStream(uri)) {
+            return inputStream != null ? readFully(inputStream) : null;
+        }
+    }
+
+    private static byte[] readFully(java.io.InputStream inputStream) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        java.io.ByteArrayOutputStream outputStream = new java.io.ByteArrayOutputStream(buffer.length);
+        int bytesRead;
+        while ((bytesRead = inputStream.read(buffer)) != -1) {
+            outputStream.write(buffer, 0, bytesRead);
+        }
+        return outputStream.toByteArray();
+    }
+
+    // Adds the analysis output to the session, the preview request then feeds it at preview rate
     private void startIntensityMonitoring(final Result result) {
-        Log.d(TAG, "startIntensityMonitoring: This feature has been removed");
-        result.error("NOT_IMPLEMENTED", "Light intensity monitoring feature removed", null);
+        if (analysisStream != null) {
+            analysisRequested = true;
+            result.success(true);
+            return;
+        }
+
+        if (cameraDevice == null || imageReader == null) {
+            // Picked up when the session is created
+            analysisRequested = true;
+            result.success(true);
+            return;
+        }
+
+        // Adding the output rebuilds the session, which would abort every request in flight
+        if (focusSweep != null || isCaptureInProgress()) {
+            result.error("CAMERA_BUSY", "Another capture is in progress", null);
+            return;
+        }
+
+        analysisRequested = true;
+
+        analysisStream = createAnalysisStream();
+        if (analysisStream == null) {
+            result.error("ANALYSIS_UNAVAILABLE", "Cannot create analysis stream", null);
+            return;
+        }
+
+        closeCaptureSession();
+        createCameraPreviewSession();
+        result.success(true);
     }
 
     private void stopIntensityMonitoring(final Result result) {
-        Log.d(TAG, "stopIntensityMonitoring: This feature has been removed");
+        // The sweep is scored from the analysis output, and removing it rebuilds the session under any capture
+        if (analysisStream != null && cameraDevice != null && (focusSweep != null || isCaptureInProgress())) {
+            if (result != null) {
+                result.error("CAMERA_BUSY", "Another capture is in progress", null);
+            }
+            return;
+        }
+
+        analysisRequested = false;
+        if (analysisStream != null) {
+            AnalysisStream stream = analysisStream;
+            analysisStream = null;
+            if (cameraDevice != null && imageReader != null) {
+                closeCaptureSession();
+                createCameraPreviewSession();
+            }
+            stream.close();
+        }
 
         if (result != null) {
             result.success(true);
         }
     }
 
+    // Walks the lens with AF off while the analysis stream scores sharpness, the best distance stays locked until unlockFocus
+    private void startFocusSweep(int coarseSteps, int fineSteps, final Result result) {
+        if (cameraDevice == null || cameraCaptureSession == null || imageReader == null) {
+            result.error("NO_CAMERA", "Camera not initialized", null);
+            return;
+        }
+
+        if (focusSweep != null || hotPixelDetector != null ||
+                (activeSequence != null && !activeSequence.isFinished())) {
+            result.error("CAMERA_BUSY", "Another capture is in progress", null);
+            return;
+        }
+
+        Float minimumFocusDistance;
+        try {
+            minimumFocusDistance = getCameraCapabilities().minimumFocusDistance;
+        } catch (CameraAccessException e) {
+            result.error("CAMERA_ERROR", "Cannot read lens characteristics: " + e.getMessage(), null);
+            return;
+        }
+        if (minimumFocusDistance == null || minimumFocusDistance <= 0) {
+            result.error("FOCUS_UNSUPPORTED", "Lens has a fixed focus", null);
+            return;
+        }
+
+        final FocusSweep sweep = new FocusSweep(this::moveSweepLens, new FocusSweep.Listener() {
+            @Override
+            public void onStep(String phase, int step, int steps, float diopters, double sharpness) {
+                Map<String, Object> event = new HashMap<>();
+                event.put("type", "focusStep");
+                event.put("phase", phase);
+                event.put("step", step);
+                event.put("steps", steps);
+                event.put("focusDistance", diopters);
+                event.put("sharpness", sharpness);
+                sendAnalysisEvent(event);
+            }
+
+            @Override
+            public void onFinished(float diopters, double sharpness) {
+                finishFocusSweep(focusSweep, diopters, sharpness, null, null);
+            }
+        }, minimumFocusDistance, coarseSteps, fineSteps);
+
+        focusSweep = sweep;
+        focusSweepResult = result;
+        Log.d(TAG, "Focus sweep over 0.." + minimumFocusDistance + " diopters, " +
+                coarseSteps + " coarse and " + fineSteps + " fine steps");
+
+        if (analysisStream == null) {
+            analysisRequested = true;
+            analysisStream = createAnalysisStream();
+            if (analysisStream == null) {
+                focusSweep = null;
+                focusSweepResult = null;
+                result.error("ANALYSIS_UNAVAILABLE", "Cannot create analysis stream", null);
+                return;
+            }
+            // Started from onConfigured once the analysis output is part of the session
+            closeCaptureSession();
+            createCameraPreviewSession();
+            return;
+        }
+
+        backgroundHandler.post(() -> beginFocusSweep(sweep));
+    }
+
+    // Camera thread, for the first session of the sweep and again for every rebuilt one. A new session starts from
+    // the page's preview request, so the sweep request has to be issued again or AF takes the lens back
+    private void beginFocusSweep(FocusSweep sweep) {
+        if (sweep != focusSweep || sweep.isFinished() || cameraCaptureSession == null || analysisStream == null) {
+            return;
+        }
+
+        try {
+            focusSweepBuilder = createPreviewBuilder(getPageParams(activePageId));
+        } catch (CameraAccessException | IllegalStateException e) {
+            finishFocusSweep(sweep, null, 0, "FOCUS_FAILED", "Cannot create focus request: " + e.getMessage());
+            return;
+        }
+        focusSweepBuilder.set(CaptureRequest.CONTROL_AF_MODE, CaptureRequest.CONTROL_AF_MODE_OFF);
+
+        analysisStream.setFrameListener((mean, sharpness, timestampNs) -> {
+            if (focusSweep == sweep) {
+                sweep.onSharpness(sharpness, timestampNs);
+            }
+        });
+        if (sweep.isStarted()) {
+            moveSweepLens(sweep.getTarget());
+        } else {
+            sweep.start();
+        }
+    }
+
+    // Camera thread
+    private void moveSweepLens(float diopters) {
+        final FocusSweep sweep = focusSweep;
+        if (sweep == null || focusSweepBuilder == null || cameraCaptureSession == null) {
+            return;
+        }
+
+        focusSweepBuilder.set(CaptureRequest.LENS_FOCUS_DISTANCE, diopters);
+        try {
+            cameraCaptureSession.setRepeatingRequest(focusSweepBuilder.build(),
+                    new CameraCaptureSession.CaptureCallback() {
+                        @Override
+                        public void onCaptureCompleted(@NonNull CameraCaptureSession session,
+                                                       @NonNull CaptureRequest request,
+                                                       @NonNull TotalCaptureResult result) {
+                            if (focusSweep != sweep) {
+                                return;
+                            }
+                            Integer lensState = result.get(CaptureResult.LENS_STATE);
+                            Long timestamp = result.get(CaptureResult.SENSOR_TIMESTAMP);
+                            sweep.onCaptureResult(result.get(CaptureResult.LENS_FOCUS_DISTANCE),
+                                    lensState == null || lensState == CaptureResult.LENS_STATE_STATIONARY,
+                                    timestamp != null ? timestamp : 0);
+                        }
+                    }, backgroundHandler);
+        } catch (CameraAccessException | IllegalStateException e) {
+            finishFocusSweep(sweep, null, 0, "FOCUS_FAILED", "Cannot move lens: " + e.getMessage());
+        }
+    }
+
+    // Camera thread: stops the sweep here and hands the outcome to the main thread, which locks the distance,
+    // restores the page's preview request and replies
+    private void finishFocusSweep(FocusSweep sweep, Float diopters, double sharpness, String errorCode, String message) {
+        if (sweep != focusSweep || sweep == null) {
+            return;
+        }
+
+        sweep.cancel();
+        focusSweepBuilder = null;
+        if (analysisStream != null) {
+            analysisStream.setFrameListener(null);
+        }
+
+        mainHandler.post(() -> {
+            if (sweep != focusSweep) {
+                return;
+            }
+
+            if (diopters != null) {
+                lockedFocusCameraId = cameraId;
+                lockedFocusDistance = diopters;
+                Log.d(TAG, "Focus locked at " + diopters + " diopters, sharpness " + sharpness);
+
+                Map<String, Object> event = new HashMap<>();
+                event.put("type", "focusLocked");
+                event.put("focusDistance", diopters);
+                event.put("sharpness", sharpness);
+                sendAnalysisEvent(event);
+            }
+
+            focusSweep = null;
+            captureProfiles.clear();
+            updateCameraPreview();
+            replyFocusSweep(diopters, sharpness, errorCode, message);
+        });
+    }
+
+    // Main thread
+    private void replyFocusSweep(Float diopters, double sharpness, String errorCode, String message) {
+        final Result result = focusSweepResult;
+        focusSweepResult = null;
+        if (result == null) {
+            return;
+        }
+
+        if (errorCode != null) {
+            result.error(errorCode, message, null);
+            return;
+        }
+        Map<String, Object> reply = new HashMap<>();
+        reply.put("focusDistance", diopters);
+        reply.put("sharpness", sharpness);
+        result.success(reply);
+    }
+
+    private void sendAnalysisEvent(final Map<String, Object> event) {
+        mainHandler.post(() -> {
+            if (analysisSink != null) {
+                analysisSink.success(event);
+            }
+        });
+    }
+
+    private void sendAnalysisError(final String errorCode, final String message) {
+        mainHandler.post(() -> {
+            if (analysisSink != null) {
+                analysisSink.error(errorCode, message, null);
+            }
+        });
+    }
+
+    // Tiers in release order. Everything runs on the main thread, like the trim callbacks that drive it
+    private MemoryBudget createMemoryBudget() {
+        MemoryBudget budget = new MemoryBudget();
+        budget.setTier(MemoryBudget.TIER_CACHES, new MemoryBudget.Tier() {
+            @Override
+            public long getHeldBytes() {
+                return DarkFrame.getCachedBytes() + HotPixelMap.getCachedBytes();
+            }
+
+            @Override
+            public long release() {
+                long held = getHeldBytes();
+                DarkFrame.clearCache();
+                HotPixelMap.clearCache();
+                return held;
+            }
+        });
+        budget.setTier(MemoryBudget.TIER_IDLE_POOLS, new MemoryBudget.Tier() {
+            @Override
+            public long getHeldBytes() {
+                FramePool pool = framePool;
+                return pool != null ? pool.getHeldBytes() : 0;
+            }
+
+            @Override
+            public long release() {
+                FramePool pool = framePool;
+                return pool != null ? (long) pool.trimIdle() * pool.getBufferSize() : 0;
+            }
+        });
+        budget.setTier(MemoryBudget.TIER_ANALYSIS, new MemoryBudget.Tier() {
+            @Override
+            public long getHeldBytes() {
+                AnalysisStream stream = analysisStream;
+                return stream != null ? stream.getBufferBytes() : 0;
+            }
+
+            @Override
+            public long release() {
+                // A sweep or sequence in progress keeps its stream
+                if (analysisStream == null || focusSweep != null || isCaptureInProgress()) {
+                    return 0;
+                }
+                long held = getHeldBytes();
+                stopIntensityMonitoring(null);
+                // Listeners would otherwise wait on a stream that no longer produces
+                sendAnalysisError("ANALYSIS_STOPPED", "Analysis stream released under memory pressure");
+                return held;
+            }
+        });
+        budget.setTier(MemoryBudget.TIER_CAMERA, new MemoryBudget.Tier() {
+            @Override
+            public long getHeldBytes() {
+                // Capture working buffers go with the camera, closing it fails the sequence that holds them
+                ImageReader reader = imageReader;
+                long held = reader != null ? (long) getFrameBufferSize(new Size(reader.getWidth(),
+                        reader.getHeight()), reader.getImageFormat()) * reader.getMaxImages() : 0;
+                SequenceHost active = activeSequence;
+                if (active != null) {
+                    CaptureSequence sequence = active.sequence;
+                    HdrFusion fusion = sequence.hdrFusion;
+                    DarkFrame.Accumulator darkAccumulator = sequence.getDarkAccumulator();
+                    held += fusion != null ? fusion.getHeldBytes() : 0;
+                    held += darkAccumulator != null ? darkAccumulator.getHeldBytes() : 0;
+                }
+                HotPixelMap.Detector detector = hotPixelDetector;
+                return held + (detector != null ? detector.getHeldBytes() : 0);
+            }
+
+            @Override
+            public long release() {
+                if (cameraDevice == null) {
+                    return 0;
+                }
+                long held = getHeldBytes();
+                Log.d(TAG, "Releasing camera under memory pressure");
+                closeCamera();
+                stopBackgroundThread();
+                return held;
+            }
+        });
+        return budget;
+    }
+
+    private boolean isCaptureInProgress() {
+        synchronized (pendingCaptures) {
+            if (!pendingCaptures.isEmpty()) {
+                return true;
+            }
+        }
+        return hotPixelDetector != null || (activeSequence != null && !activeSequence.isFinished());
+    }
+
+    // Returns the highest tier released for this trim level
+    int onTrimMemory(int level) {
+        int maxTier = MemoryBudget.getTierForTrimLevel(level);
+        long held = memoryBudget.getHeldBytes();
+        long released = memoryBudget.trim(maxTier);
+        Log.d(TAG, "Trim level " + level + ": released " + (released / 1024) + " of " + (held / 1024) +
+                " KB up to tier " + MemoryBudget.getTierName(maxTier));
+        return maxTier;
+    }
+
+    MemoryBudget getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    private AnalysisStream createAnalysisStream() {
+        try {
+            Size size = getAnalysisSize(getCameraCapabilities().streamMap);
+            if (size == null) {
+                return null;
+            }
+
+            AnalysisStream stream = new AnalysisStream(size, backgroundHandler, mainHandler);
+            stream.setSink(analysisSink);
+            Log.d(TAG, "Analysis stream: " + size.getWidth() + "x" + size.getHeight());
+            return stream;
+        } catch (CameraAccessException e) {
+            Log.e(TAG, "Cannot create analysis stream: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Largest YUV size within VGA, enough for centre statistics and cheap to reduce every frame
+    private static Size getAnalysisSize(StreamConfigurationMap map) {
+        if (map == null) {
+            return null;
+        }
+
+        Size best = null;
+        for (Size size : map.getOutputSizes(ImageFormat.YUV_420_888)) {
+            if (size.getWidth() > 640 || size.getHeight() > 480) {
+                continue;
+            }
+            if (best == null || size.getWidth() * size.getHeight() > best.getWidth() * best.getHeight()) {
+                best = size;
+            }
+        }
+        return best;
+    }
+
     private void getCurrentLightIntensity(final Result result) {
         if (activeViewId == -1) {
             result.error("NO_ACTIVE_VIEW", "No active view", null);
@@ -1878,6 +3870,13 @@ public class Camera2Plugin implements FlutterPlugin, MethodCallHandler, Activity
 
         String viewPageId = viewInfo.pageId;
 
+        // The analysis stream already has the centre mean of the latest preview frame
+        AnalysisStream stream = analysisStream;
+        if (stream != null && stream.getLastMean() >= 0) {
+            result.success(stream.getLastMean());
+            return;
+        }
+
         if (!viewPageId.equals("center_align_page")) {
             Log.d(TAG, "Light intensity measurement only available in center_align_page, current pageId=" + viewPageId);
             result.error("INVALID_PAGE", "Light intensity measurement only available in center_align_page", null);
@@ -1915,68 +3914,8 @@ public class Camera2Plugin implements FlutterPlugin, MethodCallHandler, Activity
         this.exposureTime = params.exposureTime;
         this.highResolutionMode = params.highResolutionMode;
         this.hdrMode = params.hdrMode;
-    }
-
-    private MethodResultWrapper wrapResult(Result result, Map<String, Object> illuminationParams) {
-        if (illuminationParams != null) {
-            try {
-                Log.d(TAG, "wrapResult received illumination params: " + illuminationParams.toString());
-
-                Map<String, Object> copyParams = new HashMap<>(illuminationParams);
-
-                if (copyParams.containsKey("type")) {
-                    Object type = copyParams.get("type");
-                    Log.d(TAG, "Illumination type: " + type + " (class: " + type.getClass().getName() + ")");
-                }
-                if (copyParams.containsKey("radius")) {
-                    Object radius = copyParams.get("radius");
-                    Log.d(TAG, "Radius: " + radius + " (class: " + radius.getClass().getName() + ")");
-                }
-                if (copyParams.containsKey("spacing")) {
-                    Object spacing = copyParams.get("spacing");
-                    Log.d(TAG, "Spacing: " + spacing + " (class: " + spacing.getClass().getName() + ")");
-                }
-
-                return new MethodResultWrapper(result, copyParams);
-            } catch (Exception e) {
-                Log.e(TAG, "Error processing illumination params: " + e.getMessage());
-            }
-        } else {
-            Log.d(TAG, "wrapResult received null illumination params");
-        }
-
-        return new MethodResultWrapper(result, illuminationParams != null ?
-                new HashMap<>(illuminationParams) :
-                new HashMap<>());
-    }
-
-    private static class MethodResultWrapper implements Result {
-        private final Result delegate;
-        private final Map<String, Object> arguments;
-
-        MethodResultWrapper(Result delegate, Map<String, Object> arguments) {
-            this.delegate = delegate;
-            this.arguments = arguments;
-        }
-
-        @Override
-        public void success(Object result) {
-            delegate.success(result);
-        }
-
-        @Override
-        public void error(String errorCode, String errorMessage, Object errorDetails) {
-            delegate.error(errorCode, errorMessage, errorDetails);
-        }
-
-        @Override
-        public void notImplemented() {
-            delegate.notImplemented();
-        }
-
-        public Map<String, Object> getArguments() {
-            return arguments;
-        }
+        this.captureFormat = params.captureFormat;
+        this.maxImages = params.maxImages;
     }
 
     private double calculateSimpleIntensity(android.graphics.Bitmap bitmap) {
@@ -1994,19 +3933,7 @@ public class Camera2Plugin implements FlutterPlugin, MethodCallHandler, Activity
         int[] pixels = new int[regionWidth * regionHeight];
         bitmap.getPixels(pixels, 0, regionWidth, startX, startY, regionWidth, regionHeight);
 
-        long totalBrightness = 0;
-
-        for (int pixel : pixels) {
-            int r = (pixel >> 16) & 0xff;
-            int g = (pixel >> 8) & 0xff;
-            int b = pixel & 0xff;
-
-            totalBrightness += r + g + b;
-        }
-
-        double averageBrightness = pixels.length > 0 ? (double)totalBrightness / pixels.length : 0;
-
-        double normalizedIntensity = (averageBrightness / 765.0) * 255.0;
+        double normalizedIntensity = ImageKernels.meanIntensity(pixels, pixels.length);
 
         Log.d(TAG, "Calculated average brightness: " + normalizedIntensity
                 + ", center 60% area: " + regionWidth * regionHeight + " pixels"
@@ -2025,14 +3952,12 @@ public class Camera2Plugin implements FlutterPlugin, MethodCallHandler, Activity
             return;
         }
 
+        textureViews.remove(viewId);
+        Log.d(TAG, "View removed from mapping: " + viewId);
+
         if (activeViewId == viewId) {
             Log.d(TAG, "Releasing active view: " + viewId);
-            closeCamera();
-            stopBackgroundThread();
-            activeViewId = -1;
+            detachPreview(viewId);
         }
-
-        textureViews.remove(viewId);
-        Log.d(TAG, "View removed from mapping: " + viewId);
     }
 }
\ No newline at end of file
@@ -0,0 +1,77 @@
+package com.smart_scope;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+// What the capture pipeline needs from a camera: bursts of requests in, timestamped frames out. Nothing here
+// depends on Android, so the pipeline also runs against a simulated sensor on a plain JVM
+interface CameraBackend {
+    // Same values as android.graphics.ImageFormat
+    int FORMAT_RAW_SENSOR = 0x20;
+    int FORMAT_YUV_420_888 = 0x23;
+    int FORMAT_JPEG = 0x100;
+
+    // Settings of one frame, a zero exposure or ISO leaves it to the camera, a NaN focus distance to autofocus.
+    // Requests alike in settings and step share one compiled capture, so a burst repeats one instance per step
+    // rather than submitting equal ones. The tag comes back with every callback of the request
+    final class Request {
+        final long exposureNs;
+        final int iso;
+        final float focusDistance;
+        final int step;
+        final Object tag;
+
+        Request(long exposureNs, int iso, float focusDistance, int step, Object tag) {
+            this.exposureNs = exposureNs;
+            this.iso = iso;
+            this.focusDistance = focusDistance;
+            this.step = step;
+            this.tag = tag;
+        }
+
+        Request withTag(Object tag) {
+            return new Request(exposureNs, iso, focusDistance, step, tag);
+        }
+    }
+
+    // First plane of a captured image, held until closed
+    interface Frame {
+        int getFormat();
+
+        int getWidth();
+
+        int getHeight();
+
+        long getTimestamp();
+
+        ByteBuffer getBuffer();
+
+        int getRowStride();
+
+        int getPixelStride();
+
+        void close();
+    }
+
+    interface Listener {
+        void onCaptureStarted(Request request, long timestampNs);
+
+        // The capture result, it may arrive before or after the frame of the same timestamp
+        void onCaptureCompleted(Request request, CaptureMetadataIndex.Record result);
+
+        void onCaptureFailed(Request request, String reason);
+
+        // The listener owns the frame and closes it
+        void onFrame(Frame frame);
+
+        void onError(Exception e);
+    }
+
+    void open(Listener listener) throws IOException;
+
+    // Frames arrive in submission order
+    void submitBurst(List<Request> requests) throws IOException;
+
+    void close();
+}
@@ -0,0 +1,148 @@
+package com.smart_scope;
+
+import android.graphics.Rect;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.params.BlackLevelPattern;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.util.Range;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Static camera properties, read once per camera ID instead of a binder call on every request
+final class CameraCapabilities {
+    private static final int MAX_CROP_REGIONS = 256;
+
+    private static final Map<String, CameraCapabilities> cache = new ConcurrentHashMap<>();
+    private static volatile String[] cameraIds = null;
+
+    final String cameraId;
+    final CameraCharacteristics characteristics;
+    final Integer facing;
+    final Rect activeArray;
+    final StreamConfigurationMap streamMap;
+    final int[] outputFormats;
+    final Range<Integer> isoRange;
+    final Range<Long> exposureRange;
+    final float maxDigitalZoom;
+    final Integer whiteLevel;
+    final Integer blackLevel;
+    final Float minimumFocusDistance;
+    final Integer timestampSource;
+    final int[] tonemapModes;
+
+    private final Map<Integer, Rect> cropRegions = new ConcurrentHashMap<>();
+
+    private CameraCapabilities(String cameraId, CameraCharacteristics characteristics) {
+        this.cameraId = cameraId;
+        this.characteristics = characteristics;
+        this.facing = characteristics.get(CameraCharacteristics.LENS_FACING);
+        this.activeArray = characteristics.get(CameraCharacteristics.SENSOR_INFO_ACTIVE_ARRAY_SIZE);
+        this.streamMap = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+        this.outputFormats = streamMap != null ? streamMap.getOutputFormats() : new int[0];
+        this.isoRange = characteristics.get(CameraCharacteristics.SENSOR_INFO_SENSITIVITY_RANGE);
+        this.exposureRange = characteristics.get(CameraCharacteristics.SENSOR_INFO_EXPOSURE_TIME_RANGE);
+
+        Float maxZoom = characteristics.get(CameraCharacteristics.SCALER_AVAILABLE_MAX_DIGITAL_ZOOM);
+        this.maxDigitalZoom = maxZoom != null ? maxZoom : 1.0f;
+
+        this.whiteLevel = characteristics.get(CameraCharacteristics.SENSOR_INFO_WHITE_LEVEL);
+        BlackLevelPattern blackLevelPattern = characteristics.get(CameraCharacteristics.SENSOR_BLACK_LEVEL_PATTERN);
+        this.blackLevel = blackLevelPattern != null ? blackLevelPattern.getOffsetForIndex(0, 0) : null;
+        this.minimumFocusDistance = characteristics.get(CameraCharacteristics.LENS_INFO_MINIMUM_FOCUS_DISTANCE);
+        this.timestampSource = characteristics.get(CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE);
+        int[] tonemapModes = characteristics.get(CameraCharacteristics.TONEMAP_AVAILABLE_TONE_MAP_MODES);
+        this.tonemapModes = tonemapModes != null ? tonemapModes : new int[0];
+
+        if (activeArray != null) {
+            for (int step = 10; step <= 50; step++) {
+                getCropRegion(step / 10.0f);
+            }
+        }
+    }
+
+    static CameraCapabilities get(CameraManager manager, String cameraId) throws CameraAccessException {
+        CameraCapabilities capabilities = cache.get(cameraId);
+        if (capabilities == null) {
+            capabilities = new CameraCapabilities(cameraId, manager.getCameraCharacteristics(cameraId));
+            cache.put(cameraId, capabilities);
+        }
+        return capabilities;
+    }
+
+    static String[] getCameraIds(CameraManager manager) throws CameraAccessException {
+        String[] ids = cameraIds;
+        if (ids == null) {
+            ids = manager.getCameraIdList();
+            cameraIds = ids;
+        }
+        return ids;
+    }
+
+    static String findCameraId(CameraManager manager, int lensFacing) throws CameraAccessException {
+        String[] ids = getCameraIds(manager);
+        for (String id : ids) {
+            Integer idFacing = get(manager, id).facing;
+            if (idFacing != null && idFacing == lensFacing) {
+                return id;
+            }
+        }
+        return ids.length > 0 ? ids[0] : null;
+    }
+
+    static void clear() {
+        cache.clear();
+        cameraIds = null;
+    }
+
+    boolean supportsFormat(int format) {
+        for (int outputFormat : outputFormats) {
+            if (outputFormat == format) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    boolean supportsTonemapMode(int mode) {
+        for (int tonemapMode : tonemapModes) {
+            if (tonemapMode == mode) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Centered crop for the zoom level, the same rect instance is returned for repeated zoom values
+    Rect getCropRegion(float zoomLevel) {
+        if (activeArray == null) {
+            return null;
+        }
+
+        int key = Float.floatToIntBits(zoomLevel);
+        Rect cropRegion = cropRegions.get(key);
+        if (cropRegion != null) {
+            return cropRegion;
+        }
+
+        int centerX = activeArray.width() / 2;
+        int centerY = activeArray.height() / 2;
+        int deltaX = (int) (0.5f * activeArray.width() / zoomLevel);
+        int deltaY = (int) (0.5f * activeArray.height() / zoomLevel);
+
+        cropRegion = new Rect(
+                centerX - deltaX,
+                centerY - deltaY,
+                centerX + deltaX,
+                centerY + deltaY
+        );
+
+        if (cropRegions.size() >= MAX_CROP_REGIONS) {
+            cropRegions.clear();
+        }
+        cropRegions.put(key, cropRegion);
+        return cropRegion;
+    }
+}
@@ -0,0 +1,148 @@
+package com.smart_scope;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Fixed-size little-endian records of what the camera actually used for each frame, joined to images by sensor timestamp
+final class CaptureMetadataIndex {
+    static final String EXTENSION = ".ssidx";
+
+    static final byte[] MAGIC = {'S', 'S', 'C', 'A', 'P', 'I', 'D', 'X'};
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 32;
+    static final int RECORD_SIZE = 64;
+
+    static final class Record {
+        long sensorTimestampNs;
+        long frameNumber;
+        long exposureNs;
+        long frameDurationNs;
+        int iso;
+        float focusDistance = Float.NaN;
+        int cropLeft;
+        int cropTop;
+        int cropRight;
+        int cropBottom;
+        int pointIndex;
+        int frameIndex;
+
+        void writeTo(ByteBuffer target) {
+            target.putLong(sensorTimestampNs);
+            target.putLong(frameNumber);
+            target.putLong(exposureNs);
+            target.putLong(frameDurationNs);
+            target.putInt(iso);
+            target.putFloat(focusDistance);
+            target.putInt(cropLeft);
+            target.putInt(cropTop);
+            target.putInt(cropRight);
+            target.putInt(cropBottom);
+            target.putInt(pointIndex);
+            target.putInt(frameIndex);
+        }
+
+        static Record readFrom(ByteBuffer source) {
+            Record record = new Record();
+            record.sensorTimestampNs = source.getLong();
+            record.frameNumber = source.getLong();
+            record.exposureNs = source.getLong();
+            record.frameDurationNs = source.getLong();
+            record.iso = source.getInt();
+            record.focusDistance = source.getFloat();
+            record.cropLeft = source.getInt();
+            record.cropTop = source.getInt();
+            record.cropRight = source.getInt();
+            record.cropBottom = source.getInt();
+            record.pointIndex = source.getInt();
+            record.frameIndex = source.getInt();
+            return record;
+        }
+    }
+
+    private ByteBuffer records;
+    private int recordCount = 0;
+
+    CaptureMetadataIndex(int expectedRecords) {
+        records = ByteBuffer.allocate(Math.max(1, expectedRecords) * RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    synchronized int getRecordCount() {
+        return recordCount;
+    }
+
+    synchronized void add(Record record) {
+        if (records.remaining() < RECORD_SIZE) {
+            ByteBuffer grown = ByteBuffer.allocate(records.capacity() * 2).order(ByteOrder.LITTLE_ENDIAN);
+            records.flip();
+            grown.put(records);
+            records = grown;
+        }
+        record.writeTo(records);
+        recordCount++;
+    }
+
+    synchronized void writeTo(File file) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(RECORD_SIZE);
+        header.putInt(recordCount);
+        // Records start at HEADER_SIZE, the rest of the header is reserved and stays zero
+        header.rewind();
+
+        ByteBuffer body = records.duplicate();
+        body.flip();
+
+        try (FileOutputStream out = new FileOutputStream(file);
+             FileChannel channel = out.getChannel()) {
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            while (body.hasRemaining()) {
+                channel.write(body);
+            }
+            channel.force(false);
+        }
+    }
+
+    static List<Record> read(File file) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+            FileChannel channel = randomAccessFile.getChannel();
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                    .order(ByteOrder.LITTLE_ENDIAN);
+
+            byte[] magic = new byte[MAGIC.length];
+            buffer.get(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException("Not a capture metadata index: " + file);
+            }
+
+            int version = buffer.getInt();
+            int recordSize = buffer.getInt();
+            int count = buffer.getInt();
+            if (version != VERSION || recordSize != RECORD_SIZE) {
+                throw new IOException("Unsupported capture metadata index: version " + version +
+                        ", record size " + recordSize);
+            }
+
+            if (count < 0 || buffer.capacity() < HEADER_SIZE + (long) count * RECORD_SIZE) {
+                throw new IOException("Truncated capture metadata index: " + count + " records expected in " + file);
+            }
+
+            List<Record> result = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                buffer.position(HEADER_SIZE + i * RECORD_SIZE);
+                result.add(Record.readFrom(buffer));
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.smart_scope;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Latency from request submission to each later stage of a capture, one histogram per stage
+final class CaptureMetrics {
+    static final int STARTED = 0;
+    static final int COMPLETED = 1;
+    static final int IMAGE = 2;
+    static final int WRITTEN = 3;
+    static final int DELIVERED = 4;
+
+    private static final String[] STAGE_NAMES = {"started", "completed", "imageAvailable", "written", "delivered"};
+
+    private final LatencyHistogram[] stages = new LatencyHistogram[STAGE_NAMES.length];
+
+    CaptureMetrics() {
+        for (int i = 0; i < stages.length; i++) {
+            stages[i] = new LatencyHistogram();
+        }
+    }
+
+    // Monotonic, latencies are intervals and never span a deep sleep worth counting
+    static long now() {
+        return System.nanoTime();
+    }
+
+    // A zero submission time means the request was never timed
+    void record(int stage, long submittedNs) {
+        if (submittedNs != 0) {
+            stages[stage].record((now() - submittedNs) / 1000);
+        }
+    }
+
+    void reset() {
+        for (LatencyHistogram histogram : stages) {
+            histogram.reset();
+        }
+    }
+
+    Map<String, Object> toMap() {
+        Map<String, Object> map = new HashMap<>();
+        for (int i = 0; i < stages.length; i++) {
+            map.put(STAGE_NAMES[i], stages[i].toMap());
+        }
+        return map;
+    }
+}
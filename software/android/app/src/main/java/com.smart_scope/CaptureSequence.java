@@ -0,0 +1,324 @@
+package com.smart_scope;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+class CaptureSequence {
+    // Every frame counts until a pattern is presented at a known sensor time
+    static final long NO_CUTOFF = Long.MIN_VALUE;
+
+    // What a sequence frame keeps from its capture result, with the submission time of its own request
+    static final class FrameResult {
+        final CaptureMetadataIndex.Record record;
+        final long submittedNs;
+
+        FrameResult(CaptureMetadataIndex.Record record, long submittedNs) {
+            this.record = record;
+            this.submittedNs = submittedNs;
+        }
+    }
+
+    final String pageId;
+    final List<Map<String, Object>> points;
+    // Frames per point across the whole focus or exposure bracket, framesPerStep at each bracket step
+    final int framesPerPoint;
+    final int framesPerStep;
+    final float[] focusDistances;
+    final float[] hdrExposureRatios;
+    final boolean useContainer;
+    final List<FrameRoi> rois;
+    String baseName;
+    boolean nativeIllumination = false;
+    // Windows encoded from linear frames, the ROIs or the whole frame
+    List<FrameRoi> linearWindows;
+    boolean correctHotPixels = true;
+    boolean subtractDark = false;
+    int darkFrameCount = DarkFrame.DEFAULT_FRAME_COUNT;
+    long darkMaxAgeMs = DarkFrame.DEFAULT_MAX_AGE_MS;
+    // Sensor levels of RAW frames, null when the camera does not report them
+    Integer blackLevel;
+    Integer whiteLevel;
+    // Fuses the exposure bracket of the current point, points never overlap so one serves the whole sequence.
+    // Set on the camera thread, read by the memory budget on the main thread
+    volatile HdrFusion hdrFusion;
+    // Each point is metered with one frame before its burst, its exposure then targets meterTarget of full scale
+    boolean meterExposure = false;
+    float meterTarget = ExposureMeter.DEFAULT_TARGET;
+    long minExposureNs = 0;
+    long maxExposureNs = Long.MAX_VALUE;
+    // Container metadata as written when the container was opened
+    Map<String, Object> containerMetadata;
+    // Latency of this sequence alone, summarised next to its frames
+    final CaptureMetrics metrics = new CaptureMetrics();
+    final long createdNs = CaptureMetrics.now();
+
+    private final String[] framePaths;
+    private final long[] pointExposureNs;
+    private final int[] pointIso;
+    private final boolean[] pointMetered;
+    private int meteringPoint = -1;
+    private int meteringRounds = 0;
+    private final CaptureMetadataIndex metadataIndex;
+
+    private final BurstSlots<CameraBackend.Frame, FrameResult> slots;
+    private long pointStartNs = NO_CUTOFF;
+    private int staleFrames = 0;
+    private boolean finished = false;
+    private AcquisitionContainer.Writer container = null;
+    private DarkFrame.Accumulator darkAccumulator = null;
+    private DarkFrame darkFrame = null;
+
+    CaptureSequence(String pageId, List<Map<String, Object>> points, int framesPerPoint, float[] focusDistances,
+                    float[] hdrExposureRatios, boolean useContainer, List<FrameRoi> rois) {
+        this.pageId = pageId;
+        this.points = points;
+        this.framesPerStep = Math.max(1, framesPerPoint);
+        this.focusDistances = focusDistances != null ? focusDistances : new float[0];
+        this.hdrExposureRatios = hdrExposureRatios != null ? hdrExposureRatios : new float[0];
+        this.framesPerPoint = this.framesPerStep * getStepCount();
+        this.useContainer = useContainer;
+        this.rois = rois;
+        this.framePaths = new String[points.size() * this.framesPerPoint * getWindowCount()];
+        this.pointExposureNs = new long[points.size()];
+        this.pointIso = new int[points.size()];
+        this.pointMetered = new boolean[points.size()];
+        this.metadataIndex = new CaptureMetadataIndex(points.size() * this.framesPerPoint);
+        this.slots = new BurstSlots<>(points.size(), this.framesPerPoint, this.framesPerStep);
+    }
+
+    // Bracket steps per point, focus distances or exposures, 1 without a bracket
+    int getStepCount() {
+        return Math.max(1, focusDistances.length) * Math.max(1, hdrExposureRatios.length);
+    }
+
+    // Points may carry their own exposureTimeUs and isoValue, the others use the sequence's fixed values
+    void applyExposureSchedule(long baseExposureNs, int baseIso) {
+        for (int i = 0; i < points.size(); i++) {
+            Map<String, Object> point = points.get(i);
+            Object exposureUs = point != null ? point.get("exposureTimeUs") : null;
+            Object iso = point != null ? point.get("isoValue") : null;
+            pointExposureNs[i] = exposureUs instanceof Number && ((Number) exposureUs).longValue() > 0 ?
+                    clampExposure(((Number) exposureUs).longValue() * 1000L) : baseExposureNs;
+            pointIso[i] = iso instanceof Number && ((Number) iso).intValue() > 0 ?
+                    ((Number) iso).intValue() : baseIso;
+        }
+    }
+
+    // True when any point differs from the first one, or exposures are metered per point
+    boolean hasExposureSchedule() {
+        if (meterExposure) {
+            return true;
+        }
+        for (int i = 1; i < points.size(); i++) {
+            if (pointExposureNs[i] != pointExposureNs[0] || pointIso[i] != pointIso[0]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    synchronized long getPointExposure(int pointIndex) {
+        return pointExposureNs[pointIndex];
+    }
+
+    synchronized int getPointIso(int pointIndex) {
+        return pointIso[pointIndex];
+    }
+
+    long clampExposure(long exposureNs) {
+        return Math.max(minExposureNs, Math.min(maxExposureNs, exposureNs));
+    }
+
+    synchronized boolean isPointMetered(int pointIndex) {
+        return !meterExposure || pointMetered[pointIndex];
+    }
+
+    // Non-negative while a metering frame of that point is in flight
+    synchronized int getMeteringPoint() {
+        return meteringPoint;
+    }
+
+    synchronized int beginMetering(int pointIndex) {
+        if (meteringPoint != pointIndex) {
+            meteringRounds = 0;
+        }
+        meteringPoint = pointIndex;
+        return ++meteringRounds;
+    }
+
+    synchronized int getMeteringRounds() {
+        return meteringRounds;
+    }
+
+    synchronized void setMeteredExposure(int pointIndex, long exposureNs) {
+        pointExposureNs[pointIndex] = clampExposure(exposureNs);
+    }
+
+    synchronized void finishMetering(int pointIndex) {
+        pointMetered[pointIndex] = true;
+        meteringPoint = -1;
+    }
+
+    synchronized List<Map<String, Object>> getExposureSchedule() {
+        List<Map<String, Object>> schedule = new ArrayList<>(points.size());
+        for (int i = 0; i < points.size(); i++) {
+            Map<String, Object> entry = new HashMap<>();
+            entry.put("exposureNs", pointExposureNs[i]);
+            entry.put("iso", pointIso[i]);
+            schedule.add(entry);
+        }
+        return schedule;
+    }
+
+    boolean isFocusBracket() {
+        return focusDistances.length > 0;
+    }
+
+    // Slots follow the bracket step of each frame's request, so frames of one distance are adjacent
+    int getFocusIndex(int frameIndex) {
+        return isFocusBracket() ? frameIndex / framesPerStep : 0;
+    }
+
+    // Linear captures fused into one frame per point from an exposure bracket
+    boolean isHdrBracket() {
+        return hdrExposureRatios.length > 0;
+    }
+
+    // Bracket exposures around the point's own exposure
+    long[] getHdrExposures(int pointIndex) {
+        long[] exposures = new long[hdrExposureRatios.length];
+        long base = getPointExposure(pointIndex);
+        for (int i = 0; i < exposures.length; i++) {
+            exposures[i] = clampExposure(Math.round((double) base * hdrExposureRatios[i]));
+        }
+        return exposures;
+    }
+
+    int getHdrIndex(int frameIndex) {
+        return isHdrBracket() ? frameIndex / framesPerStep : 0;
+    }
+
+    float getFocusTarget(int frameIndex) {
+        return isFocusBracket() ? focusDistances[getFocusIndex(frameIndex)] : Float.NaN;
+    }
+
+    int getPointCount() {
+        return points.size();
+    }
+
+    // Stored frames, each captured image contributes one per ROI window
+    int getFrameCount() {
+        return framePaths.length;
+    }
+
+    int getWindowCount() {
+        return Math.max(1, rois.size());
+    }
+
+    CaptureMetadataIndex getMetadataIndex() {
+        return metadataIndex;
+    }
+
+    synchronized AcquisitionContainer.Writer getContainer() {
+        return container;
+    }
+
+    synchronized void setContainer(AcquisitionContainer.Writer container) {
+        this.container = container;
+    }
+
+    synchronized void beginDarkReference(DarkFrame.Accumulator accumulator) {
+        darkAccumulator = accumulator;
+    }
+
+    // Non-null while the dark reference is being captured, before the first point
+    synchronized DarkFrame.Accumulator getDarkAccumulator() {
+        return darkAccumulator;
+    }
+
+    synchronized DarkFrame getDarkFrame() {
+        return darkFrame;
+    }
+
+    synchronized void setDarkFrame(DarkFrame darkFrame) {
+        this.darkFrame = darkFrame;
+        this.darkAccumulator = null;
+    }
+
+    int getCurrentPoint() {
+        return slots.getCurrentPoint();
+    }
+
+    synchronized boolean hasNextPoint() {
+        return !finished && slots.hasNextPoint();
+    }
+
+    int advance() {
+        return slots.advance();
+    }
+
+    Map<String, Object> getPointParams(int pointIndex) {
+        Map<String, Object> params = points.get(pointIndex);
+        Map<String, Object> copy = params != null ? new HashMap<>(params) : new HashMap<>();
+        copy.put("sequenceIndex", pointIndex);
+        return copy;
+    }
+
+    synchronized void setPointStart(long sensorTimestampNs) {
+        pointStartNs = sensorTimestampNs;
+    }
+
+    // Exposure began before the current pattern was on screen
+    synchronized boolean isStale(long sensorTimestampNs) {
+        return sensorTimestampNs < pointStartNs;
+    }
+
+    synchronized int onStaleFrame() {
+        return ++staleFrames;
+    }
+
+    // Paired by sensor timestamp, null while the other half is still in flight
+    BurstSlots.Frame<CameraBackend.Frame, FrameResult> addImage(CameraBackend.Frame frame) {
+        return slots.addImage(frame.getTimestamp(), frame);
+    }
+
+    BurstSlots.Frame<CameraBackend.Frame, FrameResult> addResult(long timestampNs, int pointIndex, int step, FrameResult result) {
+        return slots.addResult(timestampNs, pointIndex, step, result);
+    }
+
+    // Frames still waiting for their results once the sequence is over
+    List<CameraBackend.Frame> closeSlots() {
+        return slots.close();
+    }
+
+    synchronized void setFramePath(int slot, int window, String path) {
+        int index = slot * getWindowCount() + window;
+        if (slot >= 0 && index < framePaths.length) {
+            framePaths[index] = path;
+        }
+    }
+
+    boolean completePointIfReady() {
+        return slots.completePointIfReady();
+    }
+
+    synchronized boolean isFinished() {
+        return finished;
+    }
+
+    synchronized List<String> getFramePaths() {
+        return new ArrayList<>(Arrays.asList(framePaths));
+    }
+
+    // True for the one caller that finishes the sequence, completed or failed
+    synchronized boolean finish() {
+        if (finished) {
+            return false;
+        }
+        finished = true;
+        return true;
+    }
+}
@@ -0,0 +1,630 @@
+package com.smart_scope;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Runs a capture sequence on a CameraBackend: the dark reference, then per point its pattern, a metering frame
+// when asked for and the burst, each frame paired with its result, encoded and queued for writing, until every
+// point is stored. Nothing here depends on Android, Camera2Plugin drives it through Camera2Backend and the JVM
+// benchmark through a simulated sensor. Camera callbacks are expected on one thread
+final class CaptureSequencer implements CameraBackend.Listener {
+    // Point the host is asked to present for the dark reference, with the illumination off
+    static final int DARK_POINT = -1;
+    static final int MAX_STALE_FRAMES = 32;
+
+    interface Host {
+        // Shows the point's pattern, or switches the illumination off for DARK_POINT, then calls onPresented on
+        // the camera thread once frames see it
+        void presentPoint(int pointIndex);
+
+        // Without a container every window is stored on its own, returns where. Runs on the writer thread
+        String storeFrame(ByteBuffer data, Map<String, Object> params, int format, int pointIndex)
+                throws IOException;
+
+        // Defective pixels at the point's exposure and ISO, null to store its frames as captured
+        HotPixelMap getHotPixels(int format, int width, int height, int pointIndex);
+
+        void onDarkFrame(DarkFrame dark);
+
+        // Working buffers were allocated after start, the HDR fusion
+        void onBuffersAllocated();
+
+        // On the writer thread once the container is closed, completed or not. A completed sequence fails if
+        // this throws
+        void onFilesClosed() throws IOException;
+
+        // On the writer thread, once every frame is stored
+        void onComplete(List<String> framePaths);
+
+        // On any thread, frames already stored are kept
+        void onFailed(String errorCode, String errorMessage);
+    }
+
+    // What a request was submitted for, its frames are timed from the submission
+    private static final class Shot {
+        final int pointIndex;
+        final boolean metering;
+        final long submittedNs;
+
+        Shot(int pointIndex, boolean metering) {
+            this.pointIndex = pointIndex;
+            this.metering = metering;
+            this.submittedNs = CaptureMetrics.now();
+        }
+
+        boolean isBurst() {
+            return pointIndex != DARK_POINT && !metering;
+        }
+    }
+
+    final CaptureSequence sequence;
+    private final CameraBackend camera;
+    private final Host host;
+    private final FramePool pool;
+    private final FrameWriter writer;
+    // Latency across sequences, next to the sequence's own
+    private final CaptureMetrics totals;
+
+    CaptureSequencer(CaptureSequence sequence, CameraBackend camera, Host host, FramePool pool, FrameWriter writer,
+                     CaptureMetrics totals) {
+        this.sequence = sequence;
+        this.camera = camera;
+        this.host = host;
+        this.pool = pool;
+        this.writer = writer;
+        this.totals = totals;
+    }
+
+    // Opens the camera with the sequencer as its listener, whoever created the camera closes it once the
+    // sequence is finished. linearWindows and the dark reference are set up by then
+    void start() {
+        try {
+            camera.open(this);
+        } catch (IOException e) {
+            fail("CAMERA_ERROR", "Cannot start capture: " + e.getMessage());
+            return;
+        }
+
+        if (sequence.getDarkAccumulator() != null) {
+            host.presentPoint(DARK_POINT);
+        } else {
+            advance();
+        }
+    }
+
+    boolean isFinished() {
+        return sequence.isFinished();
+    }
+
+    // Frames exposed before presentedNs still saw the previous pattern
+    void onPresented(int pointIndex, long presentedNs) {
+        if (sequence.isFinished()) {
+            return;
+        }
+
+        sequence.setPointStart(presentedNs);
+        if (pointIndex == DARK_POINT) {
+            submitDarkBurst(sequence.darkFrameCount);
+        } else {
+            submitBurst(pointIndex);
+        }
+    }
+
+    void fail(String errorCode, String errorMessage) {
+        if (!sequence.finish()) {
+            return;
+        }
+
+        // A failed sequence may hold frames whose results never came
+        for (CameraBackend.Frame frame : sequence.closeSlots()) {
+            frame.close();
+        }
+
+        // Keep the frames already written, the index only covers completed appends
+        Runnable close = () -> {
+            try {
+                closeFiles();
+            } catch (IOException e) {
+                // The sequence has already failed, with the error that stopped it
+            }
+        };
+        if (!writer.flush(close)) {
+            close.run();
+        }
+        host.onFailed(errorCode, errorMessage);
+    }
+
+    @Override
+    public void onCaptureStarted(CameraBackend.Request request, long timestampNs) {
+        Shot shot = (Shot) request.tag;
+        if (shot.isBurst()) {
+            recordLatency(CaptureMetrics.STARTED, shot.submittedNs);
+        }
+    }
+
+    @Override
+    public void onCaptureCompleted(CameraBackend.Request request, CaptureMetadataIndex.Record result) {
+        Shot shot = (Shot) request.tag;
+        if (!shot.isBurst()) {
+            return;
+        }
+
+        recordLatency(CaptureMetrics.COMPLETED, shot.submittedNs);
+        if (sequence.isFinished()) {
+            return;
+        }
+
+        if (sequence.isStale(result.sensorTimestampNs)) {
+            replaceStaleFrame(request);
+            return;
+        }
+
+        BurstSlots.Frame<CameraBackend.Frame, CaptureSequence.FrameResult> frame = sequence.addResult(
+                result.sensorTimestampNs, shot.pointIndex, request.step,
+                new CaptureSequence.FrameResult(result, shot.submittedNs));
+        if (frame == null) {
+            return;
+        }
+
+        try {
+            processFrame(frame);
+        } finally {
+            frame.image.close();
+        }
+    }
+
+    @Override
+    public void onCaptureFailed(CameraBackend.Request request, String reason) {
+        Shot shot = (Shot) request.tag;
+        String capture = shot.pointIndex == DARK_POINT ? "Dark reference capture failed" :
+                (shot.metering ? "Metering capture failed at point " : "Capture failed at point ") + shot.pointIndex;
+        fail("CAMERA_ERROR", capture + ", reason: " + reason);
+    }
+
+    @Override
+    public void onFrame(CameraBackend.Frame frame) {
+        boolean held = false;
+        try {
+            if (sequence.isFinished()) {
+                return;
+            }
+
+            DarkFrame.Accumulator darkAccumulator = sequence.getDarkAccumulator();
+            if (darkAccumulator != null) {
+                processDarkFrame(darkAccumulator, frame);
+                return;
+            }
+
+            int meteringPoint = sequence.getMeteringPoint();
+            if (meteringPoint >= 0) {
+                processMeteringFrame(meteringPoint, frame);
+                return;
+            }
+
+            // Its result captures the frame again
+            if (sequence.isStale(frame.getTimestamp())) {
+                return;
+            }
+
+            // Held until its capture result arrives
+            BurstSlots.Frame<CameraBackend.Frame, CaptureSequence.FrameResult> paired = sequence.addImage(frame);
+            if (paired == null) {
+                held = true;
+                return;
+            }
+            processFrame(paired);
+        } finally {
+            if (!held) {
+                frame.close();
+            }
+        }
+    }
+
+    @Override
+    public void onError(Exception e) {
+        fail("CAMERA_ERROR", "Error during capture: " + e.getMessage());
+    }
+
+    private void advance() {
+        if (sequence.isFinished()) {
+            return;
+        }
+
+        if (!sequence.hasNextPoint()) {
+            finish();
+            return;
+        }
+
+        host.presentPoint(sequence.advance());
+    }
+
+    // Completes once every queued frame is on disk
+    private void finish() {
+        Runnable completion = () -> {
+            try {
+                closeFiles();
+            } catch (IOException e) {
+                fail("SAVE_ERROR", "Error closing acquisition container: " + e.getMessage());
+                return;
+            }
+            if (sequence.finish()) {
+                for (CameraBackend.Frame frame : sequence.closeSlots()) {
+                    frame.close();
+                }
+                host.onComplete(sequence.getFramePaths());
+            }
+        };
+
+        if (!writer.flush(completion)) {
+            fail("SAVE_ERROR", "Frame writer stopped before sequence was flushed");
+        }
+    }
+
+    private void closeFiles() throws IOException {
+        AcquisitionContainer.Writer container = sequence.getContainer();
+        if (container != null) {
+            if (sequence.meterExposure && sequence.containerMetadata != null) {
+                // Metered exposures are only known once every point has been captured
+                sequence.containerMetadata.put("exposureSchedule", sequence.getExposureSchedule());
+                container.setMetadata(AcquisitionContainer.toJson(sequence.containerMetadata));
+            }
+            container.close();
+        }
+        host.onFilesClosed();
+    }
+
+    private void submit(List<CameraBackend.Request> requests) {
+        try {
+            camera.submitBurst(requests);
+        } catch (IOException e) {
+            fail("CAMERA_ERROR", "Error during capture: " + e.getMessage());
+        }
+    }
+
+    // Captured at the first point's exposure with the pattern off, before the first point
+    private void submitDarkBurst(int frameCount) {
+        CameraBackend.Request request = new CameraBackend.Request(sequence.getPointExposure(0),
+                sequence.getPointIso(0), Float.NaN, 0, new Shot(DARK_POINT, false));
+        submit(Collections.nCopies(frameCount, request));
+    }
+
+    // One request per bracket step at the point's exposure and ISO, framesPerStep frames each. Focus steps run at a
+    // fixed distance, exposure steps around the point's exposure
+    private void submitBurst(int pointIndex) {
+        if (!sequence.isPointMetered(pointIndex)) {
+            submitMeteringFrame(pointIndex);
+            return;
+        }
+
+        Shot shot = new Shot(pointIndex, false);
+        long exposureNs = sequence.getPointExposure(pointIndex);
+        long[] hdrExposures = sequence.isHdrBracket() ? sequence.getHdrExposures(pointIndex) : null;
+        int steps = sequence.getStepCount();
+        List<CameraBackend.Request> stepRequests = new ArrayList<>(steps);
+        for (int step = 0; step < steps; step++) {
+            int frameIndex = step * sequence.framesPerStep;
+            stepRequests.add(new CameraBackend.Request(
+                    hdrExposures != null ? hdrExposures[sequence.getHdrIndex(frameIndex)] : exposureNs,
+                    sequence.getPointIso(pointIndex), sequence.getFocusTarget(frameIndex), step, shot));
+        }
+
+        List<CameraBackend.Request> burst = new ArrayList<>(sequence.framesPerPoint);
+        for (int i = 0; i < sequence.framesPerPoint; i++) {
+            burst.add(stepRequests.get(i / sequence.framesPerStep));
+        }
+        submit(burst);
+    }
+
+    // One frame at the point's current exposure, measured by processMeteringFrame before the real burst
+    private void submitMeteringFrame(int pointIndex) {
+        sequence.beginMetering(pointIndex);
+        submit(Collections.singletonList(new CameraBackend.Request(sequence.getPointExposure(pointIndex),
+                sequence.getPointIso(pointIndex), Float.NaN, 0, new Shot(pointIndex, true))));
+    }
+
+    // A frame exposed while the previous pattern was still visible is dropped and captured again
+    private void replaceStaleFrame(CameraBackend.Request request) {
+        if (sequence.onStaleFrame() > MAX_STALE_FRAMES) {
+            fail("SYNC_ERROR", "Too many frames exposed before the pattern was shown");
+            return;
+        }
+        submit(Collections.singletonList(request.withTag(new Shot(((Shot) request.tag).pointIndex, false))));
+    }
+
+    private void processDarkFrame(DarkFrame.Accumulator accumulator, CameraBackend.Frame frame) {
+        if (sequence.isStale(frame.getTimestamp())) {
+            if (sequence.onStaleFrame() > MAX_STALE_FRAMES) {
+                fail("SYNC_ERROR", "Too many frames exposed before the pattern was shown");
+            } else {
+                submitDarkBurst(1);
+            }
+            return;
+        }
+
+        if (accumulator.add(frame.getBuffer(), frame.getRowStride(), frame.getPixelStride(), getSourceBits(frame))) {
+            DarkFrame dark = accumulator.build();
+            host.onDarkFrame(dark);
+            sequence.setDarkFrame(dark);
+            advance();
+        }
+    }
+
+    private void processMeteringFrame(int pointIndex, CameraBackend.Frame frame) {
+        if (sequence.isStale(frame.getTimestamp())) {
+            if (sequence.onStaleFrame() > MAX_STALE_FRAMES) {
+                fail("SYNC_ERROR", "Too many frames exposed before the pattern was shown");
+            } else {
+                submitMeteringFrame(pointIndex);
+            }
+            return;
+        }
+
+        ExposureMeter meter = new ExposureMeter(getBlackLevel(frame), getWhiteLevel(frame), sequence.meterTarget);
+        int level = meter.measure(frame.getBuffer(), frame.getRowStride(), frame.getPixelStride(),
+                getSourceBits(frame), sequence.linearWindows, frame.getWidth(), frame.getHeight(),
+                FrameEncoder.getAlignment(frame));
+        long exposure = sequence.getPointExposure(pointIndex);
+        sequence.setMeteredExposure(pointIndex, meter.nextExposure(exposure, level));
+
+        // A clipped frame only bounds the exposure from above, meter again at the shorter one
+        if (meter.isClipped(level) && sequence.getPointExposure(pointIndex) < exposure &&
+                sequence.getMeteringRounds() < ExposureMeter.MAX_ROUNDS) {
+            submitMeteringFrame(pointIndex);
+            return;
+        }
+
+        sequence.finishMetering(pointIndex);
+        submitBurst(pointIndex);
+    }
+
+    // A frame with its capture result, stored in the slot of its request's point and bracket step
+    private void processFrame(BurstSlots.Frame<CameraBackend.Frame, CaptureSequence.FrameResult> paired) {
+        final int slot = paired.slot;
+        if (slot < 0) {
+            // None of the sequence's requests accounts for it
+            return;
+        }
+
+        CameraBackend.Frame frame = paired.image;
+        CaptureMetadataIndex.Record record = paired.result.record;
+        final int pointIndex = slot / sequence.framesPerPoint;
+        final int frameIndex = slot % sequence.framesPerPoint;
+        record.pointIndex = pointIndex;
+        record.frameIndex = frameIndex;
+        sequence.getMetadataIndex().add(record);
+
+        ByteBuffer buffer = null;
+
+        try {
+            final long submittedNs = paired.result.submittedNs;
+            recordLatency(CaptureMetrics.IMAGE, submittedNs);
+            // What the sensor reported for the frame, what was requested when its result lacks it
+            long storedExposureNs = record.exposureNs > 0 ? record.exposureNs : sequence.getPointExposure(pointIndex);
+            int storedIso = record.iso > 0 ? record.iso : sequence.getPointIso(pointIndex);
+            int[] windowSizes = new int[sequence.getWindowCount()];
+            DarkFrame dark = sequence.getDarkFrame();
+            boolean isJpeg = frame.getFormat() == CameraBackend.FORMAT_JPEG;
+            String focusTag = sequence.isFocusBracket() ?
+                    ";focusIndex=" + sequence.getFocusIndex(frameIndex) +
+                            ";focusTarget=" + sequence.getFocusTarget(frameIndex) : null;
+            if (sequence.isHdrBracket()) {
+                // Normalised by the exposure the sensor reports for this very frame, the request's if it reports none
+                long exposureNs = record.exposureNs > 0 ? record.exposureNs :
+                        sequence.getHdrExposures(pointIndex)[sequence.getHdrIndex(frameIndex)];
+                buffer = fuseHdrFrame(frame, storedIso, windowSizes, pointIndex, exposureNs);
+                if (buffer == null) {
+                    // Only the last exposure of a point produces a stored frame
+                    return;
+                }
+                storedExposureNs = sequence.hdrFusion.getReferenceExposureNs();
+            } else if (sequence.rois.isEmpty() && dark == null && (focusTag == null || isJpeg)) {
+                String description = isJpeg ? null : describeLinearFrame(frame, storedExposureNs, storedIso, 0, 0,
+                        frame.getWidth(), frame.getHeight());
+                buffer = FrameEncoder.encode(frame, description, pool, SequenceFrameWrite.FRAME_BUFFER_TIMEOUT_MS);
+                windowSizes[0] = buffer.remaining();
+            } else {
+                buffer = encodeWindows(frame, storedExposureNs, storedIso, windowSizes, dark, focusTag);
+            }
+
+            final int format = frame.getFormat();
+            final int width = frame.getWidth();
+            final int height = frame.getHeight();
+            // Maps are keyed by ISO, which the exposure schedule may change from point to point
+            final HotPixelMap hotPixels = sequence.correctHotPixels ?
+                    host.getHotPixels(format, width, height, pointIndex) : null;
+            final Map<String, Object> pointParams = sequence.getPointParams(pointIndex);
+            if (sequence.isFocusBracket()) {
+                pointParams.put("focusIndex", sequence.getFocusIndex(frameIndex));
+            }
+            final AcquisitionContainer.Writer container = sequence.getContainer();
+            final SequenceFrameWrite.Store store;
+            if (container != null) {
+                AcquisitionContainer.FrameInfo[] frameInfos = SequenceFrameWrite.describeWindows(frame,
+                        sequence.rois, pointIndex, sequence.isHdrBracket() ? 0 : frameIndex);
+                for (AcquisitionContainer.FrameInfo info : frameInfos) {
+                    describeContainerFrame(info, pointParams, storedExposureNs, storedIso);
+                    if (sequence.isFocusBracket()) {
+                        info.focusDistance = Float.isNaN(record.focusDistance) ?
+                                sequence.getFocusTarget(frameIndex) : record.focusDistance;
+                    }
+                }
+                store = SequenceFrameWrite.toContainer(container, frameInfos);
+            } else {
+                store = (window, data) -> {
+                    Map<String, Object> windowParams = pointParams;
+                    if (!sequence.rois.isEmpty()) {
+                        windowParams = new HashMap<>(pointParams);
+                        windowParams.put("roiIndex", window);
+                    }
+                    return host.storeFrame(data, windowParams, format, pointIndex);
+                };
+            }
+            SequenceFrameWrite write = new SequenceFrameWrite(buffer, windowSizes, pool, (window, data) -> {
+                if (hotPixels != null) {
+                    hotPixels.correctEncoded(data, format, width, height, sequence.linearWindows.get(window));
+                }
+                String path = store.store(window, data);
+                sequence.setFramePath(slot, window, path);
+                return path;
+            });
+            boolean queued = writer.enqueue(write, new FrameWriter.Callback() {
+                @Override
+                public void onWritten(String imagePath) {
+                    // Paths are recorded per window by the write task
+                    recordLatency(CaptureMetrics.WRITTEN, submittedNs);
+                }
+
+                @Override
+                public void onFailed(Exception e) {
+                    fail("SAVE_ERROR", "Error saving image: " + e.getMessage());
+                }
+            }, SequenceFrameWrite.FRAME_WRITE_TIMEOUT_MS);
+
+            if (!queued) {
+                throw new IOException("Write queue full");
+            }
+            buffer = null;
+        } catch (Exception e) {
+            fail("SAVE_ERROR", "Error saving image: " + e.getMessage());
+            return;
+        } finally {
+            if (buffer != null && pool != null) {
+                pool.release(buffer);
+            }
+        }
+
+        if (sequence.completePointIfReady()) {
+            advance();
+        }
+    }
+
+    // Each window becomes its own TIFF, back to back in one buffer, windowSizes receives their encoded lengths
+    private ByteBuffer encodeWindows(CameraBackend.Frame frame, long exposureNs, int iso, int[] windowSizes,
+                                     DarkFrame dark, String descriptionTags)
+            throws IOException, InterruptedException {
+        List<FrameRoi> windows = sequence.linearWindows;
+        int alignment = FrameEncoder.getAlignment(frame);
+        int frameWidth = frame.getWidth();
+        int frameHeight = frame.getHeight();
+
+        String[] descriptions = new String[windows.size()];
+        for (int i = 0; i < windows.size(); i++) {
+            FrameRoi roi = windows.get(i);
+            descriptions[i] = describeLinearFrame(frame, exposureNs, iso, roi.getLeft(frameWidth, alignment),
+                    roi.getTop(frameHeight, alignment), roi.getWidth(frameWidth, alignment),
+                    roi.getHeight(frameHeight, alignment));
+            if (dark != null) {
+                descriptions[i] += ";darkFrames=" + dark.frameCount;
+            }
+            if (descriptionTags != null) {
+                descriptions[i] += descriptionTags;
+            }
+        }
+
+        return FrameEncoder.encodeWindows(frame, windows, descriptions, dark != null ? dark.windows : null,
+                windowSizes, pool, SequenceFrameWrite.FRAME_BUFFER_TIMEOUT_MS);
+    }
+
+    // Folds one bracket frame into the point's fusion, the fused windows are encoded once all its exposures are in.
+    // The fusion is allocated with the sequence's first bracket and reused by every later point
+    private ByteBuffer fuseHdrFrame(CameraBackend.Frame frame, int iso, int[] windowSizes, int pointIndex,
+                                    long exposureNs) throws IOException, InterruptedException {
+        long[] exposures = sequence.getHdrExposures(pointIndex);
+        HdrFusion fusion = sequence.hdrFusion;
+        if (fusion == null) {
+            fusion = new HdrFusion(sequence.linearWindows, frame.getWidth(), frame.getHeight(),
+                    FrameEncoder.getAlignment(frame), getBlackLevel(frame), getWhiteLevel(frame));
+            sequence.hdrFusion = fusion;
+            host.onBuffersAllocated();
+        }
+        if (fusion.getFrameCount() == 0 || fusion.getFrameCount() >= sequence.framesPerPoint) {
+            // First frame of a point's bracket
+            fusion.begin(exposures);
+        }
+
+        fusion.add(frame.getBuffer(), frame.getRowStride(), frame.getPixelStride(), getSourceBits(frame), exposureNs);
+        if (fusion.getFrameCount() < sequence.framesPerPoint) {
+            return null;
+        }
+
+        StringBuilder bracket = new StringBuilder();
+        for (long exposure : exposures) {
+            bracket.append(bracket.length() > 0 ? "," : "").append(exposure);
+        }
+
+        String[] descriptions = new String[windowSizes.length];
+        int requiredSize = 0;
+        for (int i = 0; i < windowSizes.length; i++) {
+            // Fused samples are (sample - black) / exposureNs * radianceScale, in counts at the shortest exposure
+            descriptions[i] = describeLinearFrame(frame, fusion.getReferenceExposureNs(), iso,
+                    fusion.getWindowLeft(i), fusion.getWindowTop(i),
+                    fusion.getWindowWidth(i), fusion.getWindowHeight(i)) +
+                    ";hdrExposuresNs=" + bracket + ";hdrFrames=" + fusion.getFrameCount() +
+                    ";radianceScale=" + fusion.getRadianceScale();
+            windowSizes[i] = TiffEncoder.encodedSize(fusion.getWindowWidth(i), fusion.getWindowHeight(i),
+                    descriptions[i]);
+            requiredSize += windowSizes[i];
+        }
+
+        ByteBuffer target = pool != null ?
+                pool.acquire(requiredSize, SequenceFrameWrite.FRAME_BUFFER_TIMEOUT_MS) :
+                ByteBuffer.allocateDirect(requiredSize);
+        if (target == null) {
+            throw new IOException("No free frame buffer");
+        }
+
+        for (int i = 0; i < windowSizes.length; i++) {
+            TiffEncoder.writeGray16Header(fusion.getWindowWidth(i), fusion.getWindowHeight(i), descriptions[i], target);
+            fusion.writeWindow(i, target);
+        }
+
+        target.flip();
+        return target;
+    }
+
+    private String describeLinearFrame(CameraBackend.Frame frame, long exposureNs, int iso, int left, int top,
+                                       int width, int height) {
+        return FrameEncoder.describeLinear(frame, exposureNs, iso, sequence.blackLevel, sequence.whiteLevel,
+                left, top, width, height);
+    }
+
+    // What the sequence knows about a frame beyond its geometry
+    private static void describeContainerFrame(AcquisitionContainer.FrameInfo info, Map<String, Object> pointParams,
+                                               long exposureNs, int iso) {
+        info.exposureNs = exposureNs;
+        info.iso = iso;
+
+        Object x = pointParams.get("x");
+        Object y = pointParams.get("y");
+        if (x instanceof Number && y instanceof Number) {
+            info.illuminationX = ((Number) x).floatValue();
+            info.illuminationY = ((Number) y).floatValue();
+        }
+    }
+
+    private int getBlackLevel(CameraBackend.Frame frame) {
+        return frame.getFormat() == CameraBackend.FORMAT_RAW_SENSOR && sequence.blackLevel != null ?
+                sequence.blackLevel : 0;
+    }
+
+    private int getWhiteLevel(CameraBackend.Frame frame) {
+        if (frame.getFormat() != CameraBackend.FORMAT_RAW_SENSOR) {
+            return 255;
+        }
+        return sequence.whiteLevel != null ? sequence.whiteLevel : 1023;
+    }
+
+    private static int getSourceBits(CameraBackend.Frame frame) {
+        return frame.getFormat() == CameraBackend.FORMAT_RAW_SENSOR ? 16 : 8;
+    }
+
+    private void recordLatency(int stage, long submittedNs) {
+        sequence.metrics.record(stage, submittedNs);
+        totals.record(stage, submittedNs);
+    }
+}
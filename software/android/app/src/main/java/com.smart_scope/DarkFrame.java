@@ -0,0 +1,163 @@
+package com.smart_scope;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Mean of frames captured with the illumination off, one sample array per stored window,
+// reused by later sequences with the same camera, geometry, exposure and ISO until it expires
+final class DarkFrame {
+    static final int DEFAULT_FRAME_COUNT = 4;
+    static final long DEFAULT_MAX_AGE_MS = 10 * 60 * 1000L;
+    private static final int MAX_CACHED_FRAMES = 2;
+
+    private static final Map<String, DarkFrame> cache = new LinkedHashMap<>();
+
+    final String key;
+    final short[][] windows;
+    final int frameCount;
+    // When it was cached, on the caller's clock
+    private long cachedMs;
+
+    private DarkFrame(String key, short[][] windows, int frameCount) {
+        this.key = key;
+        this.windows = windows;
+        this.frameCount = frameCount;
+    }
+
+    static String key(String cameraId, int format, int width, int height, long exposureNs, int iso,
+                      List<FrameRoi> windows) {
+        StringBuilder key = new StringBuilder();
+        key.append(cameraId).append('/').append(format).append('/').append(width).append('x').append(height);
+        key.append('/').append(exposureNs).append("ns/iso").append(iso);
+        for (FrameRoi window : windows) {
+            key.append('/').append(window.width).append('x').append(window.height);
+            key.append('+').append(window.offsetX).append('+').append(window.offsetY);
+        }
+        return key.toString();
+    }
+
+    // nowMs on the clock putCached was given, one that keeps running in deep sleep like elapsedRealtime
+    static synchronized DarkFrame getCached(String key, long maxAgeMs, long nowMs) {
+        DarkFrame frame = cache.get(key);
+        if (frame != null && nowMs - frame.cachedMs > maxAgeMs) {
+            cache.remove(key);
+            return null;
+        }
+        return frame;
+    }
+
+    static synchronized void putCached(DarkFrame frame, long nowMs) {
+        frame.cachedMs = nowMs;
+        cache.remove(frame.key);
+        cache.put(frame.key, frame);
+
+        // Full-frame references are tens of MB, keep only the most recent ones
+        Iterator<String> keys = cache.keySet().iterator();
+        while (cache.size() > MAX_CACHED_FRAMES && keys.hasNext()) {
+            keys.next();
+            keys.remove();
+        }
+    }
+
+    static synchronized long getCachedBytes() {
+        long bytes = 0;
+        for (DarkFrame frame : cache.values()) {
+            for (short[] window : frame.windows) {
+                bytes += window.length * 2L;
+            }
+        }
+        return bytes;
+    }
+
+    static synchronized void clearCache() {
+        cache.clear();
+    }
+
+    static final class Accumulator {
+        private final String key;
+        private final int targetFrames;
+        private final int[] left;
+        private final int[] top;
+        private final int[] width;
+        private final int[] height;
+        private final int[][] sums;
+        private int frames = 0;
+
+        Accumulator(String key, List<FrameRoi> windows, int frameWidth, int frameHeight, int alignment,
+                    int targetFrames) {
+            this.key = key;
+            this.targetFrames = Math.max(1, targetFrames);
+            this.left = new int[windows.size()];
+            this.top = new int[windows.size()];
+            this.width = new int[windows.size()];
+            this.height = new int[windows.size()];
+            this.sums = new int[windows.size()][];
+
+            for (int i = 0; i < windows.size(); i++) {
+                FrameRoi window = windows.get(i);
+                width[i] = window.getWidth(frameWidth, alignment);
+                height[i] = window.getHeight(frameHeight, alignment);
+                left[i] = window.getLeft(frameWidth, alignment);
+                top[i] = window.getTop(frameHeight, alignment);
+                sums[i] = new int[width[i] * height[i]];
+            }
+        }
+
+        long getHeldBytes() {
+            long bytes = 0;
+            for (int[] sum : sums) {
+                bytes += sum.length * 4L;
+            }
+            return bytes;
+        }
+
+        // Returns true once the target number of frames has been added
+        synchronized boolean add(ByteBuffer source, int rowStride, int pixelStride, int sourceBits) {
+            if (frames >= targetFrames) {
+                return true;
+            }
+
+            ByteOrder sourceOrder = source.order();
+            source.order(ByteOrder.LITTLE_ENDIAN);
+            int sourceBase = source.position();
+
+            for (int i = 0; i < sums.length; i++) {
+                int[] sum = sums[i];
+                int index = 0;
+                for (int y = 0; y < height[i]; y++) {
+                    int rowStart = sourceBase + (top[i] + y) * rowStride + left[i] * pixelStride;
+                    if (sourceBits > 8) {
+                        for (int x = 0; x < width[i]; x++) {
+                            sum[index++] += source.getShort(rowStart + x * pixelStride) & 0xffff;
+                        }
+                    } else {
+                        for (int x = 0; x < width[i]; x++) {
+                            sum[index++] += source.get(rowStart + x * pixelStride) & 0xff;
+                        }
+                    }
+                }
+            }
+
+            source.order(sourceOrder);
+            return ++frames >= targetFrames;
+        }
+
+        synchronized DarkFrame build() {
+            short[][] windows = new short[sums.length][];
+            int half = frames / 2;
+            for (int i = 0; i < sums.length; i++) {
+                int[] sum = sums[i];
+                short[] mean = new short[sum.length];
+                for (int p = 0; p < sum.length; p++) {
+                    mean[p] = (short) ((sum[p] + half) / frames);
+                }
+                windows[i] = mean;
+            }
+            return new DarkFrame(key, windows, frames);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.smart_scope;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+
+// Exposure for one illumination point from a single metering frame: the bright tail of the stored windows
+// is placed at a fraction of full scale, so bright-field points stay unclipped and dark-field points collect signal
+final class ExposureMeter {
+    static final float DEFAULT_TARGET = 0.7f;
+    static final int MAX_ROUNDS = 3;
+
+    private static final int SAMPLE_STEP = 4;
+    private static final float PERCENTILE = 0.995f;
+    // Above this level the frame is clipped and only tells us to expose shorter
+    private static final float SATURATION_FRACTION = 0.97f;
+    private static final int CLIPPED_DIVISOR = 8;
+
+    private final int black;
+    private final int white;
+    private final float target;
+
+    ExposureMeter(int black, int white, float target) {
+        this.black = black;
+        this.white = white;
+        this.target = target;
+    }
+
+    // Level below which PERCENTILE of the sampled window pixels fall
+    int measure(ByteBuffer source, int rowStride, int pixelStride, int sourceBits, List<FrameRoi> windows,
+                int frameWidth, int frameHeight, int alignment) {
+        int shift = sourceBits > 8 ? 4 : 0;
+        int[] histogram = new int[sourceBits > 8 ? 4096 : 256];
+
+        ByteOrder sourceOrder = source.order();
+        source.order(ByteOrder.LITTLE_ENDIAN);
+        int base = source.position();
+        int count = 0;
+        for (FrameRoi window : windows) {
+            int left = window.getLeft(frameWidth, alignment);
+            int top = window.getTop(frameHeight, alignment);
+            int width = window.getWidth(frameWidth, alignment);
+            int height = window.getHeight(frameHeight, alignment);
+            for (int y = top; y < top + height; y += SAMPLE_STEP) {
+                int rowStart = base + y * rowStride;
+                for (int x = left; x < left + width; x += SAMPLE_STEP) {
+                    int position = rowStart + x * pixelStride;
+                    int sample = sourceBits > 8 ? source.getShort(position) & 0xffff : source.get(position) & 0xff;
+                    histogram[Math.min(histogram.length - 1, sample >> shift)]++;
+                    count++;
+                }
+            }
+        }
+        source.order(sourceOrder);
+
+        int limit = (int) Math.ceil(count * PERCENTILE);
+        int cumulative = 0;
+        for (int bin = 0; bin < histogram.length; bin++) {
+            cumulative += histogram[bin];
+            if (cumulative >= limit) {
+                return (bin << shift) + (1 << shift) - 1;
+            }
+        }
+        return white;
+    }
+
+    boolean isClipped(int level) {
+        return level >= black + (white - black) * SATURATION_FRACTION;
+    }
+
+    // Exposure that moves the measured level to the target, clipped frames only give an upper bound
+    long nextExposure(long exposureNs, int level) {
+        if (isClipped(level)) {
+            return Math.max(1, exposureNs / CLIPPED_DIVISOR);
+        }
+        double signal = Math.max(1, level - black);
+        return Math.round(exposureNs * (target * (white - black)) / signal);
+    }
+}
@@ -0,0 +1,176 @@
+package com.smart_scope;
+
+// Closed-loop manual focus: steps LENS_FOCUS_DISTANCE over the lens range, scores each position with the
+// analysis stream's sharpness once the lens has settled, then repeats around the best position with a finer step.
+// All methods run on the camera thread.
+final class FocusSweep {
+    interface Driver {
+        void moveLens(float diopters);
+    }
+
+    interface Listener {
+        void onStep(String phase, int step, int steps, float diopters, double sharpness);
+
+        void onFinished(float diopters, double sharpness);
+    }
+
+    static final int DEFAULT_COARSE_STEPS = 12;
+    static final int DEFAULT_FINE_STEPS = 8;
+
+    private static final int SAMPLES_PER_STEP = 2;
+    // Devices that never report a stationary lens still advance after this many analysis frames
+    private static final int MAX_FRAMES_PER_STEP = 20;
+    private static final float DISTANCE_TOLERANCE = 0.05f;
+
+    private final Driver driver;
+    private final Listener listener;
+    private final float minDiopters;
+    private final float maxDiopters;
+    private final int coarseSteps;
+    private final int fineSteps;
+
+    private float[] positions;
+    private double[] scores;
+    private boolean fine = false;
+    private int step = -1;
+    private float target;
+    private long settledTimestampNs = Long.MAX_VALUE;
+    private int framesAtStep = 0;
+    private int samples = 0;
+    private double sampleSum = 0;
+    private boolean finished = false;
+
+    FocusSweep(Driver driver, Listener listener, float maxDiopters, int coarseSteps, int fineSteps) {
+        this.driver = driver;
+        this.listener = listener;
+        this.minDiopters = 0;
+        this.maxDiopters = maxDiopters;
+        this.coarseSteps = Math.max(3, coarseSteps);
+        this.fineSteps = Math.max(3, fineSteps);
+    }
+
+    boolean isFinished() {
+        return finished;
+    }
+
+    boolean isStarted() {
+        return positions != null;
+    }
+
+    // Where the lens should be now, for a request that has to be issued again
+    float getTarget() {
+        return target;
+    }
+
+    void start() {
+        positions = linearPositions(minDiopters, maxDiopters, coarseSteps);
+        scores = new double[positions.length];
+        fine = false;
+        step = -1;
+        nextStep();
+    }
+
+    void cancel() {
+        finished = true;
+    }
+
+    // From the repeating request's results: the lens counts as settled at the first stationary frame near the target
+    void onCaptureResult(Float focusDistance, boolean stationary, long timestampNs) {
+        if (finished || settledTimestampNs != Long.MAX_VALUE) {
+            return;
+        }
+
+        boolean onTarget = focusDistance == null || Math.abs(focusDistance - target) <= DISTANCE_TOLERANCE;
+        if (stationary && onTarget) {
+            settledTimestampNs = timestampNs;
+        }
+    }
+
+    void onSharpness(double sharpness, long timestampNs) {
+        if (finished || step < 0) {
+            return;
+        }
+
+        framesAtStep++;
+        boolean settled = timestampNs >= settledTimestampNs;
+        if (!settled && framesAtStep < MAX_FRAMES_PER_STEP) {
+            return;
+        }
+
+        sampleSum += sharpness;
+        if (++samples < SAMPLES_PER_STEP) {
+            return;
+        }
+
+        double score = sampleSum / samples;
+        scores[step] = score;
+        listener.onStep(fine ? "fine" : "coarse", step, positions.length, positions[step], score);
+        nextStep();
+    }
+
+    private void nextStep() {
+        step++;
+        if (step < positions.length) {
+            target = positions[step];
+            settledTimestampNs = Long.MAX_VALUE;
+            framesAtStep = 0;
+            samples = 0;
+            sampleSum = 0;
+            driver.moveLens(target);
+            return;
+        }
+
+        int best = bestIndex(scores);
+        if (!fine) {
+            // Refine between the neighbours of the best coarse position
+            float low = positions[Math.max(0, best - 1)];
+            float high = positions[Math.min(positions.length - 1, best + 1)];
+            positions = linearPositions(low, high, fineSteps);
+            scores = new double[positions.length];
+            fine = true;
+            step = -1;
+            nextStep();
+            return;
+        }
+
+        finished = true;
+        listener.onFinished(refine(best), scores[best]);
+    }
+
+    // Vertex of the parabola through the best fine position and its neighbours
+    private float refine(int best) {
+        if (best <= 0 || best >= positions.length - 1) {
+            return positions[best];
+        }
+
+        double left = scores[best - 1];
+        double centre = scores[best];
+        double right = scores[best + 1];
+        double denominator = left - 2 * centre + right;
+        if (denominator >= 0) {
+            return positions[best];
+        }
+
+        double offset = 0.5 * (left - right) / denominator;
+        float spacing = positions[best + 1] - positions[best];
+        return positions[best] + (float) (Math.max(-1, Math.min(1, offset)) * spacing);
+    }
+
+    private static int bestIndex(double[] values) {
+        int best = 0;
+        for (int i = 1; i < values.length; i++) {
+            if (values[i] > values[best]) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    private static float[] linearPositions(float from, float to, int count) {
+        float[] positions = new float[count];
+        for (int i = 0; i < count; i++) {
+            positions[i] = from + (to - from) * i / (count - 1);
+        }
+        return positions;
+    }
+}
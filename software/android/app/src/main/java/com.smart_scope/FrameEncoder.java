@@ -0,0 +1,142 @@
+package com.smart_scope;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+// Copies a frame out of the camera's buffer into a pooled one ready for the write queue: JPEG as delivered,
+// linear formats as 16-bit TIFF
+final class FrameEncoder {
+    private FrameEncoder() {
+    }
+
+    static int getBufferSize(int width, int height, int format) {
+        long pixels = (long) width * height;
+        if (format == CameraBackend.FORMAT_JPEG) {
+            return (int) Math.min(Integer.MAX_VALUE, pixels / 2);
+        }
+        return (int) Math.min(Integer.MAX_VALUE, pixels * 2 + 4096);
+    }
+
+    static ByteBuffer encode(CameraBackend.Frame frame, String description, FramePool pool, long timeoutMs)
+            throws IOException, InterruptedException {
+        ByteBuffer source = frame.getBuffer();
+
+        boolean isJpeg = frame.getFormat() == CameraBackend.FORMAT_JPEG;
+        int requiredSize = isJpeg ? source.remaining() :
+                TiffEncoder.encodedSize(frame.getWidth(), frame.getHeight(), description);
+
+        ByteBuffer target = acquire(pool, requiredSize, timeoutMs);
+        if (isJpeg) {
+            target.put(source);
+        } else {
+            TiffEncoder.encodeGray16(source, frame.getWidth(), frame.getHeight(),
+                    frame.getRowStride(), frame.getPixelStride(), getSourceBits(frame), description, target);
+        }
+
+        target.flip();
+        return target;
+    }
+
+    // Each window becomes its own TIFF, back to back in one buffer, windowSizes receives their encoded lengths.
+    // Only the window rows are read, the rest of the plane is never touched
+    static ByteBuffer encodeWindows(CameraBackend.Frame frame, List<FrameRoi> rois, String[] descriptions,
+                                    short[][] dark, int[] windowSizes, FramePool pool, long timeoutMs)
+            throws IOException, InterruptedException {
+        int alignment = getAlignment(frame);
+        int frameWidth = frame.getWidth();
+        int frameHeight = frame.getHeight();
+
+        int requiredSize = 0;
+        for (int i = 0; i < rois.size(); i++) {
+            FrameRoi roi = rois.get(i);
+            windowSizes[i] = TiffEncoder.encodedSize(roi.getWidth(frameWidth, alignment),
+                    roi.getHeight(frameHeight, alignment), descriptions[i]);
+            requiredSize += windowSizes[i];
+        }
+
+        ByteBuffer target = acquire(pool, requiredSize, timeoutMs);
+        ByteBuffer source = frame.getBuffer();
+        int rowStride = frame.getRowStride();
+        int pixelStride = frame.getPixelStride();
+        int sourceBase = source.position();
+        try {
+            for (int i = 0; i < rois.size(); i++) {
+                FrameRoi roi = rois.get(i);
+                source.position(sourceBase + roi.getTop(frameHeight, alignment) * rowStride +
+                        roi.getLeft(frameWidth, alignment) * pixelStride);
+                TiffEncoder.encodeGray16(source, roi.getWidth(frameWidth, alignment), roi.getHeight(frameHeight, alignment),
+                        rowStride, pixelStride, getSourceBits(frame), dark != null ? dark[i] : null, descriptions[i],
+                        target);
+            }
+        } finally {
+            source.position(sourceBase);
+        }
+
+        target.flip();
+        return target;
+    }
+
+    static String getFormatName(int format) {
+        switch (format) {
+            case CameraBackend.FORMAT_RAW_SENSOR:
+                return "RAW";
+            case CameraBackend.FORMAT_YUV_420_888:
+                return "YUV";
+            case CameraBackend.FORMAT_JPEG:
+                return "JPEG";
+            default:
+                return "Other format";
+        }
+    }
+
+    // TIFF description of a linear window, sensor levels are only written for RAW frames and when known
+    static String describeLinear(CameraBackend.Frame frame, long exposureNs, int iso, Integer blackLevel,
+                                 Integer whiteLevel, int left, int top, int width, int height) {
+        StringBuilder description = new StringBuilder();
+        description.append("format=").append(getFormatName(frame.getFormat()));
+        description.append(";width=").append(width);
+        description.append(";height=").append(height);
+        description.append(";timestampNs=").append(frame.getTimestamp());
+        description.append(";exposureNs=").append(exposureNs);
+        description.append(";iso=").append(iso);
+
+        if (frame.getFormat() == CameraBackend.FORMAT_RAW_SENSOR) {
+            if (whiteLevel != null) {
+                description.append(";whiteLevel=").append(whiteLevel);
+            }
+            if (blackLevel != null) {
+                description.append(";blackLevel=").append(blackLevel);
+            }
+        }
+
+        if (width != frame.getWidth() || height != frame.getHeight()) {
+            description.append(";roiLeft=").append(left);
+            description.append(";roiTop=").append(top);
+            description.append(";sensorWidth=").append(frame.getWidth());
+            description.append(";sensorHeight=").append(frame.getHeight());
+        }
+
+        return description.toString();
+    }
+
+    // RAW windows keep the Bayer phase
+    static int getAlignment(CameraBackend.Frame frame) {
+        return frame.getFormat() == CameraBackend.FORMAT_RAW_SENSOR ? 2 : 1;
+    }
+
+    private static int getSourceBits(CameraBackend.Frame frame) {
+        return frame.getFormat() == CameraBackend.FORMAT_RAW_SENSOR ? 16 : 8;
+    }
+
+    private static ByteBuffer acquire(FramePool pool, int requiredSize, long timeoutMs)
+            throws IOException, InterruptedException {
+        ByteBuffer target = pool != null ?
+                pool.acquire(requiredSize, timeoutMs) :
+                ByteBuffer.allocateDirect(requiredSize);
+        if (target == null) {
+            throw new IOException("No free frame buffer");
+        }
+        return target;
+    }
+}
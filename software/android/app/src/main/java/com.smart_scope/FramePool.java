@@ -0,0 +1,77 @@
+package com.smart_scope;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+final class FramePool {
+    private final int bufferSize;
+    private final int maxBuffers;
+    private final ArrayDeque<ByteBuffer> freeBuffers = new ArrayDeque<>();
+    private int allocatedBuffers = 0;
+
+    FramePool(int bufferSize, int maxBuffers) {
+        this.bufferSize = bufferSize;
+        this.maxBuffers = Math.max(1, maxBuffers);
+    }
+
+    int getBufferSize() {
+        return bufferSize;
+    }
+
+    int getMaxBuffers() {
+        return maxBuffers;
+    }
+
+    synchronized int getFreeBuffers() {
+        return freeBuffers.size();
+    }
+
+    synchronized long getHeldBytes() {
+        return (long) allocatedBuffers * bufferSize;
+    }
+
+    // Blocks while every pooled buffer is in use, returns null on timeout
+    ByteBuffer acquire(int minSize, long timeoutMs) throws InterruptedException {
+        if (minSize > bufferSize) {
+            return ByteBuffer.allocateDirect(minSize);
+        }
+
+        synchronized (this) {
+            long deadline = System.currentTimeMillis() + timeoutMs;
+            while (freeBuffers.isEmpty() && allocatedBuffers >= maxBuffers) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return null;
+                }
+                wait(remaining);
+            }
+
+            ByteBuffer buffer = freeBuffers.poll();
+            if (buffer == null) {
+                buffer = ByteBuffer.allocateDirect(bufferSize);
+                allocatedBuffers++;
+            }
+
+            buffer.clear();
+            return buffer;
+        }
+    }
+
+    synchronized void release(ByteBuffer buffer) {
+        if (buffer == null || buffer.capacity() != bufferSize || !buffer.isDirect()) {
+            return;
+        }
+
+        buffer.clear();
+        freeBuffers.push(buffer);
+        notifyAll();
+    }
+
+    synchronized int trimIdle() {
+        int released = freeBuffers.size();
+        allocatedBuffers -= released;
+        freeBuffers.clear();
+        notifyAll();
+        return released;
+    }
+}
@@ -0,0 +1,90 @@
+package com.smart_scope;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Reconstruction window stored instead of the full frame, placed like load_mat.m: centered, then shifted by the offset
+final class FrameRoi {
+    final int width;
+    final int height;
+    final int offsetX;
+    final int offsetY;
+
+    FrameRoi(int width, int height, int offsetX, int offsetY) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("ROI size must be positive: " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+        this.offsetX = offsetX;
+        this.offsetY = offsetY;
+    }
+
+    // Accepts a single {width, height, offsetX, offsetY} map or a list of them
+    @SuppressWarnings("unchecked")
+    static List<FrameRoi> parse(Object argument) {
+        List<FrameRoi> rois = new ArrayList<>();
+        if (argument instanceof Map) {
+            rois.add(fromMap((Map<String, Object>) argument));
+        } else if (argument instanceof List) {
+            for (Object item : (List<Object>) argument) {
+                if (!(item instanceof Map)) {
+                    throw new IllegalArgumentException("ROI list entries must be maps");
+                }
+                rois.add(fromMap((Map<String, Object>) item));
+            }
+        } else if (argument != null) {
+            throw new IllegalArgumentException("ROI must be a map or a list of maps");
+        }
+        return rois;
+    }
+
+    private static FrameRoi fromMap(Map<String, Object> map) {
+        return new FrameRoi(getInt(map, "width", 0), getInt(map, "height", 0),
+                getInt(map, "offsetX", 0), getInt(map, "offsetY", 0));
+    }
+
+    private static int getInt(Map<String, Object> map, String key, int defaultValue) {
+        Object value = map.get(key);
+        return value instanceof Number ? ((Number) value).intValue() : defaultValue;
+    }
+
+    // Alignment 2 keeps the Bayer phase of RAW windows identical to the full frame
+    int getWidth(int frameWidth, int alignment) {
+        return align(Math.min(width, frameWidth), alignment);
+    }
+
+    int getHeight(int frameHeight, int alignment) {
+        return align(Math.min(height, frameHeight), alignment);
+    }
+
+    int getLeft(int frameWidth, int alignment) {
+        return place(frameWidth, getWidth(frameWidth, alignment), offsetX, alignment);
+    }
+
+    int getTop(int frameHeight, int alignment) {
+        return place(frameHeight, getHeight(frameHeight, alignment), offsetY, alignment);
+    }
+
+    Map<String, Object> toMap() {
+        Map<String, Object> map = new HashMap<>();
+        map.put("width", width);
+        map.put("height", height);
+        map.put("offsetX", offsetX);
+        map.put("offsetY", offsetY);
+        return map;
+    }
+
+    // Zero-based form of round((total + 1) / 2) - round((size + 1) / 2) + 1 + offset
+    private static int place(int total, int size, int offset, int alignment) {
+        int start = (total + 2) / 2 - (size + 2) / 2 + offset;
+        start = Math.max(0, Math.min(start, total - size));
+        return start - start % alignment;
+    }
+
+    private static int align(int size, int alignment) {
+        return Math.max(alignment, size - size % alignment);
+    }
+}
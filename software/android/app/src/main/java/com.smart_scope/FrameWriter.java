@@ -0,0 +1,86 @@
+package com.smart_scope;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+final class FrameWriter {
+    interface WriteTask {
+        String write() throws IOException;
+    }
+
+    interface Callback {
+        void onWritten(String path);
+
+        void onFailed(Exception e);
+    }
+
+    private final int capacity;
+    private final Semaphore slots;
+    private final ExecutorService executor;
+
+    FrameWriter(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        this.slots = new Semaphore(this.capacity);
+        this.executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "Frame Writer");
+                    thread.setPriority(Thread.NORM_PRIORITY - 1);
+                    return thread;
+                });
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    int getPendingWrites() {
+        return capacity - slots.availablePermits();
+    }
+
+    // Blocks the caller while the queue is full, which pauses capture until storage catches up
+    boolean enqueue(WriteTask task, Callback callback, long timeoutMs) throws InterruptedException {
+        if (!slots.tryAcquire(timeoutMs, TimeUnit.MILLISECONDS)) {
+            return false;
+        }
+
+        try {
+            executor.execute(() -> {
+                try {
+                    String path = task.write();
+                    callback.onWritten(path);
+                } catch (Exception e) {
+                    callback.onFailed(e);
+                } finally {
+                    slots.release();
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            slots.release();
+            return false;
+        }
+    }
+
+    // Runs after every frame enqueued before it has been written
+    boolean flush(Runnable onFlushed) {
+        try {
+            executor.execute(onFlushed);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    boolean awaitTermination(long timeoutMs) throws InterruptedException {
+        return executor.awaitTermination(timeoutMs, TimeUnit.MILLISECONDS);
+    }
+}
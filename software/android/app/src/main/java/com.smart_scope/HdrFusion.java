@@ -0,0 +1,164 @@
+package com.smart_scope;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
+
+// Saturation-aware merge of an exposure bracket into one linear 16-bit frame per window. The bracket's images
+// arrive one at a time and the reader only holds a few, so each is folded into a per-pixel running mean as it
+// arrives and the result is written row by row into the encoder. The mean is kept in output units next to its
+// weight sum as a bfloat16, 4 bytes per pixel, less than the 16-bit bracket itself. One fusion serves every point
+// of a sequence
+final class HdrFusion {
+    static final float[] DEFAULT_EXPOSURE_RATIOS = {0.25f, 1.0f, 4.0f};
+
+    // Samples this close to the white level are treated as clipped and get no weight
+    private static final float SATURATION_FRACTION = 0.97f;
+    // Keeps a pixel that is dark in every exposure defined instead of dividing by zero
+    private static final float MIN_WEIGHT = 1e-3f;
+
+    private static final int WEIGHT_MASK = 0xffff0000;
+    private static final int MEAN_MASK = 0xffff;
+
+    private final int black;
+    private final int white;
+    private final float outputGain;
+    private final int[] left;
+    private final int[] top;
+    private final int[] width;
+    private final int[] height;
+    // Per pixel: weight sum as the upper half of a float, weighted mean in output units below it
+    private final int[][] accumulators;
+    private long shortestExposureNs = 1;
+    private long longestExposureNs = 1;
+    private int frames = 0;
+
+    HdrFusion(List<FrameRoi> windows, int frameWidth, int frameHeight, int alignment, int black, int white) {
+        this.black = black;
+        this.white = white;
+        // Radiance is expressed in counts at the shortest exposure, stretched over the full 16-bit range
+        this.outputGain = 65535.0f / Math.max(1, white - black);
+
+        int count = windows.size();
+        this.left = new int[count];
+        this.top = new int[count];
+        this.width = new int[count];
+        this.height = new int[count];
+        this.accumulators = new int[count][];
+        for (int i = 0; i < count; i++) {
+            FrameRoi window = windows.get(i);
+            width[i] = window.getWidth(frameWidth, alignment);
+            height[i] = window.getHeight(frameHeight, alignment);
+            left[i] = window.getLeft(frameWidth, alignment);
+            top[i] = window.getTop(frameHeight, alignment);
+            accumulators[i] = new int[width[i] * height[i]];
+        }
+    }
+
+    // Starts the bracket of the next point, its exposures may differ from the last one's
+    void begin(long[] exposuresNs) {
+        long shortest = Long.MAX_VALUE;
+        long longest = 1;
+        for (long exposure : exposuresNs) {
+            shortest = Math.min(shortest, exposure);
+            longest = Math.max(longest, exposure);
+        }
+        shortestExposureNs = Math.max(1, Math.min(shortest, longest));
+        longestExposureNs = longest;
+        for (int[] accumulator : accumulators) {
+            Arrays.fill(accumulator, 0);
+        }
+        frames = 0;
+    }
+
+    int getFrameCount() {
+        return frames;
+    }
+
+    long getHeldBytes() {
+        long bytes = 0;
+        for (int[] accumulator : accumulators) {
+            bytes += accumulator.length * 4L;
+        }
+        return bytes;
+    }
+
+    int getWindowWidth(int window) {
+        return width[window];
+    }
+
+    int getWindowHeight(int window) {
+        return height[window];
+    }
+
+    int getWindowLeft(int window) {
+        return left[window];
+    }
+
+    int getWindowTop(int window) {
+        return top[window];
+    }
+
+    // The current bracket's shortest exposure, fused samples are counts at this exposure
+    long getReferenceExposureNs() {
+        return shortestExposureNs;
+    }
+
+    // Output value = radiance in counts per ns * gain
+    double getRadianceScale() {
+        return (double) outputGain * shortestExposureNs;
+    }
+
+    void add(ByteBuffer source, int rowStride, int pixelStride, int sourceBits, long exposureNs) {
+        ByteOrder sourceOrder = source.order();
+        source.order(ByteOrder.LITTLE_ENDIAN);
+        int sourceBase = source.position();
+
+        int saturation = black + (int) ((white - black) * SATURATION_FRACTION);
+        float toOutput = (float) shortestExposureNs / Math.max(1, exposureNs) * outputGain;
+        // Longer exposures collect more photons per count of noise, so they dominate where they are not clipped
+        float exposureWeight = (float) exposureNs / longestExposureNs;
+        float range = Math.max(1, saturation - black);
+
+        for (int i = 0; i < accumulators.length; i++) {
+            int[] accumulator = accumulators[i];
+            int index = 0;
+            for (int y = 0; y < height[i]; y++) {
+                int rowStart = sourceBase + (top[i] + y) * rowStride + left[i] * pixelStride;
+                for (int x = 0; x < width[i]; x++, index++) {
+                    int position = rowStart + x * pixelStride;
+                    int sample = sourceBits > 8 ? source.getShort(position) & 0xffff : source.get(position) & 0xff;
+                    if (sample >= saturation) {
+                        continue;
+                    }
+
+                    // Hat function over the usable range, highest in the middle of the sensor response
+                    float level = (sample - black) / range;
+                    float weight = exposureWeight * Math.max(MIN_WEIGHT, 1.0f - Math.abs(2.0f * level - 1.0f));
+                    float radiance = Math.max(0, sample - black) * toOutput;
+
+                    int packed = accumulator[index];
+                    float weightSum = Float.intBitsToFloat(packed & WEIGHT_MASK);
+                    float total = weightSum + weight;
+                    float mean = ((packed & MEAN_MASK) * weightSum + radiance * weight) / total;
+                    // Rounded to the nearest bfloat16
+                    int totalBits = (Float.floatToRawIntBits(total) + 0x8000) & WEIGHT_MASK;
+                    accumulator[index] = totalBits | Math.min(MEAN_MASK, Math.round(mean));
+                }
+            }
+        }
+
+        source.order(sourceOrder);
+        frames++;
+    }
+
+    // Writes one window's fused 16-bit little-endian samples, pixels clipped in every exposure become white
+    void writeWindow(int window, ByteBuffer target) {
+        int[] accumulator = accumulators[window];
+        target.order(ByteOrder.LITTLE_ENDIAN);
+        for (int packed : accumulator) {
+            target.putShort((short) ((packed & WEIGHT_MASK) != 0 ? packed & MEAN_MASK : MEAN_MASK));
+        }
+    }
+}
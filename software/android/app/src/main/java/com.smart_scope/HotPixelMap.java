@@ -0,0 +1,331 @@
+package com.smart_scope;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Sorted sensor coordinates (y * width + x) of defective pixels for one camera, format, size and ISO
+final class HotPixelMap {
+    static final String EXTENSION = ".sshp";
+    static final byte[] MAGIC = {'S', 'S', 'H', 'O', 'T', 'P', 'I', 'X'};
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 32;
+
+    private static final HotPixelMap NONE = new HotPixelMap(0, 0, 1, new int[0]);
+    private static final Map<String, HotPixelMap> cache = new ConcurrentHashMap<>();
+
+    final int width;
+    final int height;
+    final int neighbourDistance;
+    final int[] pixels;
+
+    HotPixelMap(int width, int height, int neighbourDistance, int[] pixels) {
+        this.width = width;
+        this.height = height;
+        this.neighbourDistance = neighbourDistance;
+        this.pixels = pixels;
+    }
+
+    int size() {
+        return pixels.length;
+    }
+
+    static String key(String cameraId, int format, int width, int height, int iso) {
+        return cameraId + "_" + format + "_" + width + "x" + height + "_iso" + iso;
+    }
+
+    // Missing maps are remembered too, so sequences without a calibration never touch the disk twice
+    static HotPixelMap get(File dir, String key) {
+        HotPixelMap map = cache.get(key);
+        if (map == null) {
+            File file = new File(dir, key + EXTENSION);
+            try {
+                map = file.exists() ? read(file) : NONE;
+            } catch (IOException e) {
+                map = NONE;
+            }
+            cache.put(key, map);
+        }
+        return map != NONE ? map : null;
+    }
+
+    static void put(File dir, String key, HotPixelMap map) throws IOException {
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Cannot create directory " + dir);
+        }
+        map.writeTo(new File(dir, key + EXTENSION));
+        cache.put(key, map);
+    }
+
+    static long getCachedBytes() {
+        long bytes = 0;
+        for (HotPixelMap map : cache.values()) {
+            bytes += map.pixels.length * 4L;
+        }
+        return bytes;
+    }
+
+    static void clearCache() {
+        cache.clear();
+    }
+
+    void writeTo(File file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + pixels.length * 4).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(width);
+        buffer.putInt(height);
+        buffer.putInt(neighbourDistance);
+        buffer.putInt(pixels.length);
+        buffer.putInt(0);
+        for (int pixel : pixels) {
+            buffer.putInt(pixel);
+        }
+        buffer.flip();
+
+        try (FileOutputStream out = new FileOutputStream(file);
+             FileChannel channel = out.getChannel()) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+    }
+
+    static HotPixelMap read(File file) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+            FileChannel channel = randomAccessFile.getChannel();
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                    .order(ByteOrder.LITTLE_ENDIAN);
+
+            byte[] magic = new byte[MAGIC.length];
+            buffer.get(magic);
+            if (!Arrays.equals(magic, MAGIC) || buffer.getInt() != VERSION) {
+                throw new IOException("Not a hot pixel map: " + file);
+            }
+
+            int width = buffer.getInt();
+            int height = buffer.getInt();
+            int neighbourDistance = buffer.getInt();
+            int count = buffer.getInt();
+            buffer.position(HEADER_SIZE);
+
+            int[] pixels = new int[count];
+            buffer.asIntBuffer().get(pixels);
+            return new HotPixelMap(width, height, neighbourDistance, pixels);
+        }
+    }
+
+    // Replaces every defective sample inside a window of an encoded 16-bit little-endian image
+    // with the mean of its same-colour neighbours, good pixels are never touched
+    int correct(ByteBuffer data, int pixelOffset, int left, int top, int windowWidth, int windowHeight) {
+        int first = Arrays.binarySearch(pixels, top * width);
+        if (first < 0) {
+            first = -first - 1;
+        }
+        int end = (top + windowHeight) * width;
+        int d = neighbourDistance;
+        int corrected = 0;
+
+        for (int i = first; i < pixels.length && pixels[i] < end; i++) {
+            int x = pixels[i] % width - left;
+            int y = pixels[i] / width - top;
+            if (x < 0 || x >= windowWidth) {
+                continue;
+            }
+
+            int sum = 0;
+            int count = 0;
+            if (x - d >= 0) {
+                sum += sample(data, pixelOffset, windowWidth, x - d, y);
+                count++;
+            }
+            if (x + d < windowWidth) {
+                sum += sample(data, pixelOffset, windowWidth, x + d, y);
+                count++;
+            }
+            if (y - d >= 0) {
+                sum += sample(data, pixelOffset, windowWidth, x, y - d);
+                count++;
+            }
+            if (y + d < windowHeight) {
+                sum += sample(data, pixelOffset, windowWidth, x, y + d);
+                count++;
+            }
+
+            if (count > 0) {
+                data.putShort(pixelOffset + (y * windowWidth + x) * 2, (short) ((sum + count / 2) / count));
+                corrected++;
+            }
+        }
+        return corrected;
+    }
+
+    // Same for a window encoded as its own TIFF, whose 16-bit samples are the last bytes of data
+    int correctEncoded(ByteBuffer data, int format, int frameWidth, int frameHeight, FrameRoi window) {
+        int alignment = format == CameraBackend.FORMAT_RAW_SENSOR ? 2 : 1;
+        int windowWidth = window.getWidth(frameWidth, alignment);
+        int windowHeight = window.getHeight(frameHeight, alignment);
+        int pixelOffset = data.limit() - windowWidth * windowHeight * 2;
+        return correct(data, pixelOffset, window.getLeft(frameWidth, alignment), window.getTop(frameHeight, alignment),
+                windowWidth, windowHeight);
+    }
+
+    private static int sample(ByteBuffer data, int pixelOffset, int windowWidth, int x, int y) {
+        return data.getShort(pixelOffset + (y * windowWidth + x) * 2) & 0xffff;
+    }
+
+    // Streams dark frames one at a time: a pixel is defective when it stands far above the frame statistics
+    // and above its same-colour neighbours in most of the frames. Only candidates are ever stored, as sorted
+    // coordinates with a hit count, and a frame that is not dark stops at the cap instead of filling memory
+    static final class Detector {
+        private static final int SAMPLE_STEP = 16;
+        private static final float SIGMA_THRESHOLD = 8.0f;
+        private static final int MIN_EXCESS = 16;
+        private static final int MAX_CANDIDATES = 1 << 18;
+
+        private final int width;
+        private final int height;
+        private final int neighbourDistance;
+        private final int targetFrames;
+        private int[] candidates = new int[0];
+        private int[] hits = new int[0];
+        private int candidateCount = 0;
+        // Candidates of the frame being added, in scan order and so already sorted
+        private int[] frameCandidates = new int[1024];
+        private int frames = 0;
+
+        Detector(int width, int height, int neighbourDistance, int targetFrames) {
+            this.width = width;
+            this.height = height;
+            this.neighbourDistance = neighbourDistance;
+            this.targetFrames = Math.max(1, targetFrames);
+        }
+
+        int getTargetFrames() {
+            return targetFrames;
+        }
+
+        synchronized long getHeldBytes() {
+            return (candidates.length + hits.length + frameCandidates.length) * 4L;
+        }
+
+        // Returns true once the target number of frames has been added
+        synchronized boolean add(ByteBuffer source, int rowStride, int pixelStride, int sourceBits) throws IOException {
+            if (frames >= targetFrames) {
+                return true;
+            }
+
+            ByteOrder sourceOrder = source.order();
+            source.order(ByteOrder.LITTLE_ENDIAN);
+            int base = source.position();
+
+            try {
+                // Frame statistics from a sparse grid, the full pass below only compares against the threshold
+                long sum = 0;
+                long sumSquares = 0;
+                int count = 0;
+                for (int y = 0; y < height; y += SAMPLE_STEP) {
+                    for (int x = 0; x < width; x += SAMPLE_STEP) {
+                        int value = read(source, base, rowStride, pixelStride, sourceBits, x, y);
+                        sum += value;
+                        sumSquares += (long) value * value;
+                        count++;
+                    }
+                }
+                double mean = (double) sum / count;
+                double sigma = Math.sqrt(Math.max(0, (double) sumSquares / count - mean * mean));
+                int threshold = (int) Math.ceil(mean + Math.max(MIN_EXCESS, SIGMA_THRESHOLD * sigma));
+
+                int d = neighbourDistance;
+                int found = 0;
+                for (int y = 0; y < height; y++) {
+                    for (int x = 0; x < width; x++) {
+                        int value = read(source, base, rowStride, pixelStride, sourceBits, x, y);
+                        if (value < threshold) {
+                            continue;
+                        }
+
+                        int left = x >= d ? read(source, base, rowStride, pixelStride, sourceBits, x - d, y) : 0;
+                        int right = x + d < width ?
+                                read(source, base, rowStride, pixelStride, sourceBits, x + d, y) : 0;
+                        if (value - Math.max(left, right) < MIN_EXCESS) {
+                            continue;
+                        }
+
+                        if (found == frameCandidates.length) {
+                            if (found >= MAX_CANDIDATES) {
+                                throw tooManyCandidates();
+                            }
+                            frameCandidates = Arrays.copyOf(frameCandidates, Math.min(found * 2, MAX_CANDIDATES));
+                        }
+                        frameCandidates[found++] = y * width + x;
+                    }
+                }
+                merge(found);
+            } finally {
+                source.order(sourceOrder);
+            }
+
+            return ++frames >= targetFrames;
+        }
+
+        // Pixels flagged in at least three quarters of the frames
+        synchronized HotPixelMap build() {
+            int required = Math.max(1, (frames * 3 + 3) / 4);
+            int[] pixels = new int[candidateCount];
+            int count = 0;
+            for (int i = 0; i < candidateCount; i++) {
+                if (hits[i] >= required) {
+                    pixels[count++] = candidates[i];
+                }
+            }
+            return new HotPixelMap(width, height, neighbourDistance, Arrays.copyOf(pixels, count));
+        }
+
+        // Sorted merge of this frame's candidates into the running ones
+        private void merge(int found) throws IOException {
+            int[] mergedCandidates = new int[candidateCount + found];
+            int[] mergedHits = new int[mergedCandidates.length];
+            int count = 0;
+            int i = 0;
+            int j = 0;
+            while (i < candidateCount || j < found) {
+                if (j == found || (i < candidateCount && candidates[i] < frameCandidates[j])) {
+                    mergedCandidates[count] = candidates[i];
+                    mergedHits[count++] = hits[i++];
+                } else if (i == candidateCount || frameCandidates[j] < candidates[i]) {
+                    mergedCandidates[count] = frameCandidates[j++];
+                    mergedHits[count++] = 1;
+                } else {
+                    mergedCandidates[count] = candidates[i];
+                    mergedHits[count++] = hits[i++] + 1;
+                    j++;
+                }
+            }
+            if (count > MAX_CANDIDATES) {
+                throw tooManyCandidates();
+            }
+            candidates = mergedCandidates;
+            hits = mergedHits;
+            candidateCount = count;
+        }
+
+        private static IOException tooManyCandidates() {
+            return new IOException("Too many defective pixel candidates, is the sensor really dark?");
+        }
+
+        private static int read(ByteBuffer source, int base, int rowStride, int pixelStride, int sourceBits,
+                                int x, int y) {
+            int index = base + y * rowStride + x * pixelStride;
+            return sourceBits > 8 ? source.getShort(index) & 0xffff : source.get(index) & 0xff;
+        }
+    }
+}
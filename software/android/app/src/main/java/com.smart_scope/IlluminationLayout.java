@@ -0,0 +1,157 @@
+package com.smart_scope;
+
+// Dot positions of the AIKK, FPM and sAIKK patterns in logical pixels around the pattern center,
+// computed the same way as the Flutter illumination widgets
+final class IlluminationLayout {
+    final String type;
+    final float[] x;
+    final float[] y;
+    final float[] radius;
+
+    private IlluminationLayout(String type, float[] x, float[] y, float[] radius) {
+        this.type = type;
+        this.x = x;
+        this.y = y;
+        this.radius = radius;
+    }
+
+    int getPointCount() {
+        return x.length;
+    }
+
+    // Pattern centre in logical px: the widget's origin plus the physical offset, as the Flutter widgets place it
+    static float getCenter(float origin, float offsetMm, float ppi) {
+        return origin + offsetMm * ppi / 25.4f;
+    }
+
+    // Side of the square a dot is drawn into, in view pixels, with a pixel of margin for antialiasing
+    int getDotSize(int index, float density) {
+        return (int) Math.ceil(radius[index] * density * 2) + 2;
+    }
+
+    // Corner of that square relative to the pattern centre, in view pixels. Dots past the view edge are not moved
+    float getDotLeft(int index, float density) {
+        return x[index] * density - getDotSize(index, density) / 2f;
+    }
+
+    float getDotTop(int index, float density) {
+        return y[index] * density - getDotSize(index, density) / 2f;
+    }
+
+    static IlluminationLayout aikk(float radius, float spacing, boolean showCenterPoint, float centerRadius) {
+        if (showCenterPoint) {
+            return new IlluminationLayout("AIKK", new float[]{0}, new float[]{0}, new float[]{centerRadius});
+        }
+
+        return new IlluminationLayout("AIKK",
+                new float[]{0, spacing, 0, -spacing},
+                new float[]{-spacing, 0, spacing, 0},
+                new float[]{radius, radius, radius, radius});
+    }
+
+    static IlluminationLayout fpm(int rows, int columns, float radius, float spacing) {
+        rows = Math.max(1, rows);
+        columns = Math.max(1, columns);
+
+        int count = rows * columns;
+        float[] x = new float[count];
+        float[] y = new float[count];
+        float[] r = new float[count];
+
+        float startX = -(columns - 1) * spacing / 2;
+        float startY = -(rows - 1) * spacing / 2;
+
+        int index = 0;
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < columns; col++) {
+                x[index] = startX + col * spacing;
+                y[index] = startY + row * spacing;
+                r[index] = radius;
+                index++;
+            }
+        }
+
+        return new IlluminationLayout("FPM", x, y, r);
+    }
+
+    static IlluminationLayout saikk(float radius, float spacing, int innerRingCount, double[] outerRingOverlapRatios,
+                                    float[] outerRingRadiusRatios) {
+        int outerRingCount = outerRingOverlapRatios.length;
+
+        double[] outerRingR = new double[outerRingCount];
+        double[] outerRingRadius = new double[outerRingCount];
+        int[] outerRingPoints = new int[outerRingCount];
+
+        double accumulated = spacing;
+        for (int ring = 0; ring < outerRingCount; ring++) {
+            double theta = thetaFromOverlap(outerRingOverlapRatios[ring]);
+            outerRingR[ring] = 2 * spacing * Math.cos(theta);
+            accumulated += outerRingR[ring];
+            outerRingRadius[ring] = accumulated;
+
+            int points = (int) Math.floor(2 * Math.PI * outerRingRadius[ring] / outerRingR[ring]);
+            if (points % 2 != 0) points++;
+            if (points < 6) points = 6;
+            outerRingPoints[ring] = points;
+        }
+
+        double ringSpacing = spacing / 2.0;
+        int[] innerRingPoints = new int[innerRingCount];
+        int count = 1;
+        for (int ring = 1; ring <= innerRingCount; ring++) {
+            double r = ring * ringSpacing;
+            int points = Math.max(6, (int) Math.round(2 * Math.PI * r / ringSpacing));
+            points = (int) Math.ceil(points / 4.0) * 4;
+            innerRingPoints[ring - 1] = points;
+            count += points;
+        }
+        for (int points : outerRingPoints) {
+            count += points;
+        }
+
+        float[] x = new float[count];
+        float[] y = new float[count];
+        float[] r = new float[count];
+
+        int index = 0;
+        r[index++] = radius;
+
+        for (int ring = 1; ring <= innerRingCount; ring++) {
+            index = addRing(x, y, r, index, ring * ringSpacing, innerRingPoints[ring - 1], radius);
+        }
+
+        for (int ring = 0; ring < outerRingCount; ring++) {
+            float ratio = outerRingRadiusRatios[Math.min(ring, outerRingRadiusRatios.length - 1)];
+            index = addRing(x, y, r, index, outerRingRadius[ring], outerRingPoints[ring], radius * ratio);
+        }
+
+        return new IlluminationLayout("sAIKK", x, y, r);
+    }
+
+    private static int addRing(float[] x, float[] y, float[] r, int index, double ringRadius, int points,
+                               float dotRadius) {
+        for (int i = 0; i < points; i++) {
+            double angle = (i * 2 * Math.PI) / points;
+            x[index] = (float) (ringRadius * Math.cos(angle));
+            y[index] = (float) (ringRadius * Math.sin(angle));
+            r[index] = dotRadius;
+            index++;
+        }
+        return index;
+    }
+
+    // Solves overlap = (2 * theta - sin(2 * theta)) / pi by bisection
+    private static double thetaFromOverlap(double overlap) {
+        double low = 0.0;
+        double high = Math.PI / 2;
+        while (high - low > 1e-6) {
+            double mid = (low + high) / 2;
+            if ((2 * mid - Math.sin(2 * mid)) / Math.PI < overlap) {
+                low = mid;
+            } else {
+                high = mid;
+            }
+        }
+        return (low + high) / 2;
+    }
+}
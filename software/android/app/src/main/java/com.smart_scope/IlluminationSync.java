@@ -0,0 +1,62 @@
+package com.smart_scope;
+
+import android.hardware.camera2.CameraCharacteristics;
+import android.os.SystemClock;
+import android.view.Choreographer;
+
+// Turns "Flutter has drawn the next pattern" into a sensor-clock instant after which an exposure only sees that pattern
+final class IlluminationSync {
+    interface Callback {
+        void onPresented(long presentedSensorNs);
+    }
+
+    static final int DEFAULT_SETTLE_FRAMES = 2;
+
+    private static final long DEFAULT_FRAME_INTERVAL_NS = 16_666_667L;
+    private static final long MAX_FRAME_INTERVAL_NS = 100_000_000L;
+
+    private final boolean realtimeTimestamps;
+    private final int settleFrames;
+
+    IlluminationSync(Integer timestampSource, int settleFrames) {
+        this.realtimeTimestamps = timestampSource != null &&
+                timestampSource == CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE_REALTIME;
+        this.settleFrames = Math.max(1, settleFrames);
+    }
+
+    boolean hasComparableTimestamps() {
+        return realtimeTimestamps;
+    }
+
+    // Must run on the main thread, the callback fires from the vsync that follows the settle frames
+    void awaitPresented(Callback callback) {
+        final Choreographer choreographer = Choreographer.getInstance();
+        choreographer.postFrameCallback(new Choreographer.FrameCallback() {
+            private int frames = 0;
+            private long lastFrameNs = 0;
+            private long frameIntervalNs = DEFAULT_FRAME_INTERVAL_NS;
+
+            @Override
+            public void doFrame(long frameTimeNanos) {
+                if (lastFrameNs != 0) {
+                    frameIntervalNs = Math.min(MAX_FRAME_INTERVAL_NS, frameTimeNanos - lastFrameNs);
+                }
+                lastFrameNs = frameTimeNanos;
+
+                if (++frames < settleFrames) {
+                    choreographer.postFrameCallback(this);
+                    return;
+                }
+
+                // The buffer queued in the last settle frame is scanned out during the following interval
+                long presentedNs = frameTimeNanos + frameIntervalNs;
+                callback.onPresented(realtimeTimestamps ? toSensorTime(presentedNs) : CaptureSequence.NO_CUTOFF);
+            }
+        });
+    }
+
+    // Choreographer reports CLOCK_MONOTONIC, REALTIME sensor timestamps use CLOCK_BOOTTIME
+    private static long toSensorTime(long monotonicNs) {
+        return monotonicNs + (SystemClock.elapsedRealtimeNanos() - System.nanoTime());
+    }
+}
@@ -0,0 +1,93 @@
+package com.smart_scope;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Picture;
+import android.os.Build;
+import android.view.View;
+
+// Full-screen overlay above the Flutter view, every pattern is recorded once so switching is a single redraw
+class IlluminationView extends View {
+    private Picture[] patterns = new Picture[0];
+    private float[] patternLeft = new float[0];
+    private float[] patternTop = new float[0];
+    private float centerX = 0;
+    private float centerY = 0;
+    private int activePattern = -1;
+
+    IlluminationView(Context context) {
+        super(context);
+        setWillNotDraw(false);
+        setClickable(false);
+        setFocusable(false);
+        setImportantForAccessibility(IMPORTANT_FOR_ACCESSIBILITY_NO);
+
+        // Hardware canvases only replay Pictures from API 23
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+            setLayerType(LAYER_TYPE_SOFTWARE, null);
+        }
+    }
+
+    int getPatternCount() {
+        return patterns.length;
+    }
+
+    void prepare(IlluminationLayout layout, float centerX, float centerY, float density, int color) {
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paint.setStyle(Paint.Style.FILL);
+        paint.setColor(color);
+
+        int count = layout.getPointCount();
+        Picture[] recorded = new Picture[count];
+        float[] left = new float[count];
+        float[] top = new float[count];
+        for (int i = 0; i < count; i++) {
+            float radius = layout.radius[i] * density;
+            int size = layout.getDotSize(i, density);
+
+            // Recorded at its own origin so the picture bounds never cull the dot
+            Picture picture = new Picture();
+            Canvas canvas = picture.beginRecording(size, size);
+            canvas.drawCircle(size / 2f, size / 2f, radius, paint);
+            picture.endRecording();
+
+            recorded[i] = picture;
+            left[i] = layout.getDotLeft(i, density);
+            top[i] = layout.getDotTop(i, density);
+        }
+
+        this.patterns = recorded;
+        this.patternLeft = left;
+        this.patternTop = top;
+        this.centerX = centerX;
+        this.centerY = centerY;
+        this.activePattern = -1;
+        invalidate();
+    }
+
+    void showPattern(int index) {
+        activePattern = patterns.length > 0 ? ((index % patterns.length) + patterns.length) % patterns.length : -1;
+        invalidate();
+    }
+
+    void clearPattern() {
+        activePattern = -1;
+        invalidate();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+
+        int index = activePattern;
+        if (index < 0 || index >= patterns.length) {
+            return;
+        }
+
+        canvas.save();
+        canvas.translate(centerX + patternLeft[index], centerY + patternTop[index]);
+        canvas.drawPicture(patterns[index]);
+        canvas.restore();
+    }
+}
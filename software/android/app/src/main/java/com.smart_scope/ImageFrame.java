@@ -0,0 +1,71 @@
+package com.smart_scope;
+
+import android.media.Image;
+
+import java.nio.ByteBuffer;
+
+// Camera2 image as seen by the pipeline. Closing it is left to the ImageReader listener, unless the frame was
+// handed over with onClosed: then closing the frame closes the image and runs onClosed
+final class ImageFrame implements CameraBackend.Frame {
+    private final Image image;
+    private final Image.Plane plane;
+    private final Runnable onClosed;
+    private boolean closed = false;
+
+    ImageFrame(Image image) {
+        this(image, null);
+    }
+
+    ImageFrame(Image image, Runnable onClosed) {
+        this.image = image;
+        this.plane = image.getPlanes()[0];
+        this.onClosed = onClosed;
+    }
+
+    @Override
+    public int getFormat() {
+        return image.getFormat();
+    }
+
+    @Override
+    public int getWidth() {
+        return image.getWidth();
+    }
+
+    @Override
+    public int getHeight() {
+        return image.getHeight();
+    }
+
+    @Override
+    public long getTimestamp() {
+        return image.getTimestamp();
+    }
+
+    @Override
+    public ByteBuffer getBuffer() {
+        return plane.getBuffer();
+    }
+
+    @Override
+    public int getRowStride() {
+        return plane.getRowStride();
+    }
+
+    @Override
+    public int getPixelStride() {
+        return plane.getPixelStride();
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (onClosed == null || closed) {
+                return;
+            }
+            closed = true;
+        }
+        image.close();
+        onClosed.run();
+    }
+}
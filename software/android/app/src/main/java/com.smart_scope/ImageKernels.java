@@ -0,0 +1,57 @@
+package com.smart_scope;
+
+import java.nio.ByteBuffer;
+
+// Pixel loops of the plugin that need no Android types, so the JMH module can measure exactly what ships
+final class ImageKernels {
+    private ImageKernels() {
+    }
+
+    // Mean of (r + g + b) / 3 over the first count packed ARGB pixels, on the 0..255 scale
+    static double meanIntensity(int[] argb, int count) {
+        long total = 0;
+        for (int i = 0; i < count; i++) {
+            int pixel = argb[i];
+            total += ((pixel >> 16) & 0xff) + ((pixel >> 8) & 0xff) + (pixel & 0xff);
+        }
+        return count > 0 ? total / (3.0 * count) : 0;
+    }
+
+    // Mean squared Sobel gradient magnitude over the centre 40% of an 8-bit plane, sampled every step pixels. Grows
+    // monotonically as the image comes into focus
+    static double tenengrad(ByteBuffer buffer, int base, int rowStride, int pixelStride, int width, int height,
+                            int step) {
+        int startX = Math.max(1, width * 3 / 10);
+        int startY = Math.max(1, height * 3 / 10);
+        int endX = Math.min(width - 1, width - startX);
+        int endY = Math.min(height - 1, height - startY);
+
+        long sum = 0;
+        int count = 0;
+        for (int y = startY; y < endY; y += step) {
+            int above = base + (y - 1) * rowStride;
+            int row = above + rowStride;
+            int below = row + rowStride;
+            for (int x = startX; x < endX; x += step) {
+                int left = (x - 1) * pixelStride;
+                int centre = left + pixelStride;
+                int right = centre + pixelStride;
+
+                int topLeft = buffer.get(above + left) & 0xff;
+                int top = buffer.get(above + centre) & 0xff;
+                int topRight = buffer.get(above + right) & 0xff;
+                int midLeft = buffer.get(row + left) & 0xff;
+                int midRight = buffer.get(row + right) & 0xff;
+                int bottomLeft = buffer.get(below + left) & 0xff;
+                int bottom = buffer.get(below + centre) & 0xff;
+                int bottomRight = buffer.get(below + right) & 0xff;
+
+                int gx = topRight + 2 * midRight + bottomRight - topLeft - 2 * midLeft - bottomLeft;
+                int gy = bottomLeft + 2 * bottom + bottomRight - topLeft - 2 * top - topRight;
+                sum += gx * gx + gy * gy;
+                count++;
+            }
+        }
+        return count > 0 ? (double) sum / count : 0;
+    }
+}
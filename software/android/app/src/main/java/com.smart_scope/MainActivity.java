@@ -6,6 +6,9 @@ import android.content.ComponentCallbacks2;
 import android.content.res.Configuration;
 import android.util.Log;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import io.flutter.embedding.android.FlutterActivity;
 import io.flutter.embedding.engine.FlutterEngine;
 import io.flutter.plugins.GeneratedPluginRegistrant;
@@ -30,11 +33,41 @@ public class MainActivity extends FlutterActivity implements ComponentCallbacks2
 
         memoryChannel = new MethodChannel(flutterEngine.getDartExecutor().getBinaryMessenger(), "smart_scope/memory");
         memoryChannel.setMethodCallHandler((call, result) -> {
-            if (call.method.equals("releaseMemory")) {
-                System.gc();
-                result.success(true);
-            } else {
-                result.notImplemented();
+            MemoryBudget budget = camera2Plugin != null ? camera2Plugin.getMemoryBudget() : null;
+            if (budget == null) {
+                result.error("NO_PLUGIN", "Camera plugin not attached", null);
+                return;
+            }
+
+            switch (call.method) {
+                case "releaseMemory":
+                    // Caches and idle buffers only, what an explicit request can give up without visible effect
+                    result.success(budget.trim(MemoryBudget.TIER_IDLE_POOLS));
+                    break;
+
+                case "setMemoryBudget":
+                    Number limitMb = call.argument("limitMb");
+                    if (limitMb == null || limitMb.longValue() <= 0) {
+                        result.error("INVALID_ARGS", "Positive limitMb required", null);
+                        break;
+                    }
+                    budget.setLimitBytes(limitMb.longValue() * 1024 * 1024);
+                    result.success(budget.enforce());
+                    break;
+
+                case "getMemoryUsage":
+                    Map<String, Object> usage = new HashMap<>();
+                    usage.put("limitBytes", budget.getLimitBytes());
+                    usage.put("heldBytes", budget.getHeldBytes());
+                    for (int tier = MemoryBudget.TIER_CACHES; tier <= MemoryBudget.TIER_CAMERA; tier++) {
+                        usage.put(MemoryBudget.getTierName(tier), budget.getHeldBytes(tier));
+                    }
+                    result.success(usage);
+                    break;
+
+                default:
+                    result.notImplemented();
+                    break;
             }
         });
     }
@@ -48,80 +81,32 @@ public class MainActivity extends FlutterActivity implements ComponentCallbacks2
 
     @Override
     public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
         Log.d(TAG, "onTrimMemory: " + level);
-        
-        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL || 
-            level >= ComponentCallbacks2.TRIM_MEMORY_COMPLETE) {
-            if (camera2Plugin != null) {
-                try {
-                    camera2Plugin.onMethodCall(
-                        new io.flutter.plugin.common.MethodCall("disposeCamera", null),
-                        new io.flutter.plugin.common.MethodChannel.Result() {
-                            @Override
-                            public void success(Object result) {
-                                Log.d(TAG, "Camera resource released successfully");
-                            }
-                            
-                            @Override
-                            public void error(String errorCode, String errorMessage, Object errorDetails) {
-                                Log.e(TAG, "Camera resource release failed: " + errorMessage);
-                            }
-                            
-                            @Override
-                            public void notImplemented() {
-                                Log.e(TAG, "Method not implemented");
-                            }
-                        }
-                    );
-                } catch (Exception e) {
-                    Log.e(TAG, "Error releasing camera resources: " + e.getMessage());
-                }
-            }
-            
-            if (memoryChannel != null) {
-                memoryChannel.invokeMethod("onLowMemory", null);
-            }
-            
-            System.gc();
-        }
+        trimMemory(level);
     }
-    
+
     @Override
     public void onLowMemory() {
         super.onLowMemory();
         Log.d(TAG, "onLowMemory");
-        
-        if (camera2Plugin != null) {
-            try {
-                camera2Plugin.onMethodCall(
-                    new io.flutter.plugin.common.MethodCall("disposeCamera", null),
-                    new io.flutter.plugin.common.MethodChannel.Result() {
-                        @Override
-                        public void success(Object result) {
-                            Log.d(TAG, "Camera resource released successfully");
-                        }
-                        
-                        @Override
-                        public void error(String errorCode, String errorMessage, Object errorDetails) {
-                            Log.e(TAG, "Camera resource release failed: " + errorMessage);
-                        }
-                        
-                        @Override
-                        public void notImplemented() {
-                            Log.e(TAG, "Method not implemented");
-                        }
-                    }
-                );
-            } catch (Exception e) {
-                Log.e(TAG, "Error releasing camera resources: " + e.getMessage());
-            }
+        trimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+    }
+
+    // Native tiers are released by the plugin, Dart drops its own caches for the same tier
+    private void trimMemory(int level) {
+        int tier = camera2Plugin != null ? camera2Plugin.onTrimMemory(level) : MemoryBudget.getTierForTrimLevel(level);
+        if (memoryChannel == null) {
+            return;
         }
-        
-        if (memoryChannel != null) {
+
+        Map<String, Object> args = new HashMap<>();
+        args.put("level", level);
+        args.put("tier", MemoryBudget.getTierName(tier));
+        memoryChannel.invokeMethod("onTrimMemory", args);
+        if (tier >= MemoryBudget.TIER_CAMERA) {
             memoryChannel.invokeMethod("onLowMemory", null);
         }
-        
-        System.gc();
     }
     
     @Override
@@ -174,9 +159,7 @@ public class MainActivity extends FlutterActivity implements ComponentCallbacks2
             memoryChannel.setMethodCallHandler(null);
             memoryChannel = null;
         }
-        
-        System.gc();
-        
+
         super.onDestroy();
     }
 }
\ No newline at end of file
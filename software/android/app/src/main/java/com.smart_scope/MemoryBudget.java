@@ -0,0 +1,116 @@
+package com.smart_scope;
+
+import android.content.ComponentCallbacks2;
+import android.util.Log;
+
+// Memory held by the capture pipeline, accounted in tiers against a limit. Pressure releases the least valuable
+// tier first: calibration caches, then idle frame buffers, then the analysis stream, and the camera only as a last
+// resort. Released buffers go with the next regular collection, nothing here forces one
+final class MemoryBudget {
+    interface Tier {
+        long getHeldBytes();
+
+        // Frees what can go without interrupting a capture, returns the bytes released
+        long release();
+    }
+
+    static final int TIER_CACHES = 0;
+    static final int TIER_IDLE_POOLS = 1;
+    static final int TIER_ANALYSIS = 2;
+    static final int TIER_CAMERA = 3;
+    static final long DEFAULT_LIMIT_BYTES = 512L * 1024 * 1024;
+
+    private static final String TAG = "MemoryBudget";
+    private static final String[] TIER_NAMES = {"caches", "idlePools", "analysis", "camera"};
+
+    private final Tier[] tiers = new Tier[TIER_NAMES.length];
+    private volatile long limitBytes = DEFAULT_LIMIT_BYTES;
+
+    static String getTierName(int tier) {
+        return tier >= 0 && tier < TIER_NAMES.length ? TIER_NAMES[tier] : "none";
+    }
+
+    // Highest tier a trim level gives up. Only a process about to be killed loses the camera
+    static int getTierForTrimLevel(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_COMPLETE) {
+            return TIER_CAMERA;
+        }
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            return TIER_ANALYSIS;
+        }
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            return TIER_IDLE_POOLS;
+        }
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            return TIER_CACHES;
+        }
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            return TIER_ANALYSIS;
+        }
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            return TIER_IDLE_POOLS;
+        }
+        return TIER_CACHES;
+    }
+
+    void setTier(int tier, Tier handler) {
+        tiers[tier] = handler;
+    }
+
+    long getLimitBytes() {
+        return limitBytes;
+    }
+
+    void setLimitBytes(long limitBytes) {
+        this.limitBytes = Math.max(0, limitBytes);
+    }
+
+    long getHeldBytes() {
+        long held = 0;
+        for (Tier tier : tiers) {
+            if (tier != null) {
+                held += tier.getHeldBytes();
+            }
+        }
+        return held;
+    }
+
+    long getHeldBytes(int tier) {
+        return tiers[tier] != null ? tiers[tier].getHeldBytes() : 0;
+    }
+
+    // Releases every tier up to maxTier, lowest first
+    long trim(int maxTier) {
+        long released = 0;
+        for (int tier = 0; tier <= maxTier && tier < tiers.length; tier++) {
+            released += releaseTier(tier);
+        }
+        return released;
+    }
+
+    // Over the limit, releases caches and idle buffers until back under it. Streams in use stay
+    long enforce() {
+        long held = getHeldBytes();
+        long released = 0;
+        for (int tier = TIER_CACHES; tier <= TIER_IDLE_POOLS && held - released > limitBytes; tier++) {
+            released += releaseTier(tier);
+        }
+        if (released > 0) {
+            Log.d(TAG, "Over budget by " + ((held - limitBytes) / 1024) + " KB, released " + (released / 1024) + " KB");
+        }
+        return released;
+    }
+
+    private long releaseTier(int tier) {
+        Tier handler = tiers[tier];
+        if (handler == null) {
+            return 0;
+        }
+
+        long released = handler.release();
+        if (released > 0) {
+            Log.d(TAG, "Released " + (released / 1024) + " KB from " + TIER_NAMES[tier]);
+        }
+        return released;
+    }
+}
@@ -0,0 +1,93 @@
+package com.smart_scope;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+// Writes one sequence frame whose windows were encoded back to back into a pooled buffer: each window is stored in
+// turn and the buffer goes back to its pool. Camera2Plugin and the JVM benchmark queue this same task, so the
+// benchmark times the code the app runs
+final class SequenceFrameWrite implements FrameWriter.WriteTask {
+    // Frames the write queue holds before capture waits for storage, and how long it waits
+    static final int WRITE_QUEUE_CAPACITY = 4;
+    static final long FRAME_WRITE_TIMEOUT_MS = 10000;
+    // How long encoding waits for a pooled buffer to come back from the writer
+    static final long FRAME_BUFFER_TIMEOUT_MS = 2000;
+
+    interface Store {
+        // Runs on the writer thread with exactly the window's encoded bytes, returns where they were stored
+        String store(int window, ByteBuffer data) throws IOException;
+    }
+
+    private final ByteBuffer frame;
+    private final int[] windowSizes;
+    private final FramePool pool;
+    private final Store store;
+
+    SequenceFrameWrite(ByteBuffer frame, int[] windowSizes, FramePool pool, Store store) {
+        this.frame = frame;
+        this.windowSizes = windowSizes;
+        this.pool = pool;
+        this.store = store;
+    }
+
+    // Appends each window with its own index entry
+    static Store toContainer(AcquisitionContainer.Writer container, AcquisitionContainer.FrameInfo[] infos) {
+        String path = container.getFile().getAbsolutePath();
+        return (window, data) -> path + "#" + container.append(data, infos[window]);
+    }
+
+    // Index entries of a frame's windows, the whole frame without ROIs. Exposure, ISO, illumination and focus are
+    // left to the caller, which knows them
+    static AcquisitionContainer.FrameInfo[] describeWindows(CameraBackend.Frame frame, List<FrameRoi> rois,
+                                                           int pointIndex, int frameIndex) {
+        int alignment = FrameEncoder.getAlignment(frame);
+        AcquisitionContainer.FrameInfo[] infos = new AcquisitionContainer.FrameInfo[Math.max(1, rois.size())];
+        for (int window = 0; window < infos.length; window++) {
+            AcquisitionContainer.FrameInfo info = new AcquisitionContainer.FrameInfo();
+            info.timestampNs = frame.getTimestamp();
+            info.format = frame.getFormat();
+            info.sensorWidth = frame.getWidth();
+            info.sensorHeight = frame.getHeight();
+            info.pointIndex = pointIndex;
+            info.frameIndex = frameIndex;
+            info.width = frame.getWidth();
+            info.height = frame.getHeight();
+            if (!rois.isEmpty()) {
+                FrameRoi roi = rois.get(window);
+                info.roiIndex = window;
+                info.roiLeft = roi.getLeft(frame.getWidth(), alignment);
+                info.roiTop = roi.getTop(frame.getHeight(), alignment);
+                info.width = roi.getWidth(frame.getWidth(), alignment);
+                info.height = roi.getHeight(frame.getHeight(), alignment);
+            }
+            infos[window] = info;
+        }
+        return infos;
+    }
+
+    // Returns the path of the first window
+    @Override
+    public String write() throws IOException {
+        try {
+            String firstPath = null;
+            int position = frame.position();
+            for (int window = 0; window < windowSizes.length; window++) {
+                ByteBuffer data = frame.duplicate();
+                data.limit(position + windowSizes[window]);
+                data.position(position);
+                position += windowSizes[window];
+
+                String path = store.store(window, data);
+                if (firstPath == null) {
+                    firstPath = path;
+                }
+            }
+            return firstPath;
+        } finally {
+            if (pool != null) {
+                pool.release(frame);
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.smart_scope;
+
+import android.graphics.SurfaceTexture;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCaptureSession;
+import android.hardware.camera2.params.OutputConfiguration;
+import android.os.Build;
+import android.util.Size;
+import android.view.Surface;
+
+import androidx.annotation.RequiresApi;
+
+// Preview output of the persistent session: a deferred, surface-sharing OutputConfiguration whose TextureView
+// surface is exchanged in place, so moving between pages neither reopens the device nor rebuilds the session
+@RequiresApi(api = Build.VERSION_CODES.P)
+final class SharedPreviewOutput {
+    private final OutputConfiguration configuration;
+    // Attached to the configuration, its texture may already be gone while no page shows the preview
+    private Surface surface;
+
+    SharedPreviewOutput(Size size, Surface surface) {
+        this.configuration = new OutputConfiguration(size, SurfaceTexture.class);
+        this.configuration.enableSurfaceSharing();
+        this.configuration.addSurface(surface);
+        this.surface = surface;
+    }
+
+    OutputConfiguration getConfiguration() {
+        return configuration;
+    }
+
+    Surface getSurface() {
+        return surface;
+    }
+
+    // No request in flight may target the current surface. The new one is added first, a sharing configuration
+    // never goes empty
+    void swap(CameraCaptureSession session, Surface next) throws CameraAccessException {
+        if (next == surface) {
+            return;
+        }
+
+        Surface previous = surface;
+        configuration.addSurface(next);
+        configuration.removeSurface(previous);
+        session.updateOutputConfiguration(configuration);
+        surface = next;
+        previous.release();
+    }
+
+    void release() {
+        surface.release();
+    }
+}
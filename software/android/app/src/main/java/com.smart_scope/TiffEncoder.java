@@ -0,0 +1,121 @@
+package com.smart_scope;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+final class TiffEncoder {
+    private static final int HEADER_SIZE = 8;
+    private static final int ENTRY_COUNT = 9;
+    private static final int IFD_SIZE = 2 + ENTRY_COUNT * 12 + 4;
+
+    private static final short TYPE_SHORT = 3;
+    private static final short TYPE_LONG = 4;
+    private static final short TYPE_ASCII = 2;
+
+    private TiffEncoder() {
+    }
+
+    static int encodedSize(int width, int height, String description) {
+        return HEADER_SIZE + IFD_SIZE + descriptionLength(description) + width * height * 2;
+    }
+
+    static byte[] encodeGray16(ByteBuffer source, int width, int height, int rowStride, int pixelStride,
+                               int sourceBits, String description) {
+        ByteBuffer target = ByteBuffer.allocate(encodedSize(width, height, description));
+        encodeGray16(source, width, height, rowStride, pixelStride, sourceBits, description, target);
+        return target.array();
+    }
+
+    static void encodeGray16(ByteBuffer source, int width, int height, int rowStride, int pixelStride,
+                             int sourceBits, String description, ByteBuffer target) {
+        encodeGray16(source, width, height, rowStride, pixelStride, sourceBits, null, description, target);
+    }
+
+    // Writes an uncompressed single-strip 16-bit grayscale TIFF, samples are copied without any tone curve,
+    // minus the matching dark sample when a dark reference is given
+    static void encodeGray16(ByteBuffer source, int width, int height, int rowStride, int pixelStride,
+                             int sourceBits, short[] dark, String description, ByteBuffer target) {
+        int base = target.position();
+        int pixelOffset = writeGray16Header(width, height, description, target);
+        int pixelBytes = width * height * 2;
+
+        ByteOrder sourceOrder = source.order();
+        source.order(ByteOrder.LITTLE_ENDIAN);
+
+        int sourceBase = source.position();
+        for (int y = 0; y < height; y++) {
+            int rowStart = sourceBase + y * rowStride;
+            if (dark != null) {
+                int darkRow = y * width;
+                for (int x = 0; x < width; x++) {
+                    int sample = sourceBits > 8 ?
+                            source.getShort(rowStart + x * pixelStride) & 0xffff :
+                            source.get(rowStart + x * pixelStride) & 0xff;
+                    target.putShort((short) Math.max(0, sample - (dark[darkRow + x] & 0xffff)));
+                }
+            } else if (sourceBits > 8) {
+                for (int x = 0; x < width; x++) {
+                    target.putShort(source.getShort(rowStart + x * pixelStride));
+                }
+            } else {
+                for (int x = 0; x < width; x++) {
+                    target.putShort((short) (source.get(rowStart + x * pixelStride) & 0xff));
+                }
+            }
+        }
+
+        source.order(sourceOrder);
+
+        if (target.position() - base != pixelOffset + pixelBytes) {
+            throw new IllegalStateException("TIFF size mismatch");
+        }
+    }
+
+    // Header, IFD and description of a 16-bit grayscale TIFF, the caller appends width * height little-endian
+    // samples right after it. Returns the offset of the first sample relative to the start of the header
+    static int writeGray16Header(int width, int height, String description, ByteBuffer target) {
+        byte[] descriptionBytes = (description != null ? description : "").getBytes(StandardCharsets.US_ASCII);
+        int descriptionLength = descriptionBytes.length + 1;
+        int descriptionOffset = HEADER_SIZE + IFD_SIZE;
+        int pixelOffset = descriptionOffset + descriptionLength;
+        int pixelBytes = width * height * 2;
+
+        target.order(ByteOrder.LITTLE_ENDIAN);
+        target.put((byte) 'I').put((byte) 'I');
+        target.putShort((short) 42);
+        target.putInt(HEADER_SIZE);
+
+        target.putShort((short) ENTRY_COUNT);
+        putEntry(target, 256, TYPE_LONG, 1, width);
+        putEntry(target, 257, TYPE_LONG, 1, height);
+        putEntry(target, 258, TYPE_SHORT, 1, 16);
+        putEntry(target, 259, TYPE_SHORT, 1, 1);
+        putEntry(target, 262, TYPE_SHORT, 1, 1);
+        putEntry(target, 270, TYPE_ASCII, descriptionLength, descriptionOffset);
+        putEntry(target, 273, TYPE_LONG, 1, pixelOffset);
+        putEntry(target, 277, TYPE_SHORT, 1, 1);
+        putEntry(target, 279, TYPE_LONG, 1, pixelBytes);
+        target.putInt(0);
+
+        target.put(descriptionBytes);
+        target.put((byte) 0);
+        return pixelOffset;
+    }
+
+    private static void putEntry(ByteBuffer target, int tag, short type, int count, int value) {
+        target.putShort((short) tag);
+        target.putShort(type);
+        target.putInt(count);
+        if (type == TYPE_SHORT && count == 1) {
+            target.putShort((short) value);
+            target.putShort((short) 0);
+        } else {
+            target.putInt(value);
+        }
+    }
+
+    private static int descriptionLength(String description) {
+        return (description != null ? description.length() : 0) + 1;
+    }
+}
@@ -0,0 +1,136 @@
+package com.smart_scope;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AcquisitionContainerTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static AcquisitionContainer.FrameInfo info(int pointIndex, int frameIndex) {
+        AcquisitionContainer.FrameInfo info = new AcquisitionContainer.FrameInfo();
+        info.timestampNs = 1000L + frameIndex;
+        info.exposureNs = 20_000_000L;
+        info.iso = 100;
+        info.format = CameraBackend.FORMAT_RAW_SENSOR;
+        info.width = 4;
+        info.height = 2;
+        info.pointIndex = pointIndex;
+        info.frameIndex = frameIndex;
+        info.illuminationX = 0.5f;
+        info.illuminationY = -0.25f;
+        info.roiIndex = 1;
+        info.roiLeft = 8;
+        info.roiTop = 6;
+        info.sensorWidth = 20;
+        info.sensorHeight = 10;
+        info.focusDistance = 2.5f;
+        return info;
+    }
+
+    private static byte[] bytes(int length, int seed) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (seed + i);
+        }
+        return data;
+    }
+
+    private static byte[] read(ByteBuffer buffer) {
+        byte[] data = new byte[buffer.remaining()];
+        buffer.get(data);
+        return data;
+    }
+
+    @Test
+    public void framesAndMetadataRoundTrip() throws IOException {
+        File file = folder.newFile("sequence" + AcquisitionContainer.EXTENSION);
+        // Odd lengths exercise the alignment padding
+        byte[] first = bytes(13, 1);
+        byte[] second = bytes(40, 7);
+
+        Map<String, Object> metadata = new LinkedHashMap<>();
+        metadata.put("pageId", "默认 \"page\"");
+        metadata.put("frames", Arrays.asList(1, 2));
+        try (AcquisitionContainer.Writer writer = new AcquisitionContainer.Writer(file, 4)) {
+            assertEquals(0, writer.append(ByteBuffer.wrap(first), info(0, 0)));
+            assertEquals(1, writer.append(ByteBuffer.wrap(second), info(1, 1)));
+            writer.setMetadata(AcquisitionContainer.toJson(metadata));
+        }
+
+        try (AcquisitionContainer.Reader reader = new AcquisitionContainer.Reader(file)) {
+            assertEquals(2, reader.getFrameCount());
+            assertTrue(Arrays.equals(first, read(reader.getFrame(0))));
+            assertTrue(Arrays.equals(second, read(reader.getFrame(1))));
+
+            AcquisitionContainer.FrameInfo info = reader.getFrameInfo(1);
+            assertEquals(0, info.dataOffset % 8);
+            assertEquals(second.length, info.dataLength);
+            assertEquals(1001L, info.timestampNs);
+            assertEquals(20_000_000L, info.exposureNs);
+            assertEquals(100, info.iso);
+            assertEquals(CameraBackend.FORMAT_RAW_SENSOR, info.format);
+            assertEquals(1, info.pointIndex);
+            assertEquals(1, info.frameIndex);
+            assertEquals(-0.25f, info.illuminationY, 0);
+            assertEquals(8, info.roiLeft);
+            assertEquals(6, info.roiTop);
+            assertEquals(20, info.sensorWidth);
+            assertEquals(2.5f, info.focusDistance, 0);
+
+            assertEquals("{\"pageId\":\"默认 \\\"page\\\"\",\"frames\":[1,2]}", reader.getMetadata());
+        }
+    }
+
+    @Test
+    public void framesWrittenBeforeACrashRemainReadable() throws IOException {
+        File file = folder.newFile("unfinished" + AcquisitionContainer.EXTENSION);
+        byte[] data = bytes(16, 3);
+        AcquisitionContainer.Writer writer = new AcquisitionContainer.Writer(file, 4);
+        writer.append(ByteBuffer.wrap(data), info(0, 0));
+
+        // Never closed: the header already counts the frame, the metadata is missing
+        try (AcquisitionContainer.Reader reader = new AcquisitionContainer.Reader(file)) {
+            assertEquals(1, reader.getFrameCount());
+            assertTrue(Arrays.equals(data, read(reader.getFrame(0))));
+            assertEquals("{}", reader.getMetadata());
+        }
+        writer.close();
+    }
+
+    @Test
+    public void writerRejectsFramesBeyondItsCapacity() throws IOException {
+        File file = folder.newFile("full" + AcquisitionContainer.EXTENSION);
+        try (AcquisitionContainer.Writer writer = new AcquisitionContainer.Writer(file, 1)) {
+            writer.append(ByteBuffer.wrap(bytes(8, 0)), info(0, 0));
+            try {
+                writer.append(ByteBuffer.wrap(bytes(8, 0)), info(0, 1));
+                fail("Appended past the index capacity");
+            } catch (IOException expected) {
+                // The index table has a fixed size
+            }
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void readerRejectsOtherFiles() throws IOException {
+        File file = folder.newFile("other.bin");
+        try (RandomAccessFile other = new RandomAccessFile(file, "rw")) {
+            other.write(new byte[AcquisitionContainer.HEADER_SIZE]);
+        }
+        new AcquisitionContainer.Reader(file).close();
+    }
+}
@@ -0,0 +1,91 @@
+package com.smart_scope;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BurstSlotsTest {
+    @Test
+    public void pairsImagesAndResultsInEitherOrder() {
+        BurstSlots<String, String> slots = new BurstSlots<>(1, 2, 1);
+        slots.advance();
+
+        assertNull(slots.addImage(100, "image 0"));
+        BurstSlots.Frame<String, String> first = slots.addResult(100, 0, 0, "result 0");
+        assertEquals(0, first.slot);
+        assertEquals("image 0", first.image);
+        assertEquals("result 0", first.result);
+
+        assertNull(slots.addResult(200, 0, 1, "result 1"));
+        BurstSlots.Frame<String, String> second = slots.addImage(200, "image 1");
+        assertEquals(1, second.slot);
+        assertEquals("result 1", second.result);
+        assertTrue(slots.completePointIfReady());
+        assertFalse(slots.completePointIfReady());
+    }
+
+    @Test
+    public void frameCapturedAgainKeepsTheSlotOfItsStep() {
+        // Three focus steps of two frames, the first frame of step 0 was stale and arrives last
+        BurstSlots<String, Integer> slots = new BurstSlots<>(2, 6, 2);
+        slots.advance();
+        int[] steps = {0, 1, 1, 2, 2};
+        for (int i = 0; i < steps.length; i++) {
+            slots.addResult(1000 + i, 0, steps[i], steps[i]);
+            BurstSlots.Frame<String, Integer> frame = slots.addImage(1000 + i, "image");
+            assertEquals(steps[i], frame.slot / 2);
+        }
+        assertFalse(slots.completePointIfReady());
+
+        assertNull(slots.addImage(2000, "again"));
+        BurstSlots.Frame<String, Integer> again = slots.addResult(2000, 0, 0, 0);
+        assertEquals(1, again.slot);
+        assertTrue(slots.completePointIfReady());
+    }
+
+    @Test
+    public void secondPointStartsAfterTheFirst() {
+        BurstSlots<String, String> slots = new BurstSlots<>(2, 1, 1);
+        slots.advance();
+        slots.addResult(1, 0, 0, "a");
+        slots.addImage(1, "a");
+        assertTrue(slots.completePointIfReady());
+        assertTrue(slots.hasNextPoint());
+
+        assertEquals(1, slots.advance());
+        slots.addImage(2, "b");
+        assertEquals(1, slots.addResult(2, 1, 0, "b").slot);
+        assertTrue(slots.completePointIfReady());
+        assertFalse(slots.hasNextPoint());
+    }
+
+    @Test
+    public void surplusFramesAreNotGivenASlot() {
+        BurstSlots<String, String> slots = new BurstSlots<>(1, 1, 1);
+        slots.advance();
+        slots.addResult(1, 0, 0, "a");
+        assertEquals(0, slots.addImage(1, "a").slot);
+        slots.addResult(2, 0, 0, "b");
+        assertEquals(-1, slots.addImage(2, "b").slot);
+        slots.addResult(3, 0, 5, "c");
+        assertEquals(-1, slots.addImage(3, "c").slot);
+    }
+
+    @Test
+    public void closeReturnsHeldImagesAndRejectsLaterOnes() {
+        BurstSlots<String, String> slots = new BurstSlots<>(1, 2, 1);
+        slots.advance();
+        slots.addImage(1, "held");
+
+        List<String> held = slots.close();
+        assertEquals(1, held.size());
+        assertEquals("held", held.get(0));
+        assertEquals(-1, slots.addImage(2, "late").slot);
+        assertNull(slots.addResult(1, 0, 0, "late"));
+    }
+}
@@ -0,0 +1,89 @@
+package com.smart_scope;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CaptureMetadataIndexTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static CaptureMetadataIndex.Record record(int frameIndex) {
+        CaptureMetadataIndex.Record record = new CaptureMetadataIndex.Record();
+        record.sensorTimestampNs = 5_000_000_000L + frameIndex * 33_000_000L;
+        record.frameNumber = 40 + frameIndex;
+        record.exposureNs = 10_000_000L * (frameIndex + 1);
+        record.frameDurationNs = 33_333_333L;
+        record.iso = 200;
+        record.focusDistance = frameIndex == 0 ? Float.NaN : 1.5f;
+        record.cropLeft = 2;
+        record.cropTop = 4;
+        record.cropRight = 4000;
+        record.cropBottom = 3000;
+        record.pointIndex = frameIndex / 2;
+        record.frameIndex = frameIndex;
+        return record;
+    }
+
+    @Test
+    public void recordsRoundTripThroughTheFile() throws IOException {
+        // Starts smaller than the record count so the buffer has to grow
+        CaptureMetadataIndex index = new CaptureMetadataIndex(1);
+        for (int i = 0; i < 5; i++) {
+            index.add(record(i));
+        }
+        File file = folder.newFile("sequence" + CaptureMetadataIndex.EXTENSION);
+        index.writeTo(file);
+
+        assertEquals(CaptureMetadataIndex.HEADER_SIZE + 5 * CaptureMetadataIndex.RECORD_SIZE, file.length());
+        List<CaptureMetadataIndex.Record> records = CaptureMetadataIndex.read(file);
+        assertEquals(5, records.size());
+        for (int i = 0; i < 5; i++) {
+            CaptureMetadataIndex.Record expected = record(i);
+            CaptureMetadataIndex.Record actual = records.get(i);
+            assertEquals(expected.sensorTimestampNs, actual.sensorTimestampNs);
+            assertEquals(expected.frameNumber, actual.frameNumber);
+            assertEquals(expected.exposureNs, actual.exposureNs);
+            assertEquals(expected.frameDurationNs, actual.frameDurationNs);
+            assertEquals(expected.iso, actual.iso);
+            assertEquals(expected.focusDistance, actual.focusDistance, 0);
+            assertEquals(expected.cropLeft, actual.cropLeft);
+            assertEquals(expected.cropTop, actual.cropTop);
+            assertEquals(expected.cropRight, actual.cropRight);
+            assertEquals(expected.cropBottom, actual.cropBottom);
+            assertEquals(expected.pointIndex, actual.pointIndex);
+            assertEquals(expected.frameIndex, actual.frameIndex);
+        }
+        assertTrue(Float.isNaN(records.get(0).focusDistance));
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedFileIsRejected() throws IOException {
+        CaptureMetadataIndex index = new CaptureMetadataIndex(2);
+        index.add(record(0));
+        index.add(record(1));
+        File file = folder.newFile("truncated" + CaptureMetadataIndex.EXTENSION);
+        index.writeTo(file);
+        try (RandomAccessFile truncated = new RandomAccessFile(file, "rw")) {
+            truncated.setLength(file.length() - 1);
+        }
+        CaptureMetadataIndex.read(file);
+    }
+
+    @Test(expected = IOException.class)
+    public void otherFilesAreRejected() throws IOException {
+        File file = folder.newFile("other.bin");
+        try (RandomAccessFile other = new RandomAccessFile(file, "rw")) {
+            other.write(new byte[CaptureMetadataIndex.HEADER_SIZE]);
+        }
+        CaptureMetadataIndex.read(file);
+    }
+}
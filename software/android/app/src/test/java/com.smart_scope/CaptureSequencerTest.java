@@ -0,0 +1,237 @@
+package com.smart_scope;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CaptureSequencerTest {
+    private static final int WIDTH = 8;
+    private static final int HEIGHT = 4;
+
+    // A camera that only queues requests and a host that presents every pattern at presentedNs at once, the test
+    // plays the sensor
+    private static final class Bench implements CameraBackend, CaptureSequencer.Host {
+        final List<Request> pending = new ArrayList<>();
+        final List<Integer> presented = new ArrayList<>();
+        final List<String> stored = new ArrayList<>();
+        final CountDownLatch finished = new CountDownLatch(1);
+        final CaptureSequence sequence;
+        final CaptureSequencer sequencer;
+        final FrameWriter writer = new FrameWriter(4);
+        final long presentedNs;
+        Listener listener;
+        List<String> framePaths;
+        String errorCode;
+
+        Bench(int points, int framesPerPoint, long presentedNs) {
+            List<Map<String, Object>> pointParams = new ArrayList<>();
+            for (int i = 0; i < points; i++) {
+                pointParams.add(new HashMap<>());
+            }
+            this.sequence = new CaptureSequence("page", pointParams, framesPerPoint, null, null, false,
+                    new ArrayList<>());
+            sequence.linearWindows = new ArrayList<>();
+            sequence.linearWindows.add(new FrameRoi(WIDTH, HEIGHT, 0, 0));
+            this.presentedNs = presentedNs;
+            this.sequencer = new CaptureSequencer(sequence, this, this, null, writer, new CaptureMetrics());
+        }
+
+        // The sensor captures the oldest pending request at timestampNs, result first
+        TestFrame capture(long timestampNs) {
+            Request request = pending.remove(0);
+            CaptureMetadataIndex.Record result = new CaptureMetadataIndex.Record();
+            result.sensorTimestampNs = timestampNs;
+            listener.onCaptureCompleted(request, result);
+            TestFrame frame = new TestFrame(timestampNs);
+            listener.onFrame(frame);
+            return frame;
+        }
+
+        void await() throws InterruptedException {
+            assertTrue(finished.await(5, TimeUnit.SECONDS));
+            writer.shutdown();
+        }
+
+        @Override
+        public void open(Listener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void submitBurst(List<Request> requests) {
+            pending.addAll(requests);
+        }
+
+        @Override
+        public void close() {
+            listener = null;
+        }
+
+        @Override
+        public void presentPoint(int pointIndex) {
+            presented.add(pointIndex);
+            sequencer.onPresented(pointIndex, presentedNs);
+        }
+
+        @Override
+        public String storeFrame(ByteBuffer data, Map<String, Object> params, int format, int pointIndex)
+                throws IOException {
+            String path = "frame_" + params.get("sequenceIndex") + "_" + stored.size();
+            stored.add(path);
+            return path;
+        }
+
+        @Override
+        public HotPixelMap getHotPixels(int format, int width, int height, int pointIndex) {
+            return null;
+        }
+
+        @Override
+        public void onDarkFrame(DarkFrame dark) {
+        }
+
+        @Override
+        public void onBuffersAllocated() {
+        }
+
+        @Override
+        public void onFilesClosed() {
+        }
+
+        @Override
+        public void onComplete(List<String> framePaths) {
+            this.framePaths = framePaths;
+            finished.countDown();
+        }
+
+        @Override
+        public void onFailed(String errorCode, String errorMessage) {
+            this.errorCode = errorCode;
+            finished.countDown();
+        }
+    }
+
+    private static final class TestFrame implements CameraBackend.Frame {
+        private final long timestampNs;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(WIDTH * HEIGHT);
+        boolean closed = false;
+
+        TestFrame(long timestampNs) {
+            this.timestampNs = timestampNs;
+        }
+
+        @Override
+        public int getFormat() {
+            return CameraBackend.FORMAT_YUV_420_888;
+        }
+
+        @Override
+        public int getWidth() {
+            return WIDTH;
+        }
+
+        @Override
+        public int getHeight() {
+            return HEIGHT;
+        }
+
+        @Override
+        public long getTimestamp() {
+            return timestampNs;
+        }
+
+        @Override
+        public ByteBuffer getBuffer() {
+            return buffer;
+        }
+
+        @Override
+        public int getRowStride() {
+            return WIDTH;
+        }
+
+        @Override
+        public int getPixelStride() {
+            return 1;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    @Test
+    public void everyPointIsPresentedCapturedAndStoredInOrder() throws Exception {
+        Bench bench = new Bench(2, 2, CaptureSequence.NO_CUTOFF);
+        bench.sequencer.start();
+        assertEquals(1, bench.presented.size());
+        assertEquals(2, bench.pending.size());
+        // A burst repeats the one request of its single step
+        assertSame(bench.pending.get(0), bench.pending.get(1));
+
+        long timestampNs = 1000;
+        for (int point = 0; point < 2; point++) {
+            assertEquals(point, (int) bench.presented.get(point));
+            assertTrue(bench.capture(timestampNs++).closed);
+            assertTrue(bench.capture(timestampNs++).closed);
+        }
+        bench.await();
+
+        assertNull(bench.errorCode);
+        assertTrue(bench.pending.isEmpty());
+        assertEquals(4, bench.framePaths.size());
+        assertEquals("frame_0_0", bench.framePaths.get(0));
+        assertEquals("frame_1_3", bench.framePaths.get(3));
+        assertTrue(bench.sequencer.isFinished());
+    }
+
+    @Test
+    public void frameExposedBeforeThePatternIsCapturedAgain() throws Exception {
+        Bench bench = new Bench(1, 1, 5000);
+        bench.sequencer.start();
+        CameraBackend.Request first = bench.pending.get(0);
+
+        TestFrame stale = bench.capture(4000);
+        assertTrue(stale.closed);
+        assertEquals(1, bench.pending.size());
+        // Same settings and step, timed from its own submission
+        CameraBackend.Request again = bench.pending.get(0);
+        assertNotSame(first, again);
+        assertEquals(first.step, again.step);
+        assertFalse(bench.sequencer.isFinished());
+
+        bench.capture(6000);
+        bench.await();
+        assertNull(bench.errorCode);
+        assertEquals(1, bench.stored.size());
+    }
+
+    @Test
+    public void failedCaptureFailsTheSequenceOnce() throws Exception {
+        Bench bench = new Bench(2, 1, CaptureSequence.NO_CUTOFF);
+        bench.sequencer.start();
+        CameraBackend.Request request = bench.pending.remove(0);
+        bench.listener.onCaptureFailed(request, "1");
+        bench.sequencer.fail("CANCELLED", "Cancelled after the failure");
+        bench.await();
+
+        assertEquals("CAMERA_ERROR", bench.errorCode);
+        assertTrue(bench.sequencer.isFinished());
+        assertEquals(1, bench.presented.size());
+    }
+}
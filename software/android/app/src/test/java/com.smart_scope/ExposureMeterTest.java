@@ -0,0 +1,108 @@
+package com.smart_scope;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ExposureMeterTest {
+    private static final int WIDTH = 32;
+    private static final int HEIGHT = 16;
+    private static final long EXPOSURE_NS = 10_000_000L;
+    private static final List<FrameRoi> WHOLE_FRAME = Collections.singletonList(new FrameRoi(WIDTH, HEIGHT, 0, 0));
+
+    private static ByteBuffer yuv(int level) {
+        ByteBuffer plane = ByteBuffer.allocate(WIDTH * HEIGHT);
+        while (plane.hasRemaining()) {
+            plane.put((byte) level);
+        }
+        plane.flip();
+        return plane;
+    }
+
+    private static ByteBuffer raw(int level) {
+        ByteBuffer plane = ByteBuffer.allocate(WIDTH * HEIGHT * 2).order(ByteOrder.LITTLE_ENDIAN);
+        while (plane.hasRemaining()) {
+            plane.putShort((short) level);
+        }
+        plane.flip();
+        return plane;
+    }
+
+    private static int measureYuv(ExposureMeter meter, int level) {
+        return meter.measure(yuv(level), WIDTH, 1, 8, WHOLE_FRAME, WIDTH, HEIGHT, 1);
+    }
+
+    @Test
+    public void exposureMovesTheLevelToTheTarget() {
+        ExposureMeter meter = new ExposureMeter(0, 255, ExposureMeter.DEFAULT_TARGET);
+        int level = measureYuv(meter, 100);
+        assertEquals(100, level);
+        assertFalse(meter.isClipped(level));
+        // 100 of 255 reaches 0.7 of full scale at 1.785 times the exposure
+        assertEquals(17_850_000L, meter.nextExposure(EXPOSURE_NS, level), 1);
+    }
+
+    @Test
+    public void rawLevelIsCorrectedAboveTheBlackLevel() {
+        ExposureMeter meter = new ExposureMeter(64, 1023, ExposureMeter.DEFAULT_TARGET);
+        int level = meter.measure(raw(400), WIDTH * 2, 2, 16, WHOLE_FRAME, WIDTH, HEIGHT, 2);
+        // Measured in 16-level bins, reported at the top of the bin
+        assertTrue(level >= 400 && level < 416);
+
+        long next = meter.nextExposure(EXPOSURE_NS, level);
+        double predicted = 64 + (level - 64) * (double) next / EXPOSURE_NS;
+        assertEquals(64 + ExposureMeter.DEFAULT_TARGET * (1023 - 64), predicted, 1);
+    }
+
+    @Test
+    public void saturatedFrameOnlyShortensTheExposure() {
+        ExposureMeter meter = new ExposureMeter(0, 255, ExposureMeter.DEFAULT_TARGET);
+        int level = measureYuv(meter, 255);
+        assertTrue(meter.isClipped(level));
+        assertEquals(EXPOSURE_NS / 8, meter.nextExposure(EXPOSURE_NS, level));
+        assertEquals(1, meter.nextExposure(4, level));
+    }
+
+    @Test
+    public void allDarkFrameIsTreatedAsOneCountOfSignal() {
+        ExposureMeter meter = new ExposureMeter(0, 255, ExposureMeter.DEFAULT_TARGET);
+        int level = measureYuv(meter, 0);
+        assertEquals(0, level);
+        assertFalse(meter.isClipped(level));
+        assertEquals(EXPOSURE_NS * ExposureMeter.DEFAULT_TARGET * 255, meter.nextExposure(EXPOSURE_NS, level),
+                EXPOSURE_NS * 1e-6);
+    }
+
+    @Test
+    public void meteredExposureIsClampedToTheSensorRange() {
+        List<Map<String, Object>> points = new ArrayList<>();
+        points.add(new HashMap<>());
+        CaptureSequence sequence = new CaptureSequence("page", points, 1, null, null, false,
+                Collections.<FrameRoi>emptyList());
+        sequence.minExposureNs = 100_000L;
+        sequence.maxExposureNs = 100_000_000L;
+
+        assertEquals(100_000L, sequence.clampExposure(10));
+        assertEquals(100_000_000L, sequence.clampExposure(Long.MAX_VALUE));
+        assertEquals(EXPOSURE_NS, sequence.clampExposure(EXPOSURE_NS));
+
+        // An all-dark frame asks for far more than the sensor gives
+        ExposureMeter meter = new ExposureMeter(0, 255, ExposureMeter.DEFAULT_TARGET);
+        sequence.setMeteredExposure(0, meter.nextExposure(EXPOSURE_NS, measureYuv(meter, 0)));
+        assertEquals(100_000_000L, sequence.getPointExposure(0));
+
+        // A saturated one may ask for less
+        sequence.setMeteredExposure(0, meter.nextExposure(200_000L, measureYuv(meter, 255)));
+        assertEquals(100_000L, sequence.getPointExposure(0));
+    }
+}
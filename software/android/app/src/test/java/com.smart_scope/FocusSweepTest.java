@@ -0,0 +1,142 @@
+package com.smart_scope;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FocusSweepTest {
+    private static final float MAX_DIOPTERS = 10;
+    private static final int SIZE = 40;
+
+    // A lens that settles on every target at once, scored by a sharpness curve peaking at peakDiopters
+    private static final class Bench implements FocusSweep.Driver, FocusSweep.Listener {
+        final double peakDiopters;
+        float lens = Float.NaN;
+        int moves = 0;
+        float focused = Float.NaN;
+
+        Bench(double peakDiopters) {
+            this.peakDiopters = peakDiopters;
+        }
+
+        double sharpness(float diopters) {
+            double defocus = diopters - peakDiopters;
+            return 1000 / (1 + defocus * defocus);
+        }
+
+        @Override
+        public void moveLens(float diopters) {
+            lens = diopters;
+            moves++;
+        }
+
+        @Override
+        public void onStep(String phase, int step, int steps, float diopters, double sharpness) {
+        }
+
+        @Override
+        public void onFinished(float diopters, double sharpness) {
+            focused = diopters;
+        }
+    }
+
+    private static float sweep(double peakDiopters, boolean reportsStationary) {
+        Bench bench = new Bench(peakDiopters);
+        FocusSweep sweep = new FocusSweep(bench, bench, MAX_DIOPTERS, 12, 8);
+        sweep.start();
+        for (long timestampNs = 1; !sweep.isFinished() && timestampNs < 10000; timestampNs++) {
+            assertEquals(sweep.getTarget(), bench.lens, 0);
+            if (reportsStationary) {
+                sweep.onCaptureResult(bench.lens, true, timestampNs);
+            }
+            sweep.onSharpness(bench.sharpness(bench.lens), timestampNs);
+        }
+        assertTrue(sweep.isFinished());
+        assertEquals(12 + 8, bench.moves);
+        return bench.focused;
+    }
+
+    @Test
+    public void peakInsideTheRangeIsInterpolated() {
+        assertEquals(3.7f, sweep(3.7, true), 0.05f);
+        assertEquals(6.2f, sweep(6.2, true), 0.05f);
+    }
+
+    @Test
+    public void peakAtEitherEndOfTheRangeIsFound() {
+        assertEquals(0f, sweep(0, true), 1e-6f);
+        assertEquals(MAX_DIOPTERS, sweep(MAX_DIOPTERS, true), 1e-6f);
+        // Beyond the range the nearest end is the sharpest reachable position
+        assertEquals(MAX_DIOPTERS, sweep(14, true), 1e-6f);
+    }
+
+    @Test
+    public void lensThatNeverReportsStationaryStillAdvances() {
+        assertEquals(5.0f, sweep(5.0, false), 0.05f);
+    }
+
+    @Test
+    public void cancelledSweepIgnoresFurtherFrames() {
+        Bench bench = new Bench(5);
+        FocusSweep sweep = new FocusSweep(bench, bench, MAX_DIOPTERS, 12, 8);
+        sweep.start();
+        sweep.cancel();
+        for (long timestampNs = 1; timestampNs < 100; timestampNs++) {
+            sweep.onCaptureResult(bench.lens, true, timestampNs);
+            sweep.onSharpness(1, timestampNs);
+        }
+        assertEquals(1, bench.moves);
+        assertTrue(Float.isNaN(bench.focused));
+    }
+
+    // Vertical bars of width period, blurred by averaging radius pixels either side
+    private static ByteBuffer bars(int period, int radius) {
+        int[] row = new int[SIZE];
+        for (int x = 0; x < SIZE; x++) {
+            int sum = 0;
+            int count = 0;
+            for (int dx = -radius; dx <= radius; dx++) {
+                int sx = Math.max(0, Math.min(SIZE - 1, x + dx));
+                sum += (sx / period) % 2 == 0 ? 30 : 220;
+                count++;
+            }
+            row[x] = sum / count;
+        }
+
+        ByteBuffer plane = ByteBuffer.allocate(SIZE * SIZE);
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                plane.put((byte) row[x]);
+            }
+        }
+        plane.flip();
+        return plane;
+    }
+
+    private static double tenengrad(ByteBuffer plane) {
+        return ImageKernels.tenengrad(plane, 0, SIZE, 1, SIZE, SIZE, 1);
+    }
+
+    @Test
+    public void sharpFrameScoresAboveBlurredOnes() {
+        double sharp = tenengrad(bars(4, 0));
+        double soft = tenengrad(bars(4, 1));
+        double blurred = tenengrad(bars(4, 2));
+        assertTrue(sharp + " > " + soft, sharp > soft);
+        assertTrue(soft + " > " + blurred, soft > blurred);
+        assertTrue(blurred > 0);
+    }
+
+    @Test
+    public void flatFrameHasNoSharpness() {
+        ByteBuffer plane = ByteBuffer.allocate(SIZE * SIZE);
+        while (plane.hasRemaining()) {
+            plane.put((byte) 128);
+        }
+        plane.flip();
+        assertEquals(0.0, tenengrad(plane), 0.0);
+    }
+}
@@ -0,0 +1,102 @@
+package com.smart_scope;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class FrameEncoderTest {
+    // 8-bit plane whose sample is its row * 10 + its column
+    static CameraBackend.Frame yuvFrame(final int width, final int height) {
+        final ByteBuffer plane = ByteBuffer.allocate(width * height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                plane.put((byte) (y * 10 + x));
+            }
+        }
+        plane.flip();
+        return new CameraBackend.Frame() {
+            @Override
+            public int getFormat() {
+                return CameraBackend.FORMAT_YUV_420_888;
+            }
+
+            @Override
+            public int getWidth() {
+                return width;
+            }
+
+            @Override
+            public int getHeight() {
+                return height;
+            }
+
+            @Override
+            public long getTimestamp() {
+                return 0;
+            }
+
+            @Override
+            public ByteBuffer getBuffer() {
+                return plane;
+            }
+
+            @Override
+            public int getRowStride() {
+                return width;
+            }
+
+            @Override
+            public int getPixelStride() {
+                return 1;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    // Samples of one TIFF, the last width * height shorts of its encoded bytes
+    private static int[] samples(ByteBuffer encoded, int start, int size, int pixels) {
+        ByteBuffer tiff = encoded.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int[] samples = new int[pixels];
+        int offset = start + size - pixels * 2;
+        for (int i = 0; i < pixels; i++) {
+            samples[i] = tiff.getShort(offset + i * 2) & 0xffff;
+        }
+        return samples;
+    }
+
+    @Test
+    public void windowsAreEncodedBackToBackMinusTheirDarkReference() throws Exception {
+        CameraBackend.Frame frame = yuvFrame(6, 4);
+        // Top-left 2x2 and bottom-right 2x2
+        List<FrameRoi> rois = Arrays.asList(new FrameRoi(2, 2, -2, -1), new FrameRoi(2, 2, 2, 1));
+        short[][] dark = {{1, 1, 1, 1}, {50, 0, 0, 0}};
+        int[] windowSizes = new int[2];
+
+        ByteBuffer encoded = FrameEncoder.encodeWindows(frame, rois, new String[]{"a", "b"}, dark, windowSizes,
+                null, 0);
+        assertEquals(windowSizes[0] + windowSizes[1], encoded.remaining());
+        assertEquals(0, frame.getBuffer().position());
+
+        int[] first = samples(encoded, 0, windowSizes[0], 4);
+        assertEquals(Arrays.toString(new int[]{0, 0, 9, 10}), Arrays.toString(first));
+        int[] second = samples(encoded, windowSizes[0], windowSizes[1], 4);
+        assertEquals(Arrays.toString(new int[]{0, 25, 34, 35}), Arrays.toString(second));
+    }
+
+    @Test
+    public void fullFrameIsEncodedWithoutDark() throws Exception {
+        CameraBackend.Frame frame = yuvFrame(3, 2);
+        ByteBuffer encoded = FrameEncoder.encode(frame, "full", null, 0);
+        assertEquals(TiffEncoder.encodedSize(3, 2, "full"), encoded.remaining());
+        assertEquals(Arrays.toString(new int[]{0, 1, 2, 10, 11, 12}),
+                Arrays.toString(samples(encoded, 0, encoded.remaining(), 6)));
+    }
+}
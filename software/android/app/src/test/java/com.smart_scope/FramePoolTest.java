@@ -0,0 +1,68 @@
+package com.smart_scope;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class FramePoolTest {
+    @Test
+    public void releasedBufferIsReusedCleared() throws Exception {
+        FramePool pool = new FramePool(64, 2);
+        ByteBuffer first = pool.acquire(16, 0);
+        assertTrue(first.isDirect());
+        first.put((byte) 1).flip();
+        pool.release(first);
+
+        ByteBuffer again = pool.acquire(16, 0);
+        assertSame(first, again);
+        assertEquals(0, again.position());
+        assertEquals(64, again.limit());
+    }
+
+    @Test
+    public void acquireTimesOutWhileEveryBufferIsInUse() throws Exception {
+        FramePool pool = new FramePool(64, 1);
+        assertNotNull(pool.acquire(64, 0));
+        assertNull(pool.acquire(64, 10));
+    }
+
+    @Test
+    public void oversizedRequestsBypassThePool() throws Exception {
+        FramePool pool = new FramePool(64, 1);
+        ByteBuffer large = pool.acquire(65, 0);
+        assertEquals(65, large.capacity());
+        pool.release(large);
+        assertEquals(0, pool.getFreeBuffers());
+        assertEquals(0, pool.getHeldBytes());
+    }
+
+    @Test
+    public void heldBytesFollowAllocationAndTrim() throws Exception {
+        FramePool pool = new FramePool(64, 3);
+        ByteBuffer first = pool.acquire(64, 0);
+        pool.acquire(64, 0);
+        assertEquals(128, pool.getHeldBytes());
+
+        pool.release(first);
+        // Released buffers stay allocated until the memory budget trims them
+        assertEquals(128, pool.getHeldBytes());
+        assertEquals(1, pool.trimIdle());
+        assertEquals(64, pool.getHeldBytes());
+        assertEquals(0, pool.getFreeBuffers());
+    }
+
+    @Test
+    public void foreignBuffersAreIgnored() {
+        FramePool pool = new FramePool(64, 1);
+        pool.release(null);
+        pool.release(ByteBuffer.allocate(64));
+        pool.release(ByteBuffer.allocateDirect(32));
+        assertEquals(0, pool.getFreeBuffers());
+    }
+}
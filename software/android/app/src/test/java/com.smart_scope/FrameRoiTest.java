@@ -0,0 +1,87 @@
+package com.smart_scope;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FrameRoiTest {
+    private static Map<String, Object> roi(int width, int height, int offsetX, int offsetY) {
+        Map<String, Object> map = new HashMap<>();
+        map.put("width", width);
+        map.put("height", height);
+        map.put("offsetX", offsetX);
+        map.put("offsetY", offsetY);
+        return map;
+    }
+
+    @Test
+    public void windowIsCenteredLikeLoadMat() {
+        FrameRoi roi = new FrameRoi(40, 30, 0, 0);
+        assertEquals(30, roi.getLeft(100, 1));
+        assertEquals(25, roi.getTop(80, 1));
+        // round((101 + 1) / 2) - round((40 + 1) / 2) + 1 is 31, one-based
+        assertEquals(30, roi.getLeft(101, 1));
+    }
+
+    @Test
+    public void offsetShiftsTheWindowWithinTheFrame() {
+        FrameRoi roi = new FrameRoi(40, 30, -5, 7);
+        assertEquals(25, roi.getLeft(100, 1));
+        assertEquals(32, roi.getTop(80, 1));
+
+        FrameRoi outside = new FrameRoi(40, 30, 1000, -1000);
+        assertEquals(60, outside.getLeft(100, 1));
+        assertEquals(0, outside.getTop(80, 1));
+    }
+
+    @Test
+    public void rawWindowsKeepTheBayerPhase() {
+        FrameRoi roi = new FrameRoi(41, 31, 1, 1);
+        assertEquals(40, roi.getWidth(101, 2));
+        assertEquals(30, roi.getHeight(81, 2));
+        assertEquals(0, roi.getLeft(101, 2) % 2);
+        assertEquals(0, roi.getTop(81, 2) % 2);
+    }
+
+    @Test
+    public void windowLargerThanTheFrameIsClipped() {
+        FrameRoi roi = new FrameRoi(200, 200, 0, 0);
+        assertEquals(100, roi.getWidth(100, 1));
+        assertEquals(80, roi.getHeight(80, 1));
+        assertEquals(0, roi.getLeft(100, 1));
+        assertEquals(0, roi.getTop(80, 1));
+    }
+
+    @Test
+    public void parsesOneMapOrAList() {
+        assertTrue(FrameRoi.parse(null).isEmpty());
+
+        List<FrameRoi> single = FrameRoi.parse(roi(10, 20, 1, 2));
+        assertEquals(1, single.size());
+        assertEquals(10, single.get(0).width);
+        assertEquals(2, single.get(0).offsetY);
+
+        List<FrameRoi> list = FrameRoi.parse(Arrays.asList(roi(10, 20, 0, 0), roi(30, 40, 5, 6)));
+        assertEquals(2, list.size());
+        assertEquals(30, list.get(1).width);
+        assertEquals(roi(30, 40, 5, 6), list.get(1).toMap());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void missingSizeIsRejected() {
+        Map<String, Object> map = new HashMap<>();
+        map.put("width", 10);
+        FrameRoi.parse(map);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void listOfNonMapsIsRejected() {
+        FrameRoi.parse(Arrays.asList(1, 2));
+    }
+}
@@ -0,0 +1,116 @@
+package com.smart_scope;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class HdrFusionTest {
+    private static final int WIDTH = 4;
+    private static final int HEIGHT = 2;
+    // 8-bit samples stretched to 16 bits
+    private static final int GAIN = 257;
+
+    private static List<FrameRoi> fullFrame() {
+        return Collections.singletonList(new FrameRoi(WIDTH, HEIGHT, 0, 0));
+    }
+
+    private static ByteBuffer frame(int... samples) {
+        ByteBuffer buffer = ByteBuffer.allocate(samples.length);
+        for (int sample : samples) {
+            buffer.put((byte) sample);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static int[] fused(HdrFusion fusion, int window) {
+        int pixels = fusion.getWindowWidth(window) * fusion.getWindowHeight(window);
+        ByteBuffer target = ByteBuffer.allocate(pixels * 2);
+        fusion.writeWindow(window, target);
+        target.flip();
+        target.order(ByteOrder.LITTLE_ENDIAN);
+        int[] values = new int[pixels];
+        for (int i = 0; i < pixels; i++) {
+            values[i] = target.getShort() & 0xffff;
+        }
+        return values;
+    }
+
+    @Test
+    public void bracketMergesToTheShortestExposure() {
+        HdrFusion fusion = new HdrFusion(fullFrame(), WIDTH, HEIGHT, 1, 0, 255);
+        fusion.begin(new long[]{1000, 4000});
+        // Consistent radiance, clipped only in the long exposure, clipped in both, dark in both
+        fusion.add(frame(50, 100, 250, 0, 60, 60, 60, 60), WIDTH, 1, 8, 1000);
+        fusion.add(frame(200, 255, 255, 0, 240, 240, 240, 240), WIDTH, 1, 8, 4000);
+
+        int[] values = fused(fusion, 0);
+        assertEquals(50 * GAIN, values[0], 1);
+        assertEquals(100 * GAIN, values[1]);
+        assertEquals(65535, values[2]);
+        assertEquals(0, values[3]);
+        assertEquals(60 * GAIN, values[4], 1);
+        assertEquals(2, fusion.getFrameCount());
+        assertEquals(GAIN * 1000.0, fusion.getRadianceScale(), 1.0);
+    }
+
+    @Test
+    public void beginClearsThePreviousPoint() {
+        HdrFusion fusion = new HdrFusion(fullFrame(), WIDTH, HEIGHT, 1, 0, 255);
+        fusion.begin(new long[]{1000});
+        fusion.add(frame(10, 20, 30, 40, 50, 60, 70, 80), WIDTH, 1, 8, 1000);
+
+        fusion.begin(new long[]{2000});
+        assertEquals(0, fusion.getFrameCount());
+        fusion.add(frame(1, 2, 3, 4, 5, 6, 7, 8), WIDTH, 1, 8, 2000);
+        int[] values = fused(fusion, 0);
+        for (int i = 0; i < values.length; i++) {
+            assertEquals((i + 1) * GAIN, values[i]);
+        }
+    }
+
+    @Test
+    public void blackLevelIsRemovedFromRawSamples() {
+        HdrFusion fusion = new HdrFusion(fullFrame(), WIDTH, HEIGHT, 2, 64, 1023);
+        fusion.begin(new long[]{1000});
+        ByteBuffer raw = ByteBuffer.allocate(WIDTH * HEIGHT * 2).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < WIDTH * HEIGHT; i++) {
+            raw.putShort((short) (64 + 100 * i));
+        }
+        raw.flip();
+        fusion.add(raw, WIDTH * 2, 2, 16, 1000);
+
+        int[] values = fused(fusion, 0);
+        float gain = 65535.0f / (1023 - 64);
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(Math.min(65535, Math.round(100 * i * gain)), values[i], 1);
+        }
+    }
+
+    @Test
+    public void windowsReadTheirOwnRegion() {
+        // Right half of the frame
+        List<FrameRoi> windows = Collections.singletonList(new FrameRoi(2, 2, 1, 0));
+        HdrFusion fusion = new HdrFusion(windows, WIDTH, HEIGHT, 1, 0, 255);
+        fusion.begin(new long[]{1000});
+        fusion.add(frame(1, 2, 3, 4, 5, 6, 7, 8), WIDTH, 1, 8, 1000);
+
+        assertEquals(2, fusion.getWindowLeft(0));
+        int[] values = fused(fusion, 0);
+        assertEquals(3 * GAIN, values[0]);
+        assertEquals(4 * GAIN, values[1]);
+        assertEquals(7 * GAIN, values[2]);
+        assertEquals(8 * GAIN, values[3]);
+    }
+
+    @Test
+    public void accumulatorHoldsFourBytesPerPixel() {
+        HdrFusion fusion = new HdrFusion(fullFrame(), WIDTH, HEIGHT, 1, 0, 255);
+        assertEquals(WIDTH * HEIGHT * 4, fusion.getHeldBytes());
+    }
+}
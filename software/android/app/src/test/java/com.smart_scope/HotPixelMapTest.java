@@ -0,0 +1,134 @@
+package com.smart_scope;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HotPixelMapTest {
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void correctReplacesDefectsWithSameColourNeighbours() {
+        ByteBuffer data = image(WIDTH, HEIGHT, 100);
+        put(data, WIDTH, 10, 10, 4000);
+        put(data, WIDTH, 8, 10, 110);
+        put(data, WIDTH, 12, 10, 90);
+        put(data, WIDTH, 10, 8, 120);
+        put(data, WIDTH, 10, 12, 80);
+        HotPixelMap map = new HotPixelMap(WIDTH, HEIGHT, 2, new int[]{10 * WIDTH + 10});
+
+        assertEquals(1, map.correct(data, 0, 0, 0, WIDTH, HEIGHT));
+        assertEquals(100, get(data, WIDTH, 10, 10));
+        assertEquals(110, get(data, WIDTH, 8, 10));
+    }
+
+    @Test
+    public void correctUsesWindowCoordinatesAndSkipsPixelsOutside() {
+        int left = 20;
+        int top = 16;
+        int windowWidth = 16;
+        int windowHeight = 8;
+        int offset = 8;
+        ByteBuffer data = ByteBuffer.allocate(offset + windowWidth * windowHeight * 2).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < windowWidth * windowHeight; i++) {
+            data.putShort(offset + i * 2, (short) 50);
+        }
+        data.putShort(offset, (short) 9000);
+        int inside = top * WIDTH + left;
+        int leftOfWindow = (top + 1) * WIDTH + left - 1;
+        int belowWindow = (top + windowHeight) * WIDTH + left;
+        HotPixelMap map = new HotPixelMap(WIDTH, HEIGHT, 2, new int[]{leftOfWindow, inside, belowWindow});
+
+        // The corner pixel only has a right and a lower neighbour
+        assertEquals(1, map.correct(data, offset, left, top, windowWidth, windowHeight));
+        assertEquals(50, data.getShort(offset) & 0xffff);
+    }
+
+    @Test
+    public void writeAndReadRoundTrip() throws IOException {
+        HotPixelMap map = new HotPixelMap(WIDTH, HEIGHT, 2, new int[]{3, 70, 1000});
+        File file = folder.newFile("map" + HotPixelMap.EXTENSION);
+        map.writeTo(file);
+
+        HotPixelMap read = HotPixelMap.read(file);
+        assertEquals(WIDTH, read.width);
+        assertEquals(HEIGHT, read.height);
+        assertEquals(2, read.neighbourDistance);
+        assertArrayEquals(map.pixels, read.pixels);
+    }
+
+    @Test
+    public void detectorKeepsPixelsFlaggedInMostFrames() throws IOException {
+        HotPixelMap.Detector detector = new HotPixelMap.Detector(WIDTH, HEIGHT, 2, 4);
+        for (int frame = 0; frame < 4; frame++) {
+            ByteBuffer data = image(WIDTH, HEIGHT, 64);
+            put(data, WIDTH, 5, 7, 1000);
+            put(data, WIDTH, 30, 20, 1000);
+            if (frame == 0) {
+                // Flagged once, a cosmic ray rather than a defect
+                put(data, WIDTH, 40, 40, 1000);
+            }
+            assertEquals(frame == 3, detector.add(data, WIDTH * 2, 2, 10));
+        }
+
+        assertArrayEquals(new int[]{7 * WIDTH + 5, 20 * WIDTH + 30}, detector.build().pixels);
+    }
+
+    @Test
+    public void detectorStopsAtTheCandidateCapOnABrightFrame() {
+        int width = 1024;
+        int height = 1024;
+        // Half the pixels far above the sampled statistics
+        ByteBuffer data = image(width, height, 0);
+        for (int y = 1; y < height; y += 2) {
+            for (int x = 0; x < width; x += 2) {
+                put(data, width, x, y, 4000);
+            }
+        }
+        for (int y = 0; y < height; y += 2) {
+            for (int x = 1; x < width; x += 2) {
+                put(data, width, x, y, 4000);
+            }
+        }
+        HotPixelMap.Detector detector = new HotPixelMap.Detector(width, height, 1, 1);
+
+        try {
+            detector.add(data, width * 2, 2, 12);
+            fail("A bright frame must be rejected");
+        } catch (IOException expected) {
+            assertTrue(detector.getHeldBytes() <= (1 << 18) * 4L + 1024);
+        }
+        assertFalse(detector.build().size() > 0);
+    }
+
+    private static ByteBuffer image(int width, int height, int level) {
+        ByteBuffer data = ByteBuffer.allocate(width * height * 2).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < width * height; i++) {
+            data.putShort(i * 2, (short) level);
+        }
+        return data;
+    }
+
+    private static void put(ByteBuffer data, int width, int x, int y, int value) {
+        data.putShort((y * width + x) * 2, (short) value);
+    }
+
+    private static int get(ByteBuffer data, int width, int x, int y) {
+        return data.getShort((y * width + x) * 2) & 0xffff;
+    }
+}
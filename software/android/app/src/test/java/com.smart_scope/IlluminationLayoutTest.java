@@ -0,0 +1,90 @@
+package com.smart_scope;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class IlluminationLayoutTest {
+    private static final float DENSITY = 2.75f;
+
+    // Where IlluminationView centres dot i for a pattern centred at (centerX, centerY) logical px
+    private static float viewX(IlluminationLayout layout, int index, float centerX) {
+        return centerX * DENSITY + layout.getDotLeft(index, DENSITY) + layout.getDotSize(index, DENSITY) / 2f;
+    }
+
+    private static float viewY(IlluminationLayout layout, int index, float centerY) {
+        return centerY * DENSITY + layout.getDotTop(index, DENSITY) + layout.getDotSize(index, DENSITY) / 2f;
+    }
+
+    @Test
+    public void offsetInMillimetresIsConvertedAtTheDisplayDensity() {
+        assertEquals(100f, IlluminationLayout.getCenter(100, 0, 470), 0);
+        assertEquals(570f, IlluminationLayout.getCenter(100, 25.4f, 470), 1e-3f);
+        assertEquals(-370f, IlluminationLayout.getCenter(100, -25.4f, 470), 1e-3f);
+    }
+
+    @Test
+    public void aikkDotsSitAboveRightBelowAndLeftOfTheCentre() {
+        IlluminationLayout layout = IlluminationLayout.aikk(10, 20, false, 6);
+        float centerX = 200;
+        float centerY = 300;
+        float[][] expected = {{200, 280}, {220, 300}, {200, 320}, {180, 300}};
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i][0] * DENSITY, viewX(layout, i, centerX), 1e-3f);
+            assertEquals(expected[i][1] * DENSITY, viewY(layout, i, centerY), 1e-3f);
+        }
+    }
+
+    @Test
+    public void fpmColumnsRunAlongXAndRowsAlongY() {
+        // Wider than tall, like a landscape grid on a portrait screen
+        IlluminationLayout layout = IlluminationLayout.fpm(2, 3, 5, 30);
+        assertEquals(6, layout.getPointCount());
+        assertEquals(-30f, layout.x[0], 0);
+        assertEquals(-15f, layout.y[0], 0);
+        // Last dot of the first row, then first dot of the second
+        assertEquals(30f, layout.x[2], 0);
+        assertEquals(-15f, layout.y[2], 0);
+        assertEquals(-30f, layout.x[3], 0);
+        assertEquals(15f, layout.y[3], 0);
+    }
+
+    @Test
+    public void dotSquareCoversTheScaledRadius() {
+        IlluminationLayout layout = IlluminationLayout.fpm(1, 1, 7, 20);
+        int size = layout.getDotSize(0, DENSITY);
+        assertTrue(size >= 7 * DENSITY * 2 + 2);
+        assertTrue(size < 7 * DENSITY * 2 + 3);
+        assertEquals(-size / 2f, layout.getDotLeft(0, DENSITY), 0);
+        assertEquals(-size / 2f, layout.getDotTop(0, DENSITY), 0);
+    }
+
+    @Test
+    public void dotsAtTheViewEdgeAreNotPulledIn() {
+        // Pattern centred on the top-left corner of the view: half of the grid falls outside it
+        IlluminationLayout layout = IlluminationLayout.fpm(2, 2, 5, 40);
+        assertEquals(-20 * DENSITY, viewX(layout, 0, 0), 1e-3f);
+        assertEquals(-20 * DENSITY, viewY(layout, 0, 0), 1e-3f);
+        assertEquals(20 * DENSITY, viewX(layout, 3, 0), 1e-3f);
+        assertEquals(20 * DENSITY, viewY(layout, 3, 0), 1e-3f);
+        assertTrue(layout.getDotLeft(0, DENSITY) < 0);
+    }
+
+    @Test
+    public void saikkCentreDotComesFirstAndRingsAreCentred() {
+        IlluminationLayout layout = IlluminationLayout.saikk(10, 20, 2, new double[]{0.5, 0.4},
+                new float[]{1.2f, 1.4f});
+        assertEquals(0f, layout.x[0], 0);
+        assertEquals(0f, layout.y[0], 0);
+
+        double sumX = 0;
+        double sumY = 0;
+        for (int i = 0; i < layout.getPointCount(); i++) {
+            sumX += layout.x[i];
+            sumY += layout.y[i];
+        }
+        assertEquals(0, sumX / layout.getPointCount(), 1e-3);
+        assertEquals(0, sumY / layout.getPointCount(), 1e-3);
+    }
+}
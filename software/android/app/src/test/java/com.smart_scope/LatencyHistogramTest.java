@@ -0,0 +1,76 @@
+package com.smart_scope;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+    @Test
+    public void emptyHistogramReportsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0.0, histogram.getMean(), 0.0);
+        assertEquals(0, histogram.getPercentile(99));
+        assertEquals(0, histogram.getMax());
+    }
+
+    @Test
+    public void smallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int value = 0; value < 16; value++) {
+            histogram.record(value);
+        }
+        assertEquals(16, histogram.getCount());
+        assertEquals(7.5, histogram.getMean(), 1e-9);
+        assertEquals(7, histogram.getPercentile(50));
+        assertEquals(15, histogram.getPercentile(100));
+        assertEquals(15, histogram.getMax());
+    }
+
+    @Test
+    public void percentilesStayWithinOneSubBucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int value = 1; value <= 100000; value++) {
+            histogram.record(value);
+        }
+        // 16 sub-buckets per power of two, the reported value is the top of the percentile's bucket
+        for (double percentile : new double[]{50, 90, 99}) {
+            long exact = Math.round(percentile * 1000);
+            long reported = histogram.getPercentile(percentile);
+            assertTrue(percentile + ": " + reported, reported >= exact);
+            assertTrue(percentile + ": " + reported, reported <= exact + exact / 16);
+        }
+        assertEquals(100000, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void percentileNeverExceedsTheMaximum() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1000);
+        // 1000 shares a bucket with values up to 1023
+        assertEquals(1000, histogram.getPercentile(50));
+    }
+
+    @Test
+    public void outOfRangeValuesAreClamped() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        assertEquals(0, histogram.getMax());
+        histogram.record(Long.MAX_VALUE);
+        assertEquals((1L << 32) - 1, histogram.getMax());
+        assertEquals((1L << 32) - 1, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void resetClearsEverything() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(500);
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getPercentile(50));
+        histogram.record(20);
+        assertEquals(20, histogram.getPercentile(50));
+    }
+}
@@ -0,0 +1,79 @@
+package com.smart_scope;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class SequenceFrameWriteTest {
+    private static ByteBuffer acquireFrame(FramePool pool, int... bytes) throws InterruptedException {
+        ByteBuffer frame = pool.acquire(bytes.length, 0);
+        for (int value : bytes) {
+            frame.put((byte) value);
+        }
+        frame.flip();
+        return frame;
+    }
+
+    @Test
+    public void windowsAreStoredInOrderAndTheBufferReturnsToThePool() throws Exception {
+        FramePool pool = new FramePool(16, 1);
+        ByteBuffer frame = acquireFrame(pool, 1, 2, 3, 4, 5, 6);
+        List<byte[]> stored = new ArrayList<>();
+
+        String path = new SequenceFrameWrite(frame, new int[]{2, 4}, pool, (window, data) -> {
+            byte[] bytes = new byte[data.remaining()];
+            data.get(bytes);
+            stored.add(bytes);
+            return "window" + window;
+        }).write();
+
+        assertEquals("window0", path);
+        assertEquals(2, stored.size());
+        assertEquals(2, stored.get(0).length);
+        assertEquals(1, stored.get(0)[0]);
+        assertEquals(4, stored.get(1).length);
+        assertEquals(3, stored.get(1)[0]);
+        assertEquals(6, stored.get(1)[3]);
+        assertEquals(1, pool.getFreeBuffers());
+    }
+
+    @Test
+    public void failedStoreStillReleasesTheBuffer() throws Exception {
+        FramePool pool = new FramePool(16, 1);
+        ByteBuffer frame = acquireFrame(pool, 1, 2);
+        try {
+            new SequenceFrameWrite(frame, new int[]{2}, pool, (window, data) -> {
+                throw new IOException("disk full");
+            }).write();
+            fail("Store error was swallowed");
+        } catch (IOException expected) {
+            assertEquals(1, pool.getFreeBuffers());
+        }
+    }
+
+    @Test
+    public void windowsAreDescribedByTheirPlacement() {
+        CameraBackend.Frame frame = FrameEncoderTest.yuvFrame(8, 4);
+        List<FrameRoi> rois = new ArrayList<>();
+        rois.add(new FrameRoi(4, 2, 1, 1));
+
+        AcquisitionContainer.FrameInfo[] whole = SequenceFrameWrite.describeWindows(frame, new ArrayList<>(), 3, 1);
+        assertEquals(1, whole.length);
+        assertEquals(8, whole[0].width);
+        assertEquals(3, whole[0].pointIndex);
+        assertEquals(1, whole[0].frameIndex);
+
+        AcquisitionContainer.FrameInfo[] windows = SequenceFrameWrite.describeWindows(frame, rois, 0, 0);
+        assertEquals(4, windows[0].width);
+        assertEquals(2, windows[0].height);
+        assertEquals(8, windows[0].sensorWidth);
+        assertEquals(rois.get(0).getLeft(8, 1), windows[0].roiLeft);
+        assertEquals(rois.get(0).getTop(4, 1), windows[0].roiTop);
+    }
+}
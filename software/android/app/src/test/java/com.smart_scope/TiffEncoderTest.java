@@ -0,0 +1,127 @@
+package com.smart_scope;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class TiffEncoderTest {
+    // Tag to value of the first IFD, ASCII entries keep their offset
+    private static Map<Integer, Integer> readEntries(ByteBuffer tiff) {
+        tiff.order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals('I', tiff.get(0));
+        assertEquals('I', tiff.get(1));
+        assertEquals(42, tiff.getShort(2));
+
+        int ifd = tiff.getInt(4);
+        int count = tiff.getShort(ifd);
+        Map<Integer, Integer> entries = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            int entry = ifd + 2 + i * 12;
+            int tag = tiff.getShort(entry) & 0xffff;
+            int type = tiff.getShort(entry + 2);
+            entries.put(tag, type == 3 ? tiff.getShort(entry + 8) & 0xffff : tiff.getInt(entry + 8));
+        }
+        return entries;
+    }
+
+    private static String readDescription(ByteBuffer tiff, Map<Integer, Integer> entries) {
+        int offset = entries.get(270);
+        StringBuilder description = new StringBuilder();
+        for (int i = offset; tiff.get(i) != 0; i++) {
+            description.append((char) tiff.get(i));
+        }
+        return description.toString();
+    }
+
+    private static int[] readSamples(ByteBuffer tiff, Map<Integer, Integer> entries) {
+        int offset = entries.get(273);
+        int[] samples = new int[entries.get(279) / 2];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = tiff.getShort(offset + i * 2) & 0xffff;
+        }
+        return samples;
+    }
+
+    @Test
+    public void eightBitSamplesAreWidenedWithoutATone() {
+        // 3x2 plane with a padded row stride
+        byte[] plane = {10, 20, (byte) 255, 0, 30, 40, 50, 0};
+        byte[] encoded = TiffEncoder.encodeGray16(ByteBuffer.wrap(plane), 3, 2, 4, 1, 8, "format=YUV");
+        ByteBuffer tiff = ByteBuffer.wrap(encoded);
+
+        Map<Integer, Integer> entries = readEntries(tiff);
+        assertEquals(3, (int) entries.get(256));
+        assertEquals(2, (int) entries.get(257));
+        assertEquals(16, (int) entries.get(258));
+        assertEquals(1, (int) entries.get(259));
+        assertEquals(1, (int) entries.get(262));
+        assertEquals(3 * 2 * 2, (int) entries.get(279));
+        assertEquals("format=YUV", readDescription(tiff, entries));
+
+        int[] samples = readSamples(tiff, entries);
+        assertEquals(10, samples[0]);
+        assertEquals(255, samples[2]);
+        assertEquals(30, samples[3]);
+        assertEquals(50, samples[5]);
+        assertEquals(TiffEncoder.encodedSize(3, 2, "format=YUV"), encoded.length);
+    }
+
+    @Test
+    public void sixteenBitSamplesAreCopiedVerbatim() {
+        ByteBuffer plane = ByteBuffer.allocate(2 * 2 * 2).order(ByteOrder.LITTLE_ENDIAN);
+        plane.putShort((short) 64).putShort((short) 1023).putShort((short) 0xfff0).putShort((short) 1);
+        plane.flip();
+
+        ByteBuffer tiff = ByteBuffer.wrap(TiffEncoder.encodeGray16(plane, 2, 2, 4, 2, 16, null));
+        Map<Integer, Integer> entries = readEntries(tiff);
+        assertEquals("", readDescription(tiff, entries));
+        int[] samples = readSamples(tiff, entries);
+        assertEquals(64, samples[0]);
+        assertEquals(1023, samples[1]);
+        assertEquals(0xfff0, samples[2]);
+        assertEquals(1, samples[3]);
+        // The source keeps its byte order
+        assertEquals(ByteOrder.LITTLE_ENDIAN, plane.order());
+    }
+
+    @Test
+    public void pixelStrideSkipsInterleavedSamples() {
+        // Every other byte belongs to another channel
+        byte[] plane = {1, 99, 2, 99, 3, 99, 4, 99};
+        ByteBuffer tiff = ByteBuffer.wrap(TiffEncoder.encodeGray16(ByteBuffer.wrap(plane), 2, 2, 4, 2, 8, ""));
+        int[] samples = readSamples(tiff, readEntries(tiff));
+        assertEquals(1, samples[0]);
+        assertEquals(2, samples[1]);
+        assertEquals(3, samples[2]);
+        assertEquals(4, samples[3]);
+    }
+
+    @Test
+    public void darkReferenceIsSubtractedAndClampedAtZero() {
+        ByteBuffer plane = ByteBuffer.allocate(3 * 2).order(ByteOrder.LITTLE_ENDIAN);
+        plane.putShort((short) 100).putShort((short) 64).putShort((short) 0xffff);
+        plane.flip();
+        short[] dark = {64, 70, 1};
+
+        ByteBuffer target = ByteBuffer.allocate(TiffEncoder.encodedSize(3, 1, null));
+        TiffEncoder.encodeGray16(plane, 3, 1, 6, 2, 16, dark, null, target);
+        int[] samples = readSamples(target, readEntries(target));
+        assertEquals(36, samples[0]);
+        assertEquals(0, samples[1]);
+        assertEquals(0xfffe, samples[2]);
+    }
+
+    @Test
+    public void headerLeavesRoomForTheSamples() {
+        String description = "exposureNs=1000;iso=100";
+        ByteBuffer target = ByteBuffer.allocate(TiffEncoder.encodedSize(4, 4, description));
+        int pixelOffset = TiffEncoder.writeGray16Header(4, 4, description, target);
+        assertEquals(target.position(), pixelOffset);
+        assertEquals(4 * 4 * 2, target.remaining());
+    }
+}
@@ -0,0 +1,325 @@
+package com.smart_scope;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Capture sequences against SimulatedCamera on a plain JVM: one burst per point, slot accounting, encoding into
+// pooled buffers and the write queue into an acquisition container, sized like the app. Arguments are key=value
+// pairs overriding DEFAULTS, e.g. width=8192 height=6144 format=raw fps=0
+final class CaptureBenchmark {
+    private static final long SEQUENCE_TIMEOUT_MS = 10 * 60 * 1000;
+    private static final String[] STAGES = {"started", "completed", "imageAvailable", "written", "delivered"};
+
+    private static final Map<String, String> DEFAULTS = new LinkedHashMap<>();
+
+    static {
+        DEFAULTS.put("width", "4000");
+        DEFAULTS.put("height", "3000");
+        // raw, yuv or jpeg
+        DEFAULTS.put("format", "raw");
+        DEFAULTS.put("points", "25");
+        DEFAULTS.put("frames", "1");
+        // 0 runs the sensor as fast as the pipeline takes frames
+        DEFAULTS.put("fps", "30");
+        DEFAULTS.put("latencyMs", "50");
+        DEFAULTS.put("maxImages", "2");
+        // WIDTHxHEIGHT of a centered window stored instead of the whole frame, empty for the whole frame
+        DEFAULTS.put("roi", "");
+        DEFAULTS.put("container", "true");
+        DEFAULTS.put("warmup", "2");
+        DEFAULTS.put("runs", "5");
+        DEFAULTS.put("seed", "1");
+        DEFAULTS.put("out", System.getProperty("java.io.tmpdir"));
+        // Summary as JSON, for comparing builds
+        DEFAULTS.put("json", "");
+    }
+
+    private final Map<String, String> options;
+    private final int width;
+    private final int height;
+    private final int format;
+    private final int points;
+    private final int framesPerPoint;
+    private final List<FrameRoi> rois;
+    private final boolean useContainer;
+    private final File outDir;
+    private final CaptureMetrics metrics = new CaptureMetrics();
+
+    private CaptureBenchmark(Map<String, String> options) {
+        this.options = options;
+        this.width = getInt("width");
+        this.height = getInt("height");
+        this.format = parseFormat(options.get("format"));
+        this.points = getInt("points");
+        this.framesPerPoint = getInt("frames");
+        this.rois = parseRoi(options.get("roi"));
+        this.useContainer = Boolean.parseBoolean(options.get("container"));
+        this.outDir = new File(options.get("out"));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>(DEFAULTS);
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator <= 0 || !DEFAULTS.containsKey(arg.substring(0, separator))) {
+                System.err.println("Unknown argument " + arg + ", expected key=value with a key of " + DEFAULTS.keySet());
+                System.exit(2);
+            }
+            options.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+
+        new CaptureBenchmark(options).run();
+    }
+
+    private void run() throws Exception {
+        System.out.println(String.format(Locale.ROOT, "Simulated %s %dx%d, %d points x %d frames, %s fps, %s ms latency, %s images%s",
+                options.get("format"), width, height, points, framesPerPoint, options.get("fps"),
+                options.get("latencyMs"), options.get("maxImages"),
+                rois.isEmpty() ? "" : ", window " + options.get("roi")));
+
+        int warmup = getInt("warmup");
+        int runs = getInt("runs");
+        List<Double> framesPerSecond = new ArrayList<>();
+        List<Double> megabytesPerSecond = new ArrayList<>();
+        for (int i = 0; i < warmup + runs; i++) {
+            if (i == warmup) {
+                metrics.reset();
+            }
+
+            SequenceRun sequence = new SequenceRun(i);
+            sequence.run();
+            double seconds = sequence.elapsedNs / 1e9;
+            double fps = points * framesPerPoint / seconds;
+            double mbps = sequence.bytesWritten / 1e6 / seconds;
+            System.out.println(String.format(Locale.ROOT, "%s %d: %d frames in %.3f s, %.1f frames/s, %.1f MB/s",
+                    i < warmup ? "warmup" : "run", i < warmup ? i + 1 : i - warmup + 1, points * framesPerPoint,
+                    seconds, fps, mbps));
+            if (i >= warmup) {
+                framesPerSecond.add(fps);
+                megabytesPerSecond.add(mbps);
+            }
+        }
+
+        Map<String, Object> stages = metrics.toMap();
+        System.out.println(String.format(Locale.ROOT, "median of %d runs: %.1f frames/s, %.1f MB/s",
+                runs, median(framesPerSecond), median(megabytesPerSecond)));
+        System.out.println(String.format(Locale.ROOT, "%-16s %8s %9s %9s %9s %9s %9s",
+                "latency (ms)", "count", "mean", "p50", "p90", "p99", "max"));
+        for (String stage : STAGES) {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> histogram = (Map<String, Object>) stages.get(stage);
+            System.out.println(String.format(Locale.ROOT, "%-16s %8d %9.2f %9.2f %9.2f %9.2f %9.2f", stage,
+                    (Long) histogram.get("count"), (Double) histogram.get("meanMs"), (Double) histogram.get("p50Ms"),
+                    (Double) histogram.get("p90Ms"), (Double) histogram.get("p99Ms"), (Double) histogram.get("maxMs")));
+        }
+
+        String jsonPath = options.get("json");
+        if (!jsonPath.isEmpty()) {
+            Map<String, Object> summary = new HashMap<>();
+            summary.put("options", new HashMap<>(options));
+            summary.put("framesPerSecond", median(framesPerSecond));
+            summary.put("megabytesPerSecond", median(megabytesPerSecond));
+            summary.put("runs", framesPerSecond);
+            summary.put("stages", stages);
+            try (FileOutputStream out = new FileOutputStream(jsonPath)) {
+                out.write(AcquisitionContainer.toJson(summary).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    // One capture sequence, run by the app's CaptureSequencer with SimulatedCamera as its camera and the
+    // illumination presented at once
+    private final class SequenceRun implements CaptureSequencer.Host {
+        private final SimulatedCamera camera;
+        private final CaptureSequence sequence;
+        private final CaptureSequencer sequencer;
+        private final FramePool pool;
+        private final FrameWriter writer = new FrameWriter(SequenceFrameWrite.WRITE_QUEUE_CAPACITY);
+        private final CountDownLatch done = new CountDownLatch(1);
+        private final AtomicReference<String> error = new AtomicReference<>();
+        private final File file;
+        private final AtomicInteger storedFiles = new AtomicInteger();
+        private long elapsedNs;
+        private long bytesWritten;
+
+        SequenceRun(int index) {
+            int maxImages = getInt("maxImages");
+            this.camera = new SimulatedCamera(width, height, format, Double.parseDouble(options.get("fps")),
+                    Math.round(Double.parseDouble(options.get("latencyMs")) * 1e6), maxImages,
+                    Long.parseLong(options.get("seed")));
+            this.pool = new FramePool(FrameEncoder.getBufferSize(width, height, format),
+                    maxImages + SequenceFrameWrite.WRITE_QUEUE_CAPACITY);
+            this.file = new File(outDir, "capture_benchmark_" + index + (useContainer ? AcquisitionContainer.EXTENSION : ""));
+
+            List<Map<String, Object>> pointParams = new ArrayList<>();
+            for (int i = 0; i < points; i++) {
+                pointParams.add(new HashMap<>());
+            }
+            this.sequence = new CaptureSequence("benchmark", pointParams, framesPerPoint, null, null, useContainer,
+                    rois);
+            sequence.linearWindows = rois.isEmpty() ?
+                    Collections.singletonList(new FrameRoi(width, height, 0, 0)) : rois;
+            sequence.blackLevel = 0;
+            sequence.whiteLevel = 1023;
+            this.sequencer = new CaptureSequencer(sequence, camera, this, pool, writer, metrics);
+        }
+
+        void run() throws Exception {
+            if (useContainer) {
+                sequence.setContainer(new AcquisitionContainer.Writer(file,
+                        points * framesPerPoint * Math.max(1, rois.size())));
+            } else if (!file.mkdirs() && !file.isDirectory()) {
+                throw new IOException("Cannot create " + file);
+            }
+
+            try {
+                long startNs = CaptureMetrics.now();
+                sequencer.start();
+                if (!done.await(SEQUENCE_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                    sequencer.fail("TIMEOUT", "Sequence did not finish within " + SEQUENCE_TIMEOUT_MS + " ms");
+                }
+                elapsedNs = CaptureMetrics.now() - startNs;
+                if (error.get() != null) {
+                    throw new IOException(error.get());
+                }
+                bytesWritten = sizeOf(file);
+            } finally {
+                camera.close();
+                writer.shutdown();
+                writer.awaitTermination(SequenceFrameWrite.FRAME_WRITE_TIMEOUT_MS);
+                AcquisitionContainer.Writer container = sequence.getContainer();
+                if (container != null) {
+                    container.close();
+                }
+                delete(file);
+            }
+        }
+
+        @Override
+        public void presentPoint(int pointIndex) {
+            sequencer.onPresented(pointIndex, CaptureSequence.NO_CUTOFF);
+        }
+
+        // The app's MediaStore path without MediaStore, one file per window
+        @Override
+        public String storeFrame(ByteBuffer data, Map<String, Object> params, int format, int pointIndex)
+                throws IOException {
+            File frameFile = new File(file, "frame_" + storedFiles.getAndIncrement() + ".tiff");
+            try (RandomAccessFile out = new RandomAccessFile(frameFile, "rw");
+                 FileChannel channel = out.getChannel()) {
+                while (data.hasRemaining()) {
+                    channel.write(data);
+                }
+            }
+            return frameFile.getAbsolutePath();
+        }
+
+        @Override
+        public HotPixelMap getHotPixels(int format, int width, int height, int pointIndex) {
+            return null;
+        }
+
+        @Override
+        public void onDarkFrame(DarkFrame dark) {
+        }
+
+        @Override
+        public void onBuffersAllocated() {
+        }
+
+        @Override
+        public void onFilesClosed() {
+        }
+
+        @Override
+        public void onComplete(List<String> framePaths) {
+            metrics.record(CaptureMetrics.DELIVERED, sequence.createdNs);
+            done.countDown();
+        }
+
+        @Override
+        public void onFailed(String errorCode, String errorMessage) {
+            error.compareAndSet(null, errorCode + ": " + errorMessage);
+            done.countDown();
+        }
+    }
+
+    private int getInt(String key) {
+        return Integer.parseInt(options.get(key));
+    }
+
+    private static int parseFormat(String format) {
+        switch (format.toLowerCase(Locale.ROOT)) {
+            case "raw":
+                return CameraBackend.FORMAT_RAW_SENSOR;
+            case "yuv":
+                return CameraBackend.FORMAT_YUV_420_888;
+            case "jpeg":
+                return CameraBackend.FORMAT_JPEG;
+            default:
+                throw new IllegalArgumentException("Unknown format " + format + ", expected raw, yuv or jpeg");
+        }
+    }
+
+    private static List<FrameRoi> parseRoi(String roi) {
+        if (roi.isEmpty()) {
+            return Collections.emptyList();
+        }
+        String[] size = roi.toLowerCase(Locale.ROOT).split("x");
+        if (size.length != 2) {
+            throw new IllegalArgumentException("ROI must be WIDTHxHEIGHT: " + roi);
+        }
+        return Collections.singletonList(new FrameRoi(Integer.parseInt(size[0]), Integer.parseInt(size[1]), 0, 0));
+    }
+
+    private static double median(List<Double> values) {
+        if (values.isEmpty()) {
+            return 0;
+        }
+        Double[] sorted = values.toArray(new Double[0]);
+        Arrays.sort(sorted);
+        int middle = sorted.length / 2;
+        return sorted.length % 2 == 1 ? sorted[middle] : (sorted[middle - 1] + sorted[middle]) / 2;
+    }
+
+    private static long sizeOf(File file) {
+        File[] children = file.listFiles();
+        if (children == null) {
+            return file.length();
+        }
+        long size = 0;
+        for (File child : children) {
+            size += sizeOf(child);
+        }
+        return size;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        if (file.exists() && !file.delete()) {
+            System.err.println("Cannot delete " + file);
+        }
+    }
+}
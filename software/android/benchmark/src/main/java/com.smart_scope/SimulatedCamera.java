@@ -0,0 +1,236 @@
+package com.smart_scope;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+// Deterministic stand-in for the camera. Requests start one frame interval apart and their frames arrive
+// sensorLatency after the start, so consecutive frames overlap like on a real sensor. The listener may hold
+// maxImages frames, like an ImageReader, after that the sensor waits. Pixels and timestamps depend only on the seed
+// and the frame number
+final class SimulatedCamera implements CameraBackend {
+    // Synthetic images cycled through, generating one per frame would dominate the benchmark
+    private static final int PATTERNS = 2;
+    // Hardware pads YUV rows like this
+    private static final int ROW_ALIGNMENT = 64;
+    private static final int WHITE_LEVEL = 1023;
+
+    private final int width;
+    private final int height;
+    private final int format;
+    private final long frameIntervalNs;
+    private final long sensorLatencyNs;
+    private final int maxImages;
+    private final long seed;
+
+    private ScheduledThreadPoolExecutor sensor;
+    private Semaphore images;
+    private ByteBuffer[] patterns;
+    private Listener listener;
+    private long nextFrameNumber = 0;
+    private long nextStartNs = 0;
+
+    // A frame rate of 0 or less runs the sensor as fast as the pipeline takes frames
+    SimulatedCamera(int width, int height, int format, double frameRate, long sensorLatencyNs, int maxImages,
+                    long seed) {
+        this.width = width;
+        this.height = height;
+        this.format = format;
+        this.frameIntervalNs = frameRate > 0 ? Math.round(1e9 / frameRate) : 0;
+        this.sensorLatencyNs = Math.max(0, sensorLatencyNs);
+        this.maxImages = Math.max(1, maxImages);
+        this.seed = seed;
+    }
+
+    int getRowStride() {
+        switch (format) {
+            case FORMAT_RAW_SENSOR:
+                return width * 2;
+            case FORMAT_YUV_420_888:
+                return (width + ROW_ALIGNMENT - 1) / ROW_ALIGNMENT * ROW_ALIGNMENT;
+            default:
+                return 0;
+        }
+    }
+
+    @Override
+    public synchronized void open(Listener listener) throws IOException {
+        if (sensor != null) {
+            throw new IOException("Camera already open");
+        }
+
+        this.listener = listener;
+        this.patterns = new ByteBuffer[PATTERNS];
+        for (int i = 0; i < PATTERNS; i++) {
+            patterns[i] = createPattern(seed + i);
+        }
+        this.images = new Semaphore(maxImages);
+        this.sensor = new ScheduledThreadPoolExecutor(1, runnable -> new Thread(runnable, "Simulated Sensor"));
+        this.nextFrameNumber = 0;
+        this.nextStartNs = 0;
+    }
+
+    @Override
+    public synchronized void submitBurst(List<Request> requests) throws IOException {
+        if (sensor == null) {
+            throw new IOException("Camera not open");
+        }
+
+        long now = System.nanoTime();
+        for (Request request : requests) {
+            long frameNumber = nextFrameNumber++;
+            long startNs = Math.max(now, nextStartNs);
+            nextStartNs = startNs + frameIntervalNs;
+            // Ties run in submission order, so frames keep their order when the sensor is unthrottled
+            sensor.schedule(() -> listener.onCaptureStarted(request, getTimestamp(frameNumber)),
+                    startNs - now, TimeUnit.NANOSECONDS);
+            sensor.schedule(() -> deliver(request, frameNumber), startNs + sensorLatencyNs - now, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (sensor == null) {
+            return;
+        }
+
+        sensor.shutdownNow();
+        try {
+            sensor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        sensor = null;
+        patterns = null;
+    }
+
+    private void deliver(Request request, long frameNumber) {
+        try {
+            images.acquire();
+        } catch (InterruptedException e) {
+            return;
+        }
+
+        ByteBuffer pattern = patterns[(int) (frameNumber % PATTERNS)].duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        // The sensor honours every request exactly
+        CaptureMetadataIndex.Record result = new CaptureMetadataIndex.Record();
+        result.frameNumber = frameNumber;
+        result.sensorTimestampNs = getTimestamp(frameNumber);
+        result.exposureNs = request.exposureNs;
+        result.frameDurationNs = frameIntervalNs;
+        result.iso = request.iso;
+        result.focusDistance = request.focusDistance;
+        listener.onCaptureCompleted(request, result);
+        listener.onFrame(new Frame(pattern, getTimestamp(frameNumber)));
+    }
+
+    private long getTimestamp(long frameNumber) {
+        return (frameNumber + 1) * Math.max(1, frameIntervalNs);
+    }
+
+    // Smooth illumination falloff plus noise, RAW and YUV at their own bit depth, JPEG as an opaque payload
+    private ByteBuffer createPattern(long patternSeed) {
+        long state = patternSeed * 0x9E3779B97F4A7C15L | 1;
+        ByteBuffer buffer;
+        if (format == FORMAT_JPEG) {
+            buffer = ByteBuffer.allocateDirect(Math.max(4, width * height / 8));
+            while (buffer.hasRemaining()) {
+                state = nextRandom(state);
+                buffer.put((byte) state);
+            }
+            buffer.put(0, (byte) 0xff).put(1, (byte) 0xd8);
+            buffer.put(buffer.limit() - 2, (byte) 0xff).put(buffer.limit() - 1, (byte) 0xd9);
+            buffer.flip();
+            return buffer.asReadOnlyBuffer();
+        }
+
+        boolean isRaw = format == FORMAT_RAW_SENSOR;
+        int rowStride = getRowStride();
+        int maxLevel = isRaw ? WHITE_LEVEL : 255;
+        buffer = ByteBuffer.allocateDirect(rowStride * height).order(ByteOrder.LITTLE_ENDIAN);
+        double centerX = width / 2.0;
+        double centerY = height / 2.0;
+        double radius2 = centerX * centerX + centerY * centerY;
+        for (int y = 0; y < height; y++) {
+            int rowStart = y * rowStride;
+            for (int x = 0; x < width; x++) {
+                double dx = x - centerX;
+                double dy = y - centerY;
+                state = nextRandom(state);
+                double level = maxLevel * (0.6 - 0.4 * (dx * dx + dy * dy) / radius2) + (state & 15) - 8;
+                int sample = (int) Math.max(0, Math.min(maxLevel, level));
+                if (isRaw) {
+                    buffer.putShort(rowStart + x * 2, (short) sample);
+                } else {
+                    buffer.put(rowStart + x, (byte) sample);
+                }
+            }
+        }
+        return buffer.asReadOnlyBuffer();
+    }
+
+    private static long nextRandom(long state) {
+        state ^= state << 13;
+        state ^= state >>> 7;
+        state ^= state << 17;
+        return state;
+    }
+
+    private final class Frame implements CameraBackend.Frame {
+        private final ByteBuffer buffer;
+        private final long timestampNs;
+        private boolean closed = false;
+
+        Frame(ByteBuffer buffer, long timestampNs) {
+            this.buffer = buffer;
+            this.timestampNs = timestampNs;
+        }
+
+        @Override
+        public int getFormat() {
+            return format;
+        }
+
+        @Override
+        public int getWidth() {
+            return width;
+        }
+
+        @Override
+        public int getHeight() {
+            return height;
+        }
+
+        @Override
+        public long getTimestamp() {
+            return timestampNs;
+        }
+
+        @Override
+        public ByteBuffer getBuffer() {
+            return buffer;
+        }
+
+        @Override
+        public int getRowStride() {
+            return SimulatedCamera.this.getRowStride();
+        }
+
+        @Override
+        public int getPixelStride() {
+            return format == FORMAT_RAW_SENSOR ? 2 : 1;
+        }
+
+        @Override
+        public synchronized void close() {
+            if (!closed) {
+                closed = true;
+                images.release();
+            }
+        }
+    }
+}
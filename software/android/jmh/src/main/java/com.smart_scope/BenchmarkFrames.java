@@ -0,0 +1,130 @@
+package com.smart_scope;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+// Deterministic frames for the kernel benchmarks
+final class BenchmarkFrames {
+    static final int WHITE_LEVEL = 1023;
+
+    private BenchmarkFrames() {
+    }
+
+    // WIDTHxHEIGHT
+    static int[] parseSize(String size) {
+        String[] parts = size.split("x");
+        return new int[]{Integer.parseInt(parts[0]), Integer.parseInt(parts[1])};
+    }
+
+    static long getPixels(String size) {
+        int[] dimensions = parseSize(size);
+        return (long) dimensions[0] * dimensions[1];
+    }
+
+    static int parseFormat(String format) {
+        return "raw".equals(format) ? CameraBackend.FORMAT_RAW_SENSOR : CameraBackend.FORMAT_YUV_420_888;
+    }
+
+    // First plane as the camera delivers it: 16-bit RAW or 8-bit luma, rows packed
+    static Frame createFrame(int width, int height, int format, long seed) {
+        boolean isRaw = format == CameraBackend.FORMAT_RAW_SENSOR;
+        int pixelStride = isRaw ? 2 : 1;
+        ByteBuffer buffer = ByteBuffer.allocateDirect(width * height * pixelStride).order(ByteOrder.LITTLE_ENDIAN);
+        long state = seed * 0x9E3779B97F4A7C15L | 1;
+        for (int i = 0; i < width * height; i++) {
+            state = nextRandom(state);
+            if (isRaw) {
+                buffer.putShort((short) (state & WHITE_LEVEL));
+            } else {
+                buffer.put((byte) state);
+            }
+        }
+        buffer.flip();
+        return new Frame(buffer, format, width, height, width * pixelStride, pixelStride);
+    }
+
+    static short[] createDark(int pixels, long seed) {
+        short[] dark = new short[pixels];
+        long state = seed * 0x9E3779B97F4A7C15L | 1;
+        for (int i = 0; i < pixels; i++) {
+            state = nextRandom(state);
+            dark[i] = (short) (state & 63);
+        }
+        return dark;
+    }
+
+    // Preview pixels as Bitmap.getPixels returns them
+    static int[] createArgb(int pixels, long seed) {
+        int[] argb = new int[pixels];
+        long state = seed * 0x9E3779B97F4A7C15L | 1;
+        for (int i = 0; i < pixels; i++) {
+            state = nextRandom(state);
+            argb[i] = 0xff000000 | (int) (state & 0xffffff);
+        }
+        return argb;
+    }
+
+    private static long nextRandom(long state) {
+        state ^= state << 13;
+        state ^= state >>> 7;
+        state ^= state << 17;
+        return state;
+    }
+
+    static final class Frame implements CameraBackend.Frame {
+        private final ByteBuffer buffer;
+        private final int format;
+        private final int width;
+        private final int height;
+        private final int rowStride;
+        private final int pixelStride;
+
+        Frame(ByteBuffer buffer, int format, int width, int height, int rowStride, int pixelStride) {
+            this.buffer = buffer;
+            this.format = format;
+            this.width = width;
+            this.height = height;
+            this.rowStride = rowStride;
+            this.pixelStride = pixelStride;
+        }
+
+        @Override
+        public int getFormat() {
+            return format;
+        }
+
+        @Override
+        public int getWidth() {
+            return width;
+        }
+
+        @Override
+        public int getHeight() {
+            return height;
+        }
+
+        @Override
+        public long getTimestamp() {
+            return 0;
+        }
+
+        @Override
+        public ByteBuffer getBuffer() {
+            return buffer;
+        }
+
+        @Override
+        public int getRowStride() {
+            return rowStride;
+        }
+
+        @Override
+        public int getPixelStride() {
+            return pixelStride;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.smart_scope;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Kernels every stored frame goes through, over size pixels: TIFF serialization of a whole frame, the same with
+// the dark reference subtracted, and cropping a size window out of a full sensor frame
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g", "-XX:MaxDirectMemorySize=2g"})
+public class FrameKernelBenchmark {
+    // Largest capture size of the supported phones
+    private static final int SENSOR_WIDTH = 8192;
+    private static final int SENSOR_HEIGHT = 6144;
+    private static final String DESCRIPTION = "format=RAW;width=0;height=0;timestampNs=0;exposureNs=0;iso=0";
+
+    @Param({"150x150", "1024x1024", "4000x3000", "8192x6144"})
+    public String size;
+
+    @Param({"raw", "yuv"})
+    public String format;
+
+    private BenchmarkFrames.Frame frame;
+    private BenchmarkFrames.Frame sensorFrame;
+    private short[] dark;
+    private List<FrameRoi> rois;
+    private String[] descriptions;
+    private int[] windowSizes;
+    private FramePool pool;
+    private ByteBuffer target;
+
+    @Setup
+    public void setUp() {
+        int[] dimensions = BenchmarkFrames.parseSize(size);
+        int sourceFormat = BenchmarkFrames.parseFormat(format);
+        frame = BenchmarkFrames.createFrame(dimensions[0], dimensions[1], sourceFormat, 1);
+        sensorFrame = dimensions[0] == SENSOR_WIDTH && dimensions[1] == SENSOR_HEIGHT ? frame :
+                BenchmarkFrames.createFrame(SENSOR_WIDTH, SENSOR_HEIGHT, sourceFormat, 2);
+        dark = BenchmarkFrames.createDark(dimensions[0] * dimensions[1], 3);
+        rois = Collections.singletonList(new FrameRoi(dimensions[0], dimensions[1], 0, 0));
+        descriptions = new String[]{DESCRIPTION};
+        windowSizes = new int[1];
+
+        int encodedSize = TiffEncoder.encodedSize(dimensions[0], dimensions[1], DESCRIPTION);
+        pool = new FramePool(encodedSize, 1);
+        target = ByteBuffer.allocateDirect(encodedSize);
+    }
+
+    @Benchmark
+    public int serialize() {
+        target.clear();
+        TiffEncoder.encodeGray16(frame.getBuffer(), frame.getWidth(), frame.getHeight(), frame.getRowStride(),
+                frame.getPixelStride(), getSourceBits(), DESCRIPTION, target);
+        return target.position();
+    }
+
+    @Benchmark
+    public int subtractBackground() {
+        target.clear();
+        TiffEncoder.encodeGray16(frame.getBuffer(), frame.getWidth(), frame.getHeight(), frame.getRowStride(),
+                frame.getPixelStride(), getSourceBits(), dark, DESCRIPTION, target);
+        return target.position();
+    }
+
+    @Benchmark
+    public int cropRoi() throws IOException, InterruptedException {
+        ByteBuffer encoded = FrameEncoder.encodeWindows(sensorFrame, rois, descriptions, null, windowSizes, pool, 0);
+        int length = encoded.remaining();
+        pool.release(encoded);
+        return length;
+    }
+
+    private int getSourceBits() {
+        return frame.getFormat() == CameraBackend.FORMAT_RAW_SENSOR ? 16 : 8;
+    }
+}
@@ -0,0 +1,39 @@
+package com.smart_scope;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Centre brightness of a preview bitmap, as getCurrentLightIntensity computes it
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx1g"})
+public class IntensityBenchmark {
+    @Param({"150x150", "1024x1024", "4000x3000", "8192x6144"})
+    public String size;
+
+    private int[] argb;
+
+    @Setup
+    public void setUp() {
+        argb = BenchmarkFrames.createArgb((int) BenchmarkFrames.getPixels(size), 1);
+    }
+
+    @Benchmark
+    public double meanIntensity() {
+        return ImageKernels.meanIntensity(argb, argb.length);
+    }
+}
@@ -0,0 +1,57 @@
+package com.smart_scope;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Map;
+
+// Runs the kernel benchmarks with the GC profiler and restates JMH's per-call results per pixel, so sizes from a
+// 150x150 block to a full frame compare directly. Arguments are JMH's own
+public final class KernelReport {
+    private KernelReport() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        OptionsBuilder options = new OptionsBuilder();
+        options.parent(commandLine);
+        if (commandLine.getIncludes().isEmpty()) {
+            options.include("com\\.smart_scope\\..*Benchmark");
+        }
+        options.addProfiler(GCProfiler.class);
+
+        Collection<RunResult> results = new Runner(options.build()).run();
+
+        System.out.println();
+        System.out.println(String.format(Locale.ROOT, "%-42s %-10s %-5s %10s %10s %12s",
+                "kernel", "size", "fmt", "ns/pixel", "B/pixel", "alloc MB/s"));
+        for (RunResult result : results) {
+            String size = result.getParams().getParam("size");
+            String format = result.getParams().getParam("format");
+            double pixels = BenchmarkFrames.getPixels(size);
+            String benchmark = result.getParams().getBenchmark();
+            Map<String, Result> secondary = result.getSecondaryResults();
+            System.out.println(String.format(Locale.ROOT, "%-42s %-10s %-5s %10.3f %10.3f %12.1f",
+                    benchmark.substring(benchmark.lastIndexOf('.', benchmark.lastIndexOf('.') - 1) + 1), size,
+                    format != null ? format : "-", result.getPrimaryResult().getScore() / pixels,
+                    getSecondary(secondary, "gc.alloc.rate.norm") / pixels,
+                    getSecondary(secondary, "gc.alloc.rate")));
+        }
+    }
+
+    // Older JMH releases prefix the profiler's keys
+    private static double getSecondary(Map<String, Result> secondary, String key) {
+        for (Map.Entry<String, Result> entry : secondary.entrySet()) {
+            if (entry.getKey().equals(key) || entry.getKey().endsWith("·" + key)) {
+                return entry.getValue().getScore();
+            }
+        }
+        return Double.NaN;
+    }
+}
@@ -30,6 +30,11 @@ class _FocusPageState extends State<FocusPage> {
   bool _isHighResolutionMode = true;
   String _resolutionInfo = "";
 
+  StreamSubscription<Map<dynamic, dynamic>>? _focusSubscription;
+  double _sharpness = 0.0;
+  bool _isFocusSweeping = false;
+  double? _lockedFocusDistance;
+
   bool _showAIKK = true;
   bool _showFullGreen = false;
   final bool _showCenterPoint = true;
@@ -105,6 +110,7 @@ class _FocusPageState extends State<FocusPage> {
   @override
   void dispose() {
     _exitFullScreen();
+    _focusSubscription?.cancel();
     _camera.dispose();
     super.dispose();
   }
@@ -122,6 +128,7 @@ class _FocusPageState extends State<FocusPage> {
         setState(() => _isAutoExposure = true);
 
         await _getMaxZoomLevel();
+        _startFocusMonitoring();
       }
     } catch (e) {
       _showSnackBar('Camera initialization failed: $e', Colors.red);
@@ -342,6 +349,59 @@ class _FocusPageState extends State<FocusPage> {
     }
   }
 
+  // Live sharpness of the preview centre, also carries the steps of a running sweep
+  void _startFocusMonitoring() {
+    _focusSubscription?.cancel();
+    _focusSubscription = _camera.startFocusMonitoring()?.listen((event) {
+      if (!mounted) return;
+      final double? sharpness = (event['sharpness'] as num?)?.toDouble();
+      if (sharpness != null) {
+        setState(() => _sharpness = sharpness);
+      }
+    }, onError: (e) {
+      // Camera busy or the analysis stream released under memory pressure
+      debugPrint('Focus monitoring stopped: $e');
+      _focusSubscription?.cancel();
+      _focusSubscription = null;
+      if (mounted) {
+        _showSnackBar('Focus monitoring stopped', Colors.orange);
+      }
+    });
+  }
+
+  Future<void> _toggleFocusSweep() async {
+    if (_isFocusSweeping) {
+      await _camera.cancelFocusSweep();
+      return;
+    }
+
+    setState(() => _isFocusSweeping = true);
+    final result = await _camera.startFocusSweep();
+    if (!mounted) return;
+
+    setState(() {
+      _isFocusSweeping = false;
+      if (result != null) {
+        _lockedFocusDistance = (result['focusDistance'] as num?)?.toDouble();
+      }
+    });
+
+    if (_lockedFocusDistance != null && result != null) {
+      _showSnackBar('Focus locked at ${_lockedFocusDistance!.toStringAsFixed(2)} D', Colors.green);
+    } else {
+      _showSnackBar('Focus sweep failed', Colors.red);
+    }
+  }
+
+  Future<void> _unlockFocus() async {
+    if (_isFocusSweeping || _lockedFocusDistance == null) return;
+
+    if (await _camera.unlockFocus() && mounted) {
+      setState(() => _lockedFocusDistance = null);
+      _showSnackBar('Autofocus restored', Colors.blue);
+    }
+  }
+
   void _toggleIllumination() {
     setState(() {
       if (!_showAIKK && !_showFullGreen) {
@@ -522,6 +582,50 @@ class _FocusPageState extends State<FocusPage> {
                   ),
                 ),
 
+                Positioned(
+                  top: 20,
+                  left: 20,
+                  child: GestureDetector(
+                    onTap: _toggleFocusSweep,
+                    onLongPress: _unlockFocus,
+                    child: Container(
+                      padding: const EdgeInsets.symmetric(horizontal: 8, vertical: 4),
+                      decoration: BoxDecoration(
+                        color: _lockedFocusDistance != null
+                            ? Colors.green.withOpacity(0.7)
+                            : Colors.black.withOpacity(0.5),
+                        borderRadius: BorderRadius.circular(12),
+                      ),
+                      child: Row(
+                        mainAxisSize: MainAxisSize.min,
+                        children: [
+                          _isFocusSweeping
+                              ? const SizedBox(
+                                  width: 14,
+                                  height: 14,
+                                  child: CircularProgressIndicator(
+                                    strokeWidth: 2,
+                                    valueColor: AlwaysStoppedAnimation<Color>(Colors.white),
+                                  ),
+                                )
+                              : Icon(
+                                  _lockedFocusDistance != null ? Icons.lock : Icons.center_focus_weak,
+                                  color: Colors.white,
+                                  size: 18,
+                                ),
+                          const SizedBox(width: 4),
+                          Text(
+                            _lockedFocusDistance != null
+                                ? '${_lockedFocusDistance!.toStringAsFixed(2)} D · ${_sharpness.toStringAsFixed(0)}'
+                                : _sharpness.toStringAsFixed(0),
+                            style: const TextStyle(color: Colors.white),
+                          ),
+                        ],
+                      ),
+                    ),
+                  ),
+                ),
+
                 Positioned(
                   top: 70,
                   right: 20,
@@ -61,6 +61,8 @@ class FormalCapture extends StatefulWidget {
 class FormalCaptureState extends State<FormalCapture> with WidgetsBindingObserver {
   // Define channels for native code interaction
   static const MethodChannel _channel = MethodChannel('smart_scope/camera2');
+  // Storage-only calls, handled off the platform main thread
+  static const MethodChannel _ioChannel = MethodChannel('smart_scope/camera2/io');
   static const MethodChannel _memoryChannel = MethodChannel('smart_scope/memory');
   
   bool _isTakingPicture = false;
@@ -86,6 +88,8 @@ class FormalCaptureState extends State<FormalCapture> with WidgetsBindingObserve
   int _currentCapturePoint = 0;
   List<String> _capturedImagePaths = [];
   final GlobalKey<dynamic> _illuminationKey = GlobalKey();
+  bool _nativeIllumination = false;
+  bool _darkReference = false;
 
   // Add camera ISO and exposure time parameters
   final int _fixedIsoValue = 500; // Corrected to reasonable ISO value
@@ -116,6 +120,16 @@ class FormalCaptureState extends State<FormalCapture> with WidgetsBindingObserve
 
   void _setupMemoryChannel() {
     _memoryChannel.setMethodCallHandler((call) async {
+      if (call.method == 'onTrimMemory') {
+        // Decoded thumbnails are the cheapest thing to rebuild, they go at every tier
+        PaintingBinding.instance.imageCache.clear();
+        if (_imageBytes != null && mounted) {
+          setState(() {
+            _imageBytes = null;
+          });
+        }
+        return true;
+      }
       if (call.method == 'onLowMemory') {
         if (_isCameraInitialized) {
           await _disposeCamera();
@@ -241,7 +255,7 @@ class FormalCaptureState extends State<FormalCapture> with WidgetsBindingObserve
         'hdrMode': _isHDREnabled,
         'useFixedCameraParams': _useFixedCameraParams,
         'isoValue': isoValue,
-        'exposureTimeMs': exposureTime,
+        'exposureTimeUs': exposureTime * 1000,
       });
       
       if (result == true && mounted) {
@@ -470,101 +484,119 @@ class FormalCaptureState extends State<FormalCapture> with WidgetsBindingObserve
         exposureTime = 1;
       }
 
-      bool useFixedParams = true;
+      String illuminationTypeName = widget.illuminationType.toString().split('.').last;
+      int radiusValue = (widget.illuminationParams['radius']).round();
+      int spacingValue = (widget.illuminationParams['spacing']).round();
+
+      List<Map<String, dynamic>> sequencePoints = [];
+      for (int point = 0; point < totalPoints; point++) {
+        Map<String, dynamic> illuminationParams = {
+          'radius': radiusValue,
+          'spacing': spacingValue,
+          'type': illuminationTypeName,
+          'currentPoint': point, // Add current point index
+        };
+
+        if (widget.illuminationParams.containsKey('offsetX_mm')) {
+          illuminationParams['offsetX_mm'] = widget.illuminationParams['offsetX_mm'];
+        }
 
-      while (_currentCapturePoint < totalPoints) {
-        if (!_isAutoCapturing) break; // Exit if user cancelled auto capture
-        
-        setState(() {
-        });
-        
-        if (_illuminationKey.currentState != null) {
-          if (widget.illuminationType == IlluminationType.AIKK) {
-            _illuminationKey.currentState.setActiveDot(_currentCapturePoint % 4);
-          } else if (widget.illuminationType == IlluminationType.FPM) {
-            _illuminationKey.currentState.setActiveDot(_currentCapturePoint);
-          } else if (widget.illuminationType == IlluminationType.sAIKK) {
-            _illuminationKey.currentState.setActiveDot(_currentCapturePoint);
-          }
+        if (widget.illuminationParams.containsKey('offsetY_mm')) {
+          illuminationParams['offsetY_mm'] = widget.illuminationParams['offsetY_mm'];
         }
 
-        await Future.delayed(Duration(milliseconds: 300));
+        if (widget.illuminationParams.containsKey('showCenterPoint')) {
+          illuminationParams['showCenterPoint'] = widget.illuminationParams['showCenterPoint'];
+        }
 
-        try {
-          String illuminationTypeName = widget.illuminationType.toString().split('.').last;
-          int radiusValue = (widget.illuminationParams['radius']).round();
-          int spacingValue = (widget.illuminationParams['spacing']).round();
-          
-          Map<String, dynamic> illuminationParams = {
-            'radius': radiusValue,
-            'spacing': spacingValue,
-            'type': illuminationTypeName,
-            'currentPoint': _currentCapturePoint, // Add current point index
-          };
-
-          if (widget.illuminationParams.containsKey('offsetX_mm')) {
-            illuminationParams['offsetX_mm'] = widget.illuminationParams['offsetX_mm'];
+        sequencePoints.add(illuminationParams);
+      }
+
+      debugPrint("Auto capture sequence: $totalPoints points, ISO=$isoValue, Exposure=${exposureTime}ms");
+
+      final bool nativeIllumination = await _prepareNativeIllumination();
+
+      // Native side asks for each illumination point before submitting its burst
+      _channel.setMethodCallHandler((MethodCall call) async {
+        if (call.method == 'onSequenceProgress') {
+          if (mounted) {
+            setState(() {
+              _currentCapturePoint = call.arguments['index'];
+            });
           }
-          
-          if (widget.illuminationParams.containsKey('offsetY_mm')) {
-            illuminationParams['offsetY_mm'] = widget.illuminationParams['offsetY_mm'];
+          return null;
+        }
+
+        if (call.method == 'onSequencePoint') {
+          final int pointIndex = call.arguments['index'];
+          if (!_isAutoCapturing) {
+            throw PlatformException(code: 'CANCELLED', message: 'Auto capture cancelled');
           }
-          
-          if (widget.illuminationParams.containsKey('showCenterPoint')) {
-            illuminationParams['showCenterPoint'] = widget.illuminationParams['showCenterPoint'];
+
+          // Dark reference before the first point, everything off
+          if (call.arguments['dark'] == true) {
+            setState(() {
+              _darkReference = true;
+            });
+            await WidgetsBinding.instance.endOfFrame;
+            return true;
           }
 
-          debugPrint("Auto capture point ${_currentCapturePoint+1}/$totalPoints, ISO=$isoValue, Exposure=${exposureTime}ms");
-          
-          String imagePath;
-          try {
-            if (_useFixedCameraParams) {
-              imagePath = await _channel.invokeMethod('takePicture', {
-                'hdrMode': _isHDREnabled,
-                'highResolutionMode': _isHighResolutionEnabled,
-                'illuminationParams': illuminationParams,
-                'pageId': 'default',
-                'useFixedCameraParams': true, 
-                'isoValue': _useFixedCameraParams ? isoValue : null,
-                'exposureTimeMs': _useFixedCameraParams ? exposureTime : null,
-              });
-            } else {
-              imagePath = await _channel.invokeMethod('takePicture', {
-                'hdrMode': _isHDREnabled,
-                'highResolutionMode': _isHighResolutionEnabled,
-                'illuminationParams': illuminationParams,
-                'pageId': 'default',
-                'useFixedCameraParams': false,
-              });
-            }
-          } catch (takePictureError) {
-            if (_useFixedCameraParams) {
-              debugPrint("Failed with fixed params, switching to auto: $takePictureError");
-
-              imagePath = await _channel.invokeMethod('takePicture', {
-                'hdrMode': _isHDREnabled,
-                'highResolutionMode': _isHighResolutionEnabled,
-                'illuminationParams': illuminationParams,
-                'pageId': 'default',
-                'useFixedCameraParams': false,
-              });
+          setState(() {
+            _darkReference = false;
+            _currentCapturePoint = pointIndex;
+          });
+
+          if (_illuminationKey.currentState != null) {
+            if (widget.illuminationType == IlluminationType.AIKK) {
+              _illuminationKey.currentState.setActiveDot(pointIndex % 4);
             } else {
-              throw takePictureError;
+              _illuminationKey.currentState.setActiveDot(pointIndex);
             }
           }
 
-          _capturedImagePaths.add(imagePath);
+          // Native side waits for vsync and drops frames exposed before the pattern was shown
+          await WidgetsBinding.instance.endOfFrame;
+          return true;
+        }
+        return null;
+      });
 
-          _showSnackBar('Captured ${_currentCapturePoint + 1}/$totalPoints', Colors.green);
+      try {
+        final List<dynamic>? imagePaths = await _channel.invokeMethod('captureSequence', {
+          'hdrMode': _isHDREnabled,
+          'highResolutionMode': _isHighResolutionEnabled,
+          'points': sequencePoints,
+          'pageId': 'default',
+          // Single .ssacq file instead of one image per frame, opt-in until reconstruction reads it
+          'container': widget.illuminationParams['container'] ?? false,
+          'nativeIllumination': nativeIllumination,
+          // Optional reconstruction window(s), only honoured for YUV/RAW capture
+          'roi': widget.illuminationParams['roi'],
+          'subtractDark': _useFixedCameraParams && (widget.illuminationParams['subtractDark'] ?? false),
+          // Optional through-focus stack: every point is captured at each of these distances (diopters)
+          'focusDistances': widget.illuminationParams['focusDistances'],
+          // Exposure multiples fused into one linear frame per point when HDR is on with YUV/RAW capture
+          'hdrExposureRatios': widget.illuminationParams['hdrExposureRatios'],
+          // Meter each point with one frame and expose it to a fixed fraction of full scale
+          'meterExposure': _useFixedCameraParams && (widget.illuminationParams['meterExposure'] ?? false),
+          'useFixedCameraParams': _useFixedCameraParams,
+          'isoValue': _useFixedCameraParams ? isoValue : null,
+          'exposureTimeUs': _useFixedCameraParams ? exposureTime * 1000 : null,
+        });
 
-          await Future.delayed(Duration(milliseconds: 500));
-          
-        } catch (e) {
-          debugPrint("Auto capture error: $e");
-          _showSnackBar('Capture failed: $e', Colors.red);
+        if (imagePaths != null) {
+          _capturedImagePaths = imagePaths.whereType<String>().toList();
+        }
+        _currentCapturePoint = totalPoints;
+      } catch (e) {
+        debugPrint("Auto capture error: $e");
+        _showSnackBar('Capture failed: $e', Colors.red);
+      } finally {
+        _channel.setMethodCallHandler(null);
+        if (nativeIllumination) {
+          await _releaseNativeIllumination();
         }
-
-        _currentCapturePoint++;
       }
 
       if (_isAutoCapturing) {
@@ -577,6 +609,58 @@ class FormalCaptureState extends State<FormalCapture> with WidgetsBindingObserve
       _resumeIllumination();
       setState(() {
         _isAutoCapturing = false;
+        _darkReference = false;
+      });
+    }
+  }
+
+  // Hands the pattern over to a native overlay so each point is drawn by the sequencer itself
+  Future<bool> _prepareNativeIllumination() async {
+    final RenderBox? box = _illuminationKey.currentContext?.findRenderObject() as RenderBox?;
+    if (box == null) return false;
+
+    final Offset origin = box.localToGlobal(Offset.zero);
+    final Color dotColor = widget.illuminationParams['dotColor'] ?? Colors.white;
+
+    try {
+      final int? patternCount = await _channel.invokeMethod<int>('prepareIllumination', {
+        'type': widget.illuminationType.toString().split('.').last,
+        'radius': widget.illuminationParams['radius'] ?? 10.0,
+        'spacing': widget.illuminationParams['spacing'] ?? 20.0,
+        'rows': widget.illuminationParams['rows'] ?? 4,
+        'columns': widget.illuminationParams['columns'] ?? 4,
+        'showCenterPoint': widget.illuminationParams['showCenterPoint'] ?? false,
+        'offsetX_mm': widget.illuminationParams['offsetX_mm'] ?? 0.0,
+        'offsetY_mm': widget.illuminationParams['offsetY_mm'] ?? 0.0,
+        'ppi': widget.illuminationParams['ppi'] ?? 470.0,
+        'originX': origin.dx,
+        'originY': origin.dy,
+        'dotColor': dotColor.value,
+      });
+
+      if (patternCount == null || patternCount == 0) return false;
+
+      setState(() {
+        _nativeIllumination = true;
+      });
+      await WidgetsBinding.instance.endOfFrame;
+      return true;
+    } catch (e) {
+      debugPrint("Native illumination unavailable, using Flutter patterns: $e");
+      return false;
+    }
+  }
+
+  Future<void> _releaseNativeIllumination() async {
+    try {
+      await _channel.invokeMethod('releaseIllumination');
+    } catch (e) {
+      debugPrint("Error releasing native illumination: $e");
+    }
+
+    if (mounted) {
+      setState(() {
+        _nativeIllumination = false;
       });
     }
   }
@@ -588,6 +672,12 @@ class FormalCaptureState extends State<FormalCapture> with WidgetsBindingObserve
       _isAutoCapturing = false;
     });
     
+    if (_nativeIllumination) {
+      _channel.invokeMethod('cancelCaptureSequence').catchError((e) {
+        debugPrint("Error cancelling capture sequence: $e");
+      });
+    }
+
     _showSnackBar('Auto capture cancelled', Colors.orange);
     _resumeIllumination();
   }
@@ -648,7 +738,7 @@ class FormalCaptureState extends State<FormalCapture> with WidgetsBindingObserve
           'pageId': 'default',
           'useFixedCameraParams': _useFixedCameraParams,
           'isoValue': _useFixedCameraParams ? isoValue : null,
-          'exposureTimeMs': _useFixedCameraParams ? exposureTime : null,
+          'exposureTimeUs': _useFixedCameraParams ? exposureTime * 1000 : null,
         });
       } catch (takePictureError) {
         debugPrint("Failed with current params, trying auto: $takePictureError");
@@ -683,7 +773,7 @@ class FormalCaptureState extends State<FormalCapture> with WidgetsBindingObserve
 
   Future<Uint8List?> _loadContentUriBytes(String uri) async {
     try {
-      final Uint8List? bytes = await _channel.invokeMethod('loadImageFromContentUri', {'uri': uri});
+      final Uint8List? bytes = await _ioChannel.invokeMethod('loadImageFromContentUri', {'uri': uri});
       return bytes;
     } catch (e) {
       debugPrint('Failed to load content URI image data: $e');
@@ -814,7 +904,10 @@ class FormalCaptureState extends State<FormalCapture> with WidgetsBindingObserve
       body: Stack(
         clipBehavior: Clip.none,
         children: [
-          _buildIllumination(),
+          Offstage(
+            offstage: _nativeIllumination || _darkReference,
+            child: _buildIllumination(),
+          ),
 
           Align(
             alignment: Alignment.bottomCenter,
@@ -1041,7 +1134,7 @@ class FormalCaptureState extends State<FormalCapture> with WidgetsBindingObserve
           final bool result = await _channel.invokeMethod('setCameraParams', {
             'useFixedCameraParams': true, // Always use fixed params
             'isoValue': isoValue,
-            'exposureTimeMs': exposureTime,
+            'exposureTimeUs': exposureTime * 1000,
           });
           
           if (result) {
@@ -1060,7 +1153,7 @@ class FormalCaptureState extends State<FormalCapture> with WidgetsBindingObserve
             'hdrMode': _isHDREnabled,
             'useFixedCameraParams': true,
             'isoValue': isoValue,
-            'exposureTimeMs': exposureTime,
+            'exposureTimeUs': exposureTime * 1000,
           });
           
           if (result == true && mounted) {
@@ -1087,7 +1180,7 @@ class FormalCaptureState extends State<FormalCapture> with WidgetsBindingObserve
       final bool result = await _channel.invokeMethod('setCameraParams', {
         'useFixedCameraParams': true,
         'isoValue': isoValue,
-        'exposureTimeMs': exposureTime,
+        'exposureTimeUs': exposureTime * 1000,
       });
       
       if (result) {
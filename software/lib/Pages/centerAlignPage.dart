@@ -94,6 +94,7 @@ class _CenterAlignPageState extends State<CenterAlignPage>
   @override
   void dispose() {
     _intensityUpdateTimer?.cancel();
+    _intensitySubscription?.cancel();
     _scanTimer?.cancel();
     _measureTimer?.cancel();
     _camera.dispose();
@@ -133,7 +134,8 @@ class _CenterAlignPageState extends State<CenterAlignPage>
       });
 
       await _setExposureTime(_exposureTime);
-      
+
+      _startRealtimeIntensityUpdate();
     } catch (e) {
       debugPrint('Camera initialization error: $e');
       setState(() {
@@ -387,6 +389,43 @@ class _CenterAlignPageState extends State<CenterAlignPage>
 
   void _startRealtimeIntensityUpdate() {
     _intensityUpdateTimer?.cancel();
+    if (!_isCameraInitialized) return;
+
+    if (!_intensityMonitoringActive) {
+      _intensityStream = _camera.startLightIntensityMonitoring();
+    }
+
+    if (_intensityStream == null) {
+      _startIntensityPolling();
+      return;
+    }
+
+    // Native analysis stream pushes the centre mean at preview rate, no polling needed
+    _intensityMonitoringActive = true;
+    _intensitySubscription ??= _intensityStream!.listen((intensity) {
+      if (!mounted || _isScanning) return;
+
+      setState(() {
+        _currentIntensity = intensity;
+        _lastIntensityUpdateTime = DateTime.now();
+
+        if (intensity > 0.01 && (_bestX == null || _bestY == null || intensity > _bestIntensity)) {
+          _bestIntensity = intensity;
+          _bestX = _offsetX;
+          _bestY = _offsetY;
+        }
+      });
+    }, onError: (e) {
+      // Camera busy or the analysis stream released under memory pressure, polling still works
+      debugPrint('Intensity stream stopped: $e');
+      _stopIntensityMonitoring();
+      if (mounted && _isCameraInitialized) {
+        _startIntensityPolling();
+      }
+    });
+  }
+
+  void _startIntensityPolling() {
     int consecutiveZeroIntensity = 0;
     _intensityUpdateTimer = Timer.periodic(Duration(milliseconds: 500), (timer) async {
       if (!mounted || !_isCameraInitialized) {
@@ -429,6 +468,9 @@ class _CenterAlignPageState extends State<CenterAlignPage>
   void _stopIntensityMonitoring() {
     _intensityUpdateTimer?.cancel();
     _intensityUpdateTimer = null;
+    _intensitySubscription?.cancel();
+    _intensitySubscription = null;
+    _intensityStream = null;
     _intensityMonitoringActive = false;
   }
 
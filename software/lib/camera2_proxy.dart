@@ -6,6 +6,7 @@ import 'package:flutter/services.dart';
 /// Camera2 API proxy class, handles communication with native Android Camera2 API
 class Camera2Proxy {
   static const MethodChannel _channel = MethodChannel('smart_scope/camera2');
+  static const EventChannel _analysisChannel = EventChannel('smart_scope/camera2/analysis');
   
   // Page ID and instance mapping, allows different pages to have independent camera proxies
   static final Map<String, Camera2Proxy> _instances = {};
@@ -164,6 +165,24 @@ class Camera2Proxy {
     }
   }
 
+  /// Set capture format: 'jpeg', 'raw' (RAW_SENSOR) or 'yuv' (YUV_420_888 Y-plane)
+  /// Non-JPEG formats are stored as linear 16-bit TIFF
+  Future<String?> setCaptureFormat(String format) async {
+    if (!_isInitialized) return null;
+
+    try {
+      final result = await _channel.invokeMethod<String>('setCaptureFormat', {
+        'format': format,
+        'pageId': pageId,
+      });
+
+      return result;
+    } catch (e) {
+      debugPrint('Failed to set capture format: $e');
+      return null;
+    }
+  }
+
   /// Take picture
   Future<String?> takePicture({
     bool hdrMode = false,
@@ -235,6 +254,42 @@ class Camera2Proxy {
     }
   }
 
+  /// Detect hot pixels from dark frames (lens covered or illumination off)
+  /// Requires YUV/RAW capture with fixed exposure and ISO; the map is stored per camera/ISO
+  /// and applied to every later linear capture with the same settings
+  Future<Map<String, dynamic>?> calibrateHotPixels({int frames = 8}) async {
+    if (!_isInitialized) return null;
+
+    try {
+      return await _channel.invokeMapMethod<String, dynamic>('calibrateHotPixels', {
+        'frames': frames,
+        'pageId': pageId,
+      });
+    } catch (e) {
+      debugPrint('Failed to calibrate hot pixels: $e');
+      return null;
+    }
+  }
+
+  /// Capture latency per stage (started, completed, imageAvailable, written, delivered),
+  /// measured from submission, for stills and sequences. Each stage has count, meanMs, p50Ms, p90Ms, p99Ms and maxMs
+  Future<Map<String, dynamic>?> getCaptureMetrics() async {
+    try {
+      return await _channel.invokeMapMethod<String, dynamic>('getCaptureMetrics');
+    } catch (e) {
+      debugPrint('Failed to get capture metrics: $e');
+      return null;
+    }
+  }
+
+  Future<void> resetCaptureMetrics() async {
+    try {
+      await _channel.invokeMethod('resetCaptureMetrics');
+    } catch (e) {
+      debugPrint('Failed to reset capture metrics: $e');
+    }
+  }
+
   /// Start image stream
   StreamSubscription<Uint8List>? startImageStream(Function(Uint8List) onImageAvailable) {
     if (!_isInitialized) return null;
@@ -301,6 +356,72 @@ class Camera2Proxy {
     }
   }
 
+  /// Per-frame statistics of the centre of the preview, pushed at preview rate while monitoring runs:
+  /// 'mean' (0-255 luma), 'sharpness' (Tenengrad), 'histogram' (256 bins), 'samples', 'timestampNs', 'frame'.
+  /// Focus sweeps add 'focusStep' and 'focusLocked' events, told apart by 'type'.
+  /// An ANALYSIS_STOPPED error means the stream was released under memory pressure and produces nothing more
+  Stream<Map<dynamic, dynamic>> get analysisEvents =>
+      _analysisChannel.receiveBroadcastStream().cast<Map<dynamic, dynamic>>();
+
+  /// Analysis and focus sweep events for pages that show focus, the stream stops when the last listener cancels
+  Stream<Map<dynamic, dynamic>>? startFocusMonitoring() {
+    if (!_isInitialized) return null;
+
+    final controller = StreamController<Map<dynamic, dynamic>>.broadcast();
+    StreamSubscription<Map<dynamic, dynamic>>? subscription;
+
+    controller.onListen = () {
+      subscription = analysisEvents.listen(controller.add, onError: controller.addError);
+      // CAMERA_BUSY while a capture runs, the page may listen again once it is done
+      _channel.invokeMethod('startIntensityMonitoring').catchError(controller.addError);
+    };
+
+    controller.onCancel = () {
+      subscription?.cancel();
+      _channel.invokeMethod('stopIntensityMonitoring').catchError((e) {
+        debugPrint('Failed to stop focus monitoring: $e');
+      });
+    };
+
+    return controller.stream;
+  }
+
+  /// Step the lens with autofocus off and lock the sharpest distance on every page until [unlockFocus]
+  /// Returns {'focusDistance' (diopters), 'sharpness'}, or null when the sweep fails or is cancelled
+  Future<Map<String, dynamic>?> startFocusSweep({int coarseSteps = 12, int fineSteps = 8}) async {
+    if (!_isInitialized) return null;
+
+    try {
+      return await _channel.invokeMapMethod<String, dynamic>('startFocusSweep', {
+        'coarseSteps': coarseSteps,
+        'fineSteps': fineSteps,
+        'pageId': pageId,
+      });
+    } catch (e) {
+      debugPrint('Focus sweep failed: $e');
+      return null;
+    }
+  }
+
+  Future<void> cancelFocusSweep() async {
+    try {
+      await _channel.invokeMethod('cancelFocusSweep');
+    } catch (e) {
+      debugPrint('Failed to cancel focus sweep: $e');
+    }
+  }
+
+  /// Return to continuous autofocus
+  Future<bool> unlockFocus() async {
+    try {
+      final result = await _channel.invokeMethod<bool>('unlockFocus');
+      return result ?? false;
+    } catch (e) {
+      debugPrint('Failed to unlock focus: $e');
+      return false;
+    }
+  }
+
   /// Start light intensity monitoring
   Stream<double>? startLightIntensityMonitoring() {
     if (!_isInitialized) return null;
@@ -313,23 +434,23 @@ class Camera2Proxy {
     
     try {
       final controller = StreamController<double>.broadcast();
+      StreamSubscription<Map<dynamic, dynamic>>? subscription;
+
+      controller.onListen = () {
+        subscription = analysisEvents
+            .where((event) => event['type'] == null || event['type'] == 'analysis')
+            .listen(
+              (event) => controller.add((event['mean'] as num?)?.toDouble() ?? 0.0),
+              onError: controller.addError,
+            );
+      };
 
-      _channel.setMethodCallHandler((MethodCall call) async {
-        if (call.method == 'onIntensityUpdate') {
-          final Map<dynamic, dynamic>? args = call.arguments;
-          if (args != null && args['event'] == 'intensityUpdate') {
-            final double intensity = args['intensity'] ?? 0.0;
-            controller.add(intensity);
-          }
-        }
-        return null;
-      });
-      
-      // Start intensity monitoring
-      _channel.invokeMethod('startIntensityMonitoring');
+      // Start intensity monitoring, CAMERA_BUSY while a capture runs
+      _channel.invokeMethod('startIntensityMonitoring').catchError(controller.addError);
       
       // Set cancel callback
       controller.onCancel = () {
+        subscription?.cancel();
         stopLightIntensityMonitoring();
       };
       